@@ -79,10 +79,12 @@ import com.att.aro.core.packetreader.IPacketReader;
 import com.att.aro.core.packetreader.IPacketService;
 import com.att.aro.core.packetreader.IPcapngHelper;
 import com.att.aro.core.packetreader.impl.DomainNameParserImpl;
+import com.att.aro.core.packetreader.impl.MappedPcapReaderImpl;
 import com.att.aro.core.packetreader.impl.NetmonPacketReaderImpl;
 import com.att.aro.core.packetreader.impl.PacketReaderImpl;
 import com.att.aro.core.packetreader.impl.PacketServiceImpl;
 import com.att.aro.core.packetreader.impl.PcapngHelperImpl;
+import com.att.aro.core.packetreader.impl.PcapngReaderImpl;
 import com.att.aro.core.peripheral.IAlarmAnalysisInfoParser;
 import com.att.aro.core.peripheral.IAlarmDumpsysTimestampReader;
 import com.att.aro.core.peripheral.IAlarmInfoReader;
@@ -131,6 +133,7 @@ import com.att.aro.core.resourceextractor.IReadWriteFileExtractor;
 import com.att.aro.core.resourceextractorimpl.ReadWriteFileExtractorImpl;
 import com.att.aro.core.settings.IAROSettings;
 import com.att.aro.core.settings.impl.AROSettingsImpl;
+import com.att.aro.core.util.Util;
 import com.att.aro.core.video.IVideoCapture;
 import com.att.aro.core.video.IVideoWriter;
 import com.att.aro.core.video.impl.VideoCaptureImpl;
@@ -149,6 +152,14 @@ import com.att.aro.core.video.impl.VideoWriterImpl;
 @ImportResource({ "classpath*:plugins-analytics.xml", "classpath*:plugins.xml", "classpath*:plugin-manager.xml" ,"classpath*:plugins-noroot.xml"})
 public class AROConfig {
 
+	public static final String PACKET_READER_PROPERTY = "aro.packetreader";
+	public static final String MAPPED_PACKET_READER = "mapped";
+	public static final String PACKET_READER_THREADS_PROPERTY = "aro.packetreader.threads";
+	public static final String SESSION_MANAGER_THREADS_PROPERTY = "aro.sessionmanager.threads";
+	public static final String SESSION_IDLE_TIMEOUT_PROPERTY = "aro.sessionmanager.idletimeout";
+	public static final String SESSION_CLOSED_TIMEOUT_PROPERTY = "aro.sessionmanager.closedtimeout";
+	public static final String CONTENT_CACHE_SIZE_PROPERTY = "aro.contentcache.size";
+
 	@Bean
 	public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
 		return new PropertySourcesPlaceholderConfigurer();
@@ -201,15 +212,59 @@ public class AROConfig {
 	}
 
 	/**
-	 * Reads/Imports trace data into ARO.Core for MacOS and Linux
+	 * Reads/Imports trace data into ARO.Core for MacOS and Linux<br>
+	 * Linux defaults to the pure Java memory-mapped pcap reader, MacOS to the
+	 * jpcap library. Either can be forced with the system property
+	 * aro.packetreader=mapped|jpcap
 	 * 
-	 * @return new PacketReaderImpl()
+	 * @return the memory-mapped or the jpcap packet reader
 	 */
 	@Bean(name = "packetReader")
 	public IPacketReader getPacketReader() {
+		String reader = System.getProperty(PACKET_READER_PROPERTY);
+		if (MAPPED_PACKET_READER.equals(reader) || (reader == null && Util.isLinuxOS())) {
+			return getMappedPcapReader();
+		}
+		return getJpcapPacketReader();
+	}
+
+	/**
+	 * Reads/Imports trace data through the native jpcap library
+	 * 
+	 * @return new PacketReaderImpl()
+	 */
+	@Bean(name = "jpcapPacketReader")
+	public IPacketReader getJpcapPacketReader() {
 		return new PacketReaderImpl();
 	}
 
+	/**
+	 * Reads/Imports classic pcap trace data without native code, pcapng is
+	 * handed to the pcapngPacketReader. Packets are decoded on
+	 * aro.packetreader.threads threads, all processors by default
+	 * 
+	 * @return new MappedPcapReaderImpl()
+	 */
+	@Bean(name = "mappedPcapReader")
+	public IPacketReader getMappedPcapReader() {
+		MappedPcapReaderImpl reader = new MappedPcapReaderImpl();
+		Integer threads = Integer.getInteger(PACKET_READER_THREADS_PROPERTY);
+		if (threads != null) {
+			reader.setParallelism(threads);
+		}
+		return reader;
+	}
+
+	/**
+	 * Reads/Imports pcapng trace data, such as iOS traces, without native code
+	 * 
+	 * @return new PcapngReaderImpl()
+	 */
+	@Bean(name = "pcapngPacketReader")
+	public IPacketReader getPcapngPacketReader() {
+		return new PcapngReaderImpl();
+	}
+
 	/**
 	 * Reads/Imports trace data into ARO.Core for Windows
 	 * 
@@ -293,23 +348,46 @@ public class AROConfig {
 	}
 
 	/**
-	 * Assembles and ReAssembles Sessions
+	 * Assembles and ReAssembles Sessions, sessions are reassembled on
+	 * aro.sessionmanager.threads threads, all processors by default. Session
+	 * assemblers for live captures complete TCP sessions idle for
+	 * aro.sessionmanager.idletimeout seconds, 300 by default, or closed and
+	 * idle for aro.sessionmanager.closedtimeout seconds, 10 by default
 	 * 
 	 * @return new SessionManagerImpl()
 	 */
 	@Bean
 	public ISessionManager getSessionManager() {
-		return new SessionManagerImpl();
-	}
-
-	/**
-	 * Reads Trace (traffic.cap) file or Trace Directory
+		SessionManagerImpl sessionManager = new SessionManagerImpl();
+		Integer threads = Integer.getInteger(SESSION_MANAGER_THREADS_PROPERTY);
+		if (threads != null) {
+			sessionManager.setParallelism(threads);
+		}
+		Integer idleTimeout = Integer.getInteger(SESSION_IDLE_TIMEOUT_PROPERTY);
+		if (idleTimeout != null) {
+			sessionManager.setIdleTimeout(idleTimeout);
+		}
+		Integer closedTimeout = Integer.getInteger(SESSION_CLOSED_TIMEOUT_PROPERTY);
+		if (closedTimeout != null) {
+			sessionManager.setClosedTimeout(closedTimeout);
+		}
+		return sessionManager;
+	}
+
+	/**
+	 * Reads Trace (traffic.cap) file or Trace Directory, rotated trafficN.cap
+	 * files are read on aro.packetreader.threads threads
 	 * 
 	 * @return new TraceDataReaderImpl()
 	 */
 	@Bean
 	public ITraceDataReader getTraceDataReader() {
-		return new TraceDataReaderImpl();
+		TraceDataReaderImpl reader = new TraceDataReaderImpl();
+		Integer threads = Integer.getInteger(PACKET_READER_THREADS_PROPERTY);
+		if (threads != null) {
+			reader.setReaderThreads(threads);
+		}
+		return reader;
 	}
 
 	/**
@@ -568,13 +646,19 @@ public class AROConfig {
 	}
 
 	/**
-	 * Helper class for interpreting HttpRequestResponseInfo objects
+	 * Helper class for interpreting HttpRequestResponseInfo objects, keeps up
+	 * to aro.contentcache.size bytes of decoded content, 64 MB by default
 	 * 
 	 * @return new HttpRequestResponseHelperImpl()
 	 */
 	@Bean
 	public IHttpRequestResponseHelper getHttpRequestResponseHelper() {
-		return new HttpRequestResponseHelperImpl();
+		HttpRequestResponseHelperImpl helper = new HttpRequestResponseHelperImpl();
+		Long cacheSize = Long.getLong(CONTENT_CACHE_SIZE_PROPERTY);
+		if (cacheSize != null) {
+			helper.setContentCacheSize(cacheSize);
+		}
+		return helper;
 	}
 
 	/**
@@ -615,6 +699,8 @@ public class AROConfig {
 	 * @return new ByteArrayLineReaderImpl()
 	 */
 	@Bean
+	@Scope(value = "prototype")
+	// => always create a new instance, a reader holds the position of one read
 	public IByteArrayLineReader getByteArrayLineReader() {
 		return new ByteArrayLineReaderImpl();
 	}
@@ -15,13 +15,15 @@
  */
 package com.att.aro.core.bestpractice.impl;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -184,38 +186,44 @@ public class FileCompressionImpl implements IBestPractice {
 	
 	/**
 	 * Calculating the percentage of savings when we use gzip. US432352 Changes
+	 * The content is compressed as getContent() decodes it: gzip is inflated,
+	 * as far as it inflates, other encodings such as deflate are compressed
+	 * as sent.
 	 * @param req
 	 * @param session
 	 * @return
 	 */
 	public int calculateSavingForTextBasedOnGzip(HttpRequestResponseInfo req, Session session){
-		byte[] content = null;
-		byte[] compressedBytes = null;
+		InputStream content = null;
+		ByteCountOutputStream out = new ByteCountOutputStream();
 		try {
-			content = reqhelper.getContent(req, session);
-		} catch (Exception exp) {
-			logger.error("Failed to get text content from response: "+ exp.getMessage());
-		}
-		if(content == null){
-			return 0;
-		}
-
-		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
-		GZIPOutputStream gzip;
-		try {
-			gzip = new GZIPOutputStream(out);
-
-			gzip.write(content);
+			content = getContent(req, session);
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			byte[] buffer = new byte[8192];
+			int len;
+			try {
+				while ((len = content.read(buffer)) >= 0) {
+					gzip.write(buffer, 0, len);
+				}
+			} catch (IOException exp) {
+				logger.warn("Text content is corrupted, compressing the content read: " + exp.getMessage());
+			}
 			gzip.close();
-	
-			compressedBytes = out.toByteArray(); 
-			out.close();
 		} catch (IOException IOexp) {
 			logger.error("Failed to get text content on Gzip savings calculation : "+ IOexp.getMessage());
+			return 0;
+		} finally {
+			if (content != null) {
+				try {
+					content.close();
+				} catch (IOException ex) {
+					logger.error("Failed to close text content: " + ex.getMessage());
+				}
+			}
 		}
 		
 		int originalSize = req.getContentLength();
-		int savingBytes = originalSize - compressedBytes.length;
+		int savingBytes = originalSize - (int) out.getCount();
 		
 		if(savingBytes < 0){
 			return 0;
@@ -231,4 +239,42 @@ public class FileCompressionImpl implements IBestPractice {
 	}
 	
 	
+	/**
+	 * @return the content of the request/response, gzip content inflated
+	 *         unless its header is invalid
+	 */
+	private InputStream getContent(HttpRequestResponseInfo req, Session session) throws IOException {
+		InputStream content = reqhelper.getRawContentStream(req, session);
+		if (!"gzip".equals(req.getContentEncoding()) || content.available() == 0) {
+			return content;
+		}
+		try {
+			return new GZIPInputStream(content);
+		} catch (IOException exp) {
+			content.close();
+			return reqhelper.getRawContentStream(req, session);
+		}
+	}
+
+	/**
+	 * Counts the bytes written to it, the compressed content itself is not
+	 * needed.
+	 */
+	private static class ByteCountOutputStream extends OutputStream {
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
 }//end class
@@ -27,6 +27,7 @@ import com.att.aro.core.configuration.pojo.ProfileLTE;
 import com.att.aro.core.configuration.pojo.ProfileType;
 import com.att.aro.core.configuration.pojo.ProfileWiFi;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.RRCState;
 
 /**
@@ -45,6 +46,7 @@ public interface IProfileFactory {
 	void save3G(String filepath, Profile3G prof) throws IOException;
 	
 	double energyLTE(double time1, double time2, RRCState state,ProfileLTE prof, List<PacketInfo> packets);
+	double energyLTE(double time1, double time2, RRCState state, ProfileLTE prof, PacketTable packets);
 	Profile createLTEdefault();
 	Profile createLTEFromDefaultResourceFile() throws IOException;
 	Profile createLTEFromFilePath(String filepath) throws IOException;
@@ -32,6 +32,7 @@ import com.att.aro.core.configuration.pojo.ProfileWiFi;
 import com.att.aro.core.fileio.IFileManager;
 import com.att.aro.core.packetanalysis.IThroughputCalculator;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.RRCState;
 import com.att.aro.core.packetanalysis.pojo.Throughput;
 
@@ -196,6 +197,39 @@ public class ProfileFactoryImpl implements IProfileFactory {
 	}
 	@Override
 	public double energyLTE(double time1, double time2, RRCState state, ProfileLTE prof, List<PacketInfo> packets) {
+		if (state == RRCState.LTE_CONTINUOUS) {
+			return energyLTEContinuous(prof,
+					throughputcalculator.calculateThroughput(time1, time2, prof.getThroughputWindow(), packets));
+		}
+		return energyLTE(time1, time2, state, prof);
+	}
+
+	@Override
+	public double energyLTE(double time1, double time2, RRCState state, ProfileLTE prof, PacketTable packets) {
+		if (state == RRCState.LTE_CONTINUOUS) {
+			return energyLTEContinuous(prof,
+					throughputcalculator.calculateThroughput(time1, time2, prof.getThroughputWindow(), packets));
+		}
+		return energyLTE(time1, time2, state, prof);
+	}
+
+	/**
+	 * Energy of the LTE_CONTINUOUS state from the throughput of its packets
+	 */
+	private double energyLTEContinuous(ProfileLTE prof, List<Throughput> throughputs) {
+		double result = 0.0;
+		for (Throughput throughput : throughputs) {
+			result += (((prof.getLteAlphaUp() / 1000.0) * throughput.getUploadMbps())
+					+ ((prof.getLteAlphaDown() / 1000.0) * throughput.getDownloadMbps()) + prof.getLteBeta())
+					* throughput.getSamplePeriod();
+		}
+		return result;
+	}
+
+	/**
+	 * Energy of the LTE states that do not depend on the packets
+	 */
+	private double energyLTE(double time1, double time2, RRCState state, ProfileLTE prof) {
 
 		double deltaTime = time2 - time1;
 		double result = 0.0;
@@ -206,14 +240,6 @@ public class ProfileFactoryImpl implements IProfileFactory {
 		case LTE_CR_TAIL:
 			// Assume no throughput
 			return deltaTime * prof.getLteBeta();
-		case LTE_CONTINUOUS:
-			for (Throughput throughput : throughputcalculator.calculateThroughput(time1, time2,
-					prof.getThroughputWindow(), packets)) {
-				result += (((prof.getLteAlphaUp() / 1000.0) * throughput.getUploadMbps())
-						+ ((prof.getLteAlphaDown() / 1000.0) * throughput.getDownloadMbps()) + prof.getLteBeta())
-						* throughput.getSamplePeriod();
-			}
-			break;
 		case LTE_DRX_SHORT :
 			return (deltaTime / prof.getDrxShortPingPeriod())
 					* ((prof.getDrxPingTime() * prof.getDrxShortPingPower()) + 
@@ -0,0 +1,35 @@
+/**
+ *  Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.exception;
+
+/**
+ * Unchecked wrapper for a failure while reading packets through a cursor,
+ * where the Iterator contract does not allow an IOException.
+ */
+public class AROPacketReadException extends ARORuntimeException {
+	private static final long serialVersionUID = 3316442079618712532L;
+
+	public AROPacketReadException(String message) {
+		super(ExceptionType.packetRead, message);
+	}
+	public AROPacketReadException(Throwable cause) {
+		super(ExceptionType.packetRead, cause);
+	}
+	public AROPacketReadException(String message, Throwable cause) {
+		super(ExceptionType.packetRead, message, cause);
+	}
+
+}
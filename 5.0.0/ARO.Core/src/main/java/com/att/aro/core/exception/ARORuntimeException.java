@@ -23,7 +23,8 @@ public class ARORuntimeException extends RuntimeException {
 
 	public enum ExceptionType {
 		unknown,
-		invalidAttribute
+		invalidAttribute,
+		packetRead
 	}
 
 	protected ARORuntimeException(ExceptionType exceptionType) {
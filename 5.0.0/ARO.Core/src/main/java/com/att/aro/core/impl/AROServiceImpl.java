@@ -25,12 +25,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import com.att.aro.core.IAROService;
+import com.att.aro.core.ILogger;
 import com.att.aro.core.bestpractice.IBestPractice;
 import com.att.aro.core.bestpractice.pojo.AbstractBestPracticeResult;
 import com.att.aro.core.bestpractice.pojo.BestPracticeType;
 import com.att.aro.core.configuration.pojo.Profile;
 import com.att.aro.core.fileio.IFileManager;
+import com.att.aro.core.model.InjectLogger;
 import com.att.aro.core.packetanalysis.ICacheAnalysis;
+import com.att.aro.core.packetanalysis.IContentCacheScope;
+import com.att.aro.core.packetanalysis.IHttpRequestResponseHelper;
 import com.att.aro.core.packetanalysis.IPacketAnalyzer;
 import com.att.aro.core.packetanalysis.pojo.AnalysisFilter;
 import com.att.aro.core.packetanalysis.pojo.PacketAnalyzerResult;
@@ -67,8 +71,12 @@ import com.att.aro.core.report.IReport;
  */
 public class AROServiceImpl implements IAROService {
 
+	@InjectLogger
+	private ILogger logger;
+
 	private IPacketAnalyzer packetanalyzer;
 	private ICacheAnalysis cacheAnalyzer;
+	private IHttpRequestResponseHelper rrhelper;
 
 	@Autowired
 	private transient VersionInfo info;
@@ -76,6 +84,11 @@ public class AROServiceImpl implements IAROService {
 	@Autowired
 	private IFileManager filemanager;
 
+	@Autowired
+	public void setLogger(ILogger logger) {
+		this.logger = logger;
+	}
+
 	private IReport jsonreport;
 
 	@Autowired
@@ -126,6 +139,11 @@ public class AROServiceImpl implements IAROService {
 		this.cacheAnalyzer = cacheanalysis;
 	}
 
+	@Autowired
+	public void setHttpRequestResponseHelper(IHttpRequestResponseHelper rrhelper) {
+		this.rrhelper = rrhelper;
+	}
+
 	@Autowired
 	@Qualifier("periodicTransfer")
 	public void setPeriodicTransfer(IBestPractice periodicTransfer) {
@@ -509,9 +527,19 @@ public class AROServiceImpl implements IAROService {
 
 			}
 		}
-		for (IBestPractice worker : workers) {
-			AbstractBestPracticeResult testresult = worker.runTest(result);
-			resultlist.add(testresult);
+		// the best practices of this trace share the content they decode
+		IContentCacheScope contentCache = rrhelper != null ? rrhelper.openContentCache() : null;
+		try {
+			for (IBestPractice worker : workers) {
+				AbstractBestPracticeResult testresult = worker.runTest(result);
+				resultlist.add(testresult);
+			}
+		} finally {
+			if (contentCache != null) {
+				contentCache.close();
+				logger.info("content cache: " + contentCache.getHits() + " hits, " + contentCache.getMisses()
+						+ " misses, " + contentCache.getEvictions() + " evictions");
+			}
 		}
 		return resultlist;
 	}
@@ -21,6 +21,7 @@ import java.util.Map;
 import com.att.aro.core.configuration.pojo.Profile;
 import com.att.aro.core.packetanalysis.pojo.BurstCollectionAnalysisData;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.RrcStateRange;
 import com.att.aro.core.packetanalysis.pojo.Session;
 import com.att.aro.core.peripheral.pojo.CpuActivity;
@@ -30,4 +31,8 @@ public interface IBurstCollectionAnalysis {
 	BurstCollectionAnalysisData analyze(List<PacketInfo> packets, Profile profile, Map<Integer, Integer> packetSizeToCountMap,
 			List<RrcStateRange> rrcstaterangelist, List<UserEvent> usereventlist, List<CpuActivity> cpuactivitylist, 
 			List<Session> sessionlist);
+
+	BurstCollectionAnalysisData analyze(PacketTable packets, Profile profile, Map<Integer, Integer> packetSizeToCountMap,
+			List<RrcStateRange> rrcstaterangelist, List<UserEvent> usereventlist, List<CpuActivity> cpuactivitylist, 
+			List<Session> sessionlist);
 }
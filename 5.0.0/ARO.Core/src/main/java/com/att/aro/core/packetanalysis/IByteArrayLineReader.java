@@ -17,11 +17,15 @@ package com.att.aro.core.packetanalysis;
 
 import java.io.IOException;
 
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
+
 public interface IByteArrayLineReader {
 	void init(byte[] data);
+	void init(PayloadStorage data);
 	void skipContent(int skipAmount);
 	void skipForward(int count);
 	String readLine() throws IOException;
+	int readLineLength();
 	int getIndex();
 	void setArrayIndex(int arrayIndex);
 }
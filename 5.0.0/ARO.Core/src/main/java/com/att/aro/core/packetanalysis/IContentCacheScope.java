@@ -0,0 +1,46 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis;
+
+/**
+ * Content cache open on the thread that opened it, see
+ * IHttpRequestResponseHelper.openContentCache(). Closed in a finally
+ * block around the work that shares the content. The counts of the cache
+ * are kept after it is closed.
+ */
+public interface IContentCacheScope extends AutoCloseable {
+
+	/**
+	 * @return lookups answered by the cache
+	 */
+	long getHits();
+
+	/**
+	 * @return lookups of the cache that decoded the content
+	 */
+	long getMisses();
+
+	/**
+	 * @return entries evicted from the cache
+	 */
+	long getEvictions();
+
+	/**
+	 * Drops the content kept since the cache was opened.
+	 */
+	@Override
+	void close();
+}
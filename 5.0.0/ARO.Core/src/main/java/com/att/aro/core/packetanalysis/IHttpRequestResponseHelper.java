@@ -15,6 +15,10 @@
  */
 package com.att.aro.core.packetanalysis;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
 import com.att.aro.core.packetanalysis.pojo.Session;
 
@@ -23,8 +27,18 @@ public interface IHttpRequestResponseHelper {
 	long getActualByteCount(HttpRequestResponseInfo item, Session session);
 	String getContentString(HttpRequestResponseInfo req, Session session) throws Exception;
 	byte[] getContent(HttpRequestResponseInfo req, Session session) throws Exception;
+	InputStream getContentStream(HttpRequestResponseInfo req, Session session) throws IOException;
+	InputStream getRawContentStream(HttpRequestResponseInfo req, Session session) throws IOException;
+	ByteBuffer getContentBuffer(HttpRequestResponseInfo req, Session session) throws IOException;
 	boolean isJavaScript(String contentType);
 	boolean isCss(String contentType);
 	boolean isHtml(String contentType);
 	boolean isJSON(String contentType);
+
+	/**
+	 * Keeps the content decoded by getContent() and getContentString() on the
+	 * current thread until the returned scope is closed, opened around the
+	 * best practices of one trace.
+	 */
+	IContentCacheScope openContentCache();
 }
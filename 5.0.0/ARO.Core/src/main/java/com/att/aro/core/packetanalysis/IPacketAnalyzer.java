@@ -23,6 +23,7 @@ import com.att.aro.core.configuration.pojo.Profile;
 import com.att.aro.core.packetanalysis.pojo.AnalysisFilter;
 import com.att.aro.core.packetanalysis.pojo.PacketAnalyzerResult;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.Statistic;
 
 public interface IPacketAnalyzer {
@@ -31,4 +32,5 @@ public interface IPacketAnalyzer {
 	PacketAnalyzerResult analyzeTraceDirectory(String traceDirectory, Profile profile, 
 			AnalysisFilter filter) throws FileNotFoundException;
 	Statistic getStatistic(List<PacketInfo> packetlist);
+	Statistic getStatistic(PacketTable packets);
 }
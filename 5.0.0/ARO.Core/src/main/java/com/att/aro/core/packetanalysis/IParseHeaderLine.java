@@ -16,7 +16,9 @@
 package com.att.aro.core.packetanalysis;
 
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
+import com.att.aro.core.packetanalysis.pojo.PayloadReader;
 
 public interface IParseHeaderLine {
 	void parseHeaderLine(String headerLine, HttpRequestResponseInfo rrInfo);
+	void parseHeaderLine(PayloadReader data, int offset, int length, HttpRequestResponseInfo rrInfo);
 }
@@ -20,6 +20,7 @@ import java.util.List;
 import com.att.aro.core.configuration.pojo.Profile;
 import com.att.aro.core.packetanalysis.pojo.AbstractRrcStateMachine;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.TimeRange;
 
 /**
@@ -28,4 +29,11 @@ import com.att.aro.core.packetanalysis.pojo.TimeRange;
 public interface IRrcStateMachineFactory {
 	AbstractRrcStateMachine create(List<PacketInfo> packetlist, Profile profile, double packetDuration, 
 			double traceDuration,double totalBytes, TimeRange timerange);
+
+	/**
+	 * Same as create(List, ...) for the packets of a table, the LTE energy
+	 * is calculated from the throughput of the table
+	 */
+	AbstractRrcStateMachine create(PacketTable packets, Profile profile, double packetDuration, 
+			double traceDuration,double totalBytes, TimeRange timerange);
 }
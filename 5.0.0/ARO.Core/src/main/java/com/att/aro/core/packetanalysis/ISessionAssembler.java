@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.att.aro.core.packetanalysis;
+
+import java.util.List;
+
+import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.Session;
+
+/**
+ * Assembles sessions from packets added one at a time, such as the packets
+ * of a capture that is still running.<br>
+ * TCP flows that are closed or idle are completed as packets arrive: they are
+ * reassembled, analyzed and their HTTP requests and responses are parsed, and
+ * they are released by the assembler once they are polled. UDP flows are
+ * completed once they are idle, and DNS packets older than the idle timeout
+ * no longer name sessions. An assembler is not thread safe.
+ */
+public interface ISessionAssembler {
+
+	/**
+	 * Adds the next packet of the trace, packets must be added in timestamp
+	 * order.
+	 */
+	void addPacket(PacketInfo packet);
+
+	/**
+	 * Returns the sessions completed since the last call, ordered by start
+	 * time, and releases them.
+	 * 
+	 * @return completed sessions
+	 */
+	List<Session> pollCompletedSessions();
+
+	/**
+	 * Completes every open session. No packet can be added afterwards.
+	 * 
+	 * @return the TCP sessions that were not polled, ordered by start time,
+	 *         followed by the UDP sessions
+	 */
+	List<Session> finish();
+}
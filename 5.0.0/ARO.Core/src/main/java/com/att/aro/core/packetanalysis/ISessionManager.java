@@ -22,4 +22,11 @@ import com.att.aro.core.packetanalysis.pojo.Session;
 
 public interface ISessionManager {
 	List<Session> assembleSession(List<PacketInfo> packets);
+
+	/**
+	 * Creates an assembler for packets that are added one at a time.
+	 * 
+	 * @return new session assembler
+	 */
+	ISessionAssembler createSessionAssembler();
 }
@@ -18,6 +18,7 @@ package com.att.aro.core.packetanalysis;
 import java.util.List;
 
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.Throughput;
 
 /**
@@ -26,4 +27,7 @@ import com.att.aro.core.packetanalysis.pojo.Throughput;
 public interface IThroughputCalculator {
 	List<Throughput> calculateThroughput(double startTime,
 			double maxTS, double thStep, List<PacketInfo> packets);
+
+	List<Throughput> calculateThroughput(double startTime,
+			double maxTS, double thStep, PacketTable packets);
 }
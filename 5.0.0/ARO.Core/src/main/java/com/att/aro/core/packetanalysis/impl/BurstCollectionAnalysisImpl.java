@@ -20,7 +20,6 @@ import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,6 +37,7 @@ import com.att.aro.core.packetanalysis.pojo.BurstAnalysisInfo;
 import com.att.aro.core.packetanalysis.pojo.BurstCategory;
 import com.att.aro.core.packetanalysis.pojo.BurstCollectionAnalysisData;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.RRCState;
 import com.att.aro.core.packetanalysis.pojo.RrcStateRange;
 import com.att.aro.core.packetanalysis.pojo.Session;
@@ -62,6 +62,16 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 			List<RrcStateRange> rrcstaterangelist,
 			List<UserEvent> usereventlist, List<CpuActivity> cpuactivitylist,
 			List<Session> sessionlist) {
+		return analyze(new PacketTable(packets), profile, packetSizeToCountMap, rrcstaterangelist, usereventlist,
+				cpuactivitylist, sessionlist);
+	}
+
+	@Override
+	public BurstCollectionAnalysisData analyze(PacketTable packets,
+			Profile profile, Map<Integer, Integer> packetSizeToCountMap,
+			List<RrcStateRange> rrcstaterangelist,
+			List<UserEvent> usereventlist, List<CpuActivity> cpuactivitylist,
+			List<Session> sessionlist) {
 		BurstCollectionAnalysisData data = new BurstCollectionAnalysisData();
 		
 		Set<Integer> mss = calculateMssLargerPacketSizeSet(packetSizeToCountMap);
@@ -194,7 +204,7 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 	 * @return 
 	 */
 	private double computeBurstEnergyRadioResource(List<RrcStateRange> rrcstaterangelist, List<Burst> burstCollection,
-			Profile profile, List<PacketInfo> packets) {
+			Profile profile, PacketTable packets) {
 		List<RrcStateRange> rrcCollection = rrcstaterangelist;
 		int rrcCount = rrcCollection.size();
 		if (rrcCount == 0) {
@@ -481,48 +491,58 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 	 * Groups packets into Burst Collections
 	 * @return 
 	 */
-	private List<Burst> groupIntoBursts(List<PacketInfo> packets, Profile profile, Set<Integer> mss, 
+	private List<Burst> groupIntoBursts(PacketTable packets, Profile profile, Set<Integer> mss, 
 			List<RrcStateRange> rrcstaterangelist) {
 		List<Burst> burstCollection;
 		// Validate that there are packets
-		if (packets.size() <= 0) {
+		int packetCount = packets.size();
+		if (packetCount <= 0) {
 			burstCollection = Collections.emptyList();
 			return burstCollection;
 		}
 		ArrayList<Burst> result = new ArrayList<Burst>();
+		// rows of the first and last packet of each burst
+		int[] beginRows = new int[packetCount];
+		int[] endRows = new int[packetCount];
 		double burstThresh = profile.getBurstTh();
 		double longBurstThresh = profile.getLongBurstTh();
 		List<PacketInfo> burstPackets = new ArrayList<PacketInfo>();
 		// Step 1: Build bursts using burst time threshold
-		PacketInfo lastPacket = null;
-		for (PacketInfo packet : packets) {
-			if ((lastPacket == null
-					|| (packet.getTimeStamp() - lastPacket.getTimeStamp() > burstThresh && 
-							!mss.contains(lastPacket.getPayloadLen()))) && (!burstPackets.isEmpty())) {
+		int beginRow = 0;
+		for (int row = 0; row < packetCount; row++) {
+			if (row > 0
+					&& packets.getTimestamp(row) - packets.getTimestamp(row - 1) > burstThresh
+					&& !mss.contains(packets.getPayloadLength(row - 1))) {
 
+				beginRows[result.size()] = beginRow;
+				endRows[result.size()] = row - 1;
 				result.add(new Burst(burstPackets));
 				burstPackets.clear();
+				beginRow = row;
 			}
-			burstPackets.add(packet);
-			lastPacket = packet;
+			burstPackets.add(packets.getPacketInfo(row));
 		}
+		beginRows[result.size()] = beginRow;
+		endRows[result.size()] = packetCount - 1;
 		result.add(new Burst(burstPackets));
 
 		// Step 2: Remove promotion delays and merge bursts if possible
-		Map<PacketInfo, Double> timestampList = normalizeCore(packets, rrcstaterangelist);
+		double[] timestampList = normalizeCore(packets, rrcstaterangelist);
 		List<Burst> newBurstColl = new ArrayList<Burst>(result.size());
 		int size = result.size();
 		Burst newBurst = result.get(0);
+		int newBurstEndRow = endRows[0];
 		for (int i = 0; i < size - 1; i++) {
 			Burst bnext = result.get(i + 1);
-			double time1 = timestampList.get(newBurst.getEndPacket());
-			double time2 = timestampList.get(bnext.getBeginPacket());
+			double time1 = timestampList[newBurstEndRow];
+			double time2 = timestampList[beginRows[i + 1]];
 			if ((time2 - time1) < burstThresh) {
 				newBurst.merge(bnext);
 			} else {
 				newBurstColl.add(newBurst);
 				newBurst = bnext;
 			}
+			newBurstEndRow = endRows[i + 1];
 		}
 		newBurstColl.add(newBurst);
 		burstCollection = newBurstColl;
@@ -547,9 +567,9 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 	 * Method orginally found in whatif.cpp
 	 * 
 	 * @param packets
-	 *            returns timestampList - List of doubles
+	 *            returns timestampList - timestamps without promotion delays, by row
 	 */
-	private Map<PacketInfo, Double> normalizeCore(List<PacketInfo> packets, List<RrcStateRange> rrcstaterangelist) {
+	private double[] normalizeCore(PacketTable packets, List<RrcStateRange> rrcstaterangelist) {
 
 		// Step 1: Identify Promotions
 		List<RrcStateRange> promoDelays = new ArrayList<RrcStateRange>();
@@ -560,10 +580,7 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 			}
 		}
 		Collections.sort(promoDelays);
-		PacketTimestamp[] timeStampList = new PacketTimestamp[packets.size()];
-		for (int i = 0; i < packets.size(); i++) {
-			timeStampList[i] = new PacketTimestamp(packets.get(i));
-		}
+		double[] timeStampList = new double[packets.size()];
 
 		// Step 2: Remove all promo delays
 		int pdSize = promoDelays.size();
@@ -572,7 +589,7 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 		int pdMiddlePosKey = -1; // "in-the-middle" position
 		double middlePos = 0; // How to initialize??
 		for (int i = 0; i < timeStampList.length; i++) {
-			double timeStamp = timeStampList[i].timestamp;
+			double timeStamp = packets.getTimestamp(i);
 			while (pdKey < pdSize && timeStamp >= promoDelays.get(pdKey).getEndTime() - EPS) {
 				if (pdMiddlePosKey != -1) {
 //					assert (pdMiddlePosKey == pdKey && i > 0 && promoDelays.get(pdKey).getEndTime() >= middlePos);
@@ -597,14 +614,10 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 					middlePos = timeStamp;
 				}
 			}
-			timeStampList[i].timestamp = timeStampList[i].timestamp - timeStampShift;
-//			assert (i == 0 || timeStampList[i].timestamp >= timeStampList[i - 1].timestamp);
+			timeStampList[i] = timeStamp - timeStampShift;
+//			assert (i == 0 || timeStampList[i] >= timeStampList[i - 1]);
 		}
-		Map<PacketInfo, Double> result = new LinkedHashMap<PacketInfo, Double>(timeStampList.length);
-		for (int i = 0; i < timeStampList.length; ++i) {
-			result.put(timeStampList[i].packet, timeStampList[i].timestamp);
-		}
-		return result;
+		return timeStampList;
 	}
 
 	/**
@@ -642,19 +655,5 @@ public class BurstCollectionAnalysisImpl implements IBurstCollectionAnalysis {
 		}
 		return mssLargerPacketSizeSet;
 	}
-	//helper classes
-	/**
-	 * Private utility class
-	 */
-	private class PacketTimestamp {
-		private PacketInfo packet;
-		private double timestamp;
-
-		public PacketTimestamp(PacketInfo packet) {
-			this.packet = packet;
-			this.timestamp = packet.getTimeStamp();
-		}
-	}
-
 	
 }
@@ -20,15 +20,19 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 import com.att.aro.core.packetanalysis.IByteArrayLineReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
 
 
 /**
- * Class to encapsulate a byte[] for the retrieval of Strings
+ * Class to encapsulate a byte[], or the payload storage of a session read in
+ * place, for the retrieval of Strings
  */
 public class ByteArrayLineReaderImpl implements IByteArrayLineReader {
 	
 	private int length;
 	private byte[] byteArray;
+	private PayloadReader payload;
 	private int index;
 	
 	/**
@@ -37,10 +41,27 @@ public class ByteArrayLineReaderImpl implements IByteArrayLineReader {
 	 */
 	public void init(byte[] data) {
 		this.byteArray = data;
+		this.payload = null;
 		index = 0;
 		length = this.byteArray.length;
 	}
 
+	/**
+	 * Instantiate a payload storage for retrieval of strings, read from the
+	 * packet data slices without building a contiguous copy
+	 * @param data
+	 */
+	public void init(PayloadStorage data) {
+		this.payload = data.reader();
+		this.byteArray = null;
+		index = 0;
+		length = this.payload.size();
+	}
+
+	private byte byteAt(int position) {
+		return payload != null ? payload.get(position) : byteArray[position];
+	}
+
 	/**
 	 * 
 	 * @param skipAmount
@@ -73,7 +94,7 @@ public class ByteArrayLineReaderImpl implements IByteArrayLineReader {
 	private int readInput() {
 		int result;
 		if (index < length) {
-			result = byteArray[index];
+			result = byteAt(index);
 			++index;
 		} else {
 			result = -1;
@@ -119,6 +140,26 @@ public class ByteArrayLineReaderImpl implements IByteArrayLineReader {
 		}
 	}
 
+	/**
+	 * Reads a line like readLine() without decoding it, the line starts at
+	 * the index before the call.
+	 * 
+	 * @return length of the line without its CRLF, or -1 if end of stream
+	 *         reached
+	 */
+	public int readLineLength() {
+		if (index >= length) {
+			return -1;
+		}
+		int start = index;
+		while (index < length) {
+			if (byteAt(index++) == '\r' && index < length && byteAt(index++) == '\n') {
+				return index - 2 - start;
+			}
+		}
+		return index - start;
+	}
+
 	public int getIndex() {
 		return index;
 	}
@@ -131,7 +172,15 @@ public class ByteArrayLineReaderImpl implements IByteArrayLineReader {
 	public String toString() {
 		try {
 			String response = "index :" + index + "\n";
-			return response + (byteArray != null ? new String(byteArray, "UTF-8") : "null");
+			byte[] bytes = new byte[length];
+			if (payload != null) {
+				payload.copyTo(0, bytes, 0, length);
+			} else if (byteArray != null) {
+				System.arraycopy(byteArray, 0, bytes, 0, length);
+			} else {
+				return response + "null";
+			}
+			return response + new String(bytes, "UTF-8");
 		} catch (UnsupportedEncodingException e) {
 			return "UnsupportedEncodingException :"+e.getMessage();
 		}
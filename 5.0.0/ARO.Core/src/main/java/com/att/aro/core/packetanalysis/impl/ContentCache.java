@@ -0,0 +1,198 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
+
+/**
+ * Decoded content of requests and responses, kept for the best practices of
+ * one trace that read the content of the same responses.<br>
+ * Entries are keyed by the identity of the HttpRequestResponseInfo, since its
+ * equals() only compares time stamps, and remember the storage they were
+ * decoded from, so content read from other storage is a miss. The total size
+ * of the decoded bytes and strings is bounded, the least recently used entries
+ * are evicted first.
+ */
+class ContentCache {
+
+	// a cache is used by the thread that opened it only, see HttpRequestResponseHelperImpl
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private final long maxBytes;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param maxBytes
+	 *            bound of the size of the content kept, 0 keeps nothing
+	 */
+	ContentCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param source
+	 *            storage the content is decoded from
+	 * @param sourceSize
+	 *            size of the storage
+	 * @return decoded bytes, or null if they are not kept
+	 */
+	byte[] getContent(HttpRequestResponseInfo req, PayloadStorage source, int sourceSize) {
+		Entry entry = lookup(req, source, sourceSize);
+		if (entry == null || entry.content == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.content;
+	}
+
+	/**
+	 * Finds the decoded bytes for a lookup counted already, such as that of
+	 * the string decoded from them.
+	 * 
+	 * @return decoded bytes, or null if they are not kept
+	 */
+	byte[] findContent(HttpRequestResponseInfo req, PayloadStorage source, int sourceSize) {
+		Entry entry = lookup(req, source, sourceSize);
+		return entry != null ? entry.content : null;
+	}
+
+	/**
+	 * @return decoded string, or null if it is not kept
+	 */
+	String getString(HttpRequestResponseInfo req, PayloadStorage source, int sourceSize) {
+		Entry entry = lookup(req, source, sourceSize);
+		if (entry == null || entry.string == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.string;
+	}
+
+	void putContent(HttpRequestResponseInfo req, PayloadStorage source, int sourceSize, byte[] content) {
+		Entry entry = entry(req, source, sourceSize);
+		if (entry.content == null) {
+			entry.content = content;
+			resize(entry, content.length);
+		}
+	}
+
+	void putString(HttpRequestResponseInfo req, PayloadStorage source, int sourceSize, String string) {
+		Entry entry = entry(req, source, sourceSize);
+		if (entry.string == null) {
+			entry.string = string;
+			resize(entry, 2L * string.length());
+		}
+	}
+
+	/**
+	 * @return size of the content kept
+	 */
+	long getBytes() {
+		return bytes;
+	}
+
+	long getHits() {
+		return hits;
+	}
+
+	long getMisses() {
+		return misses;
+	}
+
+	long getEvictions() {
+		return evictions;
+	}
+
+	private Entry lookup(HttpRequestResponseInfo req, PayloadStorage source, int sourceSize) {
+		Entry entry = entries.get(new Key(req));
+		return entry != null && entry.source == source && entry.sourceSize == sourceSize ? entry : null;
+	}
+
+	/**
+	 * @return the entry for the storage, replacing an entry of other storage
+	 */
+	private Entry entry(HttpRequestResponseInfo req, PayloadStorage source, int sourceSize) {
+		Key key = new Key(req);
+		Entry entry = entries.get(key);
+		if (entry == null || entry.source != source || entry.sourceSize != sourceSize) {
+			if (entry != null) {
+				bytes -= entry.size;
+			}
+			entry = new Entry(source, sourceSize);
+			entries.put(key, entry);
+		}
+		return entry;
+	}
+
+	private void resize(Entry entry, long size) {
+		entry.size += size;
+		bytes += size;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			iterator.remove();
+			bytes -= entry.size;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Identity of a request/response
+	 */
+	private static class Key {
+		private final HttpRequestResponseInfo req;
+
+		Key(HttpRequestResponseInfo req) {
+			this.req = req;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(req);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).req == req;
+		}
+	}
+
+	private static class Entry {
+		private final PayloadStorage source;
+		private final int sourceSize;
+		private byte[] content;
+		private String string;
+		private long size = 0;
+
+		Entry(PayloadStorage source, int sourceSize) {
+			this.source = source;
+			this.sourceSize = sourceSize;
+		}
+	}
+}
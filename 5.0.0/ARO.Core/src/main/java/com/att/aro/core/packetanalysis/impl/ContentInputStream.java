@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.impl;
+
+import java.io.InputStream;
+
+import com.att.aro.core.packetanalysis.pojo.PayloadReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
+
+/**
+ * Reads the content ranges of a request/response, such as the chunks of a
+ * chunked body, one after the other straight from the packet data slices of
+ * the session storage.
+ */
+class ContentInputStream extends InputStream {
+
+	private final PayloadReader storage;
+	private final int[] starts;
+	private final int[] ends;
+	private int range = 0;
+	private int position;
+
+	/**
+	 * @param storage
+	 *            storage of the session, read through a reader of its own
+	 * @param starts
+	 *            start of every range in storage
+	 * @param ends
+	 *            end of every range in storage
+	 */
+	ContentInputStream(PayloadStorage storage, int[] starts, int[] ends) {
+		this.storage = storage.reader();
+		this.starts = starts;
+		this.ends = ends;
+		this.position = starts.length > 0 ? starts[0] : 0;
+	}
+
+	@Override
+	public int read() {
+		if (!nextRange()) {
+			return -1;
+		}
+		return storage.get(position++) & 0xff;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!nextRange()) {
+			return -1;
+		}
+		int count = Math.min(length, ends[range] - position);
+		storage.copyTo(position, buffer, offset, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public long skip(long count) {
+		long skipped = 0;
+		while (skipped < count && nextRange()) {
+			int step = (int) Math.min(count - skipped, ends[range] - position);
+			position += step;
+			skipped += step;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return range < starts.length ? ends[range] - position : 0;
+	}
+
+	/**
+	 * Moves to the next range with bytes left when the current one is read.
+	 *
+	 * @return false at the end of the content
+	 */
+	private boolean nextRange() {
+		while (range < starts.length && position >= ends[range]) {
+			if (++range < starts.length) {
+				position = starts[range];
+			}
+		}
+		return range < starts.length;
+	}
+}
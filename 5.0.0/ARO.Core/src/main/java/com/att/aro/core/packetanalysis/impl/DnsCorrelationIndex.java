@@ -0,0 +1,325 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.impl;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.Session;
+import com.att.aro.core.packetreader.pojo.DomainNameSystem;
+import com.att.aro.core.packetreader.pojo.UDPPacket;
+
+/**
+ * Index of the DNS packets of a trace, used to find the DNS lookup that
+ * preceded a TCP session.<br>
+ * The index is built as the time ordered packets of the trace are added.
+ * For every resolved address it keeps the responses containing the address
+ * in time order, so the last response before a session starts is found by
+ * binary search on the position of the first packet of the session.<br>
+ * A response names one session only. When a session takes it, the response
+ * and the earlier DNS packets of its domain are consumed, which is one
+ * position per domain because a domain is always consumed from its start.<br>
+ * The DNS packets older than a time can be evicted, they no longer name
+ * sessions.
+ */
+class DnsCorrelationIndex {
+
+	private final Map<String, Domain> domains = new HashMap<String, Domain>();
+	private final Map<InetAddress, Responses> responses = new HashMap<InetAddress, Responses>();
+
+	/**
+	 * Domains of the requests and addresses of the responses taken by sessions
+	 */
+	private final Set<String> takenRequests = new HashSet<String>();
+	private final Map<String, Set<InetAddress>> takenResponses = new HashMap<String, Set<InetAddress>>();
+	private int size = 0;
+
+	/**
+	 * Adds a packet of the trace, packets must be added in time order.
+	 * Packets other than DNS packets are ignored.
+	 *
+	 * @param packet
+	 *            packet of the trace
+	 * @param position
+	 *            position of the packet in the trace
+	 */
+	void add(PacketInfo packet, int position) {
+		if (packet.getPacket() instanceof UDPPacket) {
+			UDPPacket udp = (UDPPacket) packet.getPacket();
+			if (udp.isDNSPacket()) {
+				size++;
+				DomainNameSystem dns = udp.getDns();
+				if (dns != null) {
+					add(packet, dns, position);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of DNS packets in the trace
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Sets the DNS request and response packets and the remote host name of a
+	 * new session from the last response for its remote address that was not
+	 * taken by an earlier session. If every such response was taken, only the
+	 * host name is set, from the last response.
+	 *
+	 * @param session
+	 *            session to name
+	 * @param remoteIP
+	 *            remote address of the session
+	 * @param position
+	 *            position in the trace of the first packet of the session
+	 */
+	void resolve(Session session, InetAddress remoteIP, int position) {
+		Responses list = responses.get(remoteIP);
+		if (list == null) {
+			return;
+		}
+		int last = list.before(position);
+		if (last < 0) {
+			return;
+		}
+		int index = list.find(last);
+		if (index < 0) {
+			session.setRemoteHostName(list.domains.get(last).name);
+			return;
+		}
+		Domain domain = list.domains.get(index);
+		int offset = list.offsets[index];
+		session.setDnsResponsePacket(domain.packets.get(offset - domain.base));
+		Set<InetAddress> addresses = takenResponses.get(domain.name);
+		if (addresses == null) {
+			addresses = new HashSet<InetAddress>();
+			takenResponses.put(domain.name, addresses);
+		}
+		addresses.add(remoteIP);
+		int request = domain.requests.nextSetBit(Math.max(0, domain.consumed - domain.base));
+		if (request >= 0 && domain.base + request < offset) {
+			session.setRemoteHostName(domain.name);
+			session.setDnsRequestPacket(domain.packets.get(request));
+			takenRequests.add(domain.name);
+		}
+		domain.consumed = offset + 1;
+	}
+
+	/**
+	 * Tells if a DNS packet belongs to a lookup that named a session: a
+	 * request for the domain of a request taken by a session, or a response
+	 * for the domain of a response taken by a session that contains the
+	 * remote address of that session.
+	 *
+	 * @return true if the packet is part of a TCP connection
+	 */
+	boolean isTaken(DomainNameSystem dns) {
+		if (!dns.isResponse()) {
+			return takenRequests.contains(dns.getDomainName());
+		}
+		Set<InetAddress> addresses = takenResponses.get(dns.getDomainName());
+		if (addresses != null) {
+			for (InetAddress address : dns.getIpAddresses()) {
+				if (addresses.contains(address)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the DNS packets with a timestamp before a time. A domain that
+	 * has no packet left is removed with the lookups taken from it.
+	 *
+	 * @param before
+	 *            timestamp of the oldest packet to keep
+	 */
+	void evict(double before) {
+		Iterator<Domain> domainIterator = domains.values().iterator();
+		while (domainIterator.hasNext()) {
+			Domain domain = domainIterator.next();
+			int count = 0;
+			while (count < domain.packets.size() && domain.packets.get(count).getTimeStamp() < before) {
+				count++;
+			}
+			if (count == 0) {
+				continue;
+			}
+			domain.base += count;
+			if (count == domain.packets.size()) {
+				domainIterator.remove();
+				takenRequests.remove(domain.name);
+				takenResponses.remove(domain.name);
+			} else {
+				domain.packets.subList(0, count).clear();
+				domain.requests = domain.requests.get(count, Math.max(count, domain.requests.length()));
+			}
+		}
+		Iterator<Responses> responsesIterator = responses.values().iterator();
+		while (responsesIterator.hasNext()) {
+			Responses list = responsesIterator.next();
+			list.evict();
+			if (list.domains.isEmpty()) {
+				responsesIterator.remove();
+			}
+		}
+	}
+
+	private void add(PacketInfo packet, DomainNameSystem dns, int position) {
+		String name = dns.getDomainName();
+		Domain domain = domains.get(name);
+		if (domain == null) {
+			domain = new Domain(name);
+			domains.put(name, domain);
+		}
+		int offset = domain.base + domain.packets.size();
+		domain.packets.add(packet);
+		if (!dns.isResponse()) {
+			domain.requests.set(offset - domain.base);
+			return;
+		}
+		for (InetAddress address : dns.getIpAddresses()) {
+			Responses list = responses.get(address);
+			if (list == null) {
+				list = new Responses();
+				responses.put(address, list);
+			}
+			list.add(position, domain, offset);
+		}
+	}
+
+	/**
+	 * DNS packets of one domain in time order, the first consumed of them
+	 * are taken by sessions. Offsets count the evicted packets, the packets
+	 * and requests start at base.
+	 */
+	private static class Domain {
+		private final String name;
+		private final List<PacketInfo> packets = new ArrayList<PacketInfo>();
+		private BitSet requests = new BitSet();
+		private int base = 0;
+		private int consumed = 0;
+
+		Domain(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Responses containing one address in time order.
+	 */
+	private static class Responses {
+		private final List<Domain> domains = new ArrayList<Domain>();
+		private int[] positions = new int[4];
+		private int[] offsets = new int[4];
+
+		/**
+		 * Index of the next response to look at when a response is consumed.
+		 * Consumed responses stay consumed, so the chains are shortened as
+		 * they are walked.
+		 */
+		private int[] skip = new int[4];
+
+		void add(int position, Domain domain, int offset) {
+			int index = domains.size();
+			if (index == positions.length) {
+				positions = Arrays.copyOf(positions, index * 2);
+				offsets = Arrays.copyOf(offsets, index * 2);
+				skip = Arrays.copyOf(skip, index * 2);
+			}
+			domains.add(domain);
+			positions[index] = position;
+			offsets[index] = offset;
+			skip[index] = index - 1;
+		}
+
+		/**
+		 * @return index of the last response before position, -1 if none
+		 */
+		int before(int position) {
+			int low = 0;
+			int high = domains.size() - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (positions[middle] < position) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return high;
+		}
+
+		/**
+		 * @return index of the last response at or before index that is not
+		 *         consumed, -1 if none
+		 */
+		int find(int index) {
+			int found = index;
+			while (found >= 0 && offsets[found] < domains.get(found).consumed) {
+				found = skip[found];
+			}
+			int next = index;
+			while (next != found) {
+				int following = skip[next];
+				skip[next] = found;
+				next = following;
+			}
+			return found;
+		}
+
+		/**
+		 * Removes the responses whose packet was evicted from their domain,
+		 * which are the first responses as they are in time order.
+		 */
+		void evict() {
+			int count = 0;
+			while (count < domains.size() && offsets[count] < domains.get(count).base) {
+				count++;
+			}
+			if (count == 0) {
+				return;
+			}
+			domains.subList(0, count).clear();
+			int size = domains.size();
+			System.arraycopy(positions, count, positions, 0, size);
+			System.arraycopy(offsets, count, offsets, 0, size);
+			System.arraycopy(skip, count, skip, 0, size);
+			for (int index = 0; index < size; index++) {
+				skip[index] = Math.max(-1, skip[index] - count);
+			}
+			if (size < positions.length / 4) {
+				int length = Math.max(4, size * 2);
+				positions = Arrays.copyOf(positions, length);
+				offsets = Arrays.copyOf(offsets, length);
+				skip = Arrays.copyOf(skip, length);
+			}
+		}
+	}
+}
@@ -18,20 +18,94 @@ package com.att.aro.core.packetanalysis.impl;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import com.att.aro.core.packetanalysis.IContentCacheScope;
 import com.att.aro.core.packetanalysis.IHttpRequestResponseHelper;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
+import com.att.aro.core.packetanalysis.pojo.PayloadReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
 import com.att.aro.core.packetanalysis.pojo.Session;
 
 /**
- * helper class for dealing HttpRequestResponseInfo object
+ * helper class for dealing HttpRequestResponseInfo object<br>
+ * The decoded content is kept in a cache bounded by size, so the best
+ * practices reading the same responses decode them once.
  */
 public class HttpRequestResponseHelperImpl implements IHttpRequestResponseHelper {
 	//@InjectLogger
 	//private static ILogger log;
+
+	/**
+	 * Default bound of the decoded content kept, in bytes
+	 */
+	public static final long DEFAULT_CONTENT_CACHE_SIZE = 64L * 1024 * 1024;
+
+	private volatile long contentCacheSize = DEFAULT_CONTENT_CACHE_SIZE;
+
+	/**
+	 * Cache of the analysis running on the thread, null when none is open
+	 */
+	private final ThreadLocal<ContentCache> contentCache = new ThreadLocal<ContentCache>();
+
+	/**
+	 * @param maxBytes
+	 *            bound of the decoded content kept by a cache opened later, 0
+	 *            keeps nothing
+	 */
+	public void setContentCacheSize(long maxBytes) {
+		contentCacheSize = maxBytes;
+	}
+
+	public long getContentCacheSize() {
+		return contentCacheSize;
+	}
+
+	/**
+	 * Keeps the content decoded on the current thread until the returned
+	 * scope is closed, such as the content read by the best practices of one
+	 * trace. Content decoded on other threads and outside of an open cache is
+	 * not kept. Closing the scope opens the cache open before again.
+	 */
+	public IContentCacheScope openContentCache() {
+		final ContentCache previous = contentCache.get();
+		final ContentCache cache = new ContentCache(contentCacheSize);
+		contentCache.set(cache);
+		return new IContentCacheScope() {
+			@Override
+			public long getHits() {
+				return cache.getHits();
+			}
+
+			@Override
+			public long getMisses() {
+				return cache.getMisses();
+			}
+
+			@Override
+			public long getEvictions() {
+				return cache.getEvictions();
+			}
+
+			@Override
+			public void close() {
+				if (previous != null) {
+					contentCache.set(previous);
+				} else {
+					contentCache.remove();
+				}
+			}
+		};
+	}
+
 	
 	/**
 	 * Indicates whether the content type is CSS or not.
@@ -93,79 +167,251 @@ public class HttpRequestResponseHelperImpl implements IHttpRequestResponseHelper
 	 *             - When part of the content is not available.
 	 */
 	public String getContentString(HttpRequestResponseInfo req, Session session) throws Exception {
-		byte[] content = getContent(req, session);
-		return content != null ? new String(content, "UTF-8") : null;
+		PayloadStorage storage = req.getContentOffsetLength() != null ? getStorage(req, session) : null;
+		if (storage == null) {
+			return "";
+		}
+		ContentCache cache = contentCache.get();
+		if (cache == null) {
+			return new String(decodeContent(req, session, storage), "UTF-8");
+		}
+		int storageSize = storage.size();
+		String content = cache.getString(req, storage, storageSize);
+		if (content == null) {
+			// the lookup is counted for the string already
+			byte[] bytes = cache.findContent(req, storage, storageSize);
+			if (bytes == null) {
+				bytes = decodeContent(req, session, storage);
+				cache.putContent(req, storage, storageSize, bytes);
+			}
+			content = new String(bytes, "UTF-8");
+			cache.putString(req, storage, storageSize, content);
+		}
+		return content;
 	}
 	/**
-	 * get cotent of the request/response in byte[]
+	 * get cotent of the request/response in byte[]. While a content cache is
+	 * open the array may be shared with other callers and must not be
+	 * modified.
 	 * @param req
 	 * @return byte array
 	 * @throws Exception 
 	 */
 	public byte[] getContent(HttpRequestResponseInfo req, Session session) throws Exception{
-		SortedMap<Integer, Integer> contentOffsetLength = req.getContentOffsetLength();
+		PayloadStorage storage = req.getContentOffsetLength() != null ? getStorage(req, session) : null;
+		if (storage == null) {
+			return new byte[0];
+		}
+		ContentCache cache = contentCache.get();
+		if (cache == null) {
+			return decodeContent(req, session, storage);
+		}
+		int storageSize = storage.size();
+		byte[] content = cache.getContent(req, storage, storageSize);
+		if (content == null) {
+			content = decodeContent(req, session, storage);
+			cache.putContent(req, storage, storageSize, content);
+		}
+		return content;
+	}
+
+	/**
+	 * Returns the request/response body as a stream that reads the content
+	 * chunks straight from the session storage. gzip content is inflated
+	 * while it is read, and so is deflate content, zlib wrapped or raw, which
+	 * getContent() returns as is. Nothing is cached.
+	 * 
+	 * @return The content of the request/response body, empty if there is
+	 *         none.
+	 * @throws IOException
+	 *             When part of the content is not available, or the gzip
+	 *             header is invalid.
+	 */
+	public InputStream getContentStream(HttpRequestResponseInfo req, Session session) throws IOException {
+		InputStream content = getRawContentStream(req, session);
+		if (content.available() == 0) {
+			return content;
+		}
 		String contentEncoding = req.getContentEncoding();
-		if (contentOffsetLength != null) {
-			byte[] buffer = getStorageBuffer(req, session);
-			if (buffer == null) {
-				return new byte[0];
+		if (HttpRequestResponseInfo.CONTENT_ENCODING_GZIP.equals(contentEncoding)) {
+			return new GZIPInputStream(content);
+		} else if (HttpRequestResponseInfo.CONTENT_ENCODING_DEFLATE.equals(contentEncoding)) {
+			PushbackInputStream pushback = new PushbackInputStream(content, 2);
+			int cmf = pushback.read();
+			int flg = pushback.read();
+			if (flg >= 0) {
+				pushback.unread(flg);
 			}
-			
-			ByteArrayOutputStream output = null;
-			for (Map.Entry<Integer, Integer> entry : contentOffsetLength
-					.entrySet()) {
-				int start = entry.getKey();
-				int size = entry.getValue();
-				if( start + size < 0) {
-				       throw new Exception("The content may be too big.");
-				} else if (buffer.length < start + size) {
-				       throw new Exception("The content may be corrupted.");
+			pushback.unread(cmf);
+			boolean zlib = flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+			final Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(pushback, inflater) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					inflater.end();
 				}
+			};
+		}
+		return content;
+	}
 
-				for (int i = start; i < start + size; ++i) {
-				    if (output == null) {
-				        output = new ByteArrayOutputStream((int) getActualByteCount(req, session));
-				    }
-					output.write(buffer[i]);
-				}
+	/**
+	 * Returns a read-only view of the storage holding the request/response
+	 * body when it is not encoded. The view does not copy the body if it is
+	 * one range of one packet, the chunks of a chunked body and a body spread
+	 * over packets are copied.
+	 * 
+	 * @return The body from position 0, or null if the content is encoded.
+	 * @throws IOException
+	 *             When part of the content is not available.
+	 */
+	public ByteBuffer getContentBuffer(HttpRequestResponseInfo req, Session session) throws IOException {
+		String contentEncoding = req.getContentEncoding();
+		if (contentEncoding != null && !contentEncoding.isEmpty() && !contentEncoding.contains("identity")) {
+			return null;
+		}
+		ContentRanges ranges = getContentRanges(req, session);
+		if (ranges.starts.length == 1) {
+			return ranges.storage.asByteBuffer(ranges.starts[0], ranges.ends[0] - ranges.starts[0]);
+		}
+		int size = 0;
+		for (int i = 0; i < ranges.starts.length; i++) {
+			size += ranges.ends[i] - ranges.starts[i];
+		}
+		byte[] content = new byte[size];
+		int offset = 0;
+		InputStream input = new ContentInputStream(ranges.storage, ranges.starts, ranges.ends);
+		int len;
+		while (offset < size && (len = input.read(content, offset, size - offset)) > 0) {
+			offset += len;
+		}
+		return ByteBuffer.wrap(content).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns the request/response body as it was sent, the content chunks
+	 * are joined but not decoded.
+	 * 
+	 * @return The content of the request/response body, empty if there is
+	 *         none.
+	 * @throws IOException
+	 *             When part of the content is not available.
+	 */
+	public InputStream getRawContentStream(HttpRequestResponseInfo req, Session session) throws IOException {
+		ContentRanges ranges = getContentRanges(req, session);
+		return new ContentInputStream(ranges.storage, ranges.starts, ranges.ends);
+	}
+
+	/**
+	 * @return the non empty content ranges of the request/response, checked
+	 *         against the storage like getContent() does
+	 */
+	private ContentRanges getContentRanges(HttpRequestResponseInfo req, Session session) throws IOException {
+		SortedMap<Integer, Integer> contentOffsetLength = req.getContentOffsetLength();
+		PayloadStorage storage = contentOffsetLength != null ? getStorage(req, session) : null;
+		if (storage == null) {
+			return new ContentRanges(new PayloadStorage(), new int[0], new int[0]);
+		}
+		int[] starts = new int[contentOffsetLength.size()];
+		int[] ends = new int[starts.length];
+		int count = 0;
+		for (Map.Entry<Integer, Integer> entry : contentOffsetLength.entrySet()) {
+			int start = entry.getKey();
+			int size = entry.getValue();
+			if (start + size < 0) {
+				throw new IOException("The content may be too big.");
+			} else if (storage.size() < start + size) {
+				throw new IOException("The content may be corrupted.");
+			}
+			if (size > 0) {
+				starts[count] = start;
+				ends[count] = start + size;
+				count++;
 			}
-			if ("gzip".equals(contentEncoding) && output != null) {
+		}
+		if (count < starts.length) {
+			starts = Arrays.copyOf(starts, count);
+			ends = Arrays.copyOf(ends, count);
+		}
+		return new ContentRanges(storage, starts, ends);
+	}
 
-				// Decompress gzipped content
-				GZIPInputStream gzip=null;
-				try{
-					gzip = new GZIPInputStream(
-							new ByteArrayInputStream(output.toByteArray()));
-					output.reset();
-					buffer = new byte[2048];
-					int len;
-					while ((len = gzip.read(buffer)) >= 0) {
-						output.write(buffer, 0, len);
-					}
-				}catch(IOException ioe){
-					if (gzip != null) {
-						try{
-							gzip.close();
-						}catch (IOException ex){
-							throw ex;
-						}
+	/**
+	 * Content ranges of a request/response in the storage of its session
+	 */
+	private static class ContentRanges {
+		private final PayloadStorage storage;
+		private final int[] starts;
+		private final int[] ends;
+
+		ContentRanges(PayloadStorage storage, int[] starts, int[] ends) {
+			this.storage = storage;
+			this.starts = starts;
+			this.ends = ends;
+		}
+	}
+
+	/**
+	 * Joins the content chunks of the request/response from the storage and
+	 * inflates gzip content.
+	 */
+	private byte[] decodeContent(HttpRequestResponseInfo req, Session session, PayloadStorage storage) throws Exception {
+		SortedMap<Integer, Integer> contentOffsetLength = req.getContentOffsetLength();
+		String contentEncoding = req.getContentEncoding();
+		ByteArrayOutputStream output = null;
+		for (Map.Entry<Integer, Integer> entry : contentOffsetLength
+				.entrySet()) {
+			int start = entry.getKey();
+			int size = entry.getValue();
+			if( start + size < 0) {
+			       throw new Exception("The content may be too big.");
+			} else if (storage.size() < start + size) {
+			       throw new Exception("The content may be corrupted.");
+			}
+
+			if (size > 0) {
+			    if (output == null) {
+			        output = new ByteArrayOutputStream((int) getActualByteCount(req, session));
+			    }
+			    storage.writeTo(start, size, output);
+			}
+		}
+		if ("gzip".equals(contentEncoding) && output != null) {
+
+			// Decompress gzipped content
+			GZIPInputStream gzip=null;
+			try{
+				gzip = new GZIPInputStream(
+						new ByteArrayInputStream(output.toByteArray()));
+				output.reset();
+				byte[] buffer = new byte[2048];
+				int len;
+				while ((len = gzip.read(buffer)) >= 0) {
+					output.write(buffer, 0, len);
+				}
+			}catch(IOException ioe){
+				if (gzip != null) {
+					try{
+						gzip.close();
+					}catch (IOException ex){
+						throw ex;
 					}
-					if (output != null) {
-						try{
-							output.close();
-						}catch (IOException ex){
-							throw ex;
-						}
+				}
+				if (output != null) {
+					try{
+						output.close();
+					}catch (IOException ex){
+						throw ex;
 					}
 				}
 			}
-			if (output != null) {
-			    return output.toByteArray();
-			} else {
-			    return new byte[0];
-			}
 		}
-		return new byte[0];
+		if (output != null) {
+		    return output.toByteArray();
+		} else {
+		    return new byte[0];
+		}
 	}
 	/**
 	 * Determines whether the same content is contained in this request/response as in
@@ -188,8 +434,8 @@ public class HttpRequestResponseHelperImpl implements IHttpRequestResponseHelper
 			}
 			
 			// Otherwise do byte by byte compare
-			byte[] bufferLeft = getStorageBuffer(left, session);
-			byte[] bufferRight = getStorageBuffer(right, sessionRight);
+			PayloadReader bufferLeft = getStorage(left, session).reader();
+			PayloadReader bufferRight = getStorage(right, sessionRight).reader();
 			
 			Iterator<Map.Entry<Integer, Integer>> itleft = left.getContentOffsetLength().entrySet().iterator();
 			Iterator<Map.Entry<Integer, Integer>> itright = right.getContentOffsetLength().entrySet().iterator();
@@ -205,12 +451,12 @@ public class HttpRequestResponseHelperImpl implements IHttpRequestResponseHelper
 				indexRight = entryRight.getKey();
 				stopRight = entryRight.getValue();
 				do{
-					if(bufferLeft[indexLeft] != bufferRight[indexRight]){
+					if(bufferLeft.get(indexLeft) != bufferRight.get(indexRight)){
 						return false;
 					}
 					++indexLeft;
 					++indexRight;
-					if(indexLeft >= bufferLeft.length || indexRight >= bufferRight.length){
+					if(indexLeft >= bufferLeft.size() || indexRight >= bufferRight.size()){
 						break;
 					}
 					if(indexLeft >= stopLeft){
@@ -249,8 +495,8 @@ public class HttpRequestResponseHelperImpl implements IHttpRequestResponseHelper
 	public long getActualByteCount(HttpRequestResponseInfo item, Session session) {
 		if (item.getContentOffsetLength() != null) {
 
-			byte[] buffer = getStorageBuffer(item, session);
-			int bufferSize = buffer != null ? buffer.length : 0;
+			PayloadStorage storage = getStorage(item, session);
+			int bufferSize = storage != null ? storage.size() : 0;
 
 			long result = 0;
 			for (Map.Entry<Integer, Integer> entry : item.getContentOffsetLength().entrySet()) {
@@ -269,19 +515,25 @@ public class HttpRequestResponseHelperImpl implements IHttpRequestResponseHelper
 		}
 	}
 	/**
-	 * Convenience method that gets the storage array in the session where this request/
-	 * response is located.
-	 * @return
+	 * @return the storage in the session where this request/response is
+	 *         located, read in place or wrapping the storage array, null if
+	 *         none
 	 */
-	private byte[] getStorageBuffer(HttpRequestResponseInfo req, Session session) {
+	private PayloadStorage getStorage(HttpRequestResponseInfo req, Session session) {
+		PayloadStorage storage;
+		byte[] bytes;
 		switch (req.getPacketDirection()) {
 		case DOWNLINK:
-			return session.getStorageDl();
+			storage = session.getPayloadStorageDl();
+			bytes = storage == null ? session.getStorageDl() : null;
+			break;
 		case UPLINK:
-			return session.getStorageUl();
+			storage = session.getPayloadStorageUl();
+			bytes = storage == null ? session.getStorageUl() : null;
+			break;
 		default:
 			return null;
 		}
-
+		return bytes != null ? PayloadStorage.wrap(bytes) : storage;
 	}
 }//end class
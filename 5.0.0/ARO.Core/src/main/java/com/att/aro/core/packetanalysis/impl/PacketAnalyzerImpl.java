@@ -48,13 +48,12 @@ import com.att.aro.core.packetanalysis.pojo.IPPacketSummary;
 import com.att.aro.core.packetanalysis.pojo.PacketAnalyzerResult;
 import com.att.aro.core.packetanalysis.pojo.PacketCounter;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.Session;
 import com.att.aro.core.packetanalysis.pojo.Statistic;
 import com.att.aro.core.packetanalysis.pojo.TimeRange;
 import com.att.aro.core.packetanalysis.pojo.TraceDirectoryResult;
 import com.att.aro.core.packetanalysis.pojo.TraceFileResult;
-import com.att.aro.core.packetreader.pojo.IPPacket;
-import com.att.aro.core.packetreader.pojo.TCPPacket;
 import com.att.aro.core.packetreader.pojo.UDPPacket;
 
 /**
@@ -234,17 +233,22 @@ public class PacketAnalyzerImpl implements IPacketAnalyzer {
 		for(Session byteCountSession:sessionlist){
 			totaltemp += byteCountSession.getBytesTransferred();
 		}
-		Statistic stat = this.getStatistic(filteredPacketsNoDNSUDP);
+		// one table for the analysis, the one read with the trace covers the packets unless a filter was applied
+		PacketTable packetTable = result != null ? result.getPacketTable() : null;
+		if (packetTable == null || filteredPackets != result.getAllpackets() || packetTable.size() != filteredPackets.size()) {
+			packetTable = new PacketTable(filteredPackets);
+		}
+		Statistic stat = this.getStatistic(packetTable.select(filteredPacketsNoDNSUDP));
 		stat.setTotalByte(totaltemp);//to make sure match the same number with 4.1.1.
 		//stat is used to get some info for RrcStateMachine etc
 		if (result!=null){
-			AbstractRrcStateMachine statemachine = statemachinefactory.create(filteredPackets, aProfile, 
+			AbstractRrcStateMachine statemachine = statemachinefactory.create(packetTable, aProfile, 
 					stat.getPacketDuration(), result.getTraceDuration(), stat.getTotalByte(), timeRange);
 			
 			EnergyModel energymodel = energymodelfactory.create(aProfile, statemachine.getTotalRRCEnergy(), 
 					result.getGpsInfos(), result.getCameraInfos(), result.getBluetoothInfos(), result.getScreenStateInfos());
 			
-			BurstCollectionAnalysisData burstcollectiondata = burstcollectionanalyzer.analyze(filteredPackets, 
+			BurstCollectionAnalysisData burstcollectiondata = burstcollectionanalyzer.analyze(packetTable, 
 					aProfile, stat.getPacketSizeToCountMap(), statemachine.getStaterangelist(), 
 					result.getUserEvents(), result.getCpuActivityList().getCpuActivities(), sessionlist);
 			
@@ -262,10 +266,15 @@ public class PacketAnalyzerImpl implements IPacketAnalyzer {
 	}
 	@Override
 	public Statistic getStatistic(List<PacketInfo> packetlist){
+		return getStatistic(new PacketTable(packetlist));
+	}
+
+	@Override
+	public Statistic getStatistic(PacketTable packets){
 		Statistic stat = new Statistic();
 		Set<String> appNames = new HashSet<String>();
-		List<PacketInfo> packets = packetlist;
-		if (!packets.isEmpty()) {
+		int size = packets.size();
+		if (size > 0) {
 			int totalHTTPSBytes = 0;
 			int totalBytes = 0;
 			double avgKbps = 0;
@@ -274,37 +283,35 @@ public class PacketAnalyzerImpl implements IPacketAnalyzer {
 			List<ApplicationPacketSummary> applicationPacketSummary = new ArrayList<ApplicationPacketSummary>();
 			Map<Integer, Integer> packetSizeToCountMap = new HashMap<Integer, Integer>();
 			
-			PacketInfo lastPacket = packets.get(packets.size() - 1);
-			Map<String, PacketCounter> appPackets = new HashMap<String, PacketCounter>();
+			PacketCounter[] appCounters = new PacketCounter[packets.getAppCount()];
+			// counters of interned addresses are indexed by address ID
+			List<PacketCounter> ipPacketsById = new ArrayList<PacketCounter>();
 			Map<InetAddress, PacketCounter> ipPackets = new HashMap<InetAddress, PacketCounter>();
-			for (PacketInfo packet : packets) {
-				//totalBytes += packet.getLen();
-				
-				if (packet.getPacket() instanceof TCPPacket) {
-					TCPPacket tcp = (TCPPacket) packet.getPacket();
-					if ((tcp.isSsl()) || (tcp.getDestinationPort() == 443) || (tcp.getSourcePort() == 443)) {
-						totalHTTPSBytes += packet.getLen();
+			for (int i = 0; i < size; i++) {
+				int len = packets.getLength(i);
+				if (packets.isTCPPacket(i)) {
+					if (packets.isHttps(i)) {
+						totalHTTPSBytes += len;
 					}
-					totalBytes += packet.getLen();
+					totalBytes += len;
 					
 				} else {
 					
-					totalBytes += packet.getPayloadLen();
+					totalBytes += packets.getPayloadLength(i);
 				}
 
-				String appName = packet.getAppName();
-				appNames.add(appName);
-				PacketCounter pCounter = appPackets.get(appName);
+				int appId = packets.getAppId(i);
+				PacketCounter pCounter = appCounters[appId];
 				if (pCounter == null) {
 					pCounter = new PacketCounter();
-					appPackets.put(appName, pCounter);
+					appCounters[appId] = pCounter;
 				}
-				pCounter.add(packet);
+				pCounter.add(len);
 
-				if (packet.getPacket() instanceof IPPacket) {
+				if (packets.isIPPacket(i)) {
 
 					// Count packets by packet size
-					Integer packetSize = packet.getPayloadLen();
+					Integer packetSize = packets.getPayloadLength(i);
 
 					Integer iValue = packetSizeToCountMap.get(packetSize);
 					if (iValue == null) {
@@ -315,16 +322,34 @@ public class PacketAnalyzerImpl implements IPacketAnalyzer {
 					packetSizeToCountMap.put(packetSize, iValue);
 
 					// Get IP address summary
-					InetAddress ipAddress = packet.getRemoteIPAddress();
-					pCounter = ipPackets.get(ipAddress);
+					int addressId = packets.getAddressId(i);
+					pCounter = null;
+					if (addressId >= 0) {
+						while (ipPacketsById.size() <= addressId) {
+							ipPacketsById.add(null);
+						}
+						pCounter = ipPacketsById.get(addressId);
+					}
 					if (pCounter == null) {
-						pCounter = new PacketCounter();
-						ipPackets.put(ipAddress, pCounter);
+						InetAddress ipAddress = packets.getPacketInfo(i).getRemoteIPAddress();
+						pCounter = ipPackets.get(ipAddress);
+						if (pCounter == null) {
+							pCounter = new PacketCounter();
+							ipPackets.put(ipAddress, pCounter);
+						}
+						if (addressId >= 0) {
+							ipPacketsById.set(addressId, pCounter);
+						}
 					}
-					pCounter.add(packet);
+					pCounter.add(len);
 				}
 			}
 			
+			Map<String, PacketCounter> appPackets = new HashMap<String, PacketCounter>();
+			for (int appId = 0; appId < appCounters.length; appId++) {
+				appNames.add(packets.getAppName(appId));
+				appPackets.put(packets.getAppName(appId), appCounters[appId]);
+			}
 			for (Map.Entry<InetAddress, PacketCounter> ipPacketMap : ipPackets.entrySet()) {
 				ipPacketSummary.add(new IPPacketSummary(ipPacketMap.getKey(), ipPacketMap.getValue().getPacketCount(), ipPacketMap
 						.getValue().getTotalBytes()));
@@ -334,7 +359,7 @@ public class PacketAnalyzerImpl implements IPacketAnalyzer {
 						.getValue().getPacketCount(), appPacketMap.getValue().getTotalBytes()));
 			}
 
-			packetsDuration = lastPacket.getTimeStamp() - packets.get(0).getTimeStamp();
+			packetsDuration = packets.getTimestamp(size - 1) - packets.getTimestamp(0);
 			avgKbps = packetsDuration != 0 ? totalBytes * 8.0 / 1000.0 / packetsDuration : 0.0;
 			
 			stat.setApplicationPacketSummary(applicationPacketSummary);
@@ -344,7 +369,7 @@ public class PacketAnalyzerImpl implements IPacketAnalyzer {
 			stat.setPacketDuration(packetsDuration);
 			stat.setTotalByte(totalBytes);
 			stat.setTotalHTTPSByte(totalHTTPSBytes);
-			stat.setTotalPackets(packets.size());
+			stat.setTotalPackets(size);
 			stat.setPacketSizeToCountMap(packetSizeToCountMap);
 		}
 		
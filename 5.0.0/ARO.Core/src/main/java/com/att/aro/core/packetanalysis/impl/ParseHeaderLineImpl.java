@@ -15,23 +15,34 @@
  */
 package com.att.aro.core.packetanalysis.impl;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.regex.Matcher;
+import java.nio.charset.Charset;
 
 import com.att.aro.core.ILogger;
 import com.att.aro.core.model.InjectLogger;
 import com.att.aro.core.packetanalysis.IParseHeaderLine;
 import com.att.aro.core.packetanalysis.pojo.HttpDirection;
-import com.att.aro.core.packetanalysis.pojo.HttpPattern;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
-import com.att.aro.core.util.Util;
+import com.att.aro.core.packetanalysis.pojo.PayloadReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
 
+/**
+ * Parses HTTP/1.x header lines. The header name is found once and dispatched
+ * on its length and bytes, values are read from the bytes of the line. Names
+ * are matched with the same case rules as the HttpPattern expressions they
+ * replace: Host, Content-Length, Transfer-Encoding, Content-Encoding and
+ * Content-Type may start their words in either case and must be followed by
+ * the colon, the other names are exact and may have white space before it.<br>
+ * The line itself and the Date, Expires, Last-Modified, ETag and Referer
+ * values are recorded as ranges of the session storage, HttpRequestResponseInfo
+ * decodes them when they are read.
+ */
 public class ParseHeaderLineImpl implements IParseHeaderLine{
 	
 	@InjectLogger
 	private static ILogger logger;
 	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	private static final String CHARSET = "charset";
 	private static final String CHUNKED = "chunked";
 	private static final String NOCACHE = "no-cache";
@@ -41,9 +52,10 @@ public class ParseHeaderLineImpl implements IParseHeaderLine{
 	private static final String MUSTREVALIDATE = "must-revalidate";
 	private static final String PROXYREVALIDATE = "proxy-revalidate";
 	private static final String ONLYIFCACHED = "only-if-cached";
-
-	private static final Object HEADERS_SEPARATOR = " ";
-	
+	private static final String MAXAGE = "max-age";
+	private static final String SMAXAGE = "s-maxage";
+	private static final String MINFRESH = "min-fresh";
+	private static final String MAXSTALE = "max-stale";
 	
 	/**
 	 * Parse data from the line of text
@@ -52,254 +64,486 @@ public class ParseHeaderLineImpl implements IParseHeaderLine{
 	 * @param rrInfo
 	 */
 	public void parseHeaderLine(String headerLine, HttpRequestResponseInfo rrInfo) {
+		byte[] bytes = headerLine.getBytes(UTF8);
+		parseHeaderLine(PayloadStorage.wrap(bytes).reader(), 0, bytes.length, rrInfo);
+	}
 
-		appendHeaderToHttpRequestResponseInfo(headerLine, rrInfo);
-
-		Matcher matcher;
-		String[] str;
+	/**
+	 * Parse data from a line of the reassembled storage
+	 * 
+	 * @param data
+	 *            reader of the storage holding the line
+	 * @param offset
+	 *            index of the line in data
+	 * @param length
+	 *            length of the line without its CRLF
+	 * @param rrInfo
+	 */
+	public void parseHeaderLine(PayloadReader data, int offset, int length, HttpRequestResponseInfo rrInfo) {
 
-		// Get request host "[H|h]ost:"
-		matcher = HttpPattern.strReRequestHost.matcher(headerLine);
-		if (matcher.lookingAt()) {
-			String hostName = headerLine.substring(matcher.end()).trim();
+		rrInfo.addHeaderLine(data, offset, length);
 
-			// Strip port info if included
-			int index = hostName.indexOf(':');
-			if (index >= 0) {
-				hostName = hostName.substring(0, index);
-			}
-			rrInfo.setHostName(hostName);
+		int end = offset + length;
+		int colon = offset;
+		while (colon < end && data.get(colon) != ':') {
+			colon++;
+		}
+		if (colon == end) {
 			return;
 		}
+		int nameEnd = colon;
+		while (nameEnd > offset && isSpace(data.get(nameEnd - 1))) {
+			nameEnd--;
+		}
+		boolean spaced = nameEnd < colon;
+		int value = colon + 1;
+		HttpDirection direction = rrInfo.getDirection();
+
+		switch (nameEnd - offset) {
+		case 3:
+			if (direction == HttpDirection.RESPONSE && matches(data, offset, "Age")) {
+				parseAge(data, value, end, rrInfo);
+			}
+			break;
+
+		case 4:
+			if (!spaced && matchesWords(data, offset, "Host")) {
+				parseHost(data, value, end, rrInfo);
+			} else if (matches(data, offset, "Date")) {
+				rrInfo.setHeaderValue(data, HttpRequestResponseInfo.HEADER_DATE, value, restOfLineEnd(data, value, end));
+			} else if (direction == HttpDirection.RESPONSE && (matches(data, offset, "ETag") || matches(data, offset, "Etag"))) {
+				parseEtag(data, value, end, rrInfo);
+			}
+			break;
+
+		case 6:
+			if (matches(data, offset, "Pragma")) {
+				int index = skipSpace(data, value, end);
+				if (end - index >= NOCACHE.length() && matches(data, index, NOCACHE)) {
+					rrInfo.setHasCacheHeaders(true);
+					rrInfo.setPragmaNoCache(true);
+				}
+			}
+			break;
 
-		// Get request content length "[C|c]ontent-[L|l]ength:"
-		matcher = HttpPattern.strReResponseContentLength.matcher(headerLine);
-		if (matcher.lookingAt() && rrInfo.getContentLength() == 0) {
-			try {
-				rrInfo.setContentLength(Integer.parseInt(headerLine.substring(matcher.end()).trim()));
-			} catch (NumberFormatException e) {
-				/*
-				 * The value exceeds the Interger.MAX_VALUE i.e
-				 * 2^31-1=2147483647
-				 */
-				logger.info("Cannot parse the string to int for contentLength,because" + " The value to parse is :" + (headerLine.substring(matcher.end()).trim())
-						+ " which is greater than the Integer.MAX_VALUE (2^31-1=2147483647).");
+		case 7:
+			if (direction == HttpDirection.RESPONSE && matches(data, offset, "Expires")) {
+				rrInfo.setHeaderValue(data, HttpRequestResponseInfo.HEADER_EXPIRES, value, restOfLineEnd(data, value, end));
+			} else if (direction == HttpDirection.REQUEST && matches(data, offset, "Referer")) {
+				rrInfo.setHeaderValue(data, HttpRequestResponseInfo.HEADER_REFERRER, value, restOfLineEnd(data, value, end));
 			}
+			break;
 
-			return;
-		}
+		case 12:
+			if (!spaced && matchesWords(data, offset, "Content-Type")) {
+				parseContentType(data, value, end, rrInfo);
+			}
+			break;
+
+		case 13:
+			if (matches(data, offset, "Cache-Control")) {
+				parseCacheControl(restOfLine(data, value, end), rrInfo);
+			} else if (direction == HttpDirection.RESPONSE && matches(data, offset, "Last-Modified")) {
+				rrInfo.setHeaderValue(data, HttpRequestResponseInfo.HEADER_LAST_MODIFIED, value, restOfLineEnd(data, value, end));
+			} else if (direction == HttpDirection.RESPONSE && matches(data, offset, "Content-Range")) {
+				parseContentRange(data, value, end, rrInfo);
+			} else if (direction == HttpDirection.REQUEST && matches(data, offset, "If-None-Match")) {
+				rrInfo.setIfNoneMatch(true);
+			}
+			break;
 
-		// Get request transfer encoding "[T|t]ransfer-[E|e]ncoding:"
-		matcher = HttpPattern.strReTransferEncoding.matcher(headerLine);
-		if (matcher.lookingAt()) {
-			rrInfo.setChunked(CHUNKED.equals(headerLine.substring(matcher.end()).trim()));
-			return;
-		}
+		case 14:
+			if (!spaced && matchesWords(data, offset, "Content-Length") && rrInfo.getContentLength() == 0) {
+				int from = trimStart(data, value, end);
+				int to = trimEnd(data, from, end);
+				try {
+					rrInfo.setContentLength(parseInt(data, from, to, true));
+				} catch (NumberFormatException e) {
+					/*
+					 * The value exceeds the Interger.MAX_VALUE i.e
+					 * 2^31-1=2147483647
+					 */
+					logger.info("Cannot parse the string to int for contentLength,because" + " The value to parse is :" + decode(data, from, to)
+							+ " which is greater than the Integer.MAX_VALUE (2^31-1=2147483647).");
+				}
+			}
+			break;
 
-		// Get request transfer encoding
-		matcher = HttpPattern.strReResponseContentEncoding.matcher(headerLine);
-		if (matcher.lookingAt()) {
-			rrInfo.setContentEncoding(headerLine.substring(matcher.end()).trim().toLowerCase());
-			return;
+		case 16:
+			if (!spaced && matchesWords(data, offset, "Content-Encoding")) {
+				rrInfo.setContentEncoding(trimmed(data, value, end).toLowerCase());
+			}
+			break;
+
+		case 17:
+			if (!spaced && matchesWords(data, offset, "Transfer-Encoding")) {
+				int from = trimStart(data, value, end);
+				int to = trimEnd(data, from, end);
+				rrInfo.setChunked(to - from == CHUNKED.length() && matches(data, from, CHUNKED));
+			} else if (direction == HttpDirection.REQUEST && matches(data, offset, "If-Modified-Since")) {
+				rrInfo.setIfModifiedSince(true);
+			}
+			break;
+
+		default:
+			break;
 		}
+	}
 
-		// Get content type
-		matcher = HttpPattern.strReResponseContentType.matcher(headerLine);
-		if (matcher.lookingAt()) {
-			str = headerLine.substring(matcher.end()).trim().split(";");
-			rrInfo.setContentType(str[0].trim().toLowerCase());
-			for (int i = 1; i < str.length; ++i) {
-				int index = str[i].indexOf('=');
-				if (index >= 0) {
-					String attr = str[i].substring(0, index).trim();
-					if (CHARSET.equals(attr)) {
-						rrInfo.setCharset(str[i].substring(index+1).trim());
-					}
-				}
+	private void parseHost(PayloadReader data, int from, int end, HttpRequestResponseInfo rrInfo) {
+		from = trimStart(data, from, end);
+		int to = trimEnd(data, from, end);
+
+		// Strip port info if included
+		for (int index = from; index < to; index++) {
+			if (data.get(index) == ':') {
+				to = index;
+				break;
 			}
-			return;
 		}
+		rrInfo.setHostName(decode(data, from, to));
+	}
 
-		// Date
-		matcher = HttpPattern.strReResponseDate.matcher(headerLine);
-		if (matcher.lookingAt()) {
-			rrInfo.setDate(Util.readHttpDate(matcher.group(1), false));
-			return;
+	private void parseContentType(PayloadReader data, int from, int end, HttpRequestResponseInfo rrInfo) {
+		String[] str = trimmed(data, from, end).split(";");
+		rrInfo.setContentType(str[0].trim().toLowerCase());
+		for (int i = 1; i < str.length; ++i) {
+			int index = str[i].indexOf('=');
+			if (index >= 0) {
+				String attr = str[i].substring(0, index).trim();
+				if (CHARSET.equals(attr)) {
+					rrInfo.setCharset(str[i].substring(index+1).trim());
+				}
+			}
 		}
+	}
 
-		// Pragma: no-cache
-		matcher = HttpPattern.strReResponsePragmaNoCache.matcher(headerLine);
-		if (matcher.lookingAt()) {
+	private void parseCacheControl(String value, HttpRequestResponseInfo rrInfo) {
+		String[] str = value.split(",");
+		if (str.length > 0) {
 			rrInfo.setHasCacheHeaders(true);
-			rrInfo.setPragmaNoCache(true);
-			return;
 		}
+		for (int i = 0; i < str.length; ++i) {
+			String directive = str[i].trim();
+			if (NOCACHE.equals(directive)) {
+				rrInfo.setNoCache(true);
+				continue;
+			} else if (NOSTORE.equals(directive)) {
+				rrInfo.setNoStore(true);
+				continue;
+			}
 
-		// Cache-Control
-		matcher = HttpPattern.strReResponseCacheControl.matcher(headerLine);
-		if (matcher.lookingAt()) {
-			str = matcher.group(1).split(",");
-			if (str.length > 0) {
-				rrInfo.setHasCacheHeaders(true);
+			// max-age
+			String seconds = directiveSeconds(directive, MAXAGE);
+			if (seconds != null) {
+				rrInfo.setMaxAge(Long.valueOf(seconds));
+				continue;
 			}
-			for (int i = 0; i < str.length; ++i) {
-				String directive = str[i].trim();
-				if (NOCACHE.equals(directive)) {
-					rrInfo.setNoCache(true);
-					continue;
-				} else if (NOSTORE.equals(directive)) {
-					rrInfo.setNoStore(true);
+
+			if (rrInfo.getDirection() == HttpDirection.REQUEST) {
+				if (ONLYIFCACHED.equals(directive)) { // only-if-cached
+					rrInfo.setOnlyIfCached(true);
 					continue;
 				}
 
-				// max-age
-				matcher = HttpPattern.strReCacheMaxAge.matcher(directive);
-				if (matcher.lookingAt()) {
-					rrInfo.setMaxAge(Long.valueOf(matcher.group(1)));
+				// min-fresh
+				seconds = directiveSeconds(directive, MINFRESH);
+				if (seconds != null) {
+					rrInfo.setMinFresh(Long.valueOf(seconds));
 					continue;
 				}
 
-				if (rrInfo.getDirection() == HttpDirection.REQUEST) {
-					if (ONLYIFCACHED.equals(directive)) { // only-if-cached
-						rrInfo.setOnlyIfCached(true);
-						continue;
+				// max-stale, the seconds are optional
+				if (directive.startsWith(MAXSTALE)) {
+					int index = skipSpace(directive, MAXSTALE.length());
+					if (index < directive.length() && directive.charAt(index) == '=') {
+						index = skipSpace(directive, index + 1);
+						rrInfo.setMaxStale(Long.valueOf(directive.substring(index, skipDigits(directive, index))));
+					} else {
+						rrInfo.setMaxStale(Long.MAX_VALUE);
 					}
+					continue;
+				}
 
-					// min-fresh
-					matcher = HttpPattern.strReCacheMinFresh.matcher(directive);
-					if (matcher.lookingAt()) {
-						rrInfo.setMinFresh(Long.valueOf(matcher.group(1)));
-						continue;
-					}
+			} else if (rrInfo.getDirection() == HttpDirection.RESPONSE) {
+				if (PUBLIC.equals(directive)) {
+					rrInfo.setPublicCache(true);
+					continue;
+				} else if (PRIVATE.equals(directive)) {
+					rrInfo.setPrivateCache(true);
+					continue;
+				} else if (MUSTREVALIDATE.equals(directive)) {
+					rrInfo.setMustRevalidate(true);
+					continue;
+				} else if (PROXYREVALIDATE.equals(directive)) {
+					rrInfo.setProxyRevalidate(true);
+					continue;
+				}
 
-					// max-stale
-					matcher = HttpPattern.strReCacheMaxStale.matcher(directive);
-					if (matcher.lookingAt()) {
-						rrInfo.setMaxStale(matcher.group(1) != null ? Long.valueOf(matcher.group(1)) : Long.MAX_VALUE);
-						continue;
-					}
+				// s-maxage
+				seconds = directiveSeconds(directive, SMAXAGE);
+				if (seconds != null) {
+					rrInfo.setsMaxAge(Long.valueOf(seconds));
+					continue;
+				}
 
-				} else if (rrInfo.getDirection() == HttpDirection.RESPONSE) {
-					if (PUBLIC.equals(directive)) {
-						rrInfo.setPublicCache(true);
-						continue;
-					} else if (PRIVATE.equals(directive)) {
-						rrInfo.setPrivateCache(true);
-						continue;
-					} else if (MUSTREVALIDATE.equals(directive)) {
-						rrInfo.setMustRevalidate(true);
-						continue;
-					} else if (PROXYREVALIDATE.equals(directive)) {
-						rrInfo.setProxyRevalidate(true);
-						continue;
-					}
+			}
+		}
+	}
 
-					// s-maxage
-					matcher = HttpPattern.strReCacheSMaxAge.matcher(directive);
-					if (matcher.lookingAt()) {
-						rrInfo.setsMaxAge(Long.valueOf(matcher.group(1)));
-						continue;
-					}
+	/**
+	 * @return the digits of a directive of the form name=digits, null if the
+	 *         directive does not have that form
+	 */
+	private String directiveSeconds(String directive, String name) {
+		if (!directive.startsWith(name)) {
+			return null;
+		}
+		int index = skipSpace(directive, name.length());
+		if (index == directive.length() || directive.charAt(index) != '=') {
+			return null;
+		}
+		index = skipSpace(directive, index + 1);
+		int digits = skipDigits(directive, index);
+		return digits > index ? directive.substring(index, digits) : null;
+	}
 
-				}
-			}
+	/**
+	 * ETag, the value between the first and the last quote, after an optional
+	 * weak validator prefix
+	 */
+	private void parseEtag(PayloadReader data, int from, int end, HttpRequestResponseInfo rrInfo) {
+		from = skipSpace(data, from, end);
+		end = restOfLineEnd(data, from, end);
+		int first = end - from >= 3 && matches(data, from, "W/\"") ? from + 2 : from;
+		int last = end - 1;
+		while (last >= from && data.get(last) != '"') {
+			last--;
+		}
+		if (first < end && data.get(first) == '"' && last > first) {
+			rrInfo.setHeaderValue(data, HttpRequestResponseInfo.HEADER_ETAG, first + 1, last);
+		}
+	}
+
+	private void parseAge(PayloadReader data, int from, int end, HttpRequestResponseInfo rrInfo) {
+		from = skipSpace(data, from, end);
+		rrInfo.setAge(parseLong(data, from, skipDigits(data, from, end)));
+	}
+
+	/**
+	 * Content-Range: bytes first-last/full
+	 */
+	private void parseContentRange(PayloadReader data, int from, int end, HttpRequestResponseInfo rrInfo) {
+		int index = skipSpace(data, from, end);
+		if (end - index < 6 || !matches(data, index, "bytes ")) {
+			return;
+		}
+		int first = index + 6;
+		int firstEnd = skipDigits(data, first, end);
+		index = skipSpace(data, firstEnd, end);
+		if (index == end || data.get(index) != '-') {
 			return;
 		}
+		int last = skipSpace(data, index + 1, end);
+		int lastEnd = skipDigits(data, last, end);
+		index = skipSpace(data, lastEnd, end);
+		if (index == end || data.get(index) != '/') {
+			return;
+		}
+		int full = skipSpace(data, index + 1, end);
+		int fullEnd = skipDigits(data, full, end);
+
+		rrInfo.setRangeResponse(true);
+		rrInfo.setRangeFirst(parseInt(data, first, firstEnd, false));
+		try {
+			rrInfo.setRangeLast(parseInt(data, last, lastEnd, false));
+		} catch (NumberFormatException e) {
+			/*
+			 * The value exceeds the Interger.MAX_VALUE i.e
+			 * 2^31-1=2147483647. Continue.
+			 */
+			logger.info("Cannot parse the string to int for rangeLast,because" + " The value to parse is :" + decode(data, last, lastEnd)
+					+ " which is greater than the Integer.MAX_VALUE (2^31-1=2147483647).");
 
-		if (rrInfo.getDirection() == HttpDirection.RESPONSE) {
+		}
+		rrInfo.setRangeFull(parseLong(data, full, fullEnd));
 
-			// ETag
-			matcher = HttpPattern.strReResponseEtag.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				rrInfo.setEtag(matcher.group(2));
-				return;
-			}
+		if (rrInfo.getContentLength() == 0) {
+			rrInfo.setContentLength(rrInfo.getRangeLast() - rrInfo.getRangeFirst() + 1);
+		}
+	}
 
-			// Age
-			matcher = HttpPattern.strReResponseAge.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				rrInfo.setAge(Long.valueOf(matcher.group(1)));
-				return;
+	/**
+	 * @return true if the bytes at offset are the ASCII characters of name
+	 */
+	private static boolean matches(PayloadReader data, int offset, String name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (data.get(offset + i) != name.charAt(i)) {
+				return false;
 			}
+		}
+		return true;
+	}
 
-			// Expires
-			matcher = HttpPattern.strReResponseExpires.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				rrInfo.setExpires(Util.readHttpDate(matcher.group(1), true));
-				return;
+	/**
+	 * @return true if the bytes at offset are name, where the first letter of
+	 *         each word of name may be lower case
+	 */
+	private static boolean matchesWords(PayloadReader data, int offset, String name) {
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			byte b = data.get(offset + i);
+			if (b != c && (i > 0 && name.charAt(i - 1) != '-' || b != Character.toLowerCase(c))) {
+				return false;
 			}
+		}
+		return true;
+	}
 
-			// Last modified
-			matcher = HttpPattern.strReResponseLastMod.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				rrInfo.setLastModified(Util.readHttpDate(matcher.group(1), false));
-				return;
-			}
+	/**
+	 * @return true for the white space of regular expressions, \s
+	 */
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
 
-			// Content-Range
-			matcher = HttpPattern.strReContentRange.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				rrInfo.setRangeResponse(true);
-				rrInfo.setRangeFirst(Integer.parseInt(matcher.group(1)));
-				try {
-					rrInfo.setRangeLast(Integer.parseInt(matcher.group(2)));
-				} catch (NumberFormatException e) {
-					/*
-					 * The value exceeds the Interger.MAX_VALUE i.e
-					 * 2^31-1=2147483647. Continue.
-					 */
-					logger.info("Cannot parse the string to int for rangeLast,because" + " The value to parse is :" + matcher.group(2)
-							+ " which is greater than the Integer.MAX_VALUE (2^31-1=2147483647).");
+	private static int skipSpace(PayloadReader data, int from, int end) {
+		while (from < end && isSpace(data.get(from))) {
+			from++;
+		}
+		return from;
+	}
 
-				}
-				rrInfo.setRangeFull(Long.parseLong(matcher.group(3)));
+	private static int skipSpace(String value, int from) {
+		while (from < value.length() && isSpace(value.charAt(from))) {
+			from++;
+		}
+		return from;
+	}
 
-				if (rrInfo.getContentLength() == 0) {
-					rrInfo.setContentLength(rrInfo.getRangeLast() - rrInfo.getRangeFirst() + 1);
-				}
-				return;
-			}
+	private static int skipDigits(PayloadReader data, int from, int end) {
+		while (from < end && isDigit(data.get(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	private static int skipDigits(String value, int from) {
+		while (from < value.length() && isDigit(value.charAt(from))) {
+			from++;
+		}
+		return from;
+	}
 
-		} else if (rrInfo.getDirection() == HttpDirection.REQUEST) {
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
 
-			// Referer
-			matcher = HttpPattern.strReResponseReferer.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				try {
-					rrInfo.setReferrer(new URI(matcher.group(1).trim()));
-				} catch (URISyntaxException e) {
-					logger.warn("Invalid referrer URI: " + matcher.group(1));
-				}
-				return;
-			}
+	/**
+	 * @return start of the range without the leading characters String.trim()
+	 *         removes
+	 */
+	private static int trimStart(PayloadReader data, int from, int end) {
+		while (from < end && (data.get(from) & 0xff) <= ' ') {
+			from++;
+		}
+		return from;
+	}
 
-			// If-Modified-Since
-			matcher = HttpPattern.strReIfModifiedSince.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				rrInfo.setIfModifiedSince(true);
-				return;
-			}
+	/**
+	 * @return end of the range without the trailing characters String.trim()
+	 *         removes
+	 */
+	private static int trimEnd(PayloadReader data, int from, int end) {
+		while (end > from && (data.get(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+		return end;
+	}
 
-			// If-None-Match
-			matcher = HttpPattern.strReIfNoneMatch.matcher(headerLine);
-			if (matcher.lookingAt()) {
-				rrInfo.setIfNoneMatch(true);
-				return;
+	private static String trimmed(PayloadReader data, int from, int end) {
+		from = trimStart(data, from, end);
+		return decode(data, from, trimEnd(data, from, end));
+	}
+
+	/**
+	 * @return the range up to the first line terminator, as matched by .*
+	 */
+	private static String restOfLine(PayloadReader data, int from, int end) {
+		return decode(data, from, restOfLineEnd(data, from, end));
+	}
+
+	/**
+	 * Finds the first line terminator of .* in the UTF-8 bytes of a range: LF,
+	 * CR, U+0085 (C2 85), U+2028 (E2 80 A8) or U+2029 (E2 80 A9).
+	 * 
+	 * @return index of the terminator, or end if there is none
+	 */
+	private static int restOfLineEnd(PayloadReader data, int from, int end) {
+		for (int index = from; index < end; index++) {
+			int b = data.get(index) & 0xff;
+			if (b == '\n' || b == '\r') {
+				return index;
+			}
+			if (b == 0xC2 && index + 1 < end && (data.get(index + 1) & 0xff) == 0x85) {
+				return index;
+			}
+			if (b == 0xE2 && index + 2 < end && (data.get(index + 1) & 0xff) == 0x80
+					&& ((data.get(index + 2) & 0xff) == 0xA8 || (data.get(index + 2) & 0xff) == 0xA9)) {
+				return index;
 			}
 		}
+		return end;
+	}
+
+	private static String decode(PayloadReader data, int from, int end) {
+		byte[] bytes = new byte[end - from];
+		data.copyTo(from, bytes, 0, bytes.length);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Parses a decimal int like Integer.parseInt(), optionally signed.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the range is not a number or does not fit in an int
+	 */
+	private static int parseInt(PayloadReader data, int from, int end, boolean signed) {
+		long value = parseNumber(data, from, end, signed, Integer.MAX_VALUE);
+		return (int) value;
+	}
+
+	/**
+	 * Parses a decimal long like Long.valueOf() a string of digits.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the range is not a number or does not fit in a long
+	 */
+	private static long parseLong(PayloadReader data, int from, int end) {
+		return parseNumber(data, from, end, false, Long.MAX_VALUE);
 	}
 
-	private void appendHeaderToHttpRequestResponseInfo(String line, HttpRequestResponseInfo rrInfo) {
-		if (rrInfo != null) {
-			StringBuilder headersBuilder;
-			if (rrInfo.getAllHeaders() == null) {
-				headersBuilder = new StringBuilder();
-			} else {
-				headersBuilder = new StringBuilder(rrInfo.getAllHeaders());
+	private static long parseNumber(PayloadReader data, int from, int end, boolean signed, long max) {
+		boolean negative = false;
+		int index = from;
+		if (signed && index < end && (data.get(index) == '-' || data.get(index) == '+')) {
+			negative = data.get(index) == '-';
+			index++;
+		}
+		if (index == end) {
+			throw new NumberFormatException("For input string: \"" + decode(data, from, end) + "\"");
+		}
+		// accumulate negatively, the negative range is one larger
+		long limit = negative ? -max - 1 : -max;
+		long result = 0;
+		for (; index < end; index++) {
+			int digit = data.get(index) - '0';
+			if (digit < 0 || digit > 9 || result < (limit + digit) / 10) {
+				throw new NumberFormatException("For input string: \"" + decode(data, from, end) + "\"");
 			}
-			headersBuilder.append(HEADERS_SEPARATOR).append(line);
-			rrInfo.setAllHeaders(headersBuilder.toString());
+			result = result * 10 - digit;
 		}
+		return negative ? result : -result;
 	}
 
 }
\ No newline at end of file
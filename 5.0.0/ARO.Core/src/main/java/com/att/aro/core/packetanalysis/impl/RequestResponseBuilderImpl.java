@@ -17,16 +17,16 @@ package com.att.aro.core.packetanalysis.impl;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.att.aro.core.ILogger;
@@ -38,6 +38,8 @@ import com.att.aro.core.packetanalysis.pojo.HttpDirection;
 import com.att.aro.core.packetanalysis.pojo.HttpPattern;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PayloadReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
 import com.att.aro.core.packetanalysis.pojo.RequestResponseTimeline;
 import com.att.aro.core.packetanalysis.pojo.Session;
 import com.att.aro.core.packetreader.pojo.PacketDirection;
@@ -54,31 +56,47 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 	@Autowired
 	private IParseHeaderLine parseHeaderLine;
 
-	private Session session;
+	/**
+	 * Line readers of the application context, a new one for every build
+	 */
+	@Autowired
+	private ObjectFactory<IByteArrayLineReader> storageReaders;
 
 	private IByteArrayLineReader storageReader;
-	
-	@Autowired
+
+	/**
+	 * Sets the line reader every session is built with, instead of a new
+	 * reader of the application context for every build. Builds sharing the
+	 * reader must not run concurrently.
+	 */
 	public void setByteArrayLineReader(IByteArrayLineReader reader){
 		this.storageReader = reader;
 	}
-	
-	private ArrayList<HttpRequestResponseInfo> result = null;
 
-	Map<String, Integer> wellKnownParts = new HashMap<String, Integer>(5);
+	public List<HttpRequestResponseInfo> createRequestResponseInfo(Session session) throws IOException {
+		return createRequestResponseInfo(newContext(session));
+	}
 
-	public RequestResponseBuilderImpl(){
-		wellKnownParts.put("HTTP", 80);
-		wellKnownParts.put("HTTPS", 443);
-		wellKnownParts.put("RTSP", 554);
+	/**
+	 * @return a context to build the session with, holding the line reader
+	 *         set or a new reader of the application context
+	 */
+	RequestResponseContext newContext(Session session) {
+		return new RequestResponseContext(session, storageReader != null ? storageReader : storageReaders.getObject());
 	}
 
-	public List<HttpRequestResponseInfo> createRequestResponseInfo(Session session) throws IOException {
-	
-		result = new ArrayList<HttpRequestResponseInfo>();
-		this.session = session;
-		extractHttpRequestResponseInfo(PacketDirection.UPLINK);
-		extractHttpRequestResponseInfo(PacketDirection.DOWNLINK);
+	/**
+	 * Builds the request/response list of the session of the context. All
+	 * state of the build is kept in the context, so sessions can be built
+	 * concurrently. The SYN, DNS and SSL handshake times of the waterfall are
+	 * the packets the session manager found when it reassembled the session,
+	 * the SYN is looked up in the packets of a session built elsewhere.
+	 */
+	List<HttpRequestResponseInfo> createRequestResponseInfo(RequestResponseContext context) throws IOException {
+		Session session = context.session;
+		ArrayList<HttpRequestResponseInfo> result = context.result;
+		extractHttpRequestResponseInfo(context, PacketDirection.UPLINK);
+		extractHttpRequestResponseInfo(context, PacketDirection.DOWNLINK);
 		Collections.sort(result);
 		result.trimToSize();
 		if(!session.isUDP() && !result.isEmpty()){/* By pass for UDP packets*/
@@ -89,16 +107,14 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 				dns = session.getDnsRequestPacket().getTimeStamp();
 			}
 
-			// Find syn and ack packets for session
+			// Syn packet of session
 			Double synTime = null;
-			for (PacketInfo pinfo : session.getPackets()) {
-				if (pinfo.getPacket() instanceof TCPPacket) {
-					TCPPacket tcp = (TCPPacket) pinfo.getPacket();
-					if (tcp.isSYN()) {
-						synTime = pinfo.getTimeStamp();
-						break;
-					}
-				}
+			PacketInfo syn = session.getSynPacket();
+			if (syn == null) {
+				syn = findSynPacket(session);
+			}
+			if (syn != null) {
+				synTime = syn.getTimeStamp();
 			}
 			
 			Double sslNegTime = null;
@@ -107,14 +123,14 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 				sslNegTime = handshake.getTimeStamp();
 			}
 
-			// Associate requests/responses
-			List<HttpRequestResponseInfo> reqs = new ArrayList<HttpRequestResponseInfo>(result.size());
+			// Associate requests/responses, in order for pipelined requests
+			Deque<HttpRequestResponseInfo> reqs = new ArrayDeque<HttpRequestResponseInfo>();
 			for (HttpRequestResponseInfo rrinfo : result) {
 				if (rrinfo.getDirection() == HttpDirection.REQUEST) {
 					reqs.add(rrinfo);
 				} else if (rrinfo.getDirection() == HttpDirection.RESPONSE && !reqs.isEmpty()) {
 
-					rrinfo.setAssocReqResp(reqs.remove(0));
+					rrinfo.setAssocReqResp(reqs.poll());
 					rrinfo.getAssocReqResp().setAssocReqResp(rrinfo);
 
 				}
@@ -190,13 +206,18 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 	}
 
 	/**
-	 * Returns the HTTP request/response result list.
-	 * 
-	 * @return The result The list object containing the requests and
-	 *         responses.
+	 * @return the first SYN packet of the session, or null if there is none
 	 */
-	public List<HttpRequestResponseInfo> getResult() {
-		return Collections.unmodifiableList(result);
+	private PacketInfo findSynPacket(Session session) {
+		for (PacketInfo pinfo : session.getPackets()) {
+			if (pinfo.getPacket() instanceof TCPPacket) {
+				TCPPacket tcp = (TCPPacket) pinfo.getPacket();
+				if (tcp.isSYN()) {
+					return pinfo;
+				}
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -204,33 +225,40 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 	 * session.
 	 * 
 	 * 
+	 * @param context
+	 *            The session and result list of the build.
 	 * @param direction
 	 *            The direction i.e. uplink/downlink.
 	 * @throws IOException
-	 * 
-	 * @return A List of HttpRequestResponseInfo objects that contain the
-	 *         request/response data from a TCP session.
 	 */
-	public void extractHttpRequestResponseInfo(PacketDirection direction) throws IOException {
+	void extractHttpRequestResponseInfo(RequestResponseContext context, PacketDirection direction) throws IOException {
+		Session session = context.session;
+		IByteArrayLineReader storageReader = context.storageReader;
 
 		SortedMap<Integer, PacketInfo> packetOffsets;
+		PayloadStorage storage;
 		switch (direction) {
 		case DOWNLINK:
-			storageReader.init(session.getStorageDl());
+			storage = getStorage(session, direction);
 			packetOffsets = session.getPacketOffsetsDl();
 			break;
 		case UPLINK:
-			storageReader.init(session.getStorageUl());
+			storage = getStorage(session, direction);
 			packetOffsets = session.getPacketOffsetsUl();
 			break;
 		default:
 			throw new IllegalArgumentException("Direction argument invalid");
 		}
 
-		HttpRequestResponseInfo rrInfo = findNextRequestResponse(direction,	packetOffsets);
+		storageReader.init(storage);
+		PayloadReader data = storage.reader();
+
+		HttpRequestResponseInfo rrInfo = findNextRequestResponse(context, direction, packetOffsets);
 		String line;
-		while ((line = storageReader.readLine()) != null && rrInfo != null) {
-			if (line.length() == 0) {
+		int lineStart = storageReader.getIndex();
+		int lineLength;
+		while ((lineLength = storageReader.readLineLength()) >= 0 && rrInfo != null) {
+			if (lineLength == 0) {
 				if (rrInfo.getContentLength() > 0) {
 					rrInfo.setContentOffsetLength(new TreeMap<Integer, Integer>());
 					rrInfo.getContentOffsetLength().put(storageReader.getIndex(), rrInfo.getContentLength());
@@ -275,37 +303,39 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 					}
 				}
 
-				mapPackets(packetOffsets, rrInfo.getRrStart(), storageReader.getIndex() - 1, direction, rrInfo);
+				mapPackets(session, packetOffsets, rrInfo.getRrStart(), storageReader.getIndex() - 1, direction, rrInfo);
 				rrInfo.setRawSize(storageReader.getIndex() - rrInfo.getRrStart());
 				
-				// Build an absolute URI if possible
-				if (rrInfo.getObjUri() != null && !rrInfo.getObjUri().isAbsolute()) {
-					try {
-						int port = Integer.valueOf(rrInfo.getPort()).equals(wellKnownParts.get(rrInfo.getScheme())) ? -1 : rrInfo.getPort();
-						rrInfo.setObjUri( new URI(rrInfo.getScheme().toLowerCase(), null, rrInfo.getHostName(), port, rrInfo.getObjUri().getPath(), rrInfo.getObjUri().getQuery(), rrInfo.getObjUri().getFragment()));
-					} catch (URISyntaxException e) {
-						// Just log fine message
-						logger.info("Unexpected exception creating URI for request: " + e.getMessage()+
-								". Scheme=" + rrInfo.getScheme().toLowerCase() +",Host name="+ rrInfo.getHostName()
-								+",Path=" + rrInfo.getObjUri().getPath() + ",Fragment="+ rrInfo.getObjUri().getFragment());
-						
-					}
-				}
-				
-				result.add(rrInfo);
+				context.result.add(rrInfo);
 				if (rrInfo.getDirection() == null) {
 					logger.warn("Request/response object has unknown direction");
 				}
-				rrInfo = findNextRequestResponse(direction, packetOffsets);
+				rrInfo = findNextRequestResponse(context, direction, packetOffsets);
 			} else {
-				parseHeaderLine.parseHeaderLine(line, rrInfo);
+				parseHeaderLine.parseHeaderLine(data, lineStart, lineLength, rrInfo);
 			}
+			lineStart = storageReader.getIndex();
 		} // end: while
 	}
 
+	/**
+	 * Storage of one direction of the session. The payload storage is read in
+	 * place from the packet data slices, no contiguous copy is built. A
+	 * session without one has its storage array wrapped.
+	 */
+	private PayloadStorage getStorage(Session session, PacketDirection direction) {
+		PayloadStorage storage = direction == PacketDirection.DOWNLINK ? session.getPayloadStorageDl() : session.getPayloadStorageUl();
+		if (storage != null) {
+			return storage;
+		}
+		return PayloadStorage.wrap(direction == PacketDirection.DOWNLINK ? session.getStorageDl() : session.getStorageUl());
+	}
+
 	/**
 	 * Process of map the packets with its direction.
 	 * 
+	 * @param session
+	 *            The session of the packets.
 	 * @param packetOffsets
 	 *            The collection of packets with ids.
 	 * @param start
@@ -317,14 +347,14 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 	 * @param rrInfo
 	 *            The request/response info associated with the packet.
 	 */
-	private void mapPackets(SortedMap<Integer, PacketInfo> packetOffsets,
+	private void mapPackets(Session session, SortedMap<Integer, PacketInfo> packetOffsets,
 			int start, int end, PacketDirection direction,
 			HttpRequestResponseInfo rrInfo) {
 
 		// Determine the packets that make up the request/response
-		rrInfo.setFirstDataPacket(determineDataPacketAtIndex(packetOffsets, start, direction));
+		rrInfo.setFirstDataPacket(determineDataPacketAtIndex(session, packetOffsets, start, direction));
 
-		rrInfo.setLastDataPacket(determineDataPacketAtIndex(packetOffsets, end, direction));
+		rrInfo.setLastDataPacket(determineDataPacketAtIndex(session, packetOffsets, end, direction));
 
 	}
 
@@ -336,39 +366,52 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 	 * @return Success case PacketInfo which creates a request/response;
 	 *         else null.
 	 */
-	private PacketInfo determineDataPacketAtIndex( SortedMap<Integer
+	private PacketInfo determineDataPacketAtIndex( Session session
+													, SortedMap<Integer
 													, PacketInfo> packetOffsets
 													, int indexAt
 													, PacketDirection direction) {
 		int index = indexAt;
 		// Determine the packets that make up the request/response
-		
-		for (SortedMap.Entry<Integer, PacketInfo> entry : packetOffsets.entrySet()) {
-			int packetOffset = entry.getKey().intValue();
-			
-			if (index >= packetOffset && index < packetOffset + entry.getValue().getPayloadLen()) {
-				return entry.getValue();
-			}
+		PacketInfo packet = packetAtIndex(packetOffsets, index);
+		if (packet != null) {
+			return packet;
 		}
 
-		if (direction == PacketDirection.UPLINK && this.session.getStorageUlEx() != null) {
-			index = this.session.getStorageUlEx().length - 1;
-		} else if (direction == PacketDirection.DOWNLINK && this.session.getStorageDlEx() != null) {
-			index = this.session.getStorageDlEx().length - 1;
+		if (direction == PacketDirection.UPLINK && session.getStorageUlEx() != null) {
+			index = session.getStorageUlEx().length - 1;
+		} else if (direction == PacketDirection.DOWNLINK && session.getStorageDlEx() != null) {
+			index = session.getStorageDlEx().length - 1;
 		}
 
-		for (SortedMap.Entry<Integer, PacketInfo> entry : packetOffsets.entrySet()) {
-			int packetOffset = entry.getKey().intValue();
-			if (index >= packetOffset && index < packetOffset + entry.getValue().getPayloadLen()) {
-				return entry.getValue();
-			}
+		return packetAtIndex(packetOffsets, index);
+	}
+
+	/**
+	 * The payloads of the packets follow each other in the storage, so the
+	 * only packet that can hold index is the last one starting at or before
+	 * it.
+	 * 
+	 * @return the packet holding the storage byte at index, null if none
+	 */
+	private PacketInfo packetAtIndex(SortedMap<Integer, PacketInfo> packetOffsets, int index) {
+		if (index < 0) {
+			return null;
 		}
-		return null;
+		SortedMap<Integer, PacketInfo> head = packetOffsets.headMap(index + 1);
+		if (head.isEmpty()) {
+			return null;
+		}
+		int packetOffset = head.lastKey().intValue();
+		PacketInfo packet = head.get(packetOffset);
+		return index < packetOffset + packet.getPayloadLen() ? packet : null;
 	}
 
 	/**
 	 * process to detect the next HttpRequestResponseInfo.
 	 * 
+	 * @param context
+	 *            The session, storage reader and result list of the build.
 	 * @param direction
 	 *            indicates the HTTP transaction direction with server.
 	 *            REQUEST/RESPONSE.
@@ -378,8 +421,11 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 	 * @throws IOException
 	 */
 	private HttpRequestResponseInfo findNextRequestResponse(
-			PacketDirection direction
+			RequestResponseContext context
+			, PacketDirection direction
 			, SortedMap<Integer, PacketInfo> packetOffsets) throws IOException {
+		Session session = context.session;
+		IByteArrayLineReader storageReader = context.storageReader;
 		
 		int index = storageReader.getIndex();
 		String line = storageReader.readLine();
@@ -392,6 +438,7 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 		if (line != null && direction != null) {
 			Matcher matcher;
 			rrInfo = new HttpRequestResponseInfo(session.getRemoteHostName(), direction);
+			rrInfo.setSession(session);
 			rrInfo.setRrStart(index);
 
 			// Check for request type
@@ -401,14 +448,13 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 				rrInfo.setRequestType(matcher.group(1));
 				rrInfo.setDirection(HttpDirection.REQUEST);
 				rrInfo.setObjName(matcher.group(2));
-				try {
-					rrInfo.setObjUri(new URI(rrInfo.getObjName()));
-					if (rrInfo.getObjUri().getHost() != null) {
-						rrInfo.setHostName(rrInfo.getObjUri().getHost());
+				// the URI is built on first access, only one that is not a path
+				// can name the host
+				if (!rrInfo.getObjName().startsWith("/")) {
+					URI objUri = rrInfo.getObjUri();
+					if (objUri != null && objUri.getHost() != null) {
+						rrInfo.setHostName(objUri.getHost());
 					}
-				} catch (URISyntaxException e) {
-					// Ignore since value does not have to be a URI
-					logger.error(e.getMessage());
 				}
 				rrInfo.setVersion(matcher.group(3));
 				rrInfo.setScheme(rrInfo.getVersion().split("/")[0]);
@@ -456,11 +502,35 @@ public class RequestResponseBuilderImpl implements IRequestResponseBuilder {
 					rrInfo.getContentOffsetLength().put(index, rrInfo.getRawSize());
 				}
 				
-				mapPackets(packetOffsets, index, storageReader.getIndex() - 1, direction, rrInfo);
-				result.add(rrInfo);
+				mapPackets(session, packetOffsets, index, storageReader.getIndex() - 1, direction, rrInfo);
+				context.result.add(rrInfo);
 			}
 		}
 
 		return rrInfo;
 	}
+
+	/**
+	 * State of building the request/responses of one session.
+	 */
+	static class RequestResponseContext {
+		private final Session session;
+		private final IByteArrayLineReader storageReader;
+		private final ArrayList<HttpRequestResponseInfo> result = new ArrayList<HttpRequestResponseInfo>();
+
+		RequestResponseContext(Session session, IByteArrayLineReader storageReader) {
+			this.session = session;
+			this.storageReader = storageReader;
+		}
+
+		/**
+		 * Returns the HTTP request/response result list.
+		 * 
+		 * @return The result The list object containing the requests and
+		 *         responses.
+		 */
+		List<HttpRequestResponseInfo> getResult() {
+			return Collections.unmodifiableList(result);
+		}
+	}
 }
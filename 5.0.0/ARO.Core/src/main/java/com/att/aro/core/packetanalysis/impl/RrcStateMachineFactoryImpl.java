@@ -30,6 +30,7 @@ import com.att.aro.core.packetanalysis.IRrcStateMachineFactory;
 import com.att.aro.core.packetanalysis.IRrcStateRangeFactory;
 import com.att.aro.core.packetanalysis.pojo.AbstractRrcStateMachine;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.RrcStateMachine3G;
 import com.att.aro.core.packetanalysis.pojo.RrcStateMachineLTE;
 import com.att.aro.core.packetanalysis.pojo.RrcStateMachineWiFi;
@@ -47,6 +48,23 @@ public class RrcStateMachineFactoryImpl implements IRrcStateMachineFactory {
 	public AbstractRrcStateMachine create(List<PacketInfo> packetlist,
 			Profile profile, double packetDuration, double traceDuration, double totalBytes,
 			TimeRange timerange) {
+		return create(packetlist, null, profile, packetDuration, traceDuration, totalBytes, timerange);
+	}
+
+	@Override
+	public AbstractRrcStateMachine create(PacketTable packets,
+			Profile profile, double packetDuration, double traceDuration, double totalBytes,
+			TimeRange timerange) {
+		return create(packets.getPacketInfos(), packets, profile, packetDuration, traceDuration, totalBytes, timerange);
+	}
+
+	/**
+	 * @param packets
+	 *            table of the packets of packetlist, null to use the list
+	 */
+	private AbstractRrcStateMachine create(List<PacketInfo> packetlist, PacketTable packets,
+			Profile profile, double packetDuration, double traceDuration, double totalBytes,
+			TimeRange timerange) {
 		List<RrcStateRange> staterangelist = staterange.create(packetlist, profile, traceDuration);
 		if(timerange != null){
 			staterangelist = this.getRRCStatesForTheTimeRange(staterangelist, timerange.getBeginTime(), timerange.getEndTime());
@@ -55,7 +73,7 @@ public class RrcStateMachineFactoryImpl implements IRrcStateMachineFactory {
 		if(profile.getProfileType() == ProfileType.T3G){
 			data = run3GRRcStatistics(staterangelist, (Profile3G)profile, totalBytes, packetDuration, traceDuration);
 		}else if(profile.getProfileType() == ProfileType.LTE){
-			data = runLTERRcStatistics(staterangelist, (ProfileLTE)profile, packetlist, totalBytes, packetDuration, traceDuration);
+			data = runLTERRcStatistics(staterangelist, (ProfileLTE)profile, packetlist, packets, totalBytes, packetDuration, traceDuration);
 		}else if(profile.getProfileType() == ProfileType.WIFI){
 			data = runWiFiRRcStatistics(staterangelist, (ProfileWiFi)profile, totalBytes, packetDuration, traceDuration);
 		}
@@ -112,15 +130,17 @@ public class RrcStateMachineFactoryImpl implements IRrcStateMachineFactory {
 	/**
 	 * LTE RRC state time modification.
 	 */
-	private RrcStateMachineLTE runLTERRcStatistics(List<RrcStateRange> staterangelist, ProfileLTE profile, List<PacketInfo> packets,
-			double totalBytes, double packetsDuration, double traceDuration) {
+	private RrcStateMachineLTE runLTERRcStatistics(List<RrcStateRange> staterangelist, ProfileLTE profile, List<PacketInfo> packetlist,
+			PacketTable packets, double totalBytes, double packetsDuration, double traceDuration) {
 		double totalRRCEnergy = 0, lteIdleTime = 0, lteIdleEnergy = 0, lteIdleToCRPromotionTime = 0;
 		double lteIdleToCRPromotionEnergy = 0, lteCrTime = 0, lteCrEnergy = 0, lteCrTailTime = 0;
 		double lteCrTailEnergy = 0, lteDrxShortTime = 0, lteDrxShortEnergy = 0, lteDrxLongTime = 0;
 		double lteDrxLongEnergy = 0;
 		for (RrcStateRange rrc : staterangelist) {
 			double duration = rrc.getEndTime() - rrc.getBeginTime();
-			double energy = profilefactory.energyLTE(rrc.getBeginTime(), rrc.getEndTime(), rrc.getState(), profile, packets);
+			double energy = packets != null
+					? profilefactory.energyLTE(rrc.getBeginTime(), rrc.getEndTime(), rrc.getState(), profile, packets)
+					: profilefactory.energyLTE(rrc.getBeginTime(), rrc.getEndTime(), rrc.getState(), profile, packetlist);
 			totalRRCEnergy += energy;
 			switch (rrc.getState()) {
 			case LTE_IDLE:
@@ -19,23 +19,23 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.att.aro.core.ILogger;
 import com.att.aro.core.model.InjectLogger;
 import com.att.aro.core.packetanalysis.IRequestResponseBuilder;
+import com.att.aro.core.packetanalysis.ISessionAssembler;
 import com.att.aro.core.packetanalysis.ISessionManager;
+import com.att.aro.core.packetanalysis.pojo.FlowTable;
 import com.att.aro.core.packetanalysis.pojo.HttpDirection;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
+import com.att.aro.core.packetanalysis.pojo.LongIntTable;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
 import com.att.aro.core.packetanalysis.pojo.PacketRangeInStorage;
 import com.att.aro.core.packetanalysis.pojo.Reassembler;
@@ -54,36 +54,190 @@ public class SessionManagerImpl implements ISessionManager {
 	
 	@Autowired
 	IRequestResponseBuilder requestResponseBuilder;
+
+	/**
+	 * Sessions per task of the parallel reassembly
+	 */
+	static final int SLICE_SIZE = 4;
+
+	static final double DEFAULT_IDLE_TIMEOUT = 300;
+
+	static final double DEFAULT_CLOSED_TIMEOUT = 10;
+
+	/**
+	 * Threads reassembling and analyzing sessions, 1 works on the calling
+	 * thread.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public synchronized void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		// assemblies still running keep the old pool, its idle threads end on their own
+		pool = null;
+	}
+
+	/**
+	 * Pool reassembling the sessions of every assembly of this manager,
+	 * created on first use
+	 */
+	private ForkJoinPool pool = null;
+
+	private synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * Stops the reassembly threads, called when the application context is
+	 * closed.
+	 */
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Seconds without packets after which an assembler created by
+	 * createSessionAssembler() completes an open TCP session, 0 for never
+	 */
+	private double idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	public double getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(double idleTimeout) {
+		this.idleTimeout = idleTimeout > 0 ? idleTimeout : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Seconds without packets after which an assembler created by
+	 * createSessionAssembler() completes a TCP session that saw a FIN or RST,
+	 * 0 for never
+	 */
+	private double closedTimeout = DEFAULT_CLOSED_TIMEOUT;
+
+	public double getClosedTimeout() {
+		return closedTimeout;
+	}
+
+	public void setClosedTimeout(double closedTimeout) {
+		this.closedTimeout = closedTimeout > 0 ? closedTimeout : Double.POSITIVE_INFINITY;
+	}
 	
 	public List<Session> assembleSession(List<PacketInfo> packets){
-		Map<String, Session> allSessions = new LinkedHashMap<String, Session>();
-		List<PacketInfo> dnsPackets = new ArrayList<PacketInfo>();
-		List<PacketInfo> udpPackets = new ArrayList<PacketInfo>();
-		Map<InetAddress, String> hostMap = new HashMap<InetAddress, String>();
-		int packetIndex = 0;
+		SessionAssembler assembler = new SessionAssembler(packets.size(), Double.POSITIVE_INFINITY,
+				Double.POSITIVE_INFINITY);
 		logger.debug("looping thru packets info list, total pakets: "+packets.size());
 		for (PacketInfo packet : packets) {
+			assembler.addPacket(packet);
+		}
+		return assembler.finish();
+	}
+
+	@Override
+	public ISessionAssembler createSessionAssembler() {
+		return new SessionAssembler(0, idleTimeout, closedTimeout);
+	}
+
+	/**
+	 * TCP session that still takes packets
+	 */
+	private static class OpenSession {
+		private final long key;
+		private final Session session;
+		private double lastTimeStamp;
+		private boolean closed = false;
+
+		OpenSession(long key, Session session) {
+			this.key = key;
+			this.session = session;
+		}
+	}
+
+	/**
+	 * UDP packets of one flow that still takes packets
+	 */
+	private static class OpenUdpFlow {
+		private final long key;
+		private final List<PacketInfo> packets = new ArrayList<PacketInfo>();
+
+		/**
+		 * Position of each packet in the packets added to the assembler
+		 */
+		private int[] positions = new int[4];
+		private double lastTimeStamp;
+
+		OpenUdpFlow(long key) {
+			this.key = key;
+		}
+
+		void add(PacketInfo packet, int position) {
+			if (packets.size() == positions.length) {
+				positions = Arrays.copyOf(positions, positions.length * 2);
+			}
+			positions[packets.size()] = position;
+			packets.add(packet);
+			lastTimeStamp = packet.getTimeStamp();
+		}
+	}
+
+	/**
+	 * Groups packets into sessions as they are added. A TCP session is
+	 * reassembled and analyzed when it is evicted, which is at finish() unless
+	 * timeouts are set, so the sessions of a whole trace are still
+	 * reassembled in parallel. UDP flows idle for the idle timeout are
+	 * evicted with them, and so are the DNS packets older than the idle
+	 * timeout.
+	 */
+	private class SessionAssembler implements ISessionAssembler {
+
+		private final FlowTable<OpenSession> openSessions;
+		private final DnsCorrelationIndex dnsIndex = new DnsCorrelationIndex();
+		private final FlowTable<OpenUdpFlow> openUdpFlows;
+		private List<Session> completedSessions = new ArrayList<Session>();
+		private final double idleTimeout;
+		private final double closedTimeout;
+		private double nextEviction;
+		private int packetIndex = 0;
+		private int position = -1;
+		private boolean finished = false;
+
+		SessionAssembler(int packets, double idleTimeout, double closedTimeout) {
+			openSessions = new FlowTable<OpenSession>(packets / 16);
+			openUdpFlows = new FlowTable<OpenUdpFlow>(packets / 64);
+			this.idleTimeout = idleTimeout;
+			this.closedTimeout = closedTimeout;
+			this.nextEviction = Math.min(idleTimeout, closedTimeout);
+		}
+
+		@Override
+		public void addPacket(PacketInfo packet) {
+			if (finished) {
+				throw new IllegalStateException("Session assembly is finished");
+			}
+			position++;
+			if (packet.getTimeStamp() >= nextEviction) {
+				evict(packet.getTimeStamp());
+			}
 
 			/**
-			 * Save DNS packets
+			 * Save UDP packets, DNS packets are in the DNS index
 			 */
 			if (!(packet.getPacket() instanceof TCPPacket)) {
-				
-				// Check for DNS packets
 				if (packet.getPacket() instanceof UDPPacket) {
-					UDPPacket udp = (UDPPacket) packet.getPacket();
-					udpPackets.add(packet);
-					if (udp.isDNSPacket()) {
-						dnsPackets.add(packet);
-						DomainNameSystem dns = udp.getDns();
-						if (dns != null && dns.isResponse()) {
-							for (InetAddress inet : dns.getIpAddresses()) {
-								hostMap.put(inet, dns.getDomainName());
-							}
-						}
-					}
+					dnsIndex.add(packet, position);
+					addUdpPacket(packet);
 				}
-				continue;
+				return;
 			}
 
 			/**
@@ -109,7 +263,7 @@ public class SessionManagerImpl implements ISessionManager {
 
 			default:
 				logger.warn("29 - Unable to determine packet direction");
-				continue;
+				return;
 			}
 
 			// Clear TCP Info
@@ -117,332 +271,465 @@ public class SessionManagerImpl implements ISessionManager {
 
 			/**
 			 * Creates a new TCP Session using remoteIP, remotePort, localPort.
-			 * Stores the session in allSessions Collection
+			 * Stores the session in openSessions
 			 * and adds the current packet to the session.
 			 */
-			String key = localPort + " " + remotePort + " " + remoteIP.getHostAddress();
-			Session session = allSessions.get(key);
-			if (session == null) {
-				session = new Session(remoteIP, remotePort, localPort);
-				
-				/**
-				 * Search for DNS request/response from the last to the first element
-				 * and saves dnsResponsePacket in the current session if the DNS response remote IP
-				 * matches the session remote IP. 
-				 * Finds DNS response packet.
-				 */
-				ListIterator<PacketInfo> iter = dnsPackets.listIterator(dnsPackets.size());
-				DomainNameSystem dns = null;
-				while (iter.hasPrevious()) {
-					PacketInfo dnsPacket = iter.previous();
-					UDPPacket udp = ((UDPPacket) dnsPacket.getPacket());
-					dns = udp.getDns();
-					if (dns != null && dns.isResponse() && dns.getIpAddresses().contains(remoteIP)) {
-						session.setDnsResponsePacket(dnsPacket);
-						break;
-					}
-					dns = null;
-				}
-				
-				// If DNS response packet was found
-				if (dns != null) {
-					/**
-					 *  Loop through all DNS packets to find DNS packet
-					 *  matching the domain name of the response DNS packet.
-					 *  Then store remoteHostName and the DNS request packet
-					 *  in the current session.
-					 */
-					
-					iter = dnsPackets.listIterator();
-					String domainName = dns.getDomainName();
-					while (iter.hasNext()) {
-						PacketInfo pac = iter.next();
-						UDPPacket udp = ((UDPPacket) pac.getPacket());
-						dns = udp.getDns();
-						if (dns != null && domainName.equals(dns.getDomainName())) {
-							if (session.getDnsRequestPacket() == null && !dns.isResponse()) {
-								session.setRemoteHostName(domainName);
-								session.setDnsRequestPacket(pac);
-							}
-							
-							// Remove from DNS packets so that it is not used again
-							iter.remove();
-							
-							// Stop processing once response is reached
-							if (pac == session.getDnsResponsePacket()) {
-								break;
-							}
-						}
-					}
-				} else {
-					session.setRemoteHostName(hostMap.get(remoteIP));
-				}
+			long key = openSessions.key(packet.getRemoteAddressId(), remoteIP, localPort, remotePort);
+			OpenSession open = openSessions.get(key);
+			if (open == null) {
+				Session session = new Session(remoteIP, remotePort, localPort);
+
+				// Name the session from the DNS lookup of its remote IP
+				dnsIndex.resolve(session, remoteIP, position);
+
 				// stores the created session
-				allSessions.put(key, session);
+				open = new OpenSession(key, session);
+				openSessions.put(key, open);
 			} // END: Create new session
-			
-			session.getPackets().add(packet);
-			session.getPktIndex().add(packetIndex++);
-		} // END: Iterating through all packets
-		logger.debug("end of first looping, now got session: "+allSessions.size());
-		logger.debug("dns packet: "+dnsPackets.size());
-		// Reassemble sessions
-		List<Session> sessions = new ArrayList<Session>(allSessions.values());
-		Reassembler upl = new Reassembler();
-		Reassembler dol = new Reassembler();
-		for (int sessionIndex = 0; sessionIndex < sessions.size(); ++sessionIndex) {
-			
-			// Iterator is not used because items may be added to list during.
-			// iterations
-			Session pSes = sessions.get(sessionIndex);
-			// Reset variables
-			boolean bTerminated = false;
-			upl.clear();
-			dol.clear();
-			//logger.debug("Session index: "+sessionIndex+" has packets: "+pSes.getPackets().size());
-			PacketInfo lastPacket = null;
-			for (PacketInfo packetInfo: pSes.getPackets()) {
-				
-				TCPPacket pac = (TCPPacket) packetInfo.getPacket();
-				
-				pSes.setSsl(pac.isSsl());
-				
 
-				Reassembler reassembledSession;
-				switch (packetInfo.getDir()) {
-				case UPLINK:
-					reassembledSession = upl;
-					break;
+			open.session.getPackets().add(packet);
+			open.session.getPktIndex().add(packetIndex++);
+			open.lastTimeStamp = packet.getTimeStamp();
+			open.closed |= tcp.isFIN() || tcp.isRST();
+		}
 
-				case DOWNLINK:
-					reassembledSession = dol;
-					break;
+		/**
+		 * Adds a UDP packet to its flow, packets without a direction are
+		 * left out of UDP sessions.
+		 */
+		private void addUdpPacket(PacketInfo packet) {
+			UDPPacket udp = (UDPPacket) packet.getPacket();
+			long key;
+			switch (packet.getDir()) {
+			case UPLINK:
+				key = openUdpFlows.key(packet.getRemoteAddressId(), udp.getDestinationIPAddress(), udp.getSourcePort(),
+						udp.getDestinationPort());
+				break;
 
-				default:
-					logger.warn("91 - No direction for packet");
-					continue;
+			case DOWNLINK:
+				key = openUdpFlows.key(packet.getRemoteAddressId(), udp.getSourceIPAddress(), udp.getDestinationPort(),
+						udp.getSourcePort());
+				break;
+
+			default:
+				logger.warn("29 - Unable to determine packet direction");
+				return;
+			}
+			OpenUdpFlow flow = openUdpFlows.get(key);
+			if (flow == null) {
+				flow = new OpenUdpFlow(key);
+				openUdpFlows.put(key, flow);
+			}
+			flow.add(packet, position);
+		}
+
+		/**
+		 * Builds the UDP sessions of the flows, the DNS packets that named a
+		 * TCP session are left out. The packets of the flows are merged back
+		 * into the order they were added in, so the sessions are in the order
+		 * of their first packet that is left, as a single pass over the trace
+		 * creates them.
+		 */
+		private List<Session> udpSessions(List<OpenUdpFlow> flows) {
+			int count = 0;
+			for (OpenUdpFlow flow : flows) {
+				count += flow.packets.size();
+			}
+			long[] order = new long[count];
+			List<PacketInfo> flowPackets = new ArrayList<PacketInfo>(count);
+			for (OpenUdpFlow flow : flows) {
+				for (int i = 0; i < flow.packets.size(); i++) {
+					order[flowPackets.size()] = ((long) flow.positions[i] << 32) | flowPackets.size();
+					flowPackets.add(flow.packets.get(i));
 				}
+			}
+			Arrays.sort(order);
+			List<PacketInfo> udpPackets = new ArrayList<PacketInfo>(count);
+			for (long entry : order) {
+				udpPackets.add(flowPackets.get((int) entry));
+			}
+			if (!udpPackets.isEmpty()) {
+				try {
+					return getUDPSessions(udpPackets, dnsIndex);
+				} catch (IOException e) {
+					logger.error("Error", e);
+				}
+			}
+			return Collections.emptyList();
+		}
 
-				// If this is the initial sequence number
-				if (pac.isSYN()) {
-					packetInfo.setTcpInfo(TcpInfo.TCP_ESTABLISH);
-					if (reassembledSession.getBaseSeq() == null
-							|| reassembledSession.getBaseSeq().equals(pac.getSequenceNumber())) {
-						// Finds establish
-						reassembledSession.setBaseSeq(pac.getSequenceNumber());
-						if (pac.getPayloadLen() != 0) {
-							logger.warn("92 - Payload in establish packet");
-						}
-					} else {
+		@Override
+		public List<Session> pollCompletedSessions() {
+			List<Session> sessions = completedSessions;
+			completedSessions = new ArrayList<Session>();
+			Collections.sort(sessions);
+			return sessions;
+		}
 
-						// New TCP session
-						List<PacketInfo> currentList = pSes.getPackets();
-						int index = currentList.indexOf(packetInfo);
-						if (!bTerminated) {
-							logger.debug("28 - Session termination not found");
-						}
+		@Override
+		public List<Session> finish() {
+			finished = true;
+			logger.debug("end of first looping, now got session: " + openSessions.size());
+			logger.debug("dns packet: " + dnsIndex.size());
+			List<Session> sessions = new ArrayList<Session>(openSessions.size());
+			for (OpenSession open : openSessions.values()) {
+				sessions.add(open.session);
+			}
+			// Reassemble and analyze sessions
+			completedSessions.addAll(assembleSessions(sessions));
+			sessions = pollCompletedSessions();
+			/*Get UDP sessions.*/
+			sessions.addAll(udpSessions(openUdpFlows.values()));
+			return sessions;
+		}
 
-						// Correct packet list in original session
-						pSes.setPackets( new ArrayList<PacketInfo>(
-								currentList.subList(0, index)));
+		/**
+		 * Completes the sessions that are closed and have had no packet for
+		 * the closed timeout, or have had no packet for the idle timeout. The
+		 * UDP flows that have had no packet for the idle timeout are completed
+		 * next, then the DNS packets older than the idle timeout are evicted
+		 * from the DNS index.
+		 */
+		private void evict(double timeStamp) {
+			List<OpenSession> idleSessions = new ArrayList<OpenSession>();
+			for (OpenSession open : openSessions.values()) {
+				double idle = timeStamp - open.lastTimeStamp;
+				if (idle >= (open.closed ? closedTimeout : idleTimeout)) {
+					idleSessions.add(open);
+				}
+			}
+			List<Session> sessions = new ArrayList<Session>(idleSessions.size());
+			for (OpenSession open : idleSessions) {
+				openSessions.remove(open.key);
+				sessions.add(open.session);
+			}
+			if (!sessions.isEmpty()) {
+				completedSessions.addAll(assembleSessions(sessions));
+			}
 
-						// Create new session for remaining packets
-						Session newSession = new Session(
-								pSes.getRemoteIP(), pSes.getRemotePort(),
-								pSes.getLocalPort());
-						newSession.getPackets().addAll(currentList.subList(index, currentList.size()));
-						sessions.add(newSession);
+			List<OpenUdpFlow> flows = new ArrayList<OpenUdpFlow>();
+			for (OpenUdpFlow flow : openUdpFlows.values()) {
+				if (timeStamp - flow.lastTimeStamp >= idleTimeout) {
+					flows.add(flow);
+				}
+			}
+			for (OpenUdpFlow flow : flows) {
+				openUdpFlows.remove(flow.key);
+			}
+			completedSessions.addAll(udpSessions(flows));
+			dnsIndex.evict(timeStamp - idleTimeout);
+			nextEviction = timeStamp + Math.min(idleTimeout, closedTimeout) / 2;
+		}
+	}
 
-						// Break out of packet loop
-						break;
-					}
+	/**
+	 * Reassembles and analyzes the TCP sessions on a ForkJoinPool, each
+	 * session only touches its own packets. The result lists the sessions in
+	 * order, followed by the sessions split off at a new SYN in the order a
+	 * sequential pass splits them: one round of splits after the other.
+	 */
+	private List<Session> assembleSessions(List<Session> firstSessions) {
+		// presized, the tasks set the slots of their own sessions
+		List<List<Session>> splits = new ArrayList<List<Session>>(
+				Collections.nCopies(firstSessions.size(), (List<Session>) null));
+		AssembleSessions task = new AssembleSessions(firstSessions, splits, 0, firstSessions.size());
+		if (parallelism > 1 && firstSessions.size() > SLICE_SIZE) {
+			getPool().invoke(task);
+		} else {
+			task.compute();
+		}
 
-				} else {
-					//FIN: No more data from sender
-					//RST: Reset the connection
-					if (pac.isFIN() || pac.isRST()) {
-						// Calculate session termination info
-						if (!bTerminated && lastPacket != null) {
-							double delay = packetInfo.getTimeStamp()
-									- lastPacket.getTimeStamp();
-							pSes.setSessionTermination(new Termination(packetInfo,
-									delay));
-						}
+		List<Session> sessions = new ArrayList<Session>(firstSessions);
+		boolean more = true;
+		for (int round = 0; more; round++) {
+			more = false;
+			for (List<Session> split : splits) {
+				if (split != null && split.size() > round) {
+					sessions.add(split.get(round));
+					more = true;
+				}
+			}
+		}
+		return sessions;
+	}
 
-						// Mark session terminated
-						bTerminated = true;
-						if (pac.isFIN()) {
-							packetInfo.setTcpInfo(TcpInfo.TCP_CLOSE);
-						} else if (pac.isRST()) {
-							packetInfo.setTcpInfo(TcpInfo.TCP_RESET);
-						}
+	/**
+	 * Splits a TCP session where a SYN with a new initial sequence number
+	 * starts a new TCP session on the same ports. The packets are partitioned
+	 * in one scan that tracks the base sequence numbers the way the
+	 * reassembly sets them, the session keeps the packets before the first
+	 * such SYN.
+	 * 
+	 * @return the sessions split off in order, empty if the session was not
+	 *         split
+	 */
+	private List<Session> splitSession(Session pSes) {
+		List<PacketInfo> packets = pSes.getPackets();
+		List<Session> splitSessions = Collections.emptyList();
+		long ulBaseSeq = 0;
+		long dlBaseSeq = 0;
+		boolean ulBaseSet = false;
+		boolean dlBaseSet = false;
+		boolean bTerminated = false;
+		int start = 0;
+		for (int index = 0; index < packets.size(); index++) {
+			PacketInfo packetInfo = packets.get(index);
+			TCPPacket pac = (TCPPacket) packetInfo.getPacket();
+			boolean uplink;
+			switch (packetInfo.getDir()) {
+			case UPLINK:
+				uplink = true;
+				break;
 
-					}
+			case DOWNLINK:
+				uplink = false;
+				break;
 
-					// I believe this handles case where we have joined in the
-					// middle of a TCP session
-					if (reassembledSession.getBaseSeq() == null) {
-						switch (packetInfo.getDir()) {
-						case UPLINK:
-							upl.setBaseSeq(pac.getSequenceNumber());
-							dol.setBaseSeq(pac.getAckNumber());
-							break;
-						case DOWNLINK:
-							dol.setBaseSeq(pac.getSequenceNumber());
-							upl.setBaseSeq(pac.getAckNumber());
-							break;
-						default:
-							logger.error("Invalid packet direction");
-						}
+			default:
+				continue;
+			}
+
+			if (pac.isSYN()) {
+				if (uplink ? ulBaseSet && ulBaseSeq != pac.getSequenceNumber()
+						: dlBaseSet && dlBaseSeq != pac.getSequenceNumber()) {
+
+					// New TCP session
+					if (!bTerminated) {
+						logger.debug("28 - Session termination not found");
+					}
+					if (splitSessions.isEmpty()) {
+						splitSessions = new ArrayList<Session>();
 					}
+					splitSessions.add(newSplitSession(pSes, packets, start, index));
+					start = index;
+					ulBaseSet = false;
+					dlBaseSet = false;
+					bTerminated = false;
 				}
-
-				// Get appName (there really should be only one per TCP session
-				String appName = packetInfo.getAppName();
-				if (appName != null) {
-					pSes.getAppNames().add(appName);
-					assert (pSes.getAppNames().size() <=1)  : pSes.getAppNames().size() + " app names per TCP session: " + pSes.getAppNames();
+				if (uplink) {
+					ulBaseSeq = pac.getSequenceNumber();
+					ulBaseSet = true;
+				} else {
+					dlBaseSeq = pac.getSequenceNumber();
+					dlBaseSet = true;
 				}
-
-				long seqn = pac.getSequenceNumber() - reassembledSession.getBaseSeq();
-				if (seqn < 0) {
-					seqn += 0xFFFFFFFF;
-					seqn++; 
+			} else {
+				bTerminated |= pac.isFIN() || pac.isRST();
+
+				// joined in the middle of a TCP session
+				if (!(uplink ? ulBaseSet : dlBaseSet)) {
+					ulBaseSeq = uplink ? pac.getSequenceNumber() : pac.getAckNumber();
+					dlBaseSeq = uplink ? pac.getAckNumber() : pac.getSequenceNumber();
+					ulBaseSet = true;
+					dlBaseSet = true;
 				}
-				long seq = seqn;
+			}
+		}
+		if (splitSessions.isEmpty()) {
+			return splitSessions;
+		}
+		splitSessions.add(newSplitSession(pSes, packets, start, packets.size()));
 
-				if (reassembledSession.getSeq() == -1) {
-					reassembledSession.setSeq(seqn);
-				}
+		// the first part stays in the original session
+		pSes.setPackets(splitSessions.remove(0).getPackets());
+		return splitSessions;
+	}
 
-				if (seqn == reassembledSession.getSeq()) {
-					
-					if (seq == reassembledSession.getSeq() || (seq < reassembledSession.getSeq() && seq + pac.getPayloadLen() > reassembledSession.getSeq())) {
-						reassembledSession = doReassembleSession(pac, packetInfo, reassembledSession, pSes);
-					} 
+	private Session newSplitSession(Session pSes, List<PacketInfo> packets, int from, int to) {
+		Session newSession = new Session(pSes.getRemoteIP(), pSes.getRemotePort(), pSes.getLocalPort());
+		newSession.setPackets(new ArrayList<PacketInfo>(packets.subList(from, to)));
+		return newSession;
+	}
 
-					while (true) {
-						boolean bOODone = true;
-						List<PacketInfo> fixed = new ArrayList<PacketInfo>(
-								reassembledSession.getOoid().size());
-						for (PacketInfo pin1 : reassembledSession.getOoid()) {
-							TCPPacket tPacket1 = (TCPPacket) pin1.getPacket();
-
-							seqn = tPacket1.getSequenceNumber() - reassembledSession.getBaseSeq();
-							if (seqn < 0) {
-								seqn += 0xFFFFFFFF;
-								seqn++; 
-							}
-							
-							long seq2 = seqn; 
-
-							if (seqn == reassembledSession.getSeq()) {
-								
-								if (seq2 == reassembledSession.getSeq() || (seq2 < reassembledSession.getSeq() && seq2 + pac.getPayloadLen() > reassembledSession.getSeq())) {
-									reassembledSession = doReassembleSession(tPacket1, pin1, reassembledSession, pSes);
-								}
-								
-								fixed.add(pin1);
-								bOODone = false;
-							} else if (tPacket1.getPayloadLen() == 0
-									&& seqn == reassembledSession.getSeq() - 1 && tPacket1.isACK()
-									&& !tPacket1.isSYN() && !tPacket1.isFIN()
-									&& !tPacket1.isRST()) {
-								logger.warn("31 - ???");
-							}
-						}
-						reassembledSession.getOoid().removeAll(fixed);
-						if (bOODone) {
-							break;
-						}
-					}//end while true
+	/**
+	 * Reassembles the uplink and downlink data of a TCP session that was split
+	 * by splitSession().
+	 */
+	private void reassembleSession(Session pSes, Reassembler upl, Reassembler dol) {
+		// Reset variables
+		boolean bTerminated = false;
+		upl.clear();
+		dol.clear();
+		PacketInfo lastPacket = null;
+		PacketInfo synPacket = null;
+		for (PacketInfo packetInfo: pSes.getPackets()) {
+			
+			TCPPacket pac = (TCPPacket) packetInfo.getPacket();
+			
+			pSes.setSsl(pac.isSsl());
+			if (synPacket == null && pac.isSYN()) {
+				synPacket = packetInfo;
+			}
+			
 
-				} else { // out of order packet, i.e., seq != *XLseq
-					if (pac.getPayloadLen() == 0 && seqn == reassembledSession.getSeq() - 1
-							&& pac.isACK() && !pac.isSYN() && !pac.isFIN()
-							&& !pac.isRST()) {
-						
-						packetInfo.setTcpInfo(TcpInfo.TCP_KEEP_ALIVE);
-					} else {
-						reassembledSession.getOoid().add(packetInfo);
+			Reassembler reassembledSession;
+			switch (packetInfo.getDir()) {
+			case UPLINK:
+				reassembledSession = upl;
+				break;
+
+			case DOWNLINK:
+				reassembledSession = dol;
+				break;
+
+			default:
+				logger.warn("91 - No direction for packet");
+				continue;
+			}
+
+			// If this is the initial sequence number
+			if (pac.isSYN()) {
+				packetInfo.setTcpInfo(TcpInfo.TCP_ESTABLISH);
+				if (reassembledSession.getBaseSeq() == null
+						|| reassembledSession.getBaseSeq().equals(pac.getSequenceNumber())) {
+					// Finds establish
+					reassembledSession.setBaseSeq(pac.getSequenceNumber());
+					if (pac.getPayloadLen() != 0) {
+						logger.warn("92 - Payload in establish packet");
 					}
 				}
 
-				lastPacket = packetInfo;
-			} // packet loop
-			
-			pSes.setStorageDl(dol.getStorage().toByteArray());
-			pSes.setPacketOffsetsDl(dol.getPacketOffsets());
-			pSes.setPktRangesDl(dol.getPktRanges());
-			pSes.setStorageUl(upl.getStorage().toByteArray());
-			pSes.setPacketOffsetsUl(upl.getPacketOffsets());
-			pSes.setPktRangesUl(upl.getPktRanges());
-			
-			for (PacketInfo pinfo : dol.getOoid()) {
-				if (pinfo.getPacket().getPayloadLen() > 0) {
-					pinfo.setTcpInfo(TcpInfo.TCP_DATA_DUP);
+			} else {
+				//FIN: No more data from sender
+				//RST: Reset the connection
+				if (pac.isFIN() || pac.isRST()) {
+					// Calculate session termination info
+					if (!bTerminated && lastPacket != null) {
+						double delay = packetInfo.getTimeStamp()
+								- lastPacket.getTimeStamp();
+						pSes.setSessionTermination(new Termination(packetInfo,
+								delay));
+					}
+
+					// Mark session terminated
+					bTerminated = true;
+					if (pac.isFIN()) {
+						packetInfo.setTcpInfo(TcpInfo.TCP_CLOSE);
+					} else if (pac.isRST()) {
+						packetInfo.setTcpInfo(TcpInfo.TCP_RESET);
+					}
+
 				}
-			}
 
-			for (PacketInfo pinfo : upl.getOoid()) {
-				if (pinfo.getPacket().getPayloadLen() > 0) {
-					pinfo.setTcpInfo(TcpInfo.TCP_DATA_DUP);
+				// I believe this handles case where we have joined in the
+				// middle of a TCP session
+				if (reassembledSession.getBaseSeq() == null) {
+					switch (packetInfo.getDir()) {
+					case UPLINK:
+						upl.setBaseSeq(pac.getSequenceNumber());
+						dol.setBaseSeq(pac.getAckNumber());
+						break;
+					case DOWNLINK:
+						dol.setBaseSeq(pac.getSequenceNumber());
+						upl.setBaseSeq(pac.getAckNumber());
+						break;
+					default:
+						logger.error("Invalid packet direction");
+					}
 				}
 			}
-		} // END: Reassemble sessions
-		logger.debug("creating HttpReqResInfo for sessions: "+sessions.size());
-		for (Session sess : sessions) {
-			for (PacketInfo sPacket : sess.getPackets()) {
-				sess.setBytesTransferred(sess.getBytesTransferred() + sPacket.getLen());
-			}
-			this.analyzeACK(sess);
-			this.analyzeZeroWindow(sess);
-			this.analyzeRecoverPkts(sess);
-
-			// Parse HTTP request response info
-			try {
-				sess.setRequestResponseInfo(requestResponseBuilder.createRequestResponseInfo(sess));
-			} catch (IOException exe) {
-				logger.error("Error create RequestResponseInfo", exe);
-			}
-			for (HttpRequestResponseInfo rrinfo : sess.getRequestResponseInfo()) {
-				if (rrinfo.getDirection() == HttpDirection.REQUEST) {
-
-					// Assume first host found is same for entire session
-					if (sess.getDomainName() == null) {
-						String host = rrinfo.getHostName();
-						if (host != null) {
-							URI referrer = rrinfo.getReferrer();
-							sess.setRemoteHostName(host);
-							sess.setDomainName(referrer != null ? referrer.getHost() : host);
-						}
-					}
-				} else if (rrinfo.getDirection() == HttpDirection.RESPONSE && rrinfo.getContentLength() > 0) {
-					sess.setFileDownloadCount(sess.getFileDownloadCount() + 1);
+
+			// Get appName (there really should be only one per TCP session
+			String appName = packetInfo.getAppName();
+			if (appName != null) {
+				pSes.getAppNames().add(appName);
+				assert (pSes.getAppNames().size() <=1)  : pSes.getAppNames().size() + " app names per TCP session: " + pSes.getAppNames();
+			}
+
+			long seqn = pac.getSequenceNumber() - reassembledSession.getBaseSeq();
+			if (seqn < 0) {
+				seqn += 0xFFFFFFFF;
+				seqn++; 
+			}
+			long seq = seqn;
+
+			if (reassembledSession.getSeq() == -1) {
+				reassembledSession.setSeq(seqn);
+			}
+
+			if (seqn == reassembledSession.getSeq()) {
+				
+				if (seq == reassembledSession.getSeq() || (seq < reassembledSession.getSeq() && seq + pac.getPayloadLen() > reassembledSession.getSeq())) {
+					reassembledSession = doReassembleSession(pac, packetInfo, reassembledSession, pSes);
+				} 
+
+				// Reassemble held out of order packets that are now in order
+				PacketInfo ooPacket;
+				while ((ooPacket = reassembledSession.pollInOrder()) != null) {
+					reassembledSession = doReassembleSession((TCPPacket) ooPacket.getPacket(), ooPacket, reassembledSession, pSes);
+				}
+
+			} else { // out of order packet, i.e., seq != *XLseq
+				if (pac.getPayloadLen() == 0 && seqn == reassembledSession.getSeq() - 1
+						&& pac.isACK() && !pac.isSYN() && !pac.isFIN()
+						&& !pac.isRST()) {
 					
+					packetInfo.setTcpInfo(TcpInfo.TCP_KEEP_ALIVE);
+				} else {
+					reassembledSession.addOutOfOrder(seqn, packetInfo);
 				}
 			}
-			if (sess.getDomainName() == null) {
-				sess.setDomainName( sess.getRemoteHostName() != null ? sess.getRemoteHostName() : sess.getRemoteIP().getHostAddress());
+
+			lastPacket = packetInfo;
+		} // packet loop
+		
+		// first SYN for the waterfall of the requests
+		pSes.setSynPacket(synPacket);
+		pSes.setPayloadStorageDl(dol.getStorage());
+		pSes.setPacketOffsetsDl(dol.getPacketOffsets());
+		pSes.setPktRangesDl(dol.getPktRanges());
+		pSes.setPayloadStorageUl(upl.getStorage());
+		pSes.setPacketOffsetsUl(upl.getPacketOffsets());
+		pSes.setPktRangesUl(upl.getPktRanges());
+		
+		for (PacketInfo pinfo : dol.getOoid()) {
+			if (pinfo.getPacket().getPayloadLen() > 0) {
+				pinfo.setTcpInfo(TcpInfo.TCP_DATA_DUP);
 			}
-		}		
-		upl.clear();
-		dol.clear();
-		Collections.sort(sessions);
-		/*Get UDP sessions.*/
-		if(!udpPackets.isEmpty()){
-			List<Session> udpSessions;
-			try {
-				udpSessions = getUDPSessions(udpPackets,sessions);
-				sessions.addAll(udpSessions);
-			} catch (IOException e) {
-				logger.error("Error", e);
+		}
+
+		for (PacketInfo pinfo : upl.getOoid()) {
+			if (pinfo.getPacket().getPayloadLen() > 0) {
+				pinfo.setTcpInfo(TcpInfo.TCP_DATA_DUP);
 			}
-			
 		}
+	}
 
-		return sessions;
+	/**
+	 * Analyzes the TCP packets of a reassembled session and parses its HTTP
+	 * requests and responses.
+	 */
+	private void analyzeSession(Session sess) {
+		this.analyzeTcp(sess);
+
+		// Parse HTTP request response info
+		try {
+			sess.setRequestResponseInfo(requestResponseBuilder.createRequestResponseInfo(sess));
+		} catch (IOException exe) {
+			logger.error("Error create RequestResponseInfo", exe);
+		}
+		for (HttpRequestResponseInfo rrinfo : sess.getRequestResponseInfo()) {
+			if (rrinfo.getDirection() == HttpDirection.REQUEST) {
+
+				// Assume first host found is same for entire session
+				if (sess.getDomainName() == null) {
+					String host = rrinfo.getHostName();
+					if (host != null) {
+						URI referrer = rrinfo.getReferrer();
+						sess.setRemoteHostName(host);
+						sess.setDomainName(referrer != null ? referrer.getHost() : host);
+					}
+				}
+			} else if (rrinfo.getDirection() == HttpDirection.RESPONSE && rrinfo.getContentLength() > 0) {
+				sess.setFileDownloadCount(sess.getFileDownloadCount() + 1);
+				
+			}
+		}
+		if (sess.getDomainName() == null) {
+			sess.setDomainName( sess.getRemoteHostName() != null ? sess.getRemoteHostName() : sess.getRemoteIP().getHostAddress());
+		}
 	}
+
 	public Reassembler doReassembleSession(TCPPacket pac, PacketInfo packetInfo, Reassembler reassembler, Session session){
 		Reassembler reassembledSession = reassembler;
 		if (pac.getPayloadLen() > 0) {
@@ -453,13 +740,13 @@ public class SessionManagerImpl implements ISessionManager {
 			int dataOffset = pac.getDataOffset();
 			if (data.length >= dataOffset + effectivePayloadLen) {
 				reassembledSession.getPacketOffsets().put(reassembledSession.getStorage().size(), packetInfo);
-				reassembledSession.getStorage().write(data, dataOffset, effectivePayloadLen);
+				reassembledSession.getStorage().append(data, dataOffset, effectivePayloadLen);
 				int offset = reassembledSession.getStorage().size() - effectivePayloadLen; 
 				if(reassembledSession.getPktRanges().size() == 0) {
 					offset = 0;
 				}
 				reassembledSession.getPktRanges().add(new PacketRangeInStorage(offset, effectivePayloadLen, packetInfo.getPacketId()));
-				pSes.getpStorageBothRAW().getStorage().write(data, dataOffset, effectivePayloadLen); 
+				pSes.getpStorageBothRAW().getStorage().append(data, dataOffset, effectivePayloadLen); 
 				 
 				reassembledSession.setSeq(reassembledSession.getSeq() + effectivePayloadLen);
 			}
@@ -473,96 +760,129 @@ public class SessionManagerImpl implements ISessionManager {
 		return reassembledSession;
 	}
 	/**
-	 * Analyze the packet to find the TCPInfo. Marked flags: TCP_ACK,
-	 * TCP_ACK_DUP, TCP_WINDOW_UPDATE, TCP_KEEP_ALIVE_ACK
+	 * Classifies the TCP packets of a session and totals its bytes in one pass.
+	 * Every packet goes through the ACK, zero window and recovery steps in
+	 * turn; each step only looks at the packet itself and at state left by
+	 * the packets before it, so one pass marks the same TcpInfo as a pass per
+	 * step.
 	 */
-	private void analyzeACK(Session sess) {
-
-		Map<Long, Integer> ulAckWinSize = new HashMap<Long, Integer>();
-		Map<Long, Integer> dlAckWinSize = new HashMap<Long, Integer>();
-
-		Set<Long> ulAliveAck = new HashSet<Long>();
-		Set<Long> dlAliveAck = new HashSet<Long>();
-
+	private void analyzeTcp(Session sess) {
+		TcpState state = new TcpState(sess.getPackets().size());
+		long bytes = sess.getBytesTransferred();
 		for (PacketInfo pinfo : sess.getPackets()) {
+			bytes += pinfo.getLen();
 			TCPPacket pack = (TCPPacket) pinfo.getPacket();
+			analyzeACK(pinfo, pack, state);
+			analyzeZeroWindow(pinfo, pack);
+			analyzeRecoverPkts(pinfo, pack, state);
+		}
+		sess.setBytesTransferred(bytes);
+	}
 
-			if (!pack.isACK()) {
-				continue;
-			}
-
-			long ackNum = pack.getAckNumber();
-			int win = pack.getWindow();
+	/**
+	 * Sequence and acknowledgment numbers seen so far in each direction of a
+	 * session, keyed by the 32 bit numbers themselves.
+	 */
+	private static class TcpState {
 
-			Map<Long, Integer> pAckWinSize;
-			Set<Long> pAliveAck;
-			Set<Long> pAliveAck2;
+		private final LongIntTable ulAckWinSize;
+		private final LongIntTable dlAckWinSize;
+		private final LongIntTable ulAliveAck = new LongIntTable();
+		private final LongIntTable dlAliveAck = new LongIntTable();
 
-			switch (pinfo.getDir()) {
-			case UPLINK:
-				pAckWinSize = ulAckWinSize;
-				pAliveAck = ulAliveAck;
-				pAliveAck2 = dlAliveAck;
-				break;
+		// "Recover data": its seq equals to the duplicated ACK
+		// "Recover ack": its ack equals to the duplicated DATA + payload len
+		private final LongIntTable dupAckUl = new LongIntTable();
+		private final LongIntTable dupAckDl = new LongIntTable();
+		private final LongIntTable dupSeqUl = new LongIntTable();
+		private final LongIntTable dupSeqDl = new LongIntTable();
+
+		TcpState(int packets) {
+			ulAckWinSize = new LongIntTable(packets);
+			dlAckWinSize = new LongIntTable(packets);
+		}
+	}
 
-			case DOWNLINK:
-				pAckWinSize = dlAckWinSize;
-				pAliveAck = dlAliveAck;
-				pAliveAck2 = ulAliveAck;
-				break;
+	/**
+	 * Analyze the packet to find the TCPInfo. Marked flags: TCP_ACK,
+	 * TCP_ACK_DUP, TCP_WINDOW_UPDATE, TCP_KEEP_ALIVE_ACK
+	 */
+	private void analyzeACK(PacketInfo pinfo, TCPPacket pack, TcpState state) {
+		if (!pack.isACK()) {
+			return;
+		}
 
-			default:
-				logger.warn("97 - No direction for packet");
-				continue;
-			}
+		long ackNum = pack.getAckNumber();
+		int win = pack.getWindow();
+
+		LongIntTable pAckWinSize;
+		LongIntTable pAliveAck;
+		LongIntTable pAliveAck2;
+
+		switch (pinfo.getDir()) {
+		case UPLINK:
+			pAckWinSize = state.ulAckWinSize;
+			pAliveAck = state.ulAliveAck;
+			pAliveAck2 = state.dlAliveAck;
+			break;
+
+		case DOWNLINK:
+			pAckWinSize = state.dlAckWinSize;
+			pAliveAck = state.dlAliveAck;
+			pAliveAck2 = state.ulAliveAck;
+			break;
+
+		default:
+			logger.warn("97 - No direction for packet");
+			return;
+		}
 
-			if (pinfo.getTcpInfo() == TcpInfo.TCP_KEEP_ALIVE) {
-				pAliveAck.add(pack.getSequenceNumber());
-				continue;
-			}
+		if (pinfo.getTcpInfo() == TcpInfo.TCP_KEEP_ALIVE) {
+			pAliveAck.add(pack.getSequenceNumber());
+			return;
+		}
 
-			int tcpFlag;
-			if (pack.isFIN()) {
-				tcpFlag = 1;
-			} else if (pack.isSYN()) {
-				tcpFlag = 2;
-			} else if (pack.isRST()) {
-				tcpFlag = 4;
-			} else {
-				tcpFlag = 0;
+		int tcpFlag;
+		if (pack.isFIN()) {
+			tcpFlag = 1;
+		} else if (pack.isSYN()) {
+			tcpFlag = 2;
+		} else if (pack.isRST()) {
+			tcpFlag = 4;
+		} else {
+			tcpFlag = 0;
+		}
+		long key = ((ackNum << 32) | tcpFlag);
+
+		// TODO Verify change in asserts ie getTCP!=null is ok
+		int payloadLen = pack.getPayloadLen();
+		if (pAliveAck2.containsKey(ackNum - 1) && payloadLen == 0
+				&& !pack.isSYN() && !pack.isFIN() && !pack.isRST()) {
+			if (pinfo.getTcpInfo() != null) {
+				logger.warn("34 - Packet already typed");
 			}
-			long key = ((ackNum << 32) | tcpFlag);
-
-			// TODO Verify change in asserts ie getTCP!=null is ok
-			int payloadLen = pack.getPayloadLen();
-			if (pAliveAck2.contains(ackNum - 1) && payloadLen == 0
-					&& !pack.isSYN() && !pack.isFIN() && !pack.isRST()) {
+			pinfo.setTcpInfo(TcpInfo.TCP_KEEP_ALIVE);
+		} else if (!pAckWinSize.containsKey(key)) {
+			pAckWinSize.put(key, win);
+			if (payloadLen == 0 && !pack.isSYN() && !pack.isFIN() && !pack.isRST()) {
 				if (pinfo.getTcpInfo() != null) {
-					logger.warn("34 - Packet already typed");
+					logger.warn("98 - Packet already typed");
 				}
-				pinfo.setTcpInfo(TcpInfo.TCP_KEEP_ALIVE);
-			} else if (!pAckWinSize.containsKey(key)) {
-				pAckWinSize.put(key, win);
-				if (payloadLen == 0 && !pack.isSYN() && !pack.isFIN() && !pack.isRST()) {
-					if (pinfo.getTcpInfo() != null) {
-						logger.warn("98 - Packet already typed");
-					}
-					pinfo.setTcpInfo(TcpInfo.TCP_ACK);
+				pinfo.setTcpInfo(TcpInfo.TCP_ACK);
+			}
+		} else {
+			int prevWin = pAckWinSize.get(key, win);
+			if (win == prevWin) {
+				if (payloadLen == 0 && !pack.isRST()
+						&& pinfo.getTcpInfo() != TcpInfo.TCP_KEEP_ALIVE) {
+					
+					pinfo.setTcpInfo(TcpInfo.TCP_ACK_DUP);
 				}
 			} else {
-				int prevWin = pAckWinSize.get(key);
-				if (win == prevWin) {
-					if (payloadLen == 0 && !pack.isRST()
-							&& pinfo.getTcpInfo() != TcpInfo.TCP_KEEP_ALIVE) {
-						
-						pinfo.setTcpInfo(TcpInfo.TCP_ACK_DUP);
-					}
-				} else {
-					pAckWinSize.put(key, win);
-					if (payloadLen == 0 && !pack.isRST()
-							&& pinfo.getTcpInfo() != TcpInfo.TCP_KEEP_ALIVE) {
-						pinfo.setTcpInfo(TcpInfo.TCP_WINDOW_UPDATE);
-					}
+				pAckWinSize.put(key, win);
+				if (payloadLen == 0 && !pack.isRST()
+						&& pinfo.getTcpInfo() != TcpInfo.TCP_KEEP_ALIVE) {
+					pinfo.setTcpInfo(TcpInfo.TCP_WINDOW_UPDATE);
 				}
 			}
 		}
@@ -571,13 +891,10 @@ public class SessionManagerImpl implements ISessionManager {
 	/**
 	 * Analyze the packet to find the TCPInfo. Marked flags: TCP_ZERO_WINDOW
 	 */
-	private void analyzeZeroWindow(Session sess) {
-		for (PacketInfo pInfo : sess.getPackets()) {
-			TCPPacket tPacket = (TCPPacket) pInfo.getPacket();
-			if (tPacket.getPayloadLen() == 0 && tPacket.getWindow() == 0 && !tPacket.isSYN()
-					&& !tPacket.isFIN() && !tPacket.isRST()) {
-				pInfo.setTcpInfo(TcpInfo.TCP_ZERO_WINDOW);
-			}
+	private void analyzeZeroWindow(PacketInfo pInfo, TCPPacket tPacket) {
+		if (tPacket.getPayloadLen() == 0 && tPacket.getWindow() == 0 && !tPacket.isSYN()
+				&& !tPacket.isFIN() && !tPacket.isRST()) {
+			pInfo.setTcpInfo(TcpInfo.TCP_ZERO_WINDOW);
 		}
 	}
 
@@ -585,136 +902,114 @@ public class SessionManagerImpl implements ISessionManager {
 	 * Analyze the packet to find the TCPInfo. Marked flags: TCP_DATA_RECOVER,
 	 * TCP_ACK_RECOVER
 	 */
-	private void analyzeRecoverPkts(Session sess) {
-
-		// "Recover data": its seq equals to the duplicated ACK
-		// "Recover ack": its ack equals to the duplicated DATA + payload len
-
-		Map<Long, TCPPacket> dupAckUl = new HashMap<Long, TCPPacket>();
-		Map<Long, TCPPacket> dupAckDl = new HashMap<Long, TCPPacket>();
-		Map<Long, TCPPacket> dupSeqUl = new HashMap<Long, TCPPacket>();
-		Map<Long, TCPPacket> dupSeqDl = new HashMap<Long, TCPPacket>();
-
-		for (PacketInfo pInfo : sess.getPackets()) {
-			TCPPacket tPacket = (TCPPacket) pInfo.getPacket();
-
-			TcpInfo pType = pInfo.getTcpInfo();
-			PacketDirection dir = pInfo.getDir();
-			if (pType == TcpInfo.TCP_DATA_DUP) {
-				if (dir == PacketDirection.UPLINK) {
-					dupSeqUl.put(tPacket.getSequenceNumber() + tPacket.getPayloadLen(), tPacket);
-				} else {
-					dupSeqDl.put(tPacket.getSequenceNumber() + tPacket.getPayloadLen(), tPacket);
-				}
+	private void analyzeRecoverPkts(PacketInfo pInfo, TCPPacket tPacket, TcpState state) {
+		TcpInfo pType = pInfo.getTcpInfo();
+		PacketDirection dir = pInfo.getDir();
+		if (pType == TcpInfo.TCP_DATA_DUP) {
+			if (dir == PacketDirection.UPLINK) {
+				state.dupSeqUl.add(tPacket.getSequenceNumber() + tPacket.getPayloadLen());
+			} else {
+				state.dupSeqDl.add(tPacket.getSequenceNumber() + tPacket.getPayloadLen());
 			}
+		}
 
-			// Duplicated data means duplicated ack as well
-			if (pType == TcpInfo.TCP_ACK_DUP || pType == TcpInfo.TCP_DATA_DUP) {
-				if (dir == PacketDirection.UPLINK) {
-					dupAckUl.put(tPacket.getAckNumber(), tPacket);
-				} else {
-					dupAckDl.put(tPacket.getAckNumber(), tPacket);
-				}
+		// Duplicated data means duplicated ack as well
+		if (pType == TcpInfo.TCP_ACK_DUP || pType == TcpInfo.TCP_DATA_DUP) {
+			if (dir == PacketDirection.UPLINK) {
+				state.dupAckUl.add(tPacket.getAckNumber());
+			} else {
+				state.dupAckDl.add(tPacket.getAckNumber());
 			}
+		}
 
-			if (pType == TcpInfo.TCP_DATA) {
-				if (dir == PacketDirection.UPLINK
-						&& dupAckDl.containsKey(tPacket.getSequenceNumber())) {
-					pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
-				}
-				if (dir == PacketDirection.DOWNLINK
-						&& dupAckUl.containsKey(tPacket.getSequenceNumber())) {
-					pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
-				}
+		if (pType == TcpInfo.TCP_DATA) {
+			if (dir == PacketDirection.UPLINK
+					&& state.dupAckDl.containsKey(tPacket.getSequenceNumber())) {
+				pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
+			}
+			if (dir == PacketDirection.DOWNLINK
+					&& state.dupAckUl.containsKey(tPacket.getSequenceNumber())) {
+				pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
 			}
+		}
 
-			if (pType == TcpInfo.TCP_ACK) {
-				if (dir == PacketDirection.UPLINK
-						&& dupSeqDl.containsKey(tPacket.getAckNumber())) {
-					pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
-				}
-				if (dir == PacketDirection.DOWNLINK
-						&& dupSeqUl.containsKey(tPacket.getAckNumber())) {
-					pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
-				}
+		if (pType == TcpInfo.TCP_ACK) {
+			if (dir == PacketDirection.UPLINK
+					&& state.dupSeqDl.containsKey(tPacket.getAckNumber())) {
+				pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
 			}
+			if (dir == PacketDirection.DOWNLINK
+					&& state.dupSeqUl.containsKey(tPacket.getAckNumber())) {
+				pInfo.setTcpInfo(TcpInfo.TCP_DATA_RECOVER);
+			}
+		}
 
-			// A special case:
-			// DL: TCP_ACK_DUP with ack = 1
-			// DL: TCP_ACK_DUP with ack = 1
-			// UL: TCP_ACK with seq = 1
-			// UL: TCP_DATA with seq = 1 <==== This is NOT a DATA_RECOVER
-			if (pType == TcpInfo.TCP_ACK || pType == TcpInfo.TCP_ACK_DUP
-					|| pType == TcpInfo.TCP_ACK_RECOVER) {
-				if (dir == PacketDirection.UPLINK) {
-					dupAckDl.remove(tPacket.getSequenceNumber());
-				}
-				if (dir == PacketDirection.DOWNLINK) {
-					dupAckUl.remove(tPacket.getSequenceNumber());
-				}
+		// A special case:
+		// DL: TCP_ACK_DUP with ack = 1
+		// DL: TCP_ACK_DUP with ack = 1
+		// UL: TCP_ACK with seq = 1
+		// UL: TCP_DATA with seq = 1 <==== This is NOT a DATA_RECOVER
+		if (pType == TcpInfo.TCP_ACK || pType == TcpInfo.TCP_ACK_DUP
+				|| pType == TcpInfo.TCP_ACK_RECOVER) {
+			if (dir == PacketDirection.UPLINK) {
+				state.dupAckDl.remove(tPacket.getSequenceNumber());
+			}
+			if (dir == PacketDirection.DOWNLINK) {
+				state.dupAckUl.remove(tPacket.getSequenceNumber());
 			}
+		}
 
-			// DL: TCP_DATA_DUP with seq = 1, len = 2
-			// DL: TCP_DATA_DUP with seq = 1, len = 2
-			// UL: TCP_DATA with ack = 3
-			// UL: TCP_ACK with ack = 3 <==== This is NOT an ACK_RECOVER
+		// DL: TCP_DATA_DUP with seq = 1, len = 2
+		// DL: TCP_DATA_DUP with seq = 1, len = 2
+		// UL: TCP_DATA with ack = 3
+		// UL: TCP_ACK with ack = 3 <==== This is NOT an ACK_RECOVER
 
-			// Duplicated data means duplicated ack as well
-			// But vise versa is not true
-			if (pType == TcpInfo.TCP_DATA || pType == TcpInfo.TCP_DATA_RECOVER) {
-				if (dir == PacketDirection.UPLINK) {
-					dupAckUl.remove(tPacket.getAckNumber());
-				}
-				if (dir == PacketDirection.DOWNLINK) {
-					dupAckDl.remove(tPacket.getAckNumber());
-				}
+		// Duplicated data means duplicated ack as well
+		// But vise versa is not true
+		if (pType == TcpInfo.TCP_DATA || pType == TcpInfo.TCP_DATA_RECOVER) {
+			if (dir == PacketDirection.UPLINK) {
+				state.dupAckUl.remove(tPacket.getAckNumber());
+			}
+			if (dir == PacketDirection.DOWNLINK) {
+				state.dupAckDl.remove(tPacket.getAckNumber());
+			}
+		}
+	}
+	/**
+	 * Removes the DNS packets of the lookups that TCP sessions were named
+	 * from, as recorded by the DNS index when the sessions took them.
+	 *
+	 * @return UDP packets that are not part of a TCP connection
+	 */
+	private List<PacketInfo> removeTcpDnsPackets(List<PacketInfo> udpPackets, DnsCorrelationIndex dnsIndex) {
+		List<PacketInfo> remaining = new ArrayList<PacketInfo>(udpPackets.size());
+		for (PacketInfo pInfo : udpPackets) {
+			UDPPacket udp = (UDPPacket) pInfo.getPacket();
+			DomainNameSystem dns = udp.isDNSPacket() ? udp.getDns() : null;
+			if (dns == null || !dnsIndex.isTaken(dns)) {
+				remaining.add(pInfo);
 			}
 		}
+		return remaining;
 	}
+
 	/**
 	 * Get the UDP sessions from different UDP packets.
 	 * @return Collection of TCPSession objects containing only UDP packets
 	 * */
 		
 		private List<Session> getUDPSessions(
-				List<PacketInfo> udpPackets,List<Session> sessions)throws IOException{
-			Map<String, Session> allUDPSessions = new LinkedHashMap<String, Session>();	
-			ListIterator<PacketInfo> iter = null;// = udpPackets.listIterator();//(udpPackets.size());
+				List<PacketInfo> udpPackets,DnsCorrelationIndex dnsIndex)throws IOException{
+			FlowTable<Session> allUDPSessions = new FlowTable<Session>(udpPackets.size() / 4);
 			DomainNameSystem dns = null;
 			Reassembler rAssembler1 = new Reassembler();
 			Reassembler rAssembler2 = new Reassembler();
 
 			/*Remove all the dns packets part of TCP connections*/
-			for (Session sess : sessions) {
-				iter = udpPackets.listIterator();
-				while (iter.hasNext()) {
-					PacketInfo pInfo = iter.next();
-					UDPPacket udp = ((UDPPacket) pInfo.getPacket());
-					if(udp.isDNSPacket()) {
-						dns = udp.getDns();
-						if(dns != null){
-							if(!dns.isResponse()) {
-								if(sess.getDnsRequestPacket() != null) {
-									String domainName = ((UDPPacket)sess.getDnsRequestPacket().getPacket()).getDns().getDomainName();
-									if(domainName.equals(dns.getDomainName())) {
-											iter.remove();
-									}									
-								}
-							} else {
-								if(sess.getDnsResponsePacket() != null) {
-									String domainName = ((UDPPacket)sess.getDnsResponsePacket().getPacket()).getDns().getDomainName();
-									if(domainName.equals(dns.getDomainName())
-										&& (dns.getIpAddresses().contains(sess.getRemoteIP()))) {
-										iter.remove();
-									}
-								}
-							}
-						}
-					}
-				}
-			}
+			List<PacketInfo> udpOnlyPackets = removeTcpDnsPackets(udpPackets, dnsIndex);
+
 		/*Create a UDP session for those UDP packets which are not associated with TCP connection*/	
-			for (PacketInfo packet : udpPackets) {
+			for (PacketInfo packet : udpOnlyPackets) {
 				UDPPacket udp = (UDPPacket) packet.getPacket();
 				int localPort;
 				int remotePort;
@@ -734,7 +1029,7 @@ public class SessionManagerImpl implements ISessionManager {
 						logger.warn("29 - Unable to determine packet direction");
 						continue;
 				}
-				String key = localPort + " " + remotePort + " " + remoteIP.getHostAddress();
+				long key = allUDPSessions.key(packet.getRemoteAddressId(), remoteIP, localPort, remotePort);
 				Session session = allUDPSessions.get(key);
 				if (session == null) {
 					session = new Session(remoteIP, remotePort, localPort);
@@ -785,7 +1080,7 @@ public class SessionManagerImpl implements ISessionManager {
 						int dataOffset = packet.getDataOffset();
 						if (data.length >= dataOffset + packetLen) {
 							reassembledSession.getPacketOffsets().put(reassembledSession.getStorage().size(), packetInfo);
-							reassembledSession.getStorage().write(data, dataOffset, packetLen);
+							reassembledSession.getStorage().append(data, dataOffset, packetLen);
 						}
 					}
 					
@@ -794,9 +1089,9 @@ public class SessionManagerImpl implements ISessionManager {
 					
 						
 				}
-				session.setStorageDl( rAssembler2.getStorage().toByteArray());
+				session.setPayloadStorageDl(rAssembler2.getStorage());
 				session.setPacketOffsetsDl(rAssembler2.getPacketOffsets());
-				session.setStorageUl(rAssembler1.getStorage().toByteArray());
+				session.setPayloadStorageUl(rAssembler1.getStorage());
 				session.setPacketOffsetsUl(rAssembler1.getPacketOffsets());
 
 			}
@@ -826,4 +1121,58 @@ public class SessionManagerImpl implements ISessionManager {
 			rAssembler2.clear();
 			return new ArrayList<Session>(allUDPSessions.values());
 		}
+
+	/**
+	 * Reassembles and analyzes a range of sessions, splitting the range until
+	 * it is small enough for one thread. Each session writes only its own
+	 * slot of the split sessions.
+	 */
+	private class AssembleSessions extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Session> sessions;
+		private final List<List<Session>> splits;
+		private final int from;
+		private final int to;
+
+		AssembleSessions(List<Session> sessions, List<List<Session>> splits, int from, int to) {
+			this.sessions = sessions;
+			this.splits = splits;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SLICE_SIZE) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new AssembleSessions(sessions, splits, from, middle),
+						new AssembleSessions(sessions, splits, middle, to));
+				return;
+			}
+			Reassembler upl = new Reassembler();
+			Reassembler dol = new Reassembler();
+			for (int i = from; i < to; i++) {
+				Session session = sessions.get(i);
+				List<Session> split = splitSession(session);
+				for (int part = -1; part < split.size(); part++) {
+					Session partSession = part < 0 ? session : split.get(part);
+					reassembleSession(partSession, upl, dol);
+					if (part + 1 < split.size()) {
+						// SSL flag of the SYN starting the next session, as
+						// when the reassembly split the sessions itself
+						PacketInfo syn = split.get(part + 1).getPackets().get(0);
+						partSession.setSsl(((TCPPacket) syn.getPacket()).isSsl());
+					}
+					analyzeSession(partSession);
+				}
+				if (!split.isEmpty()) {
+					splits.set(i, split);
+				}
+			}
+			upl.clear();
+			dol.clear();
+		}
+	}
 }//end class
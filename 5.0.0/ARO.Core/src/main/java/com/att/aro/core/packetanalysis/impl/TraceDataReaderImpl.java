@@ -20,33 +20,47 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import com.att.aro.core.ILogger;
+import com.att.aro.core.exception.AROPacketReadException;
 import com.att.aro.core.fileio.IFileManager;
 import com.att.aro.core.model.InjectLogger;
 import com.att.aro.core.packetanalysis.ITraceDataReader;
 import com.att.aro.core.packetanalysis.pojo.AbstractTraceResult;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.TraceDataConst;
 import com.att.aro.core.packetanalysis.pojo.TraceDirectoryResult;
 import com.att.aro.core.packetanalysis.pojo.TraceFileResult;
 import com.att.aro.core.packetanalysis.pojo.TraceResultType;
 import com.att.aro.core.packetanalysis.pojo.TraceTime;
+import com.att.aro.core.packetreader.IPacketCursor;
 import com.att.aro.core.packetreader.IPacketListener;
 import com.att.aro.core.packetreader.IPacketReader;
+import com.att.aro.core.packetreader.impl.MergedPacketCursor;
+import com.att.aro.core.packetreader.impl.TimeOrderedPacketCursor;
+import com.att.aro.core.packetreader.pojo.IPAddressTable;
 import com.att.aro.core.packetreader.pojo.IPPacket;
 import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.core.packetreader.pojo.PacketDirection;
 import com.att.aro.core.peripheral.IAlarmAnalysisInfoParser;
 import com.att.aro.core.peripheral.IAlarmDumpsysTimestampReader;
@@ -87,7 +101,7 @@ import com.att.aro.core.peripheral.pojo.WakelockInfo;
 import com.att.aro.core.peripheral.pojo.WifiInfo;
 import com.att.aro.core.util.Util;
 
-public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
+public class TraceDataReaderImpl implements ITraceDataReader {
 	@InjectLogger
 	private static ILogger logger;
 	
@@ -159,14 +173,8 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 	@Autowired
 	private IDeviceInfoReader deviceinforeader;
 	
-	private Set<InetAddress> localIPAddresses = null;
-	private List<PacketInfo> allPackets = null;
-	private Map<InetAddress, Integer> ipCountMap = null;
-	
-	private void init(){
-		localIPAddresses = new HashSet<InetAddress>(1);
-		allPackets = new ArrayList<PacketInfo>();
-	}
+	private int readerThreads = Runtime.getRuntime().availableProcessors();
+
 	/**
 	 * read all kind of trace file in a directry
 	 * @param directoryPath full path to physical directory
@@ -178,6 +186,7 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 		}
 		TraceDirectoryResult result = new TraceDirectoryResult();
 		result.setTraceDirectory(directoryPath);
+		TraceReadContext context = new TraceReadContext(result);
 		
 		//readAppInfo();
 		//Reads the application names from the appinfo trace file.
@@ -187,7 +196,7 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 
 		// Read the time file and PCAP trace
 		try {
-			result = readTimeAndPcap(result);
+			result = readTimeAndPcap(result, context);
 		} catch (IOException e1) {
 			logger.error("Failed to read file",e1);
 			return null;//no need to continue, everything else is useless without packet data
@@ -198,7 +207,9 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
  
 		//extract ip address from device_info file
 		result.setLocalIPAddresses(deviceinforeader.readData(directoryPath));
-		this.localIPAddresses.addAll(result.getLocalIPAddresses());
+		for (InetAddress address : result.getLocalIPAddresses()) {
+			context.markLocal(context.addressTable.intern(address));
+		}
 		
 		readDeviceDetails(result);
 		
@@ -259,14 +270,14 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 			traceDirectory = "";
 		}
 		result.setTraceDirectory(traceFilePath);
-		this.init();
-		this.ipCountMap = result.getIpCountMap();
-		result = (TraceFileResult)this.readPcapTraceFile(traceFilePath, null, null, result);
+		TraceReadContext context = new TraceReadContext(result);
+		result = (TraceFileResult)this.readPcapTraceFile(traceFilePath, null, null, result, context);
 		if(result == null){
 			return null;
 		}
 		readVideoTime(result);
-		result.setAllpackets(allPackets);
+		result.setAllpackets(context.allPackets);
+		result.setPacketTable(new PacketTable(context.allPackets));
 		return result;
 	}
 	
@@ -351,7 +362,7 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 	 * 
 	 * @throws IOException
 	 */
-	private TraceDirectoryResult readTimeAndPcap(TraceDirectoryResult dresult) throws IOException {
+	private TraceDirectoryResult readTimeAndPcap(TraceDirectoryResult dresult, TraceReadContext context) throws IOException {
 		TraceDirectoryResult result = dresult;
 		String filepath = result.getTraceDirectory() + Util.FILE_SEPARATOR + TraceDataConst.FileName.TIME_FILE;
 		
@@ -376,25 +387,27 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 		result.setTotalNoPackets(appIds.size());
 		filepath = result.getTraceDirectory() + Util.FILE_SEPARATOR + TraceDataConst.FileName.TRAFFIC + TraceDataConst.FileName.CAP_EXT;
 		
-		this.init();
-		this.ipCountMap = result.getIpCountMap();
-		result = (TraceDirectoryResult)this.readPcapTraceFile(filepath, startTime, duration, result);
-		if(result == null){
-			return new TraceDirectoryResult();
-		}
-		
+		// rotated captures continue in traffic1.cap, traffic2.cap, ...
+		List<String> filepaths = new ArrayList<String>();
+		filepaths.add(filepath);
 		for (int i = 1;; i++) {
 			filepath = result.getTraceDirectory() + Util.FILE_SEPARATOR + TraceDataConst.FileName.TRAFFIC + i + TraceDataConst.FileName.CAP_EXT;
 			if (filereader.fileExist(filepath)) {
-				result = (TraceDirectoryResult)this.readPcapTraceFile(filepath, startTime, duration, result);
+				filepaths.add(filepath);
 			} else {
 				break;
 			}
 		}
-		if (result==null){
-			result = new TraceDirectoryResult(); 
+		if (filepaths.size() == 1) {
+			result = (TraceDirectoryResult) this.readPcapTraceFile(filepaths.get(0), startTime, duration, result, context);
+		} else {
+			result = (TraceDirectoryResult) this.readPcapTraceFiles(filepaths, startTime, duration, result, context);
+		}
+		if (result == null) {
+			return new TraceDirectoryResult();
 		}
-		result.setAllpackets(this.allPackets);
+		result.setAllpackets(context.allPackets);
+		result.setPacketTable(new PacketTable(context.allPackets));
 		this.checkExternalVideoAndTime(result, startTime, duration);
 		return result;
 	}
@@ -651,7 +664,7 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 		}
 	}
 	
-	private AbstractTraceResult readPcapTraceFile(String filepath, Double startTime, Double duration, AbstractTraceResult dresult) throws IOException {
+	private AbstractTraceResult readPcapTraceFile(String filepath, Double startTime, Double duration, AbstractTraceResult dresult, TraceReadContext context) throws IOException {
 		if (!filereader.fileExist(filepath)) {
 			if (logger != null){
 				logger.error("No packet file found at: " + filepath);
@@ -663,8 +676,139 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 			//this.packetreader = new PacketReaderImpl();
 			throw new NullPointerException("this.packetreader is null");
 		}
-		this.packetreader.readPacket(filepath, this);
+		this.packetreader.readPacket(filepath, context, context.decodeContext);
+		context.updateIpCountMap();
+		return processPackets(filepath, startTime, duration, result, context, null);
+	}
 
+	/**
+	 * Reads the rotated capture files of a trace concurrently, one cursor per
+	 * file, and merges the packets into allPackets in timestamp order.
+	 * 
+	 * @param filepaths
+	 *            traffic.cap followed by the trafficN.cap files in order
+	 */
+	private AbstractTraceResult readPcapTraceFiles(List<String> filepaths, Double startTime, Double duration, AbstractTraceResult dresult, TraceReadContext context) throws IOException {
+		if (!filereader.fileExist(filepaths.get(0))) {
+			if (logger != null){
+				logger.error("No packet file found at: " + filepaths.get(0));
+			}
+			return null;
+		}
+		if (this.packetreader == null) {
+			throw new NullPointerException("this.packetreader is null");
+		}
+		int[] fileOrder = mergePcapTraceFiles(filepaths, context);
+		context.updateIpCountMap();
+		return processPackets(filepaths.get(filepaths.size() - 1), startTime, duration, dresult, context, fileOrder);
+	}
+
+	/**
+	 * Adds the packets of all files to allPackets through a k-way merge. Push
+	 * based readers share readerThreads threads, a file without a free thread
+	 * is read when the merge first needs it.
+	 * 
+	 * @return for every packet of allPackets the index of the IP packet in the
+	 *         files read one after the other, -1 for non IP packets
+	 */
+	private int[] mergePcapTraceFiles(List<String> filepaths, TraceReadContext context) throws IOException {
+		List<IPacketCursor> cursors = new ArrayList<IPacketCursor>(filepaths.size());
+		MergedPacketCursor merged = null;
+		int[] sources = new int[1024];
+		int[] positions = new int[1024];
+		int[] counts = new int[filepaths.size()];
+		// a reader is handed to an idle thread or rejected, never queued behind a blocked one
+		ThreadPoolExecutor readers = new ThreadPoolExecutor(0, readerThreads, 1, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					private int count = 0;
+
+					@Override
+					public synchronized Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "PacketReader-" + count++);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		try {
+			for (String path : filepaths) {
+				cursors.add(new TimeOrderedPacketCursor(packetreader.openCursor(path, readers, context.decodeContext)));
+			}
+			merged = new MergedPacketCursor(cursors, readerThreads);
+			while (merged.hasNext()) {
+				Packet packet = merged.next();
+				int index = context.allPackets.size();
+				if (index == sources.length) {
+					sources = Arrays.copyOf(sources, index * 2);
+					positions = Arrays.copyOf(positions, index * 2);
+				}
+				// the position in the file read, not in the reorder window
+				sources[index] = merged.getSource();
+				positions[index] = (int) merged.getPosition();
+				counts[sources[index]]++;
+				context.packetArrived(merged.getAppName(), packet);
+			}
+		} catch (AROPacketReadException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			try {
+				if (merged != null) {
+					merged.close();
+				} else {
+					for (IPacketCursor cursor : cursors) {
+						cursor.close();
+					}
+				}
+			} finally {
+				readers.shutdown();
+			}
+		}
+
+		// rank the IP packets of every file by their position in it
+		int[][] ranks = new int[filepaths.size()][];
+		for (int file = 0; file < ranks.length; file++) {
+			ranks[file] = new int[counts[file]];
+			Arrays.fill(ranks[file], -1);
+		}
+		List<PacketInfo> allPackets = context.allPackets;
+		for (int i = 0; i < allPackets.size(); i++) {
+			if (allPackets.get(i).getPacket() instanceof IPPacket) {
+				ranks[sources[i]][positions[i]] = 0;
+			}
+		}
+		int[] offsets = new int[filepaths.size()];
+		int offset = 0;
+		for (int file = 0; file < ranks.length; file++) {
+			offsets[file] = offset;
+			int rank = 0;
+			for (int position = 0; position < ranks[file].length; position++) {
+				if (ranks[file][position] == 0) {
+					ranks[file][position] = rank++;
+				}
+			}
+			offset += rank;
+		}
+		int[] fileOrder = new int[allPackets.size()];
+		for (int i = 0; i < fileOrder.length; i++) {
+			int rank = ranks[sources[i]][positions[i]];
+			fileOrder[i] = rank < 0 ? -1 : offsets[sources[i]] + rank;
+		}
+		return fileOrder;
+	}
+
+	/**
+	 * Sets direction, relative timestamp, application and ID of the packets
+	 * read into allPackets and removes the non IP packets.
+	 * 
+	 * @param fileOrder
+	 *            index of each IP packet in file order when allPackets is
+	 *            already merged in timestamp order, null when allPackets is
+	 *            in file order
+	 */
+	private AbstractTraceResult processPackets(String filepath, Double startTime, Double duration, AbstractTraceResult result, TraceReadContext context, int[] fileOrder) {
+		List<PacketInfo> allPackets = context.allPackets;
 		double pcapTime0 = 0;
 		double traceDuration = 0;
 		// Determine application name associated with each packet
@@ -689,11 +833,16 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 			}
 
 			int packetIdx = 0;
+			int position = 0;
 			List<String> appInfos = result.getAppInfos();
 			Set<String> allAppNames = result.getAllAppNames();
 			Map<String, Set<InetAddress>> appIps = result.getAppIps();
+			Map<String, BitSet> appAddressIds = new HashMap<String, BitSet>();
 			for (Iterator<PacketInfo> iter = allPackets.iterator(); iter.hasNext();) {
 				PacketInfo packet = iter.next();
+				if (fileOrder != null) {
+					packetIdx = fileOrder[position++];
+				}
 
 				// Filter out non-IP packets
 				if (!(packet.getPacket() instanceof IPPacket)) {
@@ -703,7 +852,7 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 
 				IPPacket ipPacket = (IPPacket) packet.getPacket();
 
-				packet.setDir(determinePacketDirection(ipPacket.getSourceIPAddress(), ipPacket.getDestinationIPAddress()));
+				packet.setDir(context.determinePacketDirection(packet.getSourceAddressId(), packet.getDestinationAddressId()));
 				packet.setTimestamp(ipPacket.getTimeStamp() - pcapTime0 - tzDiff);
 
 				//Associate application ID with the packet 
@@ -711,19 +860,33 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 				packet.setAppName(appName);
 				allAppNames.add(appName);
 
-				// Group IPs by app
-				Set<InetAddress> ips = appIps.get(appName);
-				if (ips == null) {
-					ips = new HashSet<InetAddress>();
-					appIps.put(appName, ips);
+				// Group IPs by app, each address is added once per app
+				BitSet addressIds = appAddressIds.get(appName);
+				if (addressIds == null) {
+					addressIds = new BitSet();
+					appAddressIds.put(appName, addressIds);
+				}
+				int remoteId = packet.getRemoteAddressId();
+				if (remoteId < 0 || !addressIds.get(remoteId)) {
+					if (remoteId >= 0) {
+						addressIds.set(remoteId);
+					}
+					Set<InetAddress> ips = appIps.get(appName);
+					if (ips == null) {
+						ips = new HashSet<InetAddress>();
+						appIps.put(appName, ips);
+					}
+					ips.add(packet.getRemoteIPAddress());
 				}
-				ips.add(packet.getRemoteIPAddress());
 
 				// Set packet ID to match Wireshark ID
 				packet.setPacketId(++packetIdx);
 			}
 
-			Collections.sort(allPackets);
+			// merged files are in order unless a packet was beyond the reorder window
+			if (fileOrder == null || !isSorted(allPackets)) {
+				Collections.sort(allPackets);
+			}
 		} else {
 			pcapTime0 = startTime != null ? startTime.doubleValue() : filereader.getLastModified(filepath) / 1000.0;
 			traceDuration = duration != null ? duration.doubleValue() : 0.0;
@@ -735,6 +898,29 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 		return result;
 	}
 	
+	private boolean isSorted(List<PacketInfo> packets) {
+		for (int i = 1; i < packets.size(); i++) {
+			if (packets.get(i - 1).getTimeStamp() > packets.get(i).getTimeStamp()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of threads reading rotated capture files at once
+	 */
+	public int getReaderThreads() {
+		return readerThreads;
+	}
+
+	/**
+	 * Sets the number of threads reading rotated capture files at once.
+	 */
+	public void setReaderThreads(int readerThreads) {
+		this.readerThreads = Math.max(1, readerThreads);
+	}
+
 	void checkExternalVideoAndTime(AbstractTraceResult result, Double startTime, Double duration) throws IOException{
 		List<Integer> appIds = result.getAppIds();
 		// Only if Pcap file is loaded, execute the video sync process below.
@@ -785,47 +971,10 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 		}
 	}
 
-	/**
-	 * Attempts to determine packet direction based upon source and destination
-	 * IP addresses
-	 */
-	private PacketDirection determinePacketDirection(InetAddress source, InetAddress dest) {
-
-		// Check identified local IP addresses
-		if (this.localIPAddresses.contains(source)) {
-			return PacketDirection.UPLINK;
-		} else if (this.localIPAddresses.contains(dest)) {
-			return PacketDirection.DOWNLINK;
-		}
-
-		// Do same check done by ARO prototype
-		boolean srcLocal = isLocal(source);
-		boolean destLocal = isLocal(dest);
-		if (srcLocal && !destLocal) {
-			this.localIPAddresses.add(source);
-			return PacketDirection.UPLINK;
-		} else if (destLocal && !srcLocal) {
-			this.localIPAddresses.add(dest);
-			return PacketDirection.DOWNLINK;
-		}
-
-		// Otherwise make a guess based upon the count of time the IP has been
-		// in a packet
-		int srcCount = ipCountMap.get(source).intValue();
-		int destCount = ipCountMap.get(dest).intValue();
-		if (srcCount >= destCount) {
-			this.localIPAddresses.add(source);
-			return PacketDirection.UPLINK;
-		} else {
-			this.localIPAddresses.add(dest);
-			return PacketDirection.DOWNLINK;
-		}
-	}
-
 	/**
 	 * ARO prototype logic for finding local IP address
 	 */
-	private boolean isLocal(InetAddress ipAddress) {
+	private static boolean isLocal(InetAddress ipAddress) {
 
 		if (ipAddress instanceof Inet4Address) {
 			byte[] addr = ((Inet4Address) ipAddress).getAddress();
@@ -834,35 +983,133 @@ public class TraceDataReaderImpl implements IPacketListener, ITraceDataReader {
 		return false;
 	}
 	
-	@Override
-	public void packetArrived(String appName, Packet packet) {
-		if (packet instanceof IPPacket) { // Replaces GetPacketInfo(...)
-			IPPacket ipack = (IPPacket) packet;
+	/**
+	 * Per trace state of a read: the packets read so far, the address
+	 * counts and local addresses used to determine the packet direction, and
+	 * the tables the packets are decoded into.
+	 * Each read has its own context, so one TraceDataReaderImpl can read
+	 * several traces at the same time.
+	 */
+	static class TraceReadContext implements IPacketListener {
+
+		private final BitSet localAddressIds = new BitSet();
+		private final List<PacketInfo> allPackets = new ArrayList<PacketInfo>();
+		private final Map<InetAddress, Integer> ipCountMap;
+		private final IPAddressTable addressTable;
+		private final PacketDecodeContext decodeContext;
+		private int[] addressCounts = new int[64];
+
+		TraceReadContext(AbstractTraceResult result) {
+			this.ipCountMap = result.getIpCountMap();
+			this.addressTable = result.getAddressTable();
+			this.decodeContext = new PacketDecodeContext(addressTable);
+		}
+
+		/**
+		 * @return the tables the packets of the trace are decoded into
+		 */
+		PacketDecodeContext getDecodeContext() {
+			return decodeContext;
+		}
+
+		/**
+		 * Attempts to determine packet direction based upon source and destination
+		 * IP address IDs
+		 */
+		PacketDirection determinePacketDirection(int source, int dest) {
 
-			// no IP fragmentation
-			if ((ipack.getIPVersion() == 4) && (ipack.getFragmentOffset() != 0)) {
-				logger.warn("226 - no IP fragmentation");
+			// Check identified local IP addresses
+			if (isMarkedLocal(source)) {
+				return PacketDirection.UPLINK;
+			} else if (isMarkedLocal(dest)) {
+				return PacketDirection.DOWNLINK;
 			}
 
-			addIpCount(ipack.getSourceIPAddress());
-			addIpCount(ipack.getDestinationIPAddress());
+			// Do same check done by ARO prototype
+			boolean srcLocal = isLocal(addressTable.getAddress(source));
+			boolean destLocal = isLocal(addressTable.getAddress(dest));
+			if (srcLocal && !destLocal) {
+				markLocal(source);
+				return PacketDirection.UPLINK;
+			} else if (destLocal && !srcLocal) {
+				markLocal(dest);
+				return PacketDirection.DOWNLINK;
+			}
+
+			// Otherwise make a guess based upon the count of time the IP has been
+			// in a packet
+			int srcCount = getIpCount(source);
+			int destCount = getIpCount(dest);
+			if (srcCount >= destCount) {
+				markLocal(source);
+				return PacketDirection.UPLINK;
+			} else {
+				markLocal(dest);
+				return PacketDirection.DOWNLINK;
+			}
 		}
-		allPackets.add(new PacketInfo(appName, packet));
-	}
-	
-	/**
-	 * Adds the IP count in ipCountMap list.
-	 * 
-	 * @param ipAddress
-	 *            unique ip address.
-	 */
-	void addIpCount(InetAddress ipAddress) {
-		Integer ipCount = this.ipCountMap.get(ipAddress);
-		if (ipCount == null) {
-			ipCount = Integer.valueOf(0);
+
+		private boolean isMarkedLocal(int addressId) {
+			return addressId >= 0 && localAddressIds.get(addressId);
+		}
+
+		private void markLocal(int addressId) {
+			if (addressId >= 0) {
+				localAddressIds.set(addressId);
+			}
+		}
+
+		@Override
+		public void packetArrived(String appName, Packet packet) {
+			PacketInfo packetInfo = new PacketInfo(appName, packet);
+			if (packet instanceof IPPacket) { // Replaces GetPacketInfo(...)
+				IPPacket ipack = (IPPacket) packet;
+
+				// no IP fragmentation
+				if ((ipack.getIPVersion() == 4) && (ipack.getFragmentOffset() != 0)) {
+					logger.warn("226 - no IP fragmentation");
+				}
+
+				ipack.internAddresses(addressTable);
+				int sourceId = ipack.getSourceAddressId();
+				int destinationId = ipack.getDestinationAddressId();
+				packetInfo.setAddressIds(sourceId, destinationId);
+				addIpCount(sourceId);
+				addIpCount(destinationId);
+			}
+			allPackets.add(packetInfo);
+		}
+
+
+		/**
+		 * Adds the IP count of an address.
+		 * 
+		 * @param addressId
+		 *            ID of the ip address in the address table.
+		 */
+		void addIpCount(int addressId) {
+			if (addressId < 0) {
+				return;
+			}
+			if (addressId >= addressCounts.length) {
+				addressCounts = Arrays.copyOf(addressCounts, Math.max(addressCounts.length * 2, addressId + 1));
+			}
+			addressCounts[addressId]++;
+		}
+
+		private int getIpCount(int addressId) {
+			return addressId >= 0 && addressId < addressCounts.length ? addressCounts[addressId] : 0;
+		}
+
+		/**
+		 * Copies the IP counts into the ipCountMap of the trace result.
+		 */
+		private void updateIpCountMap() {
+			for (int id = 0; id < addressTable.size() && id < addressCounts.length; id++) {
+				if (addressCounts[id] > 0) {
+					ipCountMap.put(addressTable.getAddress(id), addressCounts[id]);
+				}
+			}
 		}
-		int value = ipCount.intValue();
-		ipCountMap.put(ipAddress, ++value);
 	}
-	
 }//end class
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
 
+import com.att.aro.core.packetreader.pojo.IPAddressTable;
 import com.att.aro.core.peripheral.pojo.BluetoothInfo;
 import com.att.aro.core.peripheral.pojo.CameraInfo;
 import com.att.aro.core.peripheral.pojo.CpuActivityList;
@@ -93,6 +94,16 @@ public abstract class AbstractTraceResult {
 	 * Map of ip address count
 	 */
 	private Map<InetAddress, Integer> ipCountMap;
+
+	/**
+	 * Distinct IP addresses of the trace and their IDs
+	 */
+	private IPAddressTable addressTable;
+
+	/**
+	 * Columnar copy of allpackets
+	 */
+	private PacketTable packetTable;
 	
 	/**
 	 * List of CPU activity info
@@ -161,6 +172,7 @@ public abstract class AbstractTraceResult {
 		traceDirectory = "";
 		appInfos = new ArrayList<String>();
 		ipCountMap = new HashMap<InetAddress, Integer>();
+		addressTable = new IPAddressTable();
 
 		cpuActivityList = new CpuActivityList();
 		gpsInfos = new ArrayList<GpsInfo>();
@@ -405,6 +417,39 @@ public abstract class AbstractTraceResult {
 		this.ipCountMap = ipCountMap;
 	}
 
+	/**
+	 * @return table of the distinct IP addresses of the trace
+	 */
+	@JsonIgnore
+	public IPAddressTable getAddressTable() {
+		return addressTable;
+	}
+
+	/**
+	 * Set table of the distinct IP addresses of the trace
+	 * @param addressTable - IP address table
+	 */
+	public void setAddressTable(IPAddressTable addressTable) {
+		this.addressTable = addressTable;
+	}
+
+	/**
+	 * @return columnar copy of all packets, null if the packets have not
+	 *         been read
+	 */
+	@JsonIgnore
+	public PacketTable getPacketTable() {
+		return packetTable;
+	}
+
+	/**
+	 * Set columnar copy of all packets
+	 * @param packetTable - packet table
+	 */
+	public void setPacketTable(PacketTable packetTable) {
+		this.packetTable = packetTable;
+	}
+
 	/**
 	 * @return a cpu activity list 
 	 */
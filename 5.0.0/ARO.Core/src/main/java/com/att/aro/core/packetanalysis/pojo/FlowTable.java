@@ -0,0 +1,196 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the flows of one protocol, such as the TCP sessions of a trace,
+ * keyed by remote address, local port and remote port packed into a long.
+ * The keys are indexed by a LongIntTable.<br>
+ * The remote address is the ID of the address table of the trace, see
+ * PacketInfo.getRemoteAddressId(), so a lookup neither formats the address nor
+ * allocates. An address without an ID is numbered by the table until its last
+ * flow is removed, so a table that evicts its flows stays bounded.
+ * Values are kept in insertion order until a flow is removed, removal moves
+ * the last value into the place of the removed one.
+ */
+public class FlowTable<V> {
+
+	/**
+	 * Marks the address numbers of the table in a key, the IDs of the trace
+	 * are not negative
+	 */
+	private static final long LOCAL_ADDRESS = 1L << 31;
+
+	private final Map<InetAddress, Integer> localIds = new HashMap<InetAddress, Integer>();
+	private InetAddress[] localAddresses = new InetAddress[16];
+	private int[] localFlows = new int[16];
+	private int[] freeLocalIds = new int[16];
+	private int freeLocalCount = 0;
+	private int localCount = 0;
+	private final List<V> values = new ArrayList<V>();
+
+	/**
+	 * Index of the value of each key in values
+	 */
+	private final LongIntTable indexes;
+	private long[] valueKeys;
+
+	public FlowTable() {
+		this(64);
+	}
+
+	/**
+	 * @param capacity
+	 *            expected number of flows
+	 */
+	public FlowTable(int capacity) {
+		int size = Math.max(16, capacity);
+		indexes = new LongIntTable(size * 2);
+		valueKeys = new long[size];
+	}
+
+	/**
+	 * Packs a flow into a key of this table. A remote address without an ID
+	 * is numbered by the table, the key is meant to be put or removed then.
+	 *
+	 * @param remoteAddressId
+	 *            ID of the remote address in the address table of the trace,
+	 *            -1 if it has none
+	 * @param remoteIP
+	 *            remote address, used if it has no ID
+	 * @param localPort
+	 *            local port
+	 * @param remotePort
+	 *            remote port
+	 * @return key of the flow
+	 */
+	public long key(int remoteAddressId, InetAddress remoteIP, int localPort, int remotePort) {
+		long address = remoteAddressId >= 0 ? remoteAddressId : LOCAL_ADDRESS | localId(remoteIP);
+		return (address << 32) | ((long) (localPort & 0xffff) << 16) | (remotePort & 0xffff);
+	}
+
+	/**
+	 * @return number of the address in this table
+	 */
+	private int localId(InetAddress remoteIP) {
+		Integer localId = localIds.get(remoteIP);
+		if (localId != null) {
+			return localId;
+		}
+		int id;
+		if (freeLocalCount > 0) {
+			id = freeLocalIds[--freeLocalCount];
+		} else {
+			id = localCount++;
+			if (id == localAddresses.length) {
+				localAddresses = Arrays.copyOf(localAddresses, id * 2);
+				localFlows = Arrays.copyOf(localFlows, id * 2);
+				freeLocalIds = Arrays.copyOf(freeLocalIds, id * 2);
+			}
+		}
+		localAddresses[id] = remoteIP;
+		localFlows[id] = 0;
+		localIds.put(remoteIP, id);
+		return id;
+	}
+
+	/**
+	 * Counts the flows of an address numbered by this table, the number is
+	 * released with the last flow.
+	 */
+	private void countFlow(long key, int count) {
+		long address = key >>> 32;
+		if ((address & LOCAL_ADDRESS) != 0) {
+			int id = (int) (address & ~LOCAL_ADDRESS);
+			localFlows[id] += count;
+			if (localFlows[id] == 0) {
+				localIds.remove(localAddresses[id]);
+				localAddresses[id] = null;
+				freeLocalIds[freeLocalCount++] = id;
+			}
+		}
+	}
+
+	/**
+	 * @return value of the flow, or null if the flow is not in the table
+	 */
+	public V get(long key) {
+		int index = indexes.get(key, -1);
+		return index >= 0 ? values.get(index) : null;
+	}
+
+	/**
+	 * Stores the value of a flow, replacing the value of a flow already in the
+	 * table in place.
+	 */
+	public void put(long key, V value) {
+		int index = indexes.get(key, -1);
+		if (index >= 0) {
+			values.set(index, value);
+			return;
+		}
+		if (values.size() == valueKeys.length) {
+			valueKeys = Arrays.copyOf(valueKeys, valueKeys.length * 2);
+		}
+		valueKeys[values.size()] = key;
+		indexes.put(key, values.size());
+		values.add(value);
+		countFlow(key, 1);
+	}
+
+	/**
+	 * Removes a flow. The last value of the table takes the place of the
+	 * removed value in values().
+	 *
+	 * @return value of the flow, or null if the flow is not in the table
+	 */
+	public V remove(long key) {
+		int index = indexes.get(key, -1);
+		if (index < 0) {
+			return null;
+		}
+		V value = values.get(index);
+		int last = values.size() - 1;
+		if (index != last) {
+			values.set(index, values.get(last));
+			valueKeys[index] = valueKeys[last];
+			indexes.put(valueKeys[index], index);
+		}
+		values.remove(last);
+		indexes.remove(key);
+		countFlow(key, -1);
+		return value;
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * @return values in the order their flows were added
+	 */
+	public List<V> values() {
+		return Collections.unmodifiableList(values);
+	}
+}
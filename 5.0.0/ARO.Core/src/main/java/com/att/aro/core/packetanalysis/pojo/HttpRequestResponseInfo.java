@@ -16,16 +16,28 @@
 package com.att.aro.core.packetanalysis.pojo;
 
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedMap;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
 
 import com.att.aro.core.packetreader.pojo.PacketDirection;
+import com.att.aro.core.util.Util;
 
 /**
  * Encapsulates information about an HTTP request or response. This class was
- * converted from struct HTTP_REQUEST_RESPONSE
+ * converted from struct HTTP_REQUEST_RESPONSE<br>
+ * The header lines and the Date, Expires, Last-Modified, ETag and Referer
+ * values parsed from a storage of the session are kept as ranges of that
+ * storage, see addHeaderLine() and setHeaderValue(). They are decoded on first
+ * access and the decoded value is kept. Only the offsets and the session are
+ * kept, the storage is looked up in the session when decoding. The URI of the
+ * requested object is built from the object name on first access as well.
  */
 
 public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseInfo>{
@@ -66,6 +78,46 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	public static final String CONTENT_ENCODING_NA = "";
 	public static final Date BEGINNING_OF_TIME = new Date(0);
 	private static final CharSequence IMAGE = "image";
+
+	/**
+	 * Header values decoded on first access, see setHeaderValue()
+	 */
+	public static final int HEADER_DATE = 0;
+	public static final int HEADER_EXPIRES = 1;
+	public static final int HEADER_LAST_MODIFIED = 2;
+	public static final int HEADER_ETAG = 3;
+	public static final int HEADER_REFERRER = 4;
+	private static final int HEADER_VALUES = 5;
+
+	private static final Charset UTF8_CHARSET = Charset.forName(UTF8);
+
+	private static final int CHUNKED = 1;
+	private static final int CHUNK_MODE_FINISHED = 1 << 1;
+	private static final int RANGE_RESPONSE = 1 << 2;
+	private static final int IF_MODIFIED_SINCE = 1 << 3;
+	private static final int IF_NONE_MATCH = 1 << 4;
+	private static final int SSL = 1 << 5;
+	private static final int HAS_CACHE_HEADERS = 1 << 6;
+	private static final int PRAGMA_NO_CACHE = 1 << 7;
+	private static final int NO_CACHE = 1 << 8;
+	private static final int NO_STORE = 1 << 9;
+	private static final int PUBLIC_CACHE = 1 << 10;
+	private static final int PRIVATE_CACHE = 1 << 11;
+	private static final int MUST_REVALIDATE = 1 << 12;
+	private static final int PROXY_REVALIDATE = 1 << 13;
+	private static final int ONLY_IF_CACHED = 1 << 14;
+	private static final int OBJ_URI_DECODED = 1 << 15;
+
+	/**
+	 * Ports left out of the URI of a request for their scheme
+	 */
+	private static final Map<String, Integer> DEFAULT_PORTS = new HashMap<String, Integer>(5);
+
+	static {
+		DEFAULT_PORTS.put("HTTP", 80);
+		DEFAULT_PORTS.put("HTTPS", 443);
+		DEFAULT_PORTS.put("RTSP", 554);
+	}
 	
 	private PacketDirection packetDirection;
 	private HttpDirection direction; // REQUEST or RESPONSE
@@ -83,11 +135,7 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	private String fileName;
 	private URI objUri;
 	private String responseResult;
-	private boolean chunked;
-	private boolean chunkModeFinished;
-	private boolean rangeResponse;
-	private boolean ifModifiedSince;
-	private boolean ifNoneMatch;
+	private int flags;
 	private int rangeFirst;
 	private int rangeLast;
 	private long rangeFull;
@@ -95,7 +143,6 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	private String contentEncoding = null;
 	private int rrStart;
 	private int rawSize; // Includes headers
-	private boolean ssl;
 	
 	// Map of the content offset/
 	private SortedMap<Integer,Integer> contentOffsetLength;
@@ -106,15 +153,6 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 
 	// Cache info
 	private Date date;
-	private boolean hasCacheHeaders;
-	private boolean pragmaNoCache;
-	private boolean noCache;
-	private boolean noStore;
-	private boolean publicCache;
-	private boolean privateCache;
-	private boolean mustRevalidate;
-	private boolean proxyRevalidate;
-	private boolean onlyIfCached;
 	private String etag;
 	private Long age;
 	private Date expires;
@@ -128,6 +166,27 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	private HttpRequestResponseInfo assocReqResp;
 	private RequestResponseTimeline waterfallInfos;
 	private String allHeaders;
+
+	@JsonIgnore
+	private Session session;
+
+	/**
+	 * Direction of the session storage holding the header lines and values
+	 * not decoded yet, null if nothing is kept. The lines are the range from
+	 * headerStart to headerEnd, the last of them starts at lastLineStart and
+	 * the ones before it are separated by CRLF. headerStart is -1 when every
+	 * line is decoded into allHeaders.
+	 */
+	private PacketDirection headerDirection;
+	private int headerStart = -1;
+	private int lastLineStart;
+	private int headerEnd;
+
+	/**
+	 * Ranges in the header storage of the header values not decoded yet, a pair of
+	 * start and end for every header value, the start is -1 if there is none
+	 */
+	private int[] headerValues;
 	
 	public HttpRequestResponseInfo(){
 	}
@@ -300,14 +359,47 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 		this.fileName = fileName;
 	}
 
+	/**
+	 * Returns the URI of the requested object, built from the object name on
+	 * first access. A relative URI is made absolute with the scheme, host name
+	 * and port of the request when they make a valid URI.
+	 * 
+	 * @return The URI, or null if the object name is not a valid URI.
+	 */
 	public URI getObjUri() {
+		if ((flags & OBJ_URI_DECODED) == 0) {
+			setObjUri(createObjUri());
+		}
 		return objUri;
 	}
 
 	public void setObjUri(URI objUri) {
+		setFlag(OBJ_URI_DECODED, true);
 		this.objUri = objUri;
 	}
 
+	private URI createObjUri() {
+		if (objName == null) {
+			return null;
+		}
+		URI uri;
+		try {
+			uri = new URI(objName);
+		} catch (URISyntaxException e) {
+			// the object name does not have to be a URI
+			return null;
+		}
+		if (!uri.isAbsolute() && scheme != null) {
+			int uriPort = Integer.valueOf(port).equals(DEFAULT_PORTS.get(scheme)) ? -1 : port;
+			try {
+				uri = new URI(scheme.toLowerCase(), null, hostName, uriPort, uri.getPath(), uri.getQuery(), uri.getFragment());
+			} catch (URISyntaxException e) {
+				// keep the relative URI
+			}
+		}
+		return uri;
+	}
+
 	/**
 	 * Returns the HTTP response result.
 	 * 
@@ -328,11 +420,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         and is false otherwise.
 	 */
 	public boolean isChunked() {
-		return chunked;
+		return (flags & CHUNKED) != 0;
 	}
 
 	public void setChunked(boolean chunked) {
-		this.chunked = chunked;
+		setFlag(CHUNKED, chunked);
 	}
 
 	/**
@@ -342,11 +434,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         chunkModeFinished, and is false otherwise.
 	 */
 	public boolean isChunkModeFinished() {
-		return chunkModeFinished;
+		return (flags & CHUNK_MODE_FINISHED) != 0;
 	}
 
 	public void setChunkModeFinished(boolean chunkModeFinished) {
-		this.chunkModeFinished = chunkModeFinished;
+		setFlag(CHUNK_MODE_FINISHED, chunkModeFinished);
 	}
 
 	/**
@@ -356,11 +448,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         rangeResponse, and is false otherwise.
 	 */
 	public boolean isRangeResponse() {
-		return rangeResponse;
+		return (flags & RANGE_RESPONSE) != 0;
 	}
 
 	public void setRangeResponse(boolean rangeResponse) {
-		this.rangeResponse = rangeResponse;
+		setFlag(RANGE_RESPONSE, rangeResponse);
 	}
 
 	/**
@@ -370,11 +462,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         IfModifiedSince, and is false otherwise
 	 */
 	public boolean isIfModifiedSince() {
-		return ifModifiedSince;
+		return (flags & IF_MODIFIED_SINCE) != 0;
 	}
 
 	public void setIfModifiedSince(boolean ifModifiedSince) {
-		this.ifModifiedSince = ifModifiedSince;
+		setFlag(IF_MODIFIED_SINCE, ifModifiedSince);
 	}
 
 	/**
@@ -384,11 +476,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         ifNoneMatch, and is false otherwise.
 	 */
 	public boolean isIfNoneMatch() {
-		return ifNoneMatch;
+		return (flags & IF_NONE_MATCH) != 0;
 	}
 
 	public void setIfNoneMatch(boolean ifNoneMatch) {
-		this.ifNoneMatch = ifNoneMatch;
+		setFlag(IF_NONE_MATCH, ifNoneMatch);
 	}
 
 	/**
@@ -481,11 +573,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	}
 
 	public boolean isSsl() {
-		return ssl;
+		return (flags & SSL) != 0;
 	}
 
 	public void setSsl(boolean ssl) {
-		this.ssl = ssl;
+		setFlag(SSL, ssl);
 	}
 
 	public SortedMap<Integer, Integer> getContentOffsetLength() {
@@ -524,10 +616,12 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 * @return The date.
 	 */
 	public Date getDate() {
+		decodeHeaderValue(HEADER_DATE);
 		return date;
 	}
 
 	public void setDate(Date date) {
+		clearHeaderValue(HEADER_DATE);
 		this.date = date;
 	}
 
@@ -538,11 +632,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         CacheHeaders, and is false otherwise.
 	 */
 	public boolean isHasCacheHeaders() {
-		return hasCacheHeaders;
+		return (flags & HAS_CACHE_HEADERS) != 0;
 	}
 
 	public void setHasCacheHeaders(boolean hasCacheHeaders) {
-		this.hasCacheHeaders = hasCacheHeaders;
+		setFlag(HAS_CACHE_HEADERS, hasCacheHeaders);
 	}
 
 	/**
@@ -552,11 +646,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         PragmaNoCache, and is false otherwise.
 	 */
 	public boolean isPragmaNoCache() {
-		return pragmaNoCache;
+		return (flags & PRAGMA_NO_CACHE) != 0;
 	}
 
 	public void setPragmaNoCache(boolean pragmaNoCache) {
-		this.pragmaNoCache = pragmaNoCache;
+		setFlag(PRAGMA_NO_CACHE, pragmaNoCache);
 	}
 
 	/**
@@ -566,11 +660,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         and is false otherwise.
 	 */
 	public boolean isNoCache() {
-		return noCache;
+		return (flags & NO_CACHE) != 0;
 	}
 
 	public void setNoCache(boolean noCache) {
-		this.noCache = noCache;
+		setFlag(NO_CACHE, noCache);
 	}
 
 	/**
@@ -580,11 +674,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         and is false otherwise.
 	 */
 	public boolean isNoStore() {
-		return noStore;
+		return (flags & NO_STORE) != 0;
 	}
 
 	public void setNoStore(boolean noStore) {
-		this.noStore = noStore;
+		setFlag(NO_STORE, noStore);
 	}
 
 	/**
@@ -594,11 +688,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         PublicCache, and is false otherwise.
 	 */
 	public boolean isPublicCache() {
-		return publicCache;
+		return (flags & PUBLIC_CACHE) != 0;
 	}
 
 	public void setPublicCache(boolean publicCache) {
-		this.publicCache = publicCache;
+		setFlag(PUBLIC_CACHE, publicCache);
 	}
 
 	/**
@@ -608,11 +702,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         PrivateCache, and is false otherwise.
 	 */
 	public boolean isPrivateCache() {
-		return privateCache;
+		return (flags & PRIVATE_CACHE) != 0;
 	}
 
 	public void setPrivateCache(boolean privateCache) {
-		this.privateCache = privateCache;
+		setFlag(PRIVATE_CACHE, privateCache);
 	}
 
 	/**
@@ -622,11 +716,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         MustRevalidate, and is false otherwise.
 	 */
 	public boolean isMustRevalidate() {
-		return mustRevalidate;
+		return (flags & MUST_REVALIDATE) != 0;
 	}
 
 	public void setMustRevalidate(boolean mustRevalidate) {
-		this.mustRevalidate = mustRevalidate;
+		setFlag(MUST_REVALIDATE, mustRevalidate);
 	}
 
 	/**
@@ -636,11 +730,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         ProxyRevalidate, and is false otherwise.
 	 */
 	public boolean isProxyRevalidate() {
-		return proxyRevalidate;
+		return (flags & PROXY_REVALIDATE) != 0;
 	}
 
 	public void setProxyRevalidate(boolean proxyRevalidate) {
-		this.proxyRevalidate = proxyRevalidate;
+		setFlag(PROXY_REVALIDATE, proxyRevalidate);
 	}
 
 	/**
@@ -650,11 +744,11 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 *         OnlyIfCached, and is false otherwise.
 	 */
 	public boolean isOnlyIfCached() {
-		return onlyIfCached;
+		return (flags & ONLY_IF_CACHED) != 0;
 	}
 
 	public void setOnlyIfCached(boolean onlyIfCached) {
-		this.onlyIfCached = onlyIfCached;
+		setFlag(ONLY_IF_CACHED, onlyIfCached);
 	}
 
 	/**
@@ -663,10 +757,12 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 * @return A string containing the HTTP etag.
 	 */
 	public String getEtag() {
+		decodeHeaderValue(HEADER_ETAG);
 		return etag;
 	}
 
 	public void setEtag(String etag) {
+		clearHeaderValue(HEADER_ETAG);
 		this.etag = etag;
 	}
 
@@ -689,10 +785,12 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 * @return The HTTP request/response expire date.
 	 */
 	public Date getExpires() {
+		decodeHeaderValue(HEADER_EXPIRES);
 		return expires;
 	}
 
 	public void setExpires(Date expires) {
+		clearHeaderValue(HEADER_EXPIRES);
 		this.expires = expires;
 	}
 
@@ -702,10 +800,12 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 * @return The URI referrer.
 	 */
 	public URI getReferrer() {
+		decodeHeaderValue(HEADER_REFERRER);
 		return referrer;
 	}
 
 	public void setReferrer(URI referrer) {
+		clearHeaderValue(HEADER_REFERRER);
 		this.referrer = referrer;
 	}
 
@@ -715,10 +815,12 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 	 * @return The HTTP request/response LastModified date.
 	 */
 	public Date getLastModified() {
+		decodeHeaderValue(HEADER_LAST_MODIFIED);
 		return lastModified;
 	}
 
 	public void setLastModified(Date lastModified) {
+		clearHeaderValue(HEADER_LAST_MODIFIED);
 		this.lastModified = lastModified;
 	}
 
@@ -804,14 +906,224 @@ public class HttpRequestResponseInfo implements Comparable<HttpRequestResponseIn
 		this.waterfallInfos = waterfallInfos;
 	}
 
+	/**
+	 * Returns the header lines, each preceded by a space.
+	 * 
+	 * @return The header lines, or null if there are none.
+	 */
 	public String getAllHeaders() {
+		if (headerStart >= 0) {
+			StringBuilder headers = new StringBuilder(allHeaders == null ? "" : allHeaders);
+			PayloadReader reader = headerStorage().reader();
+			int lineStart = headerStart;
+			while (lineStart < lastLineStart) {
+				int lineEnd = lineEnd(reader, lineStart, lastLineStart);
+				headers.append(' ').append(decode(reader, lineStart, lineEnd));
+				lineStart = lineEnd + 2;
+			}
+			headers.append(' ').append(decode(reader, lastLineStart, headerEnd));
+			allHeaders = headers.toString();
+			headerStart = -1;
+		}
 		return allHeaders;
 	}
 
 	public void setAllHeaders(String allHeaders) {
+		headerStart = -1;
 		this.allHeaders = allHeaders;
 	}
 
+	/**
+	 * Returns the session the request/response was parsed from.
+	 * 
+	 * @return The session, or null if it is not known.
+	 */
+	public Session getSession() {
+		return session;
+	}
+
+	/**
+	 * Sets the session the request/response is parsed from. Header lines of
+	 * its storages are decoded on first access, the storages must not change
+	 * until then.
+	 */
+	public void setSession(Session session) {
+		this.session = session;
+	}
+
+	/**
+	 * Appends a header line to getAllHeaders(). A line of a storage of
+	 * getSession() is decoded on first access, a line of another storage is
+	 * decoded now.
+	 * 
+	 * @param data
+	 *            reader of the storage holding the line
+	 * @param offset
+	 *            index of the line in storage
+	 * @param length
+	 *            length of the line without its CRLF
+	 */
+	public void addHeaderLine(PayloadReader data, int offset, int length) {
+		PacketDirection storageDirection = storageDirection(data);
+		if (headerStart >= 0 && (storageDirection != headerDirection || offset != headerEnd + 2
+				|| lineEnd(data, lastLineStart, offset) != headerEnd)) {
+			// not the next line of the header block
+			getAllHeaders();
+		}
+		if (storageDirection != headerDirection) {
+			decodeHeaderValues();
+			headerDirection = storageDirection;
+		}
+		if (storageDirection == null) {
+			allHeaders = (allHeaders == null ? "" : allHeaders) + ' ' + decode(data, offset, offset + length);
+			return;
+		}
+		if (headerStart < 0) {
+			headerStart = offset;
+		}
+		lastLineStart = offset;
+		headerEnd = offset + length;
+	}
+
+	/**
+	 * Sets a header value from a range of a storage, replacing the value set
+	 * before. A value of the storage of the last header line added is decoded
+	 * on first access, another one now, like the value of the header line
+	 * was: Date and Last-Modified with Util.readHttpDate(), Expires with
+	 * Util.readHttpDate() defaulting to BEGINNING_OF_TIME, ETag as is, and
+	 * Referer as a URI, an invalid one keeping the referrer set before.
+	 * 
+	 * @param data
+	 *            reader of the storage holding the value
+	 * @param header
+	 *            one of HEADER_DATE, HEADER_EXPIRES, HEADER_LAST_MODIFIED,
+	 *            HEADER_ETAG and HEADER_REFERRER
+	 * @param from
+	 *            start of the value in the storage
+	 * @param to
+	 *            end of the value in the storage
+	 */
+	public void setHeaderValue(PayloadReader data, int header, int from, int to) {
+		if (headerDirection == null || storageDirection(data) != headerDirection) {
+			setHeaderValue(header, decode(data, from, to));
+			return;
+		}
+		if (headerValues == null) {
+			headerValues = new int[HEADER_VALUES * 2];
+			Arrays.fill(headerValues, -1);
+		} else if (headerValues[header * 2] >= 0) {
+			// decode the value this one replaces
+			decodeHeaderValue(header);
+		}
+		headerValues[header * 2] = from;
+		headerValues[header * 2 + 1] = to;
+	}
+
+	private void setFlag(int flag, boolean value) {
+		if (value) {
+			flags |= flag;
+		} else {
+			flags &= ~flag;
+		}
+	}
+
+	/**
+	 * @return direction of the storage of getSession() data reads, null if it
+	 *         reads another storage
+	 */
+	private PacketDirection storageDirection(PayloadReader data) {
+		if (session != null) {
+			PayloadStorage storage = data.getStorage();
+			if (storage == session.getPayloadStorageDl()) {
+				return PacketDirection.DOWNLINK;
+			}
+			if (storage == session.getPayloadStorageUl()) {
+				return PacketDirection.UPLINK;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the session storage holding the lines and values not decoded
+	 *         yet
+	 */
+	private PayloadStorage headerStorage() {
+		return headerDirection == PacketDirection.DOWNLINK ? session.getPayloadStorageDl() : session.getPayloadStorageUl();
+	}
+
+	private void clearHeaderValue(int header) {
+		if (headerValues != null) {
+			headerValues[header * 2] = -1;
+		}
+	}
+
+	private void decodeHeaderValue(int header) {
+		if (headerValues != null && headerValues[header * 2] >= 0) {
+			setHeaderValue(header, decode(headerStorage().reader(), headerValues[header * 2], headerValues[header * 2 + 1]));
+		}
+	}
+
+	private void setHeaderValue(int header, String value) {
+		switch (header) {
+		case HEADER_DATE:
+			setDate(Util.readHttpDate(value, false));
+			break;
+		case HEADER_EXPIRES:
+			setExpires(Util.readHttpDate(value, true));
+			break;
+		case HEADER_LAST_MODIFIED:
+			setLastModified(Util.readHttpDate(value, false));
+			break;
+		case HEADER_REFERRER:
+			try {
+				setReferrer(new URI(value.trim()));
+			} catch (URISyntaxException e) {
+				clearHeaderValue(HEADER_REFERRER);
+			}
+			break;
+		default:
+			setEtag(value);
+			break;
+		}
+	}
+
+	private void decodeHeaderValues() {
+		if (headerValues != null) {
+			for (int header = 0; header < HEADER_VALUES; header++) {
+				decodeHeaderValue(header);
+			}
+		}
+	}
+
+	/**
+	 * Finds the end of a line the way the line reader does: a CR starts a
+	 * pair of bytes that ends the line if the second is LF.
+	 * 
+	 * @return index of the CRLF ending the line that starts at from, or end
+	 *         if there is no CRLF before it
+	 */
+	private static int lineEnd(PayloadReader data, int from, int end) {
+		int index = from;
+		while (index < end) {
+			if (data.get(index) == '\r' && index + 1 < end) {
+				if (data.get(index + 1) == '\n') {
+					return index;
+				}
+				index += 2;
+			} else {
+				index++;
+			}
+		}
+		return end;
+	}
+
+	private static String decode(PayloadReader data, int from, int end) {
+		byte[] bytes = new byte[end - from];
+		data.copyTo(from, bytes, 0, bytes.length);
+		return new String(bytes, UTF8_CHARSET);
+	}
+
 	/**
 	 * Indicates whether the HTTP content is image or not.
 	 * 
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+/**
+ * Open addressing map from long to int for the per packet state of the TCP
+ * analysis, such as window sizes by ACK number or sets of sequence numbers,
+ * and for the index of a FlowTable, without boxing keys or values. Removal
+ * shifts the following entries back, so lookups never pass deleted slots.
+ */
+public class LongIntTable {
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int mask;
+	private int size = 0;
+
+	public LongIntTable() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            number of slots, rounded up to a power of two
+	 */
+	public LongIntTable(int capacity) {
+		int slots = Integer.highestOneBit(Math.max(4, capacity - 1) << 1);
+		keys = new long[slots];
+		values = new int[slots];
+		used = new boolean[slots];
+		mask = slots - 1;
+	}
+
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return value of key, or defaultValue if key is not in the table
+	 */
+	public int get(long key, int defaultValue) {
+		int slot = find(key);
+		return slot >= 0 ? values[slot] : defaultValue;
+	}
+
+	public void put(long key, int value) {
+		int slot = hash(key) & mask;
+		while (used[slot]) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		used[slot] = true;
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > (mask + 1) / 2) {
+			grow();
+		}
+	}
+
+	/**
+	 * Adds key with value 0, for tables used as sets.
+	 */
+	public void add(long key) {
+		put(key, 0);
+	}
+
+	public void remove(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return;
+		}
+		size--;
+		// shift back the entries that probed past the removed slot
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (used[next]) {
+			int home = hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		used[hole] = false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int find(long key) {
+		int slot = hash(key) & mask;
+		while (used[slot]) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		used = new boolean[oldUsed.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i]) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (used[slot]) {
+					slot = (slot + 1) & mask;
+				}
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
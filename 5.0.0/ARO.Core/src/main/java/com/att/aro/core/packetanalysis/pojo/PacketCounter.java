@@ -20,7 +20,11 @@ public class PacketCounter {
 	private long totalBytes=0;
 
 	public void add(PacketInfo pInfo) {
-		totalBytes += pInfo.getLen();
+		add(pInfo.getLen());
+	}
+
+	public void add(int len) {
+		totalBytes += len;
 		++packetCount;
 	}
 
@@ -87,6 +87,13 @@ public class PacketInfo implements Comparable<PacketInfo>, Serializable {
 	 */
 	private String strTcpFlags = "";
 
+	/**
+	 * IDs of the source and destination IP address in the address table of
+	 * the trace, -1 if unknown
+	 */
+	private int sourceAddressId = -1;
+	private int destinationAddressId = -1;
+
 
 	/**
 	 * Initializes an instance of the PacketInfo class, using the specified packet data.
@@ -199,6 +206,50 @@ public class PacketInfo implements Comparable<PacketInfo>, Serializable {
 		return null;
 	}
 	
+	/**
+	 * Returns the ID of the remote IP address in the address table of the
+	 * trace, if this packet represents an IP packet and a direction for the
+	 * packet has been identified.
+	 * @return The remote IP address ID, or -1 if it cannot be determined.
+	 */
+	public int getRemoteAddressId() {
+		if (dir == PacketDirection.UPLINK) {
+			return destinationAddressId;
+		} else if (dir == PacketDirection.DOWNLINK) {
+			return sourceAddressId;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the ID of the source IP address in the address table of the trace.
+	 * 
+	 * @return The source IP address ID, or -1 if unknown.
+	 */
+	public int getSourceAddressId() {
+		return sourceAddressId;
+	}
+
+	/**
+	 * Returns the ID of the destination IP address in the address table of the trace.
+	 * 
+	 * @return The destination IP address ID, or -1 if unknown.
+	 */
+	public int getDestinationAddressId() {
+		return destinationAddressId;
+	}
+
+	/**
+	 * Sets the IDs of the source and destination IP address in the address table of the trace.
+	 * 
+	 * @param sourceAddressId The source IP address ID.
+	 * @param destinationAddressId The destination IP address ID.
+	 */
+	public void setAddressIds(int sourceAddressId, int destinationAddressId) {
+		this.sourceAddressId = sourceAddressId;
+		this.destinationAddressId = destinationAddressId;
+	}
+
 	/**
 	 * Sets the packet direction. 
 	 * 
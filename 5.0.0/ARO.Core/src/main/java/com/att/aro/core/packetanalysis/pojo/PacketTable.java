@@ -0,0 +1,365 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.att.aro.core.packetreader.pojo.IPPacket;
+import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDirection;
+import com.att.aro.core.packetreader.pojo.TCPPacket;
+import com.att.aro.core.packetreader.pojo.UDPPacket;
+
+/**
+ * Columnar copy of the values of a list of packets that are read by the
+ * statistics, throughput and burst analysis.<br>
+ * Row i holds the values of the i-th PacketInfo of the list in parallel
+ * primitive arrays, so these stages scan arrays instead of following
+ * PacketInfo, Packet and IPPacket references for every packet. The table is a
+ * snapshot, it is not updated when a PacketInfo changes. The TLS probe of a TCP
+ * packet that does not use port 443 is left to the first isHttps(int) call, as
+ * TCPPacket reads it from the packet data on first access.
+ */
+public class PacketTable {
+
+	private static final PacketDirection[] DIRECTIONS = { null, PacketDirection.UNKNOWN, PacketDirection.UPLINK,
+			PacketDirection.DOWNLINK };
+
+	private static final byte IP_PACKET = 1;
+	private static final byte TCP_PACKET = 2;
+	private static final byte UDP_PACKET = 4;
+	private static final byte HTTPS_PACKET = 8;
+	private static final byte HTTPS_UNPROBED = 16;
+
+	private final int size;
+	private final PacketInfo[] packets;
+	private final double[] timestamps;
+	private final int[] lengths;
+	private final int[] payloadLengths;
+	private final byte[] directions;
+	private final byte[] types;
+	private final int[] appIds;
+	private final int[] addressIds;
+	private final List<String> appNames = new ArrayList<String>();
+
+	/**
+	 * Copies the values of the packets into the table.
+	 * 
+	 * @param packetList
+	 *            packets in the order of the table rows
+	 */
+	public PacketTable(List<PacketInfo> packetList) {
+		size = packetList.size();
+		packets = packetList.toArray(new PacketInfo[size]);
+		timestamps = new double[size];
+		lengths = new int[size];
+		payloadLengths = new int[size];
+		directions = new byte[size];
+		types = new byte[size];
+		appIds = new int[size];
+		addressIds = new int[size];
+
+		Map<String, Integer> appIdMap = new HashMap<String, Integer>();
+		for (int i = 0; i < size; i++) {
+			PacketInfo packetInfo = packets[i];
+			timestamps[i] = packetInfo.getTimeStamp();
+			lengths[i] = packetInfo.getLen();
+			payloadLengths[i] = packetInfo.getPayloadLen();
+			PacketDirection dir = packetInfo.getDir();
+			directions[i] = (byte) (dir == null ? 0 : dir.ordinal() + 1);
+			types[i] = typeOf(packetInfo.getPacket());
+			addressIds[i] = packetInfo.getRemoteAddressId();
+
+			String appName = packetInfo.getAppName();
+			Integer appId = appIdMap.get(appName);
+			if (appId == null) {
+				appId = appNames.size();
+				appNames.add(appName);
+				appIdMap.put(appName, appId);
+			}
+			appIds[i] = appId;
+		}
+	}
+
+	/**
+	 * Copies rows of a table.
+	 */
+	private PacketTable(PacketTable source, int[] rows) {
+		size = rows.length;
+		packets = new PacketInfo[size];
+		timestamps = new double[size];
+		lengths = new int[size];
+		payloadLengths = new int[size];
+		directions = new byte[size];
+		types = new byte[size];
+		appIds = new int[size];
+		addressIds = new int[size];
+
+		// app IDs in the order of first use, as if the table was built from the packets
+		int[] appIdMap = new int[source.appNames.size()];
+		Arrays.fill(appIdMap, -1);
+		for (int i = 0; i < size; i++) {
+			int row = rows[i];
+			packets[i] = source.packets[row];
+			timestamps[i] = source.timestamps[row];
+			lengths[i] = source.lengths[row];
+			payloadLengths[i] = source.payloadLengths[row];
+			directions[i] = source.directions[row];
+			types[i] = source.types[row];
+			addressIds[i] = source.addressIds[row];
+
+			int sourceAppId = source.appIds[row];
+			if (appIdMap[sourceAppId] < 0) {
+				appIdMap[sourceAppId] = appNames.size();
+				appNames.add(source.appNames.get(sourceAppId));
+			}
+			appIds[i] = appIdMap[sourceAppId];
+		}
+	}
+
+	/**
+	 * Returns a table of some rows of this one, in the order of the packets
+	 * given. The values are copied from this table, the packets are not read
+	 * again. A row is found by its timestamp if the rows are in timestamp
+	 * order, as the packets of a trace are.
+	 * 
+	 * @param packetList
+	 *            packets of rows of this table
+	 * @return the table of the rows of the packets
+	 * @throws IllegalArgumentException
+	 *             if a packet is not in this table
+	 */
+	public PacketTable select(List<PacketInfo> packetList) {
+		Map<PacketInfo, Integer> rowMap = null;
+		for (int i = 1; i < size && rowMap == null; i++) {
+			if (timestamps[i] < timestamps[i - 1]) {
+				rowMap = new IdentityHashMap<PacketInfo, Integer>(size);
+				for (int row = 0; row < size; row++) {
+					rowMap.put(packets[row], row);
+				}
+			}
+		}
+		int[] rows = new int[packetList.size()];
+		int index = 0;
+		for (PacketInfo packetInfo : packetList) {
+			Integer row = rowMap != null ? rowMap.get(packetInfo) : Integer.valueOf(indexOf(packetInfo));
+			if (row == null || row < 0) {
+				throw new IllegalArgumentException("Packet is not in the table");
+			}
+			rows[index++] = row;
+		}
+		return new PacketTable(this, rows);
+	}
+
+	/**
+	 * @return the row of the packet in a table in timestamp order, -1 if the
+	 *         packet is not in the table
+	 */
+	private int indexOf(PacketInfo packetInfo) {
+		double timestamp = packetInfo.getTimeStamp();
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps[middle] < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		for (int row = low; row < size && timestamps[row] == timestamp; row++) {
+			if (packets[row] == packetInfo) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	private static byte typeOf(Packet packet) {
+		byte type = 0;
+		if (packet instanceof IPPacket) {
+			type |= IP_PACKET;
+		}
+		if (packet instanceof TCPPacket) {
+			TCPPacket tcp = (TCPPacket) packet;
+			type |= TCP_PACKET;
+			if (tcp.getDestinationPort() == 443 || tcp.getSourcePort() == 443) {
+				type |= HTTPS_PACKET;
+			} else {
+				type |= HTTPS_UNPROBED;
+			}
+		} else if (packet instanceof UDPPacket) {
+			type |= UDP_PACKET;
+		}
+		return type;
+	}
+
+	/**
+	 * @return number of packets in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the table has no packets
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param index
+	 * @return the PacketInfo of the row
+	 */
+	public PacketInfo getPacketInfo(int index) {
+		return packets[index];
+	}
+
+	/**
+	 * @return read only list of the PacketInfo of all rows, in row order
+	 */
+	public List<PacketInfo> getPacketInfos() {
+		return Collections.unmodifiableList(Arrays.asList(packets));
+	}
+
+	/**
+	 * @param index
+	 * @return the timestamp of the packet, see PacketInfo.getTimeStamp()
+	 */
+	public double getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the length of the packet, see PacketInfo.getLen()
+	 */
+	public int getLength(int index) {
+		return lengths[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the payload length of the packet, see PacketInfo.getPayloadLen()
+	 */
+	public int getPayloadLength(int index) {
+		return payloadLengths[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the direction of the packet, may be null
+	 */
+	public PacketDirection getDirection(int index) {
+		return DIRECTIONS[directions[index]];
+	}
+
+	/**
+	 * @param index
+	 * @return true for an uplink packet
+	 */
+	public boolean isUplink(int index) {
+		return directions[index] == PacketDirection.UPLINK.ordinal() + 1;
+	}
+
+	/**
+	 * @param index
+	 * @return true for a downlink packet
+	 */
+	public boolean isDownlink(int index) {
+		return directions[index] == PacketDirection.DOWNLINK.ordinal() + 1;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the packet is an IPPacket
+	 */
+	public boolean isIPPacket(int index) {
+		return (types[index] & IP_PACKET) != 0;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the packet is a TCPPacket
+	 */
+	public boolean isTCPPacket(int index) {
+		return (types[index] & TCP_PACKET) != 0;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the packet is a UDPPacket
+	 */
+	public boolean isUDPPacket(int index) {
+		return (types[index] & UDP_PACKET) != 0;
+	}
+
+	/**
+	 * @param index
+	 * @return true for a TCP packet carrying SSL or using port 443
+	 */
+	public boolean isHttps(int index) {
+		byte type = types[index];
+		if ((type & HTTPS_UNPROBED) != 0) {
+			type &= ~HTTPS_UNPROBED;
+			if (((TCPPacket) packets[index].getPacket()).isSsl()) {
+				type |= HTTPS_PACKET;
+			}
+			types[index] = type;
+		}
+		return (type & HTTPS_PACKET) != 0;
+	}
+
+	/**
+	 * @param index
+	 * @return ID of the app name of the packet, see getAppName(int)
+	 */
+	public int getAppId(int index) {
+		return appIds[index];
+	}
+
+	/**
+	 * @return number of distinct app names, app IDs range from 0 to
+	 *         getAppCount() - 1
+	 */
+	public int getAppCount() {
+		return appNames.size();
+	}
+
+	/**
+	 * @param appId
+	 * @return the app name of the ID, may be null
+	 */
+	public String getAppName(int appId) {
+		return appNames.get(appId);
+	}
+
+	/**
+	 * @param index
+	 * @return ID of the remote IP address in the address table of the trace,
+	 *         -1 if unknown
+	 */
+	public int getAddressId(int index) {
+		return addressIds[index];
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+/**
+ * Reads a PayloadStorage in place, from the packet data arrays its slices
+ * reference. The slice of the last byte read is remembered, so reading
+ * forward through the payload does not search for slices.<br>
+ * A reader sees the payload the storage held when the reader was made, and is
+ * not thread safe, every thread makes its own with PayloadStorage.reader().
+ */
+public class PayloadReader {
+
+	private final PayloadStorage storage;
+	private final byte[][] buffers;
+	private final int[] offsets;
+	private final int[] starts;
+	private final int count;
+
+	/**
+	 * Slice of the last byte read, -1 before the first. The payload from
+	 * sliceStart to sliceEnd is sliceBuffer from sliceOffset.
+	 */
+	private int slice = -1;
+	private byte[] sliceBuffer;
+	private int sliceOffset;
+	private int sliceStart = 0;
+	private int sliceEnd = 0;
+
+	PayloadReader(PayloadStorage storage, byte[][] buffers, int[] offsets, int[] starts, int count) {
+		this.storage = storage;
+		this.buffers = buffers;
+		this.offsets = offsets;
+		this.starts = starts;
+		this.count = count;
+	}
+
+	/**
+	 * @return the storage read
+	 */
+	public PayloadStorage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * @return number of payload bytes
+	 */
+	public int size() {
+		return starts[count];
+	}
+
+	/**
+	 * @return byte at index of the payload
+	 */
+	public byte get(int index) {
+		if (index < sliceStart || index >= sliceEnd) {
+			moveTo(index);
+		}
+		return sliceBuffer[sliceOffset + index - sliceStart];
+	}
+
+	/**
+	 * Copies a range of the payload.
+	 *
+	 * @param from
+	 *            index of the first payload byte to copy
+	 * @param dest
+	 *            destination array
+	 * @param destOffset
+	 *            start in dest
+	 * @param length
+	 *            number of bytes to copy
+	 */
+	public void copyTo(int from, byte[] dest, int destOffset, int length) {
+		if (from < 0 || length < 0 || from + length > starts[count]) {
+			throw new IndexOutOfBoundsException("from " + from + ", length " + length + ", size " + starts[count]);
+		}
+		int position = from;
+		int end = from + length;
+		int target = destOffset;
+		while (position < end) {
+			if (position < sliceStart || position >= sliceEnd) {
+				moveTo(position);
+			}
+			int chunk = Math.min(end, sliceEnd) - position;
+			System.arraycopy(sliceBuffer, sliceOffset + position - sliceStart, dest, target, chunk);
+			position += chunk;
+			target += chunk;
+		}
+	}
+
+	private void moveTo(int index) {
+		if (index < 0 || index >= starts[count]) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + starts[count]);
+		}
+		if (slice >= 0 && index == sliceEnd) {
+			// reading on into the next slice, slices are never empty
+			slice++;
+		} else {
+			slice = PayloadStorage.slice(starts, count, index);
+		}
+		sliceBuffer = buffers[slice];
+		sliceOffset = offsets[slice];
+		sliceStart = starts[slice];
+		sliceEnd = starts[slice + 1];
+	}
+}
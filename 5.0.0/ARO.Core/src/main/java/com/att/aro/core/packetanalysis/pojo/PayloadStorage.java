@@ -0,0 +1,255 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reassembled payload of a session, kept as slices of the packet data arrays
+ * the payload was read from rather than as a copy.<br>
+ * The payload is read in place through reader(), copyTo(), writeTo() and
+ * asByteBuffer(int, int). A contiguous array is only built by toByteArray(),
+ * for callers that need one, and is kept until more payload is appended. The
+ * packet data arrays must not be changed while they are referenced.
+ */
+public class PayloadStorage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private byte[][] buffers = new byte[4][];
+	private int[] offsets = new int[4];
+
+	/**
+	 * Position of every slice in the payload, starts[count] is the size
+	 */
+	private int[] starts = new int[5];
+	private int count = 0;
+	private byte[] contiguous = null;
+
+	/**
+	 * @return storage referencing bytes
+	 */
+	public static PayloadStorage wrap(byte[] bytes) {
+		PayloadStorage storage = new PayloadStorage();
+		storage.append(bytes, 0, bytes.length);
+		storage.contiguous = bytes;
+		return storage;
+	}
+
+	/**
+	 * Appends a range of a packet data array without copying it.
+	 *
+	 * @param data
+	 *            packet data
+	 * @param offset
+	 *            start of the payload in data
+	 * @param length
+	 *            length of the payload
+	 */
+	public synchronized void append(byte[] data, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", data " + data.length);
+		}
+		if (length == 0) {
+			return;
+		}
+		if (count == buffers.length) {
+			buffers = Arrays.copyOf(buffers, count * 2);
+			offsets = Arrays.copyOf(offsets, count * 2);
+			starts = Arrays.copyOf(starts, count * 2 + 1);
+		}
+		buffers[count] = data;
+		offsets[count] = offset;
+		starts[count + 1] = starts[count] + length;
+		count++;
+		contiguous = null;
+	}
+
+	/**
+	 * @return number of payload bytes
+	 */
+	public synchronized int size() {
+		return starts[count];
+	}
+
+	/**
+	 * @return byte at index of the payload
+	 */
+	public synchronized byte byteAt(int index) {
+		if (index < 0 || index >= starts[count]) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + starts[count]);
+		}
+		if (contiguous != null) {
+			return contiguous[index];
+		}
+		int slice = slice(starts, count, index);
+		return buffers[slice][offsets[slice] + index - starts[slice]];
+	}
+
+	/**
+	 * Copies a range of the payload.
+	 *
+	 * @param from
+	 *            index of the first payload byte to copy
+	 * @param dest
+	 *            destination array
+	 * @param destOffset
+	 *            start in dest
+	 * @param length
+	 *            number of bytes to copy
+	 */
+	public synchronized void copyTo(int from, byte[] dest, int destOffset, int length) {
+		if (from < 0 || length < 0 || from + length > starts[count]) {
+			throw new IndexOutOfBoundsException("from " + from + ", length " + length + ", size " + starts[count]);
+		}
+		if (contiguous != null) {
+			System.arraycopy(contiguous, from, dest, destOffset, length);
+			return;
+		}
+		int position = from;
+		int end = from + length;
+		int target = destOffset;
+		for (int slice = length == 0 ? count : slice(starts, count, from); position < end; slice++) {
+			int chunk = Math.min(end, starts[slice + 1]) - position;
+			System.arraycopy(buffers[slice], offsets[slice] + position - starts[slice], dest, target, chunk);
+			position += chunk;
+			target += chunk;
+		}
+	}
+
+	/**
+	 * Writes the payload to an output stream.
+	 */
+	public synchronized void writeTo(OutputStream out) throws IOException {
+		if (contiguous != null) {
+			out.write(contiguous);
+			return;
+		}
+		for (int slice = 0; slice < count; slice++) {
+			out.write(buffers[slice], offsets[slice], starts[slice + 1] - starts[slice]);
+		}
+	}
+
+	/**
+	 * Writes a range of the payload to an output stream.
+	 *
+	 * @param from
+	 *            index of the first payload byte to write
+	 * @param length
+	 *            number of bytes to write
+	 */
+	public synchronized void writeTo(int from, int length, OutputStream out) throws IOException {
+		if (from < 0 || length < 0 || from + length > starts[count]) {
+			throw new IndexOutOfBoundsException("from " + from + ", length " + length + ", size " + starts[count]);
+		}
+		if (contiguous != null) {
+			out.write(contiguous, from, length);
+			return;
+		}
+		int position = from;
+		int end = from + length;
+		for (int slice = length == 0 ? count : slice(starts, count, from); position < end; slice++) {
+			int chunk = Math.min(end, starts[slice + 1]) - position;
+			out.write(buffers[slice], offsets[slice] + position - starts[slice], chunk);
+			position += chunk;
+		}
+	}
+
+	/**
+	 * Returns a reader of the payload held now. The reader reads the packet
+	 * data arrays in place until the storage is reset.
+	 *
+	 * @return reader from index 0 to the size of the payload
+	 */
+	public synchronized PayloadReader reader() {
+		return new PayloadReader(this, buffers, offsets, starts, count);
+	}
+
+	/**
+	 * Returns the payload as one array, for callers that need a byte[]. Code
+	 * that can read the slices in place uses reader() instead. The array is built on the first call
+	 * and shared by later calls, it must not be modified.
+	 *
+	 * @return contiguous payload
+	 */
+	public synchronized byte[] toByteArray() {
+		if (contiguous == null) {
+			byte[] bytes = new byte[starts[count]];
+			copyTo(0, bytes, 0, bytes.length);
+			contiguous = bytes;
+		}
+		return contiguous;
+	}
+
+	/**
+	 * Returns a read-only view of a range of the payload. The range is viewed
+	 * in place when it lies in one slice or in the contiguous array, otherwise
+	 * it is copied.
+	 *
+	 * @param from
+	 *            index of the first payload byte
+	 * @param length
+	 *            number of bytes
+	 * @return view from position 0 to length
+	 */
+	public synchronized ByteBuffer asByteBuffer(int from, int length) {
+		if (from < 0 || length < 0 || from + length > starts[count]) {
+			throw new IndexOutOfBoundsException("from " + from + ", length " + length + ", size " + starts[count]);
+		}
+		ByteBuffer view;
+		int slice = length == 0 ? 0 : slice(starts, count, from);
+		if (contiguous != null) {
+			view = ByteBuffer.wrap(contiguous, from, length);
+		} else if (count > 0 && from + length <= starts[slice + 1]) {
+			view = ByteBuffer.wrap(buffers[slice], offsets[slice] + from - starts[slice], length);
+		} else {
+			byte[] bytes = new byte[length];
+			copyTo(from, bytes, 0, length);
+			view = ByteBuffer.wrap(bytes);
+		}
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Drops the payload and the references to the packet data arrays.
+	 */
+	public synchronized void reset() {
+		Arrays.fill(buffers, 0, count, null);
+		count = 0;
+		contiguous = null;
+	}
+
+	/**
+	 * @return index of the slice holding payload index
+	 */
+	static int slice(int[] starts, int count, int index) {
+		int low = 0;
+		int high = count - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+}
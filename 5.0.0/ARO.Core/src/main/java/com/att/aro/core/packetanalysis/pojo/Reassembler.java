@@ -15,8 +15,8 @@
  */
 package com.att.aro.core.packetanalysis.pojo;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -27,30 +27,36 @@ import java.util.TreeMap;
 public class Reassembler {
 	private Long baseSeq;
 	private long seq = -1;
-	private List<PacketInfo> ooid = new ArrayList<PacketInfo>();
-	private ByteArrayOutputStream storage = new ByteArrayOutputStream();
+
+	/**
+	 * Out of order packets, a binary min-heap keyed on relative sequence
+	 * number in the high bits and arrival in the low 31 bits
+	 */
+	private long[] ooidKeys = new long[16];
+	private PacketInfo[] ooidPackets = new PacketInfo[16];
+	private int ooidSize = 0;
+	private int ooidArrival = 0;
+
+	/**
+	 * Out of order packets passed by the reassembled sequence number
+	 */
+	private List<PacketInfo> ooidPassed = new ArrayList<PacketInfo>();
+	private PayloadStorage storage = new PayloadStorage();
 	private SortedMap<Integer, PacketInfo> packetOffsets = new TreeMap<Integer, PacketInfo>();
 	private List<PacketRangeInStorage> pktRanges =  new ArrayList<PacketRangeInStorage>();
 	
 	public void clear() {
 		baseSeq = null;
 		seq = -1;
-		ooid.clear();
-		storage.reset();
+		Arrays.fill(ooidPackets, 0, ooidSize, null);
+		ooidSize = 0;
+		ooidArrival = 0;
+		ooidPassed.clear();
+		storage = new PayloadStorage();
 		packetOffsets = new TreeMap<Integer, PacketInfo>();
 		pktRanges = new ArrayList<PacketRangeInStorage>();
 	}
 
-	
-	/**
-	 * @see java.lang.Object#finalize()
-	 */
-	@Override
-	protected void finalize() throws Throwable {
-		storage.close();
-		super.finalize();
-	}
-
 	public Long getBaseSeq() {
 		return baseSeq;
 	}
@@ -67,19 +73,106 @@ public class Reassembler {
 		this.seq = seq;
 	}
 
+	/**
+	 * Holds an out of order packet until the reassembled sequence number
+	 * reaches it.
+	 * 
+	 * @param relativeSeq
+	 *            sequence number of the packet relative to the base sequence
+	 *            number, 0 to 2^32 - 1
+	 * @param packetInfo
+	 *            the packet
+	 */
+	public void addOutOfOrder(long relativeSeq, PacketInfo packetInfo) {
+		if (ooidSize == ooidKeys.length) {
+			ooidKeys = Arrays.copyOf(ooidKeys, ooidSize * 2);
+			ooidPackets = Arrays.copyOf(ooidPackets, ooidSize * 2);
+		}
+		long key = (relativeSeq << 31) | (ooidArrival++ & 0x7fffffff);
+		int index = ooidSize++;
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (ooidKeys[parent] <= key) {
+				break;
+			}
+			ooidKeys[index] = ooidKeys[parent];
+			ooidPackets[index] = ooidPackets[parent];
+			index = parent;
+		}
+		ooidKeys[index] = key;
+		ooidPackets[index] = packetInfo;
+	}
+
+	/**
+	 * Removes the first held out of order packet, in order of arrival, whose
+	 * relative sequence number equals the reassembled sequence number. Held
+	 * packets that the sequence number has passed are moved aside.
+	 * 
+	 * @return the packet, or null if the next held packet is still ahead
+	 */
+	public PacketInfo pollInOrder() {
+		while (ooidSize > 0) {
+			long headSeq = ooidKeys[0] >>> 31;
+			if (headSeq > seq) {
+				return null;
+			}
+			PacketInfo packetInfo = ooidPackets[0];
+			removeHead();
+			if (headSeq == seq) {
+				return packetInfo;
+			}
+			ooidPassed.add(packetInfo);
+		}
+		return null;
+	}
+
+	/**
+	 * @return out of order packets that were never reassembled
+	 */
 	public List<PacketInfo> getOoid() {
+		List<PacketInfo> ooid = new ArrayList<PacketInfo>(ooidPassed.size() + ooidSize);
+		ooid.addAll(ooidPassed);
+		ooid.addAll(Arrays.asList(ooidPackets).subList(0, ooidSize));
 		return ooid;
 	}
 
-	public void setOoid(List<PacketInfo> ooid) {
-		this.ooid = ooid;
+	private void removeHead() {
+		int size = --ooidSize;
+		long key = ooidKeys[size];
+		PacketInfo packetInfo = ooidPackets[size];
+		ooidPackets[size] = null;
+		int index = 0;
+		int child;
+		while ((child = 2 * index + 1) < size) {
+			if (child + 1 < size && ooidKeys[child + 1] < ooidKeys[child]) {
+				child++;
+			}
+			if (key <= ooidKeys[child]) {
+				break;
+			}
+			ooidKeys[index] = ooidKeys[child];
+			ooidPackets[index] = ooidPackets[child];
+			index = child;
+		}
+		if (size > 0) {
+			ooidKeys[index] = key;
+			ooidPackets[index] = packetInfo;
+		}
 	}
 
-	public ByteArrayOutputStream getStorage() {
+	/**
+	 * Returns the reassembled payload. It used to be a ByteArrayOutputStream
+	 * the payload was copied into. The PayloadStorage references the packet
+	 * data instead: callers that wrote to the stream call append(), callers
+	 * that read it call reader(), writeTo() or, for a byte[], toByteArray().
+	 * 
+	 * @return storage of the reassembled payload
+	 */
+	public PayloadStorage getStorage() {
 		return storage;
 	}
 
-	public void setStorage(ByteArrayOutputStream storage) {
+	public void setStorage(PayloadStorage storage) {
 		this.storage = storage;
 	}
 
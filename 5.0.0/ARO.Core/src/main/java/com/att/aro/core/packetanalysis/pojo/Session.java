@@ -19,7 +19,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -71,6 +70,11 @@ public class Session implements Serializable, Comparable<Session> {
 	 */
 	private PacketInfo lastSslHandshakePacket;
 
+	/**
+	 * The first SYN packet, found when the session is reassembled
+	 */
+	private PacketInfo synPacket;
+
 	/**
 	 * Domain name is the initial host name requested that initiated a TCP
 	 * session. This value is either the host name specified by the first HTTP
@@ -137,9 +141,9 @@ public class Session implements Serializable, Comparable<Session> {
 	private List<HttpRequestResponseInfo> requestResponseInfo = new ArrayList<HttpRequestResponseInfo>();
 
 	/**
-	 * An array of bytes containing the uplink storage.
+	 * The uplink storage, slices of the uplink packet data.
 	 */
-	private byte[] storageUl;
+	private PayloadStorage storageUl;
 
 	/**
 	 * A Map of offsets and corresponding PacketInfo objects that contain the
@@ -148,9 +152,9 @@ public class Session implements Serializable, Comparable<Session> {
 	private SortedMap<Integer, PacketInfo> packetOffsetsUl;
 
 	/**
-	 * An array of bytes containing the downlink storage.
+	 * The downlink storage, slices of the downlink packet data.
 	 */
-	private byte[] storageDl;
+	private PayloadStorage storageDl;
 
 	/**
 	 * A Map of offsets and corresponding PacketInfo objects that contain the
@@ -206,20 +210,20 @@ public class Session implements Serializable, Comparable<Session> {
 	 * May be replaced by storageUl (Already defined above) after testing.<br>
 	 * unused, has been refactored out of this class
 	 */
-	private ByteArrayOutputStream pStorageULDCPT = new ByteArrayOutputStream(); //May be replaced by storageUl (Already defined above) after testing.
+	private ByteArrayOutputStream pStorageULDCPT = null; //May be replaced by storageUl (Already defined above) after testing.
 
 	/**
 	 * A ByteArrayOutputStream<br>
 	 * May be replaced by storageDl (Already defined above) after testing.<br>
 	 * unused, has been refactored out of this class
 	 */
-	private ByteArrayOutputStream pStorageDLDCPT = new ByteArrayOutputStream(); //May be replaced by storageDl (Already defined above) after testing.
+	private ByteArrayOutputStream pStorageDLDCPT = null; //May be replaced by storageDl (Already defined above) after testing.
 
 	/**
 	 * A ByteArrayOutputStream<br>
 	 * unused, has been refactored out of this class
 	 */
-	private ByteArrayOutputStream pStorageBothDCPT = new ByteArrayOutputStream();
+	private ByteArrayOutputStream pStorageBothDCPT = null;
 
 	/**
 	 * Initializes an instance of the TCPSession class, using the specified
@@ -356,6 +360,16 @@ public class Session implements Serializable, Comparable<Session> {
 		return lastSslHandshakePacket;
 	}
 
+	/**
+	 * Returns the first SYN packet of the session.
+	 * 
+	 * @return the synPacket, or null if the session has none or is not
+	 *         reassembled
+	 */
+	public PacketInfo getSynPacket() {
+		return synPacket;
+	}
+
 	/**
 	 * Returns the name of the TCP domain.
 	 * 
@@ -476,10 +490,12 @@ public class Session implements Serializable, Comparable<Session> {
 	public String getDataText() {
 		//trim the buffer size, most of the contents are not available for use string presented
 		//1000 according to the average packet size 1500
-		StringBuffer buf = new StringBuffer(storageUl.length + storageDl.length);
-		byte[] temp = Arrays.copyOf(storageUl, 1000);
+		StringBuffer buf = new StringBuffer(storageUl.size() + storageDl.size());
+		byte[] temp = new byte[1000];
+		storageUl.copyTo(0, temp, 0, Math.min(storageUl.size(), temp.length));
 		buf.append(new String(temp));
-		temp = Arrays.copyOf(storageDl, 1000);
+		temp = new byte[1000];
+		storageDl.copyTo(0, temp, 0, Math.min(storageDl.size(), temp.length));
 		buf.append(new String(temp)+"...");
 		
 //		buf.append(new String(storageUl));
@@ -489,11 +505,21 @@ public class Session implements Serializable, Comparable<Session> {
 	}
 
 	/**
-	 * Return the uplink storage.
+	 * Return the uplink storage. The array is built from the packet data on
+	 * the first call and must not be modified.
 	 * 
 	 * @return An array of bytes containing the uplink storage.
 	 */
 	public byte[] getStorageUl() {
+		return storageUl != null ? storageUl.toByteArray() : null;
+	}
+
+	/**
+	 * Return the uplink storage without building an array.
+	 * 
+	 * @return The uplink storage.
+	 */
+	public PayloadStorage getPayloadStorageUl() {
 		return storageUl;
 	}
 
@@ -516,11 +542,21 @@ public class Session implements Serializable, Comparable<Session> {
 	}
 
 	/**
-	 * Return the downlink storage.
+	 * Return the downlink storage. The array is built from the packet data on
+	 * the first call and must not be modified.
 	 * 
 	 * @return An array of bytes containing the downlink storage.
 	 */
 	public byte[] getStorageDl() {
+		return storageDl != null ? storageDl.toByteArray() : null;
+	}
+
+	/**
+	 * Return the downlink storage without building an array.
+	 * 
+	 * @return The downlink storage.
+	 */
+	public PayloadStorage getPayloadStorageDl() {
 		return storageDl;
 	}
 
@@ -756,6 +792,9 @@ public class Session implements Serializable, Comparable<Session> {
 	 * @return A ByteArrayOutputStream
 	 */
 	public ByteArrayOutputStream getpStorageULDCPT() {
+		if (pStorageULDCPT == null) {
+			pStorageULDCPT = new ByteArrayOutputStream();
+		}
 		return pStorageULDCPT;
 	}
 
@@ -779,6 +818,9 @@ public class Session implements Serializable, Comparable<Session> {
 	 * @return A ByteArrayOutputStream
 	 */
 	public ByteArrayOutputStream getpStorageDLDCPT() {
+		if (pStorageDLDCPT == null) {
+			pStorageDLDCPT = new ByteArrayOutputStream();
+		}
 		return pStorageDLDCPT;
 	}
 
@@ -800,6 +842,9 @@ public class Session implements Serializable, Comparable<Session> {
 	 * @return A ByteArrayOutputStream
 	 */
 	public ByteArrayOutputStream getpStorageBothDCPT() {
+		if (pStorageBothDCPT == null) {
+			pStorageBothDCPT = new ByteArrayOutputStream();
+		}
 		return pStorageBothDCPT;
 	}
 
@@ -844,6 +889,16 @@ public class Session implements Serializable, Comparable<Session> {
 		this.lastSslHandshakePacket = lastSslHandshakePacket;
 	}
 
+	/**
+	 * The first SYN packet
+	 * 
+	 * @param synPacket
+	 *            - The first SYN packet of the session
+	 */
+	public void setSynPacket(PacketInfo synPacket) {
+		this.synPacket = synPacket;
+	}
+
 	/**
 	 * The domain name
 	 * 
@@ -955,6 +1010,15 @@ public class Session implements Serializable, Comparable<Session> {
 	 * @param storageUl - An array of bytes containing the uplink storage.
 	 */
 	public void setStorageUl(byte[] storageUl) {
+		this.storageUl = storageUl != null ? PayloadStorage.wrap(storageUl) : null;
+	}
+
+	/**
+	 * The uplink storage, slices of the uplink packet data.
+	 * 
+	 * @param storageUl - The uplink storage.
+	 */
+	public void setPayloadStorageUl(PayloadStorage storageUl) {
 		this.storageUl = storageUl;
 	}
 
@@ -974,6 +1038,15 @@ public class Session implements Serializable, Comparable<Session> {
 	 * @param storageDl - An array of bytes containing the downlink storage.
 	 */
 	public void setStorageDl(byte[] storageDl) {
+		this.storageDl = storageDl != null ? PayloadStorage.wrap(storageDl) : null;
+	}
+
+	/**
+	 * The downlink storage, slices of the downlink packet data.
+	 * 
+	 * @param storageDl - The downlink storage.
+	 */
+	public void setPayloadStorageDl(PayloadStorage storageDl) {
 		this.storageDl = storageDl;
 	}
 
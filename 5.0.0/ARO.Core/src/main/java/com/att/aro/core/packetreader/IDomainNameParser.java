@@ -16,8 +16,17 @@
 package com.att.aro.core.packetreader;
 
 import com.att.aro.core.packetreader.pojo.DomainNameSystem;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.core.packetreader.pojo.UDPPacket;
 
 public interface IDomainNameParser {
-	DomainNameSystem parseDomainName(UDPPacket packet);
+	/**
+	 * Parses a DNS packet. The parser keeps no state, packets may be parsed
+	 * on several threads.
+	 * 
+	 * @param decodeContext
+	 *            tables of the trace the names and answers are interned in,
+	 *            null to parse the packet on its own
+	 */
+	DomainNameSystem parseDomainName(UDPPacket packet, PacketDecodeContext decodeContext);
 }
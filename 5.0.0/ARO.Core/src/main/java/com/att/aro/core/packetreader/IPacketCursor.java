@@ -0,0 +1,44 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import com.att.aro.core.packetreader.pojo.Packet;
+
+/**
+ * Pull based access to the packets of a trace file.<br>
+ * Packets are decoded only as the consumer advances the cursor, so a trace can
+ * be processed incrementally instead of being held in memory in full. A cursor
+ * iterates only once and has to be closed to release the trace file.<br>
+ * Read failures surface as AROPacketReadException.
+ */
+public interface IPacketCursor extends Iterator<Packet>, Iterable<Packet>, Closeable {
+
+	/**
+	 * @return name of the application of the packet last returned by next(),
+	 *         null if the reader does not name applications
+	 */
+	String getAppName();
+
+	/**
+	 * @return index of the packet last returned by next() among the packets
+	 *         of its file in the order they were read, -1 before the first
+	 *         packet
+	 */
+	long getPosition();
+}
@@ -16,7 +16,48 @@
 package com.att.aro.core.packetreader;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 
 public interface IPacketReader {
 	void readPacket(String packetfile, IPacketListener listener) throws IOException;
+
+	/**
+	 * Reads the packets of a trace file like readPacket(String,
+	 * IPacketListener), decoding them into the tables of the trace.
+	 * 
+	 * @param decodeContext
+	 *            tables of the trace the file belongs to, null for none
+	 */
+	void readPacket(String packetfile, IPacketListener listener, PacketDecodeContext decodeContext) throws IOException;
+
+	/**
+	 * Opens a pull based cursor over the packets of a trace file.
+	 * 
+	 * @param packetfile
+	 *            full path to the trace file
+	 * @return an open cursor, the caller has to close it
+	 * @throws IOException
+	 *             if the trace file cannot be opened
+	 */
+	IPacketCursor openCursor(String packetfile) throws IOException;
+
+	/**
+	 * Opens a cursor like openCursor(String). A push based reader reads the
+	 * file on a thread of the executor, a pull based reader does not need it.
+	 * 
+	 * @param executor
+	 *            runs push based reads, shared by the files of a trace
+	 */
+	IPacketCursor openCursor(String packetfile, Executor executor) throws IOException;
+
+	/**
+	 * Opens a cursor like openCursor(String, Executor), decoding the packets
+	 * into the tables of the trace.
+	 * 
+	 * @param decodeContext
+	 *            tables of the trace the file belongs to, null for none
+	 */
+	IPacketCursor openCursor(String packetfile, Executor executor, PacketDecodeContext decodeContext) throws IOException;
 }
@@ -16,10 +16,18 @@
 package com.att.aro.core.packetreader;
 
 import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 
 public interface IPacketService {
 	Packet createPacketFromPcap(int datalink, long seconds, long microSeconds, int len,
 			byte[] data, String pcapfile);
+	/**
+	 * Creates a packet like createPacketFromPcap(int, long, long, int, byte[], String),
+	 * a DNS packet is parsed into the tables of the trace.
+	 * @param decodeContext tables of the trace the packet belongs to, null for none
+	 */
+	Packet createPacketFromPcap(int datalink, long seconds, long microSeconds, int len,
+			byte[] data, String pcapfile, PacketDecodeContext decodeContext);
 	/**
 	 * Returns a new instance of the Packet class, using a datalink to the Microsoft Network Monitor 
 	 * and the specified parameters to initialize the class members.
@@ -33,6 +41,13 @@ public interface IPacketService {
 	 */
 	Packet createPacketFromNetmon(int datalink, long seconds, long microSeconds, int len,
 			byte[] data) ;
+	/**
+	 * Creates a packet like createPacketFromNetmon(int, long, long, int, byte[]),
+	 * a DNS packet is parsed into the tables of the trace.
+	 * @param decodeContext tables of the trace the packet belongs to, null for none
+	 */
+	Packet createPacketFromNetmon(int datalink, long seconds, long microSeconds, int len,
+			byte[] data, PacketDecodeContext decodeContext);
 	/**
 	 * Returns a new instance of the Packet class, using the specified parameters to initialize the class members.
 	 * @param network The datalink to the network.
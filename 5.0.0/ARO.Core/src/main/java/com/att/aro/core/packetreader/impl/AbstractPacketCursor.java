@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.att.aro.core.exception.AROPacketReadException;
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.pojo.Packet;
+
+/**
+ * Look-ahead base for packet cursors, subclasses only implement advance().
+ */
+public abstract class AbstractPacketCursor implements IPacketCursor {
+
+	private Packet nextPacket = null;
+	private String nextAppName = null;
+	private String advancedAppName = null;
+	private String appName = null;
+	private long advancedPosition = -1;
+	private long nextPosition = -1;
+	private long position = -1;
+	private long count = 0;
+	private boolean finished = false;
+	private boolean iterated = false;
+
+	/**
+	 * Decodes the next packet.
+	 * 
+	 * @return the next packet or null when the trace is exhausted
+	 * @throws IOException
+	 */
+	protected abstract Packet advance() throws IOException;
+
+	/**
+	 * Names the application of the packet advance() returns, for readers
+	 * that know it.
+	 */
+	protected void setAppName(String appName) {
+		advancedAppName = appName;
+	}
+
+	/**
+	 * Sets the position in its file of the packet advance() returns, for
+	 * cursors that do not return the packets in read order. The position
+	 * defaults to the number of packets returned before.
+	 */
+	protected void setPosition(long position) {
+		advancedPosition = position;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextPacket == null && !finished) {
+			try {
+				advancedAppName = null;
+				advancedPosition = -1;
+				nextPacket = advance();
+				nextAppName = advancedAppName;
+				nextPosition = advancedPosition >= 0 ? advancedPosition : count;
+			} catch (IOException e) {
+				finished = true;
+				throw new AROPacketReadException(e);
+			}
+			finished = nextPacket == null;
+		}
+		return nextPacket != null;
+	}
+
+	@Override
+	public Packet next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Packet packet = nextPacket;
+		appName = nextAppName;
+		position = nextPosition;
+		count++;
+		nextPacket = null;
+		return packet;
+	}
+
+	@Override
+	public String getAppName() {
+		return appName;
+	}
+
+	@Override
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	@Override
+	public Iterator<Packet> iterator() {
+		if (iterated) {
+			throw new IllegalStateException("A packet cursor can only be iterated once");
+		}
+		iterated = true;
+		return this;
+	}
+
+	/**
+	 * Stops the cursor, hasNext() returns false from now on.
+	 */
+	protected void finish() {
+		finished = true;
+		nextPacket = null;
+	}
+}
@@ -17,18 +17,26 @@ package com.att.aro.core.packetreader.impl;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 import com.att.aro.core.ILogger;
 import com.att.aro.core.model.InjectLogger;
 import com.att.aro.core.packetreader.IDomainNameParser;
+import com.att.aro.core.packetreader.pojo.DomainNameCache;
 import com.att.aro.core.packetreader.pojo.DomainNameSystem;
+import com.att.aro.core.packetreader.pojo.IPAddressTable;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.core.packetreader.pojo.UDPPacket;
 
 /**
  * class that parses the DNS data stream
+ * <p>
+ * Names and addresses are read straight from the packet data and interned in
+ * the DomainNameCache and IPAddressTable of the trace the packet is decoded
+ * for, so the many repeated lookups of a trace share their Strings and
+ * InetAddresses. The parser keeps no state of its own.
  */
 
 public class DomainNameParserImpl implements IDomainNameParser {
@@ -36,66 +44,62 @@ public class DomainNameParserImpl implements IDomainNameParser {
 	private static final short TYPE_A = 1;
 	private static final short TYPE_CNAME = 5;
 	private static final short TYPE_AAAA = 28;
-	
-	private byte[] data;
-	private int start;
-	private ByteBuffer bytes;
+
+	private static final int HEADER_SIZE = 12;
+
 	@InjectLogger
 	private static ILogger logger;
+
 	@Override
-	public DomainNameSystem parseDomainName(UDPPacket packet) {
-		DomainNameSystem domain = new DomainNameSystem();
-		domain.setPacket(packet);
-		
-		start = packet.getDataOffset();
-		data = packet.getData();
-		
-		// Craete a byte buffer with curr position at start of UDP data
-		bytes = ByteBuffer.wrap(data);
-		bytes.position(start);
+	public DomainNameSystem parseDomainName(UDPPacket packet, PacketDecodeContext decodeContext) {
+		int start = packet.getDataOffset();
+		byte[] data = packet.getData();
+		int end = data.length;
+		if (start < 0 || start + HEADER_SIZE > end) {
+			logger.warn("Truncated DNS packet");
+			return null;
+		}
 
-		// Read the transaction ID
-		bytes.getShort();
-		
-		// Read the flags
-		short flags = bytes.getShort();
+		// Skip the transaction ID, read the flags
+		short flags = getShort(data, start + 2);
 		boolean response = (flags & 0x80) != 0;
 
-		domain.setResponse(response);
-		
-		// Read the query count
-		short queries = bytes.getShort();
-
 		// Make sure that there is one question
+		short queries = getShort(data, start + 4);
 		if (queries != 1) {
 			logger.warn("DNS packet with more than one query");
 			return null;
 		}			
 
-		// Read the answer count
-		short answers = bytes.getShort();
-		
-		// Read Authority RRs count
-		bytes.getShort();
-		
-		// Read Additional RRs count
-		bytes.getShort();
+		// Read the answer count, Authority and Additional RRs are not used
+		short answers = getShort(data, start + 6);
 
 		// Read question
-		String domainName = readDomainName();
-		short qtype = bytes.getShort();
-		short qclass = bytes.getShort();
+		int position = start + HEADER_SIZE;
+		String domainName = getName(decodeContext, data, start, end, position);
+		position = skipName(data, position, end);
+		if (domainName == null || position < 0 || position + 4 > end) {
+			logger.warn("Corrupt DNS query");
+			return null;
+		}
+		short qtype = getShort(data, position);
+		short qclass = getShort(data, position + 2);
+		position += 4;
 		if ((qtype != TYPE_A && qtype != TYPE_AAAA) || qclass != 1) {
 			//logger.warning("Unrecognized DNS query:  qtype=" + qtype + ", qclass=" + qclass);
 			return null;
 		}
+
+		DomainNameSystem domain = new DomainNameSystem();
+		domain.setPacket(packet);
+		domain.setResponse(response);
 		domain.setDomainName(domainName);
 		
 		// Check to see if this is a DNS response
 		if (response) {
 			
-			// Initialize IP addresses set
-			Set<InetAddress> ipAddresses = new HashSet<InetAddress>();
+			// IP addresses set is created with the first address
+			Set<InetAddress> ipAddresses = null;
 			
 			// Default canonical name to domain name
 			String cname = domainName;
@@ -104,88 +108,119 @@ public class DomainNameParserImpl implements IDomainNameParser {
 			for (int i = 0; i < answers; ++i) {
 				
 				// Read answer
-				String domainname = readDomainName();
-				qtype = bytes.getShort();
-				qclass = bytes.getShort();
-				bytes.getInt(); // TTL
-				short len = bytes.getShort();
+				String domainname = getName(decodeContext, data, start, end, position);
+				position = skipName(data, position, end);
+				if (domainname == null || position < 0 || position + 10 > end) {
+					logger.warn("Corrupt DNS answer");
+					break;
+				}
+				qtype = getShort(data, position);
+				qclass = getShort(data, position + 2);
+				// TTL at position + 4
+				int len = getShort(data, position + 8) & 0xffff;
+				position += 10;
+				if (position + len > end) {
+					logger.warn("Corrupt DNS answer");
+					break;
+				}
+				int next = position + len;
 				if (!domainname.equals(domainName) && !domainname.equals(cname)) {
 					logger.warn("Unexpected answer domain: " + domainname);
-					bytes.position(bytes.position() + len);
+					position = next;
 					continue;
 				}
 				if (qclass != 1) {
 					logger.warn("Unrecognized DNS answer class:" + qclass);
-					bytes.position(bytes.position() + len);
+					position = next;
 					continue;
 				}
 				switch (qtype) {
 				case TYPE_A :
 				case TYPE_AAAA :
 					// IPv4 (A) or IPv6 (AAAA)
-					byte[] bdata = new byte[len];
-					bytes.get(bdata, 0, len);
-					try {
-						ipAddresses.add(InetAddress.getByAddress(bdata));
-					} catch (UnknownHostException e) {
+					InetAddress address = getAddress(decodeContext, data, position, len);
+					if (address != null) {
+						if (ipAddresses == null) {
+							ipAddresses = new HashSet<InetAddress>();
+						}
+						ipAddresses.add(address);
+					} else {
 						logger.warn("Unexpected exception reading IP address from DNS response");
 					}
 					break;
 				case TYPE_CNAME :
 					// CNAME (canonical domain name)
-					cname = readDomainName();
+					String canonical = getName(decodeContext, data, start, end, position);
+					if (canonical != null) {
+						cname = canonical;
+					}
 					break;
 				default :
 					logger.warn("Unhandled DNS answer type:" + qtype);
-					bytes.position(bytes.position() + len);
 				}
+				position = next;
 			}
 			domain.setCname(cname);
 			domain.setIpAddresses(ipAddresses);
 		}
 		return domain;
 	}
+
 	/**
-	 * Utility that reads a domain name (compressed or uncompressed) from
-	 * the current position in the ByteWrapper
-	 * @return The domain name read from the data
+	 * Finds the end of a domain name (compressed or uncompressed) without
+	 * following the compression pointer.
+	 * @param data the packet data
+	 * @param index Index of the first label of the name
+	 * @param end End of the DNS message in the data array
+	 * @return The index after the name, -1 if the name runs past the message
 	 */
-	private String readDomainName() {
-		
-		// Create string buffer for result
-		StringBuffer sbuffer = new StringBuffer();
-		
-		// Read domain name and update current byte wrapper position
-		bytes.position(readDomainSegment(sbuffer, bytes.position()));
-		return sbuffer.toString();
+	private int skipName(byte[] data, int index, int end) {
+		int position = index;
+		while (position < end) {
+			int length = data[position] & 0xff;
+			if (length == 0) {
+				return position + 1;
+			}
+			if ((length & 0xc0) == 0xc0) {
+				return position + 2 <= end ? position + 2 : -1;
+			}
+			position += length + 1;
+		}
+		return -1;
 	}
 
 	/**
-	 * Utility that reads a domain name (compressed or uncompressed) from
-	 * the specified position in the data array
-	 * @param sb buffer where results are appended
-	 * @param startindex Index in the data array from which to read
-	 * @return The index of the data array where the domain name read
-	 * completed
+	 * @return the name at index, interned in the name cache of the trace if
+	 *         there is one
 	 */
-	private int readDomainSegment(StringBuffer sbuffer, int startindex) {
-		int index = startindex;
-		while (data[index] != 0) {
-			boolean compressed = (data[index] & 0xc0) == 0xc0;
-			if (compressed) {
-				readDomainSegment(sbuffer, start + (bytes.getShort(index) & 0x3fff));
-				++index;
-				break;
-			} else {
-				if (sbuffer.length() > 0) {
-					sbuffer.append('.');
-				}
-				sbuffer.append(new String(data, index + 1, data[index]));
-				index += (data[index] + 1);
+	private String getName(PacketDecodeContext decodeContext, byte[] data, int start, int end, int index) {
+		if (decodeContext == null) {
+			return DomainNameCache.readName(data, start, end, index);
+		}
+		return decodeContext.getDomainNames().getName(data, start, end, index);
+	}
+
+	/**
+	 * @return the address of an A or AAAA record, interned in the address
+	 *         table of the trace if there is one, null for any other length
+	 */
+	private InetAddress getAddress(PacketDecodeContext decodeContext, byte[] data, int offset, int length) {
+		if (length != 4 && length != 16) {
+			return null;
+		}
+		if (decodeContext == null) {
+			try {
+				return InetAddress.getByAddress(Arrays.copyOfRange(data, offset, offset + length));
+			} catch (UnknownHostException e) {
+				return null;
 			}
 		}
+		IPAddressTable addresses = decodeContext.getAddressTable();
+		return addresses.getAddress(addresses.intern(data, offset, length));
+	}
 
-		return ++index;
+	private static short getShort(byte[] data, int index) {
+		return (short) (((data[index] & 0xff) << 8) | (data[index + 1] & 0xff));
 	}
 
 }
@@ -0,0 +1,452 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import com.att.aro.core.ILogger;
+import com.att.aro.core.exception.AROPacketReadException;
+import com.att.aro.core.model.InjectLogger;
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.IPacketListener;
+import com.att.aro.core.packetreader.IPacketReader;
+import com.att.aro.core.packetreader.IPacketService;
+import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
+
+/**
+ * Pure Java reader for classic libpcap files.<br>
+ * The file is memory mapped in windows and the record headers are parsed
+ * directly, so no native library and no JNI upcall is needed per packet. Both
+ * byte orders and both the microsecond and nanosecond timestamp variants are
+ * supported. Packet bodies are decoded in parallel, see
+ * {@link #setParallelism(int)}.<br>
+ * pcapng files are handed over to the pcapng reader, any other format to the
+ * jpcap based reader.
+ */
+public class MappedPcapReaderImpl implements IPacketReader {
+
+	@InjectLogger
+	private static ILogger logger;
+
+	static final int PCAP_MAGIC_MICRO = 0xa1b2c3d4;
+	static final int PCAP_MAGIC_NANO = 0xa1b23c4d;
+
+	static final int GLOBAL_HEADER_SIZE = 24;
+	static final int RECORD_HEADER_SIZE = 16;
+
+	/**
+	 * Largest region of the file mapped at once, keeps the reader well inside
+	 * the 2GB limit of a MappedByteBuffer on multi-GB traces.
+	 */
+	static final long MAP_WINDOW_SIZE = 256L * 1024 * 1024;
+
+	/**
+	 * Upper bound for a single captured record, anything larger is treated as a
+	 * corrupt record header.
+	 */
+	static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Most records indexed and decoded in one batch, bounds the memory held by
+	 * the offset index and the decoded packets waiting to be handed out.
+	 */
+	static final int BATCH_SIZE = 16384;
+
+	/**
+	 * Records decoded by a single fork join task.
+	 */
+	static final int SLICE_SIZE = 512;
+
+	/**
+	 * Threads decoding the packets of a trace, 1 decodes on the reading
+	 * thread.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Pool decoding the packets of every cursor of this reader, created on
+	 * first use
+	 */
+	private ForkJoinPool pool = null;
+
+	@Autowired
+	private IPacketService packetservice;
+
+	@Autowired
+	@Qualifier("pcapngPacketReader")
+	private IPacketReader pcapngReader;
+
+	@Autowired
+	@Qualifier("jpcapPacketReader")
+	private IPacketReader fallbackReader;
+
+	public void setPcapngReader(IPacketReader pcapngReader) {
+		this.pcapngReader = pcapngReader;
+	}
+
+	public void setFallbackReader(IPacketReader fallbackReader) {
+		this.fallbackReader = fallbackReader;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public synchronized void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		// cursors still decoding keep the old pool, its idle threads end on their own
+		pool = null;
+	}
+
+	private synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * Stops the decoding threads, called when the application context is
+	 * closed.
+	 */
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	@Override
+	public void readPacket(String packetfile, IPacketListener listener) throws IOException {
+		readPacket(packetfile, listener, null);
+	}
+
+	@Override
+	public void readPacket(String packetfile, IPacketListener listener, PacketDecodeContext decodeContext) throws IOException {
+		if (listener == null) {
+			logger.error("PacketListener cannot be null");
+			throw new IllegalArgumentException("PacketListener cannot be null");
+		}
+
+		MappedPcapCursor cursor = openMappedCursor(packetfile, decodeContext);
+		if (cursor == null) {
+			unsupportedReader(packetfile).readPacket(packetfile, listener, decodeContext);
+			return;
+		}
+		try {
+			while (cursor.hasNext()) {
+				listener.packetArrived(null, cursor.next());
+			}
+		} catch (AROPacketReadException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile) throws IOException {
+		return openCursor(packetfile, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor) throws IOException {
+		return openCursor(packetfile, executor, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor, PacketDecodeContext decodeContext) throws IOException {
+		MappedPcapCursor cursor = openMappedCursor(packetfile, decodeContext);
+		if (cursor == null) {
+			return unsupportedReader(packetfile).openCursor(packetfile, executor, decodeContext);
+		}
+		return cursor;
+	}
+
+	/**
+	 * Opens the file and parses the global header.
+	 *
+	 * @return the cursor, or null if the file is not a classic pcap file
+	 */
+	private MappedPcapCursor openMappedCursor(String packetfile, PacketDecodeContext decodeContext) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(packetfile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(GLOBAL_HEADER_SIZE);
+			int read = 0;
+			while (header.hasRemaining() && read >= 0) {
+				read = channel.read(header);
+			}
+			PcapHeader pcapHeader = header.hasRemaining() ? null : parseHeader(header);
+			if (pcapHeader == null) {
+				raf.close();
+				return null;
+			}
+			return new MappedPcapCursor(raf, pcapHeader, packetfile, decodeContext);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * pcapng files are passed on to the pcapng reader, any other format that
+	 * is not classic pcap to the jpcap based reader.
+	 */
+	private IPacketReader unsupportedReader(String packetfile) throws IOException {
+		if (pcapngReader != null && PcapngReaderImpl.isPcapng(packetfile)) {
+			return pcapngReader;
+		}
+		if (fallbackReader == null) {
+			throw new IOException("Unsupported capture file format: " + packetfile);
+		}
+		logger.info("Not a classic pcap file, using jpcap for " + packetfile);
+		return fallbackReader;
+	}
+
+	/**
+	 * Parses the 24 byte pcap global header.
+	 *
+	 * @param header
+	 *            buffer holding the global header
+	 * @return the header, or null if the magic number is not a classic pcap
+	 *         magic number
+	 */
+	PcapHeader parseHeader(ByteBuffer header) {
+		header.order(ByteOrder.BIG_ENDIAN);
+		int magic = header.getInt(0);
+		ByteOrder order;
+		if (magic == PCAP_MAGIC_MICRO || magic == PCAP_MAGIC_NANO) {
+			order = ByteOrder.BIG_ENDIAN;
+		} else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICRO || Integer.reverseBytes(magic) == PCAP_MAGIC_NANO) {
+			order = ByteOrder.LITTLE_ENDIAN;
+			magic = Integer.reverseBytes(magic);
+		} else {
+			return null;
+		}
+		header.order(order);
+		PcapHeader pcapHeader = new PcapHeader();
+		pcapHeader.order = order;
+		pcapHeader.nanoSeconds = magic == PCAP_MAGIC_NANO;
+		pcapHeader.datalink = PcapLinkType.toDatalink(header.getInt(20));
+		return pcapHeader;
+	}
+
+	private Packet createPacket(int datalink, long seconds, long microSeconds, int len, byte[] data, String packetfile,
+			PacketDecodeContext decodeContext) {
+		try {
+			if (packetservice == null) {
+				packetservice = new PacketServiceImpl();
+			}
+			return packetservice.createPacketFromPcap(datalink, seconds, microSeconds, len, data, packetfile, decodeContext);
+		} catch (Throwable t) {
+			logger.error("Unexpected exception parsing packet", t);
+			return null;
+		}
+	}
+
+	/**
+	 * Values of the pcap global header needed to decode the records.
+	 */
+	static class PcapHeader {
+		ByteOrder order;
+		boolean nanoSeconds;
+		/** DLT value of the file header link type */
+		int datalink;
+	}
+
+	/**
+	 * Walks the records following the global header in batches. For each
+	 * batch a window of the file is mapped and a record-offset index is built
+	 * from the record headers alone; the packet bodies of the batch are then
+	 * decoded in slices on a ForkJoinPool and handed out in file order. A
+	 * truncated last record, as left behind by an interrupted capture, ends
+	 * the cursor silently.
+	 */
+	private class MappedPcapCursor extends AbstractPacketCursor {
+
+		private final RandomAccessFile raf;
+		private final FileChannel channel;
+		private final PcapHeader pcapHeader;
+		private final String packetfile;
+		private final PacketDecodeContext decodeContext;
+		private final long size;
+		private long position = GLOBAL_HEADER_SIZE;
+		private boolean exhausted = false;
+		private final int[] offsets = new int[BATCH_SIZE];
+		private final Packet[] batch = new Packet[BATCH_SIZE];
+		private int batchCount = 0;
+		private int batchIndex = 0;
+
+		MappedPcapCursor(RandomAccessFile raf, PcapHeader pcapHeader, String packetfile, PacketDecodeContext decodeContext) throws IOException {
+			this.raf = raf;
+			this.channel = raf.getChannel();
+			this.pcapHeader = pcapHeader;
+			this.packetfile = packetfile;
+			this.decodeContext = decodeContext;
+			this.size = channel.size();
+		}
+
+		@Override
+		protected Packet advance() throws IOException {
+			while (true) {
+				while (batchIndex < batchCount) {
+					Packet packet = batch[batchIndex];
+					batch[batchIndex++] = null;
+					if (packet != null) {
+						return packet;
+					}
+				}
+				if (!decodeNextBatch()) {
+					return null;
+				}
+			}
+		}
+
+		/**
+		 * Indexes and decodes the records of the next batch.
+		 * 
+		 * @return false if no record is left
+		 */
+		private boolean decodeNextBatch() throws IOException {
+			if (exhausted || position + RECORD_HEADER_SIZE > size) {
+				return false;
+			}
+			long length = Math.min(MAP_WINDOW_SIZE, size - position);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			window.order(pcapHeader.order);
+
+			int count = 0;
+			int offset = 0;
+			while (count < BATCH_SIZE && offset + RECORD_HEADER_SIZE <= length) {
+				int capLen = window.getInt(offset + 8);
+				if (capLen < 0 || capLen > MAX_RECORD_SIZE) {
+					logger.error("Corrupt pcap record header at offset " + (position + offset) + " in " + packetfile);
+					exhausted = true;
+					break;
+				}
+				if (offset + RECORD_HEADER_SIZE + capLen > length) {
+					if (position + offset + RECORD_HEADER_SIZE + capLen > size) {
+						logger.warn("Truncated pcap record at offset " + (position + offset) + " in " + packetfile);
+						exhausted = true;
+					}
+					// otherwise the record starts the next window
+					break;
+				}
+				offsets[count++] = offset;
+				offset += RECORD_HEADER_SIZE + capLen;
+			}
+			position += offset;
+			if (count == 0) {
+				exhausted = true;
+				return false;
+			}
+
+			DecodeSlice task = new DecodeSlice(window, pcapHeader, packetfile, decodeContext, offsets, batch, 0, count);
+			if (parallelism > 1 && count > SLICE_SIZE) {
+				getPool().invoke(task);
+			} else {
+				task.compute();
+			}
+			batchCount = count;
+			batchIndex = 0;
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			Arrays.fill(batch, null);
+			batchCount = 0;
+			raf.close();
+		}
+	}
+
+	/**
+	 * Decodes the records of a range of the offset index, splitting the range
+	 * until it is small enough to be decoded on one thread. Each record only
+	 * writes its own slot of the result array, so the packets keep their file
+	 * order.
+	 */
+	private class DecodeSlice extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer window;
+		private final PcapHeader pcapHeader;
+		private final String packetfile;
+		private final PacketDecodeContext decodeContext;
+		private final int[] offsets;
+		private final Packet[] packets;
+		private final int from;
+		private final int to;
+
+		DecodeSlice(ByteBuffer window, PcapHeader pcapHeader, String packetfile, PacketDecodeContext decodeContext, int[] offsets,
+				Packet[] packets, int from, int to) {
+			this.window = window;
+			this.pcapHeader = pcapHeader;
+			this.packetfile = packetfile;
+			this.decodeContext = decodeContext;
+			this.offsets = offsets;
+			this.packets = packets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SLICE_SIZE) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new DecodeSlice(window, pcapHeader, packetfile, decodeContext, offsets, packets, from, middle),
+						new DecodeSlice(window, pcapHeader, packetfile, decodeContext, offsets, packets, middle, to));
+				return;
+			}
+			// a buffer position is not thread safe, every slice reads through its own view
+			ByteBuffer view = window.duplicate();
+			view.order(pcapHeader.order);
+			for (int i = from; i < to; i++) {
+				int offset = offsets[i];
+				long seconds = view.getInt(offset) & 0xffffffffL;
+				long fraction = view.getInt(offset + 4) & 0xffffffffL;
+				int capLen = view.getInt(offset + 8);
+				int len = view.getInt(offset + 12);
+
+				byte[] data = new byte[capLen];
+				view.position(offset + RECORD_HEADER_SIZE);
+				view.get(data, 0, capLen);
+
+				long microSeconds = pcapHeader.nanoSeconds ? fraction / 1000 : fraction;
+				packets[i] = createPacket(pcapHeader.datalink, seconds, microSeconds, len, data, packetfile, decodeContext);
+			}
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.att.aro.core.exception.AROPacketReadException;
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.pojo.Packet;
+
+/**
+ * Merges the packets of several cursors, such as the rotated trafficN.cap
+ * files of one trace, into a single stream in timestamp order.<br>
+ * Every cursor is read on a worker thread one batch ahead of the merge, so
+ * the files are decoded concurrently while the merge only compares the head
+ * packet of each cursor. Each cursor must deliver its packets in timestamp
+ * order; packets with equal timestamps are delivered in cursor order. The
+ * position of a packet in its file is the one its cursor gave it.
+ */
+public class MergedPacketCursor extends AbstractPacketCursor {
+
+	static final int BATCH_SIZE = 4096;
+
+	private final List<Source> sources;
+	private final PriorityQueue<Source> heads;
+	private final ExecutorService executor;
+	private boolean started = false;
+	private int lastSource = -1;
+
+	/**
+	 * @param cursors
+	 *            cursors to merge, closed when this cursor is closed
+	 * @param threads
+	 *            number of worker threads, at most one per cursor is used
+	 */
+	public MergedPacketCursor(List<IPacketCursor> cursors, int threads) {
+		this.sources = new ArrayList<Source>(cursors.size());
+		this.heads = new PriorityQueue<Source>(Math.max(1, cursors.size()));
+		this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, cursors.size())),
+				new ThreadFactory() {
+					private int count = 0;
+
+					@Override
+					public synchronized Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "MergedPacketCursor-" + count++);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		for (int i = 0; i < cursors.size(); i++) {
+			Source source = new Source(i, cursors.get(i));
+			source.pending = executor.submit(source);
+			sources.add(source);
+		}
+	}
+
+	/**
+	 * Index of the cursor, in the order given to the constructor, that
+	 * delivered the packet last returned by next(). Valid until hasNext() or
+	 * next() is called again.
+	 *
+	 * @return cursor index or -1 before the first packet
+	 */
+	public int getSource() {
+		return lastSource;
+	}
+
+	@Override
+	protected Packet advance() throws IOException {
+		if (!started) {
+			started = true;
+			for (Source source : sources) {
+				if (source.fill()) {
+					heads.add(source);
+				}
+			}
+		}
+		Source source = heads.poll();
+		if (source == null) {
+			return null;
+		}
+		setAppName(source.appNames.get(source.position));
+		setPosition(source.positions[source.position]);
+		Packet packet = source.batch.get(source.position++);
+		lastSource = source.index;
+		if (source.position < source.batch.size() || source.fill()) {
+			heads.add(source);
+		}
+		return packet;
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		heads.clear();
+		for (Source source : sources) {
+			if (source.pending != null) {
+				source.pending.cancel(false);
+			}
+		}
+		executor.shutdown();
+		try {
+			// a started batch still reads its cursor, wait before closing it
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		IOException failure = null;
+		for (Source source : sources) {
+			try {
+				source.cursor.close();
+			} catch (IOException e) {
+				failure = failure == null ? e : failure;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * One merged cursor, with the batch that is merged and the read of the
+	 * next batch. At most one read is pending, so the cursor is never used by
+	 * two threads at once.
+	 */
+	private class Source implements Callable<Batch>, Comparable<Source> {
+		private final int index;
+		private final IPacketCursor cursor;
+		private Future<Batch> pending;
+		private List<Packet> batch;
+		private List<String> appNames;
+		private long[] positions;
+		private int position;
+
+		Source(int index, IPacketCursor cursor) {
+			this.index = index;
+			this.cursor = cursor;
+		}
+
+		@Override
+		public Batch call() {
+			Batch next = new Batch();
+			while (next.packets.size() < BATCH_SIZE && cursor.hasNext()) {
+				next.packets.add(cursor.next());
+				next.appNames.add(cursor.getAppName());
+				next.positions[next.packets.size() - 1] = cursor.getPosition();
+			}
+			return next;
+		}
+
+		/**
+		 * Waits for the pending batch and starts reading the one after it.
+		 *
+		 * @return false if the cursor is exhausted
+		 */
+		boolean fill() throws IOException {
+			if (pending == null) {
+				return false;
+			}
+			try {
+				Batch next = pending.get();
+				batch = next.packets;
+				appNames = next.appNames;
+				positions = next.positions;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while merging packets");
+			} catch (ExecutionException e) {
+				pending = null;
+				Throwable cause = e.getCause();
+				if (cause instanceof AROPacketReadException && cause.getCause() instanceof IOException) {
+					throw (IOException) cause.getCause();
+				}
+				throw new IOException(cause);
+			}
+			position = 0;
+			pending = batch.size() < BATCH_SIZE ? null : executor.submit(this);
+			return !batch.isEmpty();
+		}
+
+		@Override
+		public int compareTo(Source other) {
+			Packet packet = batch.get(position);
+			Packet otherPacket = other.batch.get(other.position);
+			if (packet.getSeconds() != otherPacket.getSeconds()) {
+				return packet.getSeconds() < otherPacket.getSeconds() ? -1 : 1;
+			}
+			if (packet.getMicroSeconds() != otherPacket.getMicroSeconds()) {
+				return packet.getMicroSeconds() < otherPacket.getMicroSeconds() ? -1 : 1;
+			}
+			return index < other.index ? -1 : (index == other.index ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Packets read at once, the applications named for them and their
+	 * positions in their file
+	 */
+	private static class Batch {
+		private final List<Packet> packets = new ArrayList<Packet>(BATCH_SIZE);
+		private final List<String> appNames = new ArrayList<String>(BATCH_SIZE);
+		private final long[] positions = new long[BATCH_SIZE];
+	}
+}
@@ -16,17 +16,26 @@
 package com.att.aro.core.packetreader.impl;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.att.aro.core.ILogger;
 import com.att.aro.core.model.InjectLogger;
 import com.att.aro.core.packetreader.INetmonPacketSubscriber;
+import com.att.aro.core.packetreader.IPacketCursor;
 import com.att.aro.core.packetreader.IPacketListener;
 import com.att.aro.core.packetreader.IPacketReader;
 import com.att.aro.core.packetreader.IPacketService;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
+
+/**
+ * Reads Microsoft Network Monitor trace files through the native NMCap
+ * library. Every read gets its own NetmonAdapter and subscriber, so several
+ * files can be read at the same time.
+ */
 @Deprecated
-public class NetmonPacketReaderImpl implements IPacketReader, INetmonPacketSubscriber {
+public class NetmonPacketReaderImpl implements IPacketReader {
 
 	@InjectLogger
 	private ILogger logger;
@@ -49,8 +58,11 @@ public class NetmonPacketReaderImpl implements IPacketReader, INetmonPacketSubsc
 	 */
 	public static final int NETMON_PARSING_SUCCESS = 0;
 	
-	private IPacketListener packetlistener;
-	
+	private boolean libraryLoaded = false;
+
+	/**
+	 * Adapter used for every read instead of a new one, only set by tests
+	 */
 	private NetmonAdapter netmon = null;
 	
 	public void setNetmon(NetmonAdapter netmon){
@@ -60,19 +72,21 @@ public class NetmonPacketReaderImpl implements IPacketReader, INetmonPacketSubsc
 	@Override
 	public void readPacket(String packetfile, IPacketListener listener)
 			throws IOException {
-		if(netmon == null){
-			netmon = new NetmonAdapter();
-			netmon.loadNativeLibs();
-		}
-		
+		readPacket(packetfile, listener, null);
+	}
+
+	@Override
+	public void readPacket(String packetfile, IPacketListener listener, PacketDecodeContext decodeContext)
+			throws IOException {
 		logger.info("Creating Netmon Adapter...");
 		if (listener == null) {
 			logger.error("PacketListener cannot be null");
 			throw new IllegalArgumentException("PacketListener cannot be null");
 		}
 
-		this.packetlistener = listener;
-		int retval = netmon.parseTraceFile(packetfile);
+		NetmonAdapter adapter = netmon != null ? netmon : createAdapter();
+		adapter.setSubscriber(new FileSubscriber(listener, decodeContext));
+		int retval = adapter.parseTraceFile(packetfile);
 		switch (retval) {
 		case NETMON_PARSING_SUCCESS:
 			return;
@@ -86,16 +100,61 @@ public class NetmonPacketReaderImpl implements IPacketReader, INetmonPacketSubsc
 	
 
 	@Override
-	public void receiveNetmonPacket(int datalink, long seconds,
-			long microSeconds, int len, byte[] data, String appName) {
-		// Ignore netmon datalink type frames
-		if (datalink >= 0xf000) {
-			return;
+	public IPacketCursor openCursor(String packetfile) throws IOException {
+		return openCursor(packetfile, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor) throws IOException {
+		return openCursor(packetfile, executor, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor, PacketDecodeContext decodeContext) throws IOException {
+		return new QueuedPacketCursor(this, packetfile, executor, decodeContext);
+	}
+
+	/**
+	 * @return a new adapter for one read, the first one loads the native
+	 *         libraries
+	 */
+	protected NetmonAdapter createAdapter() {
+		NetmonAdapter adapter = new NetmonAdapter();
+		loadLibrary(adapter);
+		return adapter;
+	}
+
+	private synchronized void loadLibrary(NetmonAdapter adapter) {
+		if (!libraryLoaded) {
+			adapter.loadNativeLibs();
+			libraryLoaded = true;
 		}
+	}
+
+	/**
+	 * Receives the packets of one file from the native code and passes them
+	 * on to the listener of that file.
+	 */
+	private class FileSubscriber implements INetmonPacketSubscriber {
+		private final IPacketListener listener;
+		private final PacketDecodeContext decodeContext;
 
-		packetlistener.packetArrived(appName, packetservice.createPacketFromNetmon(datalink, seconds, microSeconds,
-				len, data));
-		
+		FileSubscriber(IPacketListener listener, PacketDecodeContext decodeContext) {
+			this.listener = listener;
+			this.decodeContext = decodeContext;
+		}
+
+		@Override
+		public void receiveNetmonPacket(int datalink, long seconds,
+				long microSeconds, int len, byte[] data, String appName) {
+			// Ignore netmon datalink type frames
+			if (datalink >= 0xf000) {
+				return;
+			}
+
+			listener.packetArrived(appName, packetservice.createPacketFromNetmon(datalink, seconds, microSeconds,
+					len, data, decodeContext));
+		}
 	}
 
 }
@@ -15,24 +15,30 @@
  */
 package com.att.aro.core.packetreader.impl;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 import com.att.aro.core.ILogger;
-import com.att.aro.core.fileio.IFileManager;
 import com.att.aro.core.model.InjectLogger;
 import com.att.aro.core.packetreader.INativePacketSubscriber;
+import com.att.aro.core.packetreader.IPacketCursor;
 import com.att.aro.core.packetreader.IPacketListener;
 import com.att.aro.core.packetreader.IPacketReader;
 import com.att.aro.core.packetreader.IPacketService;
 import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.core.util.Util;
 import com.att.aro.pcap.PCapAdapter;
-import com.att.aro.pcap.packetrebuild.PCapFileWriter;
 
-public class PacketReaderImpl implements IPacketReader, INativePacketSubscriber {
+/**
+ * Reads pcap trace files through the native jpcap library.<br>
+ * Every read gets its own PCapAdapter and subscriber, so several files can be
+ * read at the same time, such as the cursors of rotated trace files.
+ */
+public class PacketReaderImpl implements IPacketReader {
 
 	@InjectLogger
 	private static ILogger logger;
@@ -41,25 +47,18 @@ public class PacketReaderImpl implements IPacketReader, INativePacketSubscriber
 	private IPacketService packetservice;
 
 	@Autowired
-	private IFileManager filemanager;
+	@Qualifier("pcapngPacketReader")
+	private IPacketReader pcapngReader;
 
-	private IPacketListener packetlistener;
-	
 	String aroJpcapLibName = null;
 	String aroJpcapLibFileName = null;
 
-	private String currentPacketfile = null;
+	private boolean libraryLoaded = false;
 
-	PCapAdapter adapter = null;
-
-	/*
-	 * converting pcap file support
+	/**
+	 * Adapter used for every read instead of a new one, only set by tests
 	 */
-	String convertedCapFile = "converted.cap";
-	String backupCapFileName = "backup.cap";
-	private File currentPcapfile = null;
-	private File convertedPcapFile;
-	private PCapFileWriter pcapOutput;
+	PCapAdapter adapter = null;
 
 	public PacketReaderImpl() {
 
@@ -69,43 +68,38 @@ public class PacketReaderImpl implements IPacketReader, INativePacketSubscriber
 		this.adapter = adapter;
 	}
 
+	public void setPacketService(IPacketService packetservice) {
+		this.packetservice = packetservice;
+	}
+
 	@Override
 	public void readPacket(String packetfile, IPacketListener listener) throws IOException {
+		readPacket(packetfile, listener, null);
+	}
+
+	@Override
+	public void readPacket(String packetfile, IPacketListener listener, PacketDecodeContext decodeContext) throws IOException {
 
 		if (aroJpcapLibName == null) {
 			setAroJpcapLibName();
 		}
 		
-		currentPacketfile = packetfile;
-		provisionalStartPcapConversion(packetfile);
-		
 		if (listener == null) {
 			logger.error("PacketListener cannot be null");
 			throw new IllegalArgumentException("PacketListener cannot be null");
 		}
 
-		this.packetlistener = listener;
-
-		if (adapter == null) {
-			adapter = new PCapAdapter();
-			adapter.loadAroJpacapLib(aroJpcapLibFileName, aroJpcapLibName);
+		// pcapng (iOS) traces are streamed by the pure Java reader, no converted.cap is written
+		if (pcapngReader != null && PcapngReaderImpl.isPcapng(packetfile)) {
+			pcapngReader.readPacket(packetfile, listener, decodeContext);
+			return;
 		}
 
-		adapter.setSubscriber(this);
+		PCapAdapter pcap = adapter != null ? adapter : createAdapter();
+		pcap.setSubscriber(new FileSubscriber(packetfile, listener, decodeContext));
 		
 		// jni - loopPacket(...) reads trace file sends data packets to PacketListener:packetArrived
-		String result = adapter.readData(packetfile);
-
-		// finish 
-		if (pcapOutput != null) {
-			logger.info("close converted.cap and rename stuff");
-			pcapOutput.close();
-			pcapOutput = null;
-
-			if (filemanager.renameFile(currentPcapfile, backupCapFileName)) {
-				filemanager.renameFile(convertedPcapFile, currentPcapfile.getName());
-			}
-		}
+		String result = pcap.readData(packetfile);
 
 		if (result != null) {
 			logger.debug("Result from executing all pcap packets: " + result);
@@ -114,6 +108,41 @@ public class PacketReaderImpl implements IPacketReader, INativePacketSubscriber
 		logger.debug("Created PCapAdapter");
 	}
 
+	@Override
+	public IPacketCursor openCursor(String packetfile) throws IOException {
+		return openCursor(packetfile, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor) throws IOException {
+		return openCursor(packetfile, executor, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor, PacketDecodeContext decodeContext) throws IOException {
+		if (pcapngReader != null && PcapngReaderImpl.isPcapng(packetfile)) {
+			return pcapngReader.openCursor(packetfile, executor, decodeContext);
+		}
+		return new QueuedPacketCursor(this, packetfile, executor, decodeContext);
+	}
+
+	/**
+	 * @return a new adapter for one read, the first one loads the native
+	 *         library
+	 */
+	protected PCapAdapter createAdapter() {
+		PCapAdapter pcap = new PCapAdapter();
+		loadLibrary(pcap);
+		return pcap;
+	}
+
+	private synchronized void loadLibrary(PCapAdapter pcap) {
+		if (!libraryLoaded) {
+			pcap.loadAroJpacapLib(aroJpcapLibFileName, aroJpcapLibName);
+			libraryLoaded = true;
+		}
+	}
+
 	public void setAroJpcapLibName() {
 		setAroJpcapLibName(Util.OS_NAME, Util.OS_ARCHYTECTURE);
 	}
@@ -160,53 +189,37 @@ public class PacketReaderImpl implements IPacketReader, INativePacketSubscriber
 		return aroJpcapLibFileName;
 	}
 
-	@Override
-	public void receive(int datalink, long seconds, long microSeconds, int len, byte[] data) {
-		try {
-			if (packetservice == null) {
-				packetservice = new PacketServiceImpl();
-			}
-			Packet tempPacket = packetservice.createPacketFromPcap(datalink, seconds, microSeconds, len, data, currentPacketfile);
-			packetlistener.packetArrived(null, tempPacket);
-			if (pcapOutput != null) {
-				int offset = tempPacket.getDatalinkHeaderSize();
-				if (offset == 4) {
-					int length = tempPacket.getData().length;
-					pcapOutput.addPacketConvertedPcapng(tempPacket.getData(), offset, length, seconds * 1000000 + microSeconds);
-				} else {
-					pcapOutput.addPacket(tempPacket.getData(), seconds * 1000000 + microSeconds);
-				}
-			}
-		} catch (Throwable t) {
-			logger.error("Unexpected exception parsing packet", t);
+	private IPacketService getPacketService() {
+		if (packetservice == null) {
+			packetservice = new PacketServiceImpl();
 		}
+		return packetservice;
 	}
 
 	/**
-	 * Potentially start the pcapng conversion process. Two conditions are
-	 * tested, has conversion already been done and is the pcap file a pcapng.
-	 * 
-	 * @param file
+	 * Receives the packets of one file from the native code and passes them
+	 * on to the listener of that file.
 	 */
-	private void provisionalStartPcapConversion(String traceFile) {
-		File file = new File(traceFile);
-		String tracePath = file.getAbsolutePath().substring(0, file.getAbsolutePath().length() - file.getName().length());
-		File backupCapFile = new File(tracePath, backupCapFileName);
-		if (!backupCapFile.exists()) {
+	private class FileSubscriber implements INativePacketSubscriber {
+		private final String packetfile;
+		private final IPacketListener listener;
+		private final PacketDecodeContext decodeContext;
+
+		FileSubscriber(String packetfile, IPacketListener listener, PacketDecodeContext decodeContext) {
+			this.packetfile = packetfile;
+			this.listener = listener;
+			this.decodeContext = decodeContext;
+		}
+
+		@Override
+		public void receive(int datalink, long seconds, long microSeconds, int len, byte[] data) {
 			try {
-				PcapngHelperImpl pcapngHelper = new PcapngHelperImpl();
-				if (pcapngHelper.isApplePcapng(file)) {
-					currentPcapfile = new File(traceFile);
-					convertedPcapFile = new File(tracePath, convertedCapFile);
-					pcapOutput = new PCapFileWriter(convertedPcapFile);
-				}
-			} catch (Exception e) {
-				logger.error("failed to create :" + convertedPcapFile);
-				pcapOutput = null;
+				Packet tempPacket = getPacketService().createPacketFromPcap(datalink, seconds, microSeconds, len, data, packetfile, decodeContext);
+				listener.packetArrived(null, tempPacket);
+			} catch (Throwable t) {
+				logger.error("Unexpected exception parsing packet", t);
 			}
 		}
 	}
 
-
-	
 }
@@ -28,6 +28,7 @@ import com.att.aro.core.packetreader.IPcapngHelper;
 import com.att.aro.core.packetreader.pojo.DomainNameSystem;
 import com.att.aro.core.packetreader.pojo.IPPacket;
 import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.core.packetreader.pojo.TCPPacket;
 import com.att.aro.core.packetreader.pojo.UDPPacket;
 
@@ -74,6 +75,22 @@ public class PacketServiceImpl implements IPacketService {
 	 */
 	@Override
 	public Packet createPacketFromPcap(int datalink, long seconds, long microSeconds, int len, byte[] data, String pcapfile) {
+		return createPacketFromPcap(datalink, seconds, microSeconds, len, data, pcapfile, null);
+	}
+
+	/**
+	 * Returns a new instance of the Packet class like
+	 * createPacketFromPcap(int, long, long, int, byte[], String). The names
+	 * and answers of a DNS packet are interned in the tables of the trace.
+	 * 
+	 * @param decodeContext
+	 *            tables of the trace the packet belongs to, null for none
+	 * 
+	 * @return The newly created packet.
+	 */
+	@Override
+	public Packet createPacketFromPcap(int datalink, long seconds, long microSeconds, int len, byte[] data, String pcapfile,
+			PacketDecodeContext decodeContext) {
 		// Determine network protocol
 		short network = 0;
 		int hdrLen = 0;
@@ -108,7 +125,7 @@ public class PacketServiceImpl implements IPacketService {
 			logger.error(e.getMessage());
 		}
 
-		return createPacket(network, seconds, microSeconds, len, hdrLen, data);
+		return createPacket(network, seconds, microSeconds, len, hdrLen, data, decodeContext);
 	}
 
 	/**
@@ -132,9 +149,25 @@ public class PacketServiceImpl implements IPacketService {
 	 */
 	@Override
 	public Packet createPacketFromNetmon(int datalink, long seconds, long microSeconds, int len, byte[] data) {
+		return createPacketFromNetmon(datalink, seconds, microSeconds, len, data, null);
+	}
+
+	/**
+	 * Returns a new instance of the Packet class like
+	 * createPacketFromNetmon(int, long, long, int, byte[]). The names and
+	 * answers of a DNS packet are interned in the tables of the trace.
+	 * 
+	 * @param decodeContext
+	 *            tables of the trace the packet belongs to, null for none
+	 * 
+	 * @return The newly created packet.
+	 */
+	@Override
+	public Packet createPacketFromNetmon(int datalink, long seconds, long microSeconds, int len, byte[] data,
+			PacketDecodeContext decodeContext) {
 		// Check for PCAP datalink
 		if (datalink >= 0xe000 && datalink <= 0xefff) {
-			return createPacketFromPcap(datalink - 0xe000, seconds, microSeconds, len, data, null);
+			return createPacketFromPcap(datalink - 0xe000, seconds, microSeconds, len, data, null, decodeContext);
 		}
 
 		// Determine network protocol
@@ -182,7 +215,7 @@ public class PacketServiceImpl implements IPacketService {
 			logger.error(e.getMessage());
 		}
 
-		return createPacket(network, seconds, microSeconds, len, hdrLen, data);
+		return createPacket(network, seconds, microSeconds, len, hdrLen, data, decodeContext);
 	}
 
 	/**
@@ -206,6 +239,11 @@ public class PacketServiceImpl implements IPacketService {
 	 */
 	@Override
 	public Packet createPacket(short network, long seconds, long microSeconds, int len, int datalinkHdrLen, byte[] data) {
+		return createPacket(network, seconds, microSeconds, len, datalinkHdrLen, data, null);
+	}
+
+	private Packet createPacket(short network, long seconds, long microSeconds, int len, int datalinkHdrLen, byte[] data,
+			PacketDecodeContext decodeContext) {
 		Packet packet = null;
 		// Minimum IP header length is 20 bytes
 		ByteBuffer bytes = ByteBuffer.wrap(data);
@@ -217,7 +255,7 @@ public class PacketServiceImpl implements IPacketService {
 				packet = new TCPPacket(seconds, microSeconds, len, datalinkHdrLen, data);
 				break;
 			case 17: // UDP
-				packet = createUDPPacket(seconds, microSeconds, len, datalinkHdrLen, data);
+				packet = createUDPPacket(seconds, microSeconds, len, datalinkHdrLen, data, decodeContext);
 				break;
 			default:
 				packet = new IPPacket(seconds, microSeconds, len, datalinkHdrLen, data);
@@ -242,7 +280,7 @@ public class PacketServiceImpl implements IPacketService {
 					break;
 				case 17: // UDP
 					if (data.length >= datalinkHdrLen + iphlen + 6) {
-						packet = createUDPPacket(seconds, microSeconds, len, datalinkHdrLen, data);
+						packet = createUDPPacket(seconds, microSeconds, len, datalinkHdrLen, data, decodeContext);
 					} else {
 						packet = new Packet(seconds, microSeconds, len, datalinkHdrLen, data);
 					}
@@ -257,10 +295,11 @@ public class PacketServiceImpl implements IPacketService {
 		return packet;
 	}
 
-	private Packet createUDPPacket(long seconds, long microSeconds, int len, int datalinkHdrLen, byte[] data) {
+	private Packet createUDPPacket(long seconds, long microSeconds, int len, int datalinkHdrLen, byte[] data,
+			PacketDecodeContext decodeContext) {
 		UDPPacket packet = new UDPPacket(seconds, microSeconds, len, datalinkHdrLen, data);
 		if (packet.isDNSPacket()) {
-			DomainNameSystem dns = domainparser.parseDomainName(packet);
+			DomainNameSystem dns = domainparser.parseDomainName(packet, decodeContext);
 			packet.setDns(dns);
 		}
 		return packet;
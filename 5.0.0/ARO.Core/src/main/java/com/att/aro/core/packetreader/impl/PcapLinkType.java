@@ -0,0 +1,61 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+/**
+ * Maps the LINKTYPE values stored in pcap and pcapng files to the DLT values
+ * returned by pcap_datalink(), which is what
+ * {@link PacketServiceImpl#createPacketFromPcap} expects. The two agree for
+ * most link types, but not for all of them: raw IP is LINKTYPE_RAW (101) in a
+ * file and DLT_RAW (12) in libpcap.
+ */
+final class PcapLinkType {
+
+	static final int LINKTYPE_ATM_RFC1483 = 100;
+	static final int LINKTYPE_RAW = 101;
+	static final int LINKTYPE_SLIP_BSDOS = 102;
+	static final int LINKTYPE_PPP_BSDOS = 103;
+
+	static final int DLT_ATM_RFC1483 = 11;
+	static final int DLT_RAW = 12;
+	static final int DLT_SLIP_BSDOS = 15;
+	static final int DLT_PPP_BSDOS = 16;
+
+	private PcapLinkType() {
+	}
+
+	/**
+	 * @param linkType
+	 *            LINKTYPE value of a pcap file header or a pcapng Interface
+	 *            Description Block
+	 * @return the matching DLT value, the link type itself where both are the
+	 *         same
+	 */
+	static int toDatalink(int linkType) {
+		switch (linkType) {
+		case LINKTYPE_ATM_RFC1483:
+			return DLT_ATM_RFC1483;
+		case LINKTYPE_RAW:
+			return DLT_RAW;
+		case LINKTYPE_SLIP_BSDOS:
+			return DLT_SLIP_BSDOS;
+		case LINKTYPE_PPP_BSDOS:
+			return DLT_PPP_BSDOS;
+		default:
+			return linkType;
+		}
+	}
+}
@@ -51,7 +51,7 @@ public class PcapngHelperImpl implements IPcapngHelper {
 	 * @throws IOException
 	 */
 	@Override
-	public boolean isApplePcapng(File file) throws FileNotFoundException {
+	public synchronized boolean isApplePcapng(File file) throws FileNotFoundException {
 		//reuse previous result if the same file is passed in for calculation
 		if (file.lastModified() == this.prevlastmodifytime && file.getAbsolutePath().equals(this.prevfilepath)) {
 			return this.applePcapNG;
@@ -0,0 +1,391 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.att.aro.core.ILogger;
+import com.att.aro.core.exception.AROPacketReadException;
+import com.att.aro.core.model.InjectLogger;
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.IPacketListener;
+import com.att.aro.core.packetreader.IPacketReader;
+import com.att.aro.core.packetreader.IPacketService;
+import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
+
+/**
+ * Pure Java streaming reader for pcapng files, as written by the Apple tcpdump
+ * for iOS traces.<br>
+ * Blocks are read one at a time; Section Header, Interface Description,
+ * Enhanced Packet, Simple Packet and the obsolete Packet block are decoded,
+ * every other block is skipped. Each interface keeps its own link type and
+ * timestamp resolution, packets are decoded on demand by a cursor without
+ * an intermediate capture file.
+ */
+public class PcapngReaderImpl implements IPacketReader {
+
+	@InjectLogger
+	private static ILogger logger;
+
+	static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+	static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+	static final int PACKET_BLOCK = 0x00000002;
+	static final int SIMPLE_PACKET_BLOCK = 0x00000003;
+	static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+
+	static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+	private static final short OPT_ENDOFOPT = 0;
+	private static final short IF_TSRESOL = 9;
+	private static final short IF_TSOFFSET = 14;
+
+	private static final int BLOCK_HEADER_SIZE = 8;
+
+	/**
+	 * Minimum body length of each block type, up to the captured data or
+	 * the options
+	 */
+	private static final int INTERFACE_DESCRIPTION_MIN = 8;
+	private static final int ENHANCED_PACKET_MIN = 20;
+	private static final int SIMPLE_PACKET_MIN = 4;
+	private static final int PACKET_MIN = 20;
+
+	/**
+	 * Upper bound for a single block, anything larger is treated as a corrupt
+	 * block header.
+	 */
+	static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+	@Autowired
+	private IPacketService packetservice;
+
+	/**
+	 * Checks the first four bytes of a file for the pcapng Section Header
+	 * Block type.
+	 *
+	 * @param packetfile
+	 * @return true if the file is a pcapng file
+	 */
+	public static boolean isPcapng(String packetfile) {
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new FileInputStream(packetfile));
+			return input.readInt() == SECTION_HEADER_BLOCK;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					// nothing was read that could be lost
+				}
+			}
+		}
+	}
+
+	@Override
+	public void readPacket(String packetfile, IPacketListener listener) throws IOException {
+		readPacket(packetfile, listener, null);
+	}
+
+	@Override
+	public void readPacket(String packetfile, IPacketListener listener, PacketDecodeContext decodeContext) throws IOException {
+		if (listener == null) {
+			logger.error("PacketListener cannot be null");
+			throw new IllegalArgumentException("PacketListener cannot be null");
+		}
+		IPacketCursor cursor = openCursor(packetfile, null, decodeContext);
+		try {
+			while (cursor.hasNext()) {
+				listener.packetArrived(null, cursor.next());
+			}
+		} catch (AROPacketReadException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile) throws IOException {
+		return openCursor(packetfile, null, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor) throws IOException {
+		return openCursor(packetfile, executor, null);
+	}
+
+	@Override
+	public IPacketCursor openCursor(String packetfile, Executor executor, PacketDecodeContext decodeContext) throws IOException {
+		return new PcapngCursor(packetfile, decodeContext);
+	}
+
+	/**
+	 * Decodes link type, snap length and the timestamp options of an Interface
+	 * Description Block.
+	 */
+	PcapngInterface parseInterface(ByteBuffer block, int bodyLength) {
+		PcapngInterface iface = new PcapngInterface();
+		iface.datalink = PcapLinkType.toDatalink(block.getShort(0) & 0xffff);
+		iface.snapLen = block.getInt(4);
+
+		int position = 8;
+		int optionsEnd = bodyLength - 4;
+		while (position + 4 <= optionsEnd) {
+			short code = block.getShort(position);
+			int length = block.getShort(position + 2) & 0xffff;
+			position += 4;
+			if (code == OPT_ENDOFOPT || position + length > optionsEnd) {
+				break;
+			}
+			if (code == IF_TSRESOL && length >= 1) {
+				int resolution = block.get(position);
+				int exponent = resolution & 0x7f;
+				if ((resolution & 0x80) == 0) {
+					iface.unitsPerSecond = 1;
+					for (int i = 0; i < exponent && i < 18; i++) {
+						iface.unitsPerSecond *= 10;
+					}
+				} else {
+					iface.unitsPerSecond = 1L << Math.min(exponent, 62);
+				}
+			} else if (code == IF_TSOFFSET && length >= 8) {
+				iface.offsetSeconds = block.getLong(position);
+			}
+			position += (length + 3) & ~3;
+		}
+		return iface;
+	}
+
+	private Packet createPacket(int datalink, long seconds, long microSeconds, int len, byte[] data, String packetfile,
+			PacketDecodeContext decodeContext) {
+		try {
+			if (packetservice == null) {
+				packetservice = new PacketServiceImpl();
+			}
+			return packetservice.createPacketFromPcap(datalink, seconds, microSeconds, len, data, packetfile, decodeContext);
+		} catch (Throwable t) {
+			logger.error("Unexpected exception parsing packet", t);
+			return null;
+		}
+	}
+
+	/**
+	 * Per interface values of an Interface Description Block.
+	 */
+	static class PcapngInterface {
+		/** DLT value of the interface link type */
+		int datalink;
+		int snapLen;
+		long unitsPerSecond = 1000000;
+		long offsetSeconds;
+	}
+
+	/**
+	 * Walks the blocks of all sections in the file, reading blocks until the
+	 * next packet is found. A truncated last block, as left behind by an
+	 * interrupted capture, ends the cursor silently.
+	 */
+	private class PcapngCursor extends AbstractPacketCursor {
+
+		private final String packetfile;
+		private final PacketDecodeContext decodeContext;
+		private final DataInputStream input;
+		private final byte[] header = new byte[BLOCK_HEADER_SIZE];
+		private byte[] body = new byte[4096];
+		private ByteOrder order = ByteOrder.BIG_ENDIAN;
+		private final List<PcapngInterface> interfaces = new ArrayList<PcapngInterface>();
+		private long lastSeconds = 0;
+		private long lastMicroSeconds = 0;
+
+		PcapngCursor(String packetfile, PacketDecodeContext decodeContext) throws IOException {
+			this.packetfile = packetfile;
+			this.decodeContext = decodeContext;
+			this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(packetfile), 65536));
+		}
+
+		@Override
+		protected Packet advance() throws IOException {
+			while (readFully(header, BLOCK_HEADER_SIZE)) {
+				ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(order);
+				int blockType = headerBuffer.getInt(0);
+				int blockLength;
+				if (blockType == SECTION_HEADER_BLOCK) {
+					// byte order is only known once the section header is read
+					if (!readFully(body, 4)) {
+						return null;
+					}
+					order = ByteBuffer.wrap(body, 0, 4).getInt() == BYTE_ORDER_MAGIC ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+					blockLength = headerBuffer.order(order).getInt(4);
+					if (!isValidLength(blockLength, 28) || !skipFully(blockLength - BLOCK_HEADER_SIZE - 4)) {
+						return null;
+					}
+					interfaces.clear();
+					continue;
+				}
+
+				blockLength = headerBuffer.getInt(4);
+				if (!isValidLength(blockLength, 12)) {
+					return null;
+				}
+				int bodyLength = blockLength - BLOCK_HEADER_SIZE;
+				if (body.length < bodyLength) {
+					body = new byte[bodyLength];
+				}
+				if (!readFully(body, bodyLength)) {
+					return null;
+				}
+				Packet packet = decodeBlock(blockType, ByteBuffer.wrap(body, 0, bodyLength).order(order), bodyLength);
+				if (packet != null) {
+					return packet;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @param bodyLength
+		 *            length of the block after the block header, including
+		 *            the trailing block length
+		 * @return the packet of a packet block, or null for any other block
+		 *         and for a block too short for its fields, which is skipped
+		 */
+		private Packet decodeBlock(int blockType, ByteBuffer block, int bodyLength) {
+			int contentLength = bodyLength - 4;
+			switch (blockType) {
+			case INTERFACE_DESCRIPTION_BLOCK:
+				if (isTruncated(blockType, contentLength, INTERFACE_DESCRIPTION_MIN)) {
+					return null;
+				}
+				interfaces.add(parseInterface(block, bodyLength));
+				return null;
+			case ENHANCED_PACKET_BLOCK:
+			case PACKET_BLOCK:
+				if (isTruncated(blockType, contentLength, blockType == ENHANCED_PACKET_BLOCK ? ENHANCED_PACKET_MIN : PACKET_MIN)) {
+					return null;
+				}
+				int interfaceId = blockType == ENHANCED_PACKET_BLOCK ? block.getInt(0) : block.getShort(0) & 0xffff;
+				if (interfaceId >= interfaces.size()) {
+					logger.warn("Packet for undefined interface " + interfaceId + " in " + packetfile);
+					return null;
+				}
+				PcapngInterface iface = interfaces.get(interfaceId);
+				long timestamp = ((block.getInt(4) & 0xffffffffL) << 32) | (block.getInt(8) & 0xffffffffL);
+				int capLen = block.getInt(12);
+				int len = block.getInt(16);
+				if (capLen < 0 || capLen > contentLength - 20) {
+					logger.warn("Corrupt packet block in " + packetfile);
+					return null;
+				}
+				lastSeconds = timestamp / iface.unitsPerSecond + iface.offsetSeconds;
+				lastMicroSeconds = (long) ((double) (timestamp % iface.unitsPerSecond) * 1000000 / iface.unitsPerSecond);
+				return createPacket(iface.datalink, lastSeconds, lastMicroSeconds, len, copy(20, capLen), packetfile, decodeContext);
+			case SIMPLE_PACKET_BLOCK:
+				if (interfaces.isEmpty()) {
+					logger.warn("Simple packet before interface description in " + packetfile);
+					return null;
+				}
+				if (isTruncated(blockType, contentLength, SIMPLE_PACKET_MIN)) {
+					return null;
+				}
+				PcapngInterface first = interfaces.get(0);
+				int origLen = block.getInt(0);
+				if (origLen < 0) {
+					logger.warn("Corrupt simple packet block in " + packetfile);
+					return null;
+				}
+				int simpleCapLen = Math.min(origLen, contentLength - 4);
+				if (first.snapLen > 0) {
+					simpleCapLen = Math.min(simpleCapLen, first.snapLen);
+				}
+				// simple packets carry no timestamp, keep them in place after the previous packet
+				return createPacket(first.datalink, lastSeconds, lastMicroSeconds, origLen, copy(4, simpleCapLen), packetfile, decodeContext);
+			default:
+				return null;
+			}
+		}
+
+		private boolean isTruncated(int blockType, int contentLength, int minimum) {
+			if (contentLength < minimum) {
+				logger.warn("Truncated pcapng block of type " + blockType + " in " + packetfile);
+				return true;
+			}
+			return false;
+		}
+
+		private boolean isValidLength(int blockLength, int minimum) {
+			if (blockLength < minimum || blockLength > MAX_BLOCK_SIZE || (blockLength & 3) != 0) {
+				logger.error("Corrupt pcapng block length " + blockLength + " in " + packetfile);
+				return false;
+			}
+			return true;
+		}
+
+		private byte[] copy(int offset, int length) {
+			byte[] data = new byte[length];
+			System.arraycopy(body, offset, data, 0, length);
+			return data;
+		}
+
+		/**
+		 * @return false if the end of the file was reached before all bytes
+		 *         were read
+		 */
+		private boolean readFully(byte[] buffer, int length) throws IOException {
+			try {
+				input.readFully(buffer, 0, length);
+				return true;
+			} catch (EOFException e) {
+				return false;
+			}
+		}
+
+		private boolean skipFully(int length) throws IOException {
+			int remaining = length;
+			while (remaining > 0) {
+				int skipped = input.skipBytes(remaining);
+				if (skipped <= 0) {
+					return false;
+				}
+				remaining -= skipped;
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.att.aro.core.packetreader.IPacketListener;
+import com.att.aro.core.packetreader.IPacketReader;
+import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
+
+/**
+ * Turns a push based reader (jpcap, Netmon) into a cursor.<br>
+ * The reader runs on a thread of the executor and hands packets over through
+ * a bounded queue, so the reader blocks while the consumer is behind. Without
+ * an executor, or if the executor rejects the reader, such as a bounded one
+ * without an idle thread, the first pull starts a thread of its own for the
+ * reader, so the cursors of a merge never wait for each other. Closing the
+ * cursor early lets the reader run to the end of the file, but the remaining
+ * packets are dropped instead of queued. An interrupted reader drops the rest
+ * of the file and the consumer gets an InterruptedIOException.
+ */
+public class QueuedPacketCursor extends AbstractPacketCursor implements IPacketListener {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * Milliseconds the reader waits for room for the end of the trace before
+	 * it checks whether the cursor is closed
+	 */
+	private static final long END_WAIT = 100;
+
+	/**
+	 * Marks the end of the trace in the queue.
+	 */
+	private static final Entry END = new Entry(null, null);
+
+	private final IPacketReader packetreader;
+	private final String packetfile;
+	private final PacketDecodeContext decodeContext;
+	private final BlockingQueue<Entry> queue;
+
+	/**
+	 * Whether the reader runs, on the executor or on a thread of its own
+	 */
+	private boolean started = false;
+	private volatile boolean closed = false;
+	private volatile IOException failure = null;
+
+	/**
+	 * @param executor
+	 *            runs the reader, null to start a thread for it on the first
+	 *            pull
+	 */
+	public QueuedPacketCursor(IPacketReader packetreader, String packetfile, Executor executor) {
+		this(packetreader, packetfile, executor, null, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param decodeContext
+	 *            tables of the trace the packets are decoded into, null for
+	 *            none
+	 */
+	public QueuedPacketCursor(IPacketReader packetreader, String packetfile, Executor executor, PacketDecodeContext decodeContext) {
+		this(packetreader, packetfile, executor, decodeContext, DEFAULT_CAPACITY);
+	}
+
+	public QueuedPacketCursor(IPacketReader packetreader, String packetfile, Executor executor, int capacity) {
+		this(packetreader, packetfile, executor, null, capacity);
+	}
+
+	public QueuedPacketCursor(IPacketReader packetreader, String packetfile, Executor executor, PacketDecodeContext decodeContext,
+			int capacity) {
+		this.packetreader = packetreader;
+		this.packetfile = packetfile;
+		this.decodeContext = decodeContext;
+		this.queue = new ArrayBlockingQueue<Entry>(capacity);
+		if (executor != null) {
+			try {
+				executor.execute(reader());
+				started = true;
+			} catch (RejectedExecutionException e) {
+				started = false;
+			}
+		}
+	}
+
+	private Runnable reader() {
+		return new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		};
+	}
+
+	private void read() {
+		try {
+			packetreader.readPacket(packetfile, this, decodeContext);
+		} catch (IOException e) {
+			fail(e);
+		} catch (RuntimeException e) {
+			fail(new IOException(e));
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * Keeps the first failure of the reader
+	 */
+	private void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	@Override
+	public void packetArrived(String appName, Packet packet) {
+		if (closed || failure != null) {
+			return;
+		}
+		try {
+			queue.put(new Entry(appName, packet));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(new InterruptedIOException("Interrupted while queueing packets of " + packetfile));
+		}
+	}
+
+	/**
+	 * Delivers the end of the trace, or the failure, to the consumer. An
+	 * interrupted reader makes room for it, the packets still queued are
+	 * lost with the failure.
+	 */
+	private void end() {
+		try {
+			while (!queue.offer(END, END_WAIT, TimeUnit.MILLISECONDS)) {
+				if (closed) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(new InterruptedIOException("Interrupted while queueing packets of " + packetfile));
+			queue.clear();
+			queue.offer(END);
+		}
+	}
+
+	@Override
+	protected Packet advance() throws IOException {
+		if (!started) {
+			Thread thread = new Thread(reader(), "QueuedPacketCursor-" + packetfile);
+			thread.setDaemon(true);
+			thread.start();
+			started = true;
+		}
+		Entry entry;
+		try {
+			entry = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for packets", e);
+		}
+		if (entry == END) {
+			if (failure != null) {
+				throw failure;
+			}
+			return null;
+		}
+		setAppName(entry.appName);
+		return entry.packet;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		finish();
+		// unblock the reader, it drops whatever is still delivered
+		queue.clear();
+	}
+
+	/**
+	 * A packet and the application the reader names for it
+	 */
+	private static class Entry {
+		private final String appName;
+		private final Packet packet;
+
+		Entry(String appName, Packet packet) {
+			this.appName = appName;
+			this.packet = packet;
+		}
+	}
+}
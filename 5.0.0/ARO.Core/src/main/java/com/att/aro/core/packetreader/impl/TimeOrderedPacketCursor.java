@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.pojo.Packet;
+
+/**
+ * Delivers the packets of another cursor in timestamp order.<br>
+ * Captures are written in arrival order, which is almost but not always
+ * timestamp order. A bounded reorder window holds the next packets, so any
+ * packet that is less than the window size out of place is delivered in
+ * order; packets with equal timestamps keep their file order. The position
+ * of a packet in its file is the one the source cursor gave it.
+ */
+public class TimeOrderedPacketCursor extends AbstractPacketCursor {
+
+	public static final int DEFAULT_WINDOW = 1024;
+
+	private final IPacketCursor source;
+	private final int window;
+	private final PriorityQueue<Entry> pending;
+	private long sequence = 0;
+
+	public TimeOrderedPacketCursor(IPacketCursor source) {
+		this(source, DEFAULT_WINDOW);
+	}
+
+	public TimeOrderedPacketCursor(IPacketCursor source, int window) {
+		this.source = source;
+		this.window = Math.max(1, window);
+		this.pending = new PriorityQueue<Entry>(this.window + 1);
+	}
+
+	@Override
+	protected Packet advance() throws IOException {
+		while (pending.size() < window && source.hasNext()) {
+			pending.add(new Entry(source.next(), source.getAppName(), source.getPosition(), sequence++));
+		}
+		Entry entry = pending.poll();
+		if (entry == null) {
+			return null;
+		}
+		setAppName(entry.appName);
+		setPosition(entry.position);
+		return entry.packet;
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		pending.clear();
+		source.close();
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		private final Packet packet;
+		private final String appName;
+		private final long position;
+		private final long seconds;
+		private final long microSeconds;
+		private final long sequence;
+
+		Entry(Packet packet, String appName, long position, long sequence) {
+			this.packet = packet;
+			this.appName = appName;
+			this.position = position;
+			this.seconds = packet.getSeconds();
+			this.microSeconds = packet.getMicroSeconds();
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (seconds != other.seconds) {
+				return seconds < other.seconds ? -1 : 1;
+			}
+			if (microSeconds != other.microSeconds) {
+				return microSeconds < other.microSeconds ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
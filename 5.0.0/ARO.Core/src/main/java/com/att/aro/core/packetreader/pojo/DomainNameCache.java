@@ -0,0 +1,226 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.pojo;
+
+import java.util.Arrays;
+
+/**
+ * Per trace cache of decoded DNS names, keyed by the label bytes of the
+ * name.<br>
+ * A name is read straight from the DNS message, following compression
+ * pointers, and compared label by label against the cached keys, so a name
+ * that was decoded before is returned without any allocation. The cache is
+ * bounded, it is cleared once it is three quarters full.
+ */
+public class DomainNameCache {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * Upper bound for compression pointers in one name, a longer chain is a
+	 * pointer loop in a corrupt message.
+	 */
+	static final int MAX_POINTERS = 64;
+
+	private final int mask;
+	private final int threshold;
+	private final int[] hashes;
+	private final byte[][] keys;
+	private final String[] names;
+	private int size = 0;
+
+	public DomainNameCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity
+	 *            number of slots, rounded up to a power of two
+	 */
+	public DomainNameCache(int capacity) {
+		int slots = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+		mask = slots - 1;
+		threshold = slots / 4 * 3;
+		hashes = new int[slots];
+		keys = new byte[slots][];
+		names = new String[slots];
+	}
+
+	/**
+	 * Reads the name starting at index of a DNS message.
+	 *
+	 * @param data
+	 *            packet data
+	 * @param start
+	 *            index of the DNS message in data, compression pointers are
+	 *            relative to it
+	 * @param end
+	 *            end of the DNS message in data
+	 * @param index
+	 *            index of the first label of the name
+	 * @return the dotted name, or null if the name is corrupt
+	 */
+	public synchronized String getName(byte[] data, int start, int end, int index) {
+		long walk = walk(data, start, end, index);
+		if (walk < 0) {
+			return null;
+		}
+		int hash = (int) walk;
+		int keyLength = (int) (walk >>> 32);
+
+		int slot = hash & mask;
+		while (keys[slot] != null) {
+			if (hashes[slot] == hash && keys[slot].length == keyLength && matches(data, start, index, keys[slot])) {
+				return names[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		byte[] key = copyKey(data, start, index, keyLength);
+		String name = decode(key);
+		if (size >= threshold) {
+			clear();
+			slot = hash & mask;
+		}
+		hashes[slot] = hash;
+		keys[slot] = key;
+		names[slot] = name;
+		size++;
+		return name;
+	}
+
+	/**
+	 * Reads the name starting at index of a DNS message like getName(), for a
+	 * message parsed without a cache.
+	 *
+	 * @return the dotted name, or null if the name is corrupt
+	 */
+	public static String readName(byte[] data, int start, int end, int index) {
+		long walk = walk(data, start, end, index);
+		if (walk < 0) {
+			return null;
+		}
+		return decode(copyKey(data, start, index, (int) (walk >>> 32)));
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	private void clear() {
+		Arrays.fill(keys, null);
+		Arrays.fill(names, null);
+		size = 0;
+	}
+
+	/**
+	 * Walks the labels of a name, following compression pointers.
+	 *
+	 * @return key length in the high and hash of the label bytes in the low
+	 *         32 bits, -1 if the name runs past the message or loops
+	 */
+	private static long walk(byte[] data, int start, int end, int index) {
+		int position = index;
+		int hash = 1;
+		int keyLength = 0;
+		int pointers = 0;
+		while (position < end) {
+			int length = data[position] & 0xff;
+			if (length == 0) {
+				return ((long) keyLength << 32) | (hash & 0xffffffffL);
+			}
+			if ((length & 0xc0) == 0xc0) {
+				if (position + 1 >= end || ++pointers > MAX_POINTERS) {
+					return -1;
+				}
+				position = start + (((length & 0x3f) << 8) | (data[position + 1] & 0xff));
+				continue;
+			}
+			if ((length & 0xc0) != 0 || position + 1 + length > end) {
+				return -1;
+			}
+			for (int i = position; i <= position + length; i++) {
+				hash = 31 * hash + data[i];
+			}
+			keyLength += length + 1;
+			position += length + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares the labels of a name that was walked before with a key.
+	 */
+	private static boolean matches(byte[] data, int start, int index, byte[] key) {
+		int position = index;
+		int offset = 0;
+		while (offset < key.length) {
+			int length = data[position] & 0xff;
+			if ((length & 0xc0) == 0xc0) {
+				position = start + (((length & 0x3f) << 8) | (data[position + 1] & 0xff));
+				continue;
+			}
+			for (int i = 0; i <= length; i++) {
+				if (data[position + i] != key[offset + i]) {
+					return false;
+				}
+			}
+			offset += length + 1;
+			position += length + 1;
+		}
+		return true;
+	}
+
+	private static byte[] copyKey(byte[] data, int start, int index, int keyLength) {
+		byte[] key = new byte[keyLength];
+		int position = index;
+		int offset = 0;
+		while (offset < keyLength) {
+			int length = data[position] & 0xff;
+			if ((length & 0xc0) == 0xc0) {
+				position = start + (((length & 0x3f) << 8) | (data[position + 1] & 0xff));
+				continue;
+			}
+			System.arraycopy(data, position, key, offset, length + 1);
+			offset += length + 1;
+			position += length + 1;
+		}
+		return key;
+	}
+
+	/**
+	 * @return labels of the key joined by dots
+	 */
+	private static String decode(byte[] key) {
+		if (key.length == 0) {
+			return "";
+		}
+		char[] chars = new char[key.length - 1];
+		int count = 0;
+		int offset = 0;
+		while (offset < key.length) {
+			int length = key[offset] & 0xff;
+			if (offset > 0) {
+				chars[count++] = '.';
+			}
+			for (int i = offset + 1; i <= offset + length; i++) {
+				chars[count++] = (char) (key[i] & 0xff);
+			}
+			offset += length + 1;
+		}
+		return new String(chars, 0, count);
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.att.aro.core.packetreader.pojo;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * Per trace table of the distinct IP addresses seen in the packets.<br>
+ * Each address is given a small int ID in the order it is first seen, and a
+ * single canonical InetAddress instance. Addresses are looked up by their raw
+ * header bytes, so interning the addresses of a packet does not allocate once
+ * the address is known.
+ */
+public class IPAddressTable {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * open addressing hash table holding ID + 1, 0 marks a free slot
+	 */
+	private int[] slots = new int[INITIAL_CAPACITY * 2];
+	private byte[][] keys = new byte[INITIAL_CAPACITY][];
+	private InetAddress[] addresses = new InetAddress[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * Returns the ID of the address stored in data, adding the address if it
+	 * is new.
+	 * 
+	 * @param data
+	 *            array holding the address
+	 * @param offset
+	 *            offset of the address within data
+	 * @param length
+	 *            4 for IPv4, 16 for IPv6
+	 * @return the ID of the address, -1 if it is not a valid address
+	 */
+	public int intern(byte[] data, int offset, int length) {
+		return intern(data, offset, length, null);
+	}
+
+	/**
+	 * Returns the ID of the address, adding it if it is new. The first
+	 * instance added for an address becomes the canonical instance.
+	 * 
+	 * @param address
+	 * @return the ID of the address, -1 for null
+	 */
+	public int intern(InetAddress address) {
+		if (address == null) {
+			return -1;
+		}
+		byte[] raw = address.getAddress();
+		return intern(raw, 0, raw.length, address);
+	}
+
+	/**
+	 * @param address
+	 * @return the ID of the address, -1 if the address is not in the table
+	 */
+	public synchronized int getId(InetAddress address) {
+		if (address == null) {
+			return -1;
+		}
+		byte[] raw = address.getAddress();
+		int mask = slots.length - 1;
+		for (int slot = hash(raw, 0, raw.length) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (matches(keys[id], raw, 0, raw.length)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param id
+	 * @return the canonical address of the ID, null if there is no such ID
+	 */
+	public synchronized InetAddress getAddress(int id) {
+		return id >= 0 && id < size ? addresses[id] : null;
+	}
+
+	/**
+	 * @return the number of distinct addresses, IDs range from 0 to size - 1
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private synchronized int intern(byte[] data, int offset, int length, InetAddress address) {
+		int mask = slots.length - 1;
+		int slot = hash(data, offset, length) & mask;
+		while (slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if (matches(keys[id], data, offset, length)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		byte[] key = Arrays.copyOfRange(data, offset, offset + length);
+		InetAddress canonical = address;
+		if (canonical == null) {
+			try {
+				canonical = InetAddress.getByAddress(key);
+			} catch (UnknownHostException e) {
+				return -1;
+			}
+		}
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			addresses = Arrays.copyOf(addresses, size * 2);
+		}
+		int id = size++;
+		keys[id] = key;
+		addresses[id] = canonical;
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hash(keys[id], 0, keys[id].length) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+
+	private static int hash(byte[] data, int offset, int length) {
+		int hash = 1;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + data[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean matches(byte[] key, byte[] data, int offset, int length) {
+		if (key.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != data[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
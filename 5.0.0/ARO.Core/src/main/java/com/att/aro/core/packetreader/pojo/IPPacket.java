@@ -20,12 +20,16 @@ import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import com.att.aro.core.ILogger;
 import com.att.aro.core.model.InjectLogger;
 
 /**
- * A bean class that provides access to IP Packet data.
+ * A bean class that provides access to IP Packet data.<br>
+ * Only the fields needed to locate the payload are decoded when the packet is
+ * created, the remaining header fields are read from the packet data on first
+ * access.
  */
 
 public class IPPacket extends Packet implements Serializable {
@@ -37,14 +41,11 @@ public class IPPacket extends Packet implements Serializable {
 	private byte ipVersion;
 	private byte priority;
 	private int packetLength;
-	private boolean rsvFrag;
-	private boolean dontFrag;
-	private boolean moreFrag;
-	private short fragmentOffset;
-	private short timeToLive;
 	private short protocol;
-	private InetAddress sourceIPAddress;
-	private InetAddress destinationIPAddress;
+	private volatile InetAddress sourceIPAddress;
+	private volatile InetAddress destinationIPAddress;
+	private int sourceAddressId = -1;
+	private int destinationAddressId = -1;
 	private int dataOffset;
 	private int payloadLen;
 
@@ -76,48 +77,10 @@ public class IPPacket extends Packet implements Serializable {
 			}
 
 			payloadLen = packetLength - hlen;
-			
-			short ivalue = bytes.getShort(headerOffset + 6);
-			rsvFrag = (ivalue & 0x8000) != 0;
-			dontFrag = (ivalue & 0x4000) != 0;
-			moreFrag = (ivalue & 0x2000) != 0;
-			fragmentOffset = (short) (ivalue & 0x1fff);
 		}
 
 		dataOffset = headerOffset + hlen;
-
-		short ivalue = bytes.getShort(headerOffset + 8);
-		if (ipVersion == 4) {
-			timeToLive = (short) ((ivalue & 0xff00) >> 8);
-		}
-		
-		protocol = (short) (ivalue & 0xff);
-
-		byte[] buffer = null;
-		int addrLgth = -1;
-		int addrOffset = -1;
-		if (ipVersion == 6) {
-			addrLgth = 16;
-			addrOffset = 8;
-		} else {
-			addrLgth = 4;
-			addrOffset = 12;
-		}
-
-		buffer = new byte[addrLgth];
-		bytes.position(headerOffset + addrOffset);
-		bytes.get(buffer, 0, addrLgth);
-		try {
-			sourceIPAddress = InetAddress.getByAddress(buffer);
-		} catch (UnknownHostException e) {
-			logger.warn("Unable to determine source IP - " + e.getMessage());
-		}
-		try {
-			bytes.get(buffer, 0, addrLgth);
-			destinationIPAddress = InetAddress.getByAddress(buffer);
-		} catch (UnknownHostException e) {
-			logger.warn("Unable to determine destination IP - " + e.getMessage());
-		}
+		protocol = (short) (bytes.getShort(headerOffset + 8) & 0xff);
 	}
 
 	/**
@@ -171,7 +134,7 @@ public class IPPacket extends Packet implements Serializable {
 	 * @return A boolean value that is the Fragmentation Reservation flag.
 	 */
 	public boolean isRsvFrag() {
-		return rsvFrag;
+		return (getFragmentField() & 0x8000) != 0;
 	}
 
 	/**
@@ -180,7 +143,7 @@ public class IPPacket extends Packet implements Serializable {
 	 * @return A boolean value that is the Don't Fragment flag.
 	 */
 	public boolean isDontFrag() {
-		return dontFrag;
+		return (getFragmentField() & 0x4000) != 0;
 	}
 
 	/**
@@ -189,7 +152,7 @@ public class IPPacket extends Packet implements Serializable {
 	 * @return A boolean value that is the More Fragment flag.
 	 */
 	public boolean isMoreFrag() {
-		return moreFrag;
+		return (getFragmentField() & 0x2000) != 0;
 	}
 
 	/**
@@ -198,7 +161,7 @@ public class IPPacket extends Packet implements Serializable {
 	 * @return A short value that is the fragment offset.
 	 */
 	public short getFragmentOffset() {
-		return fragmentOffset;
+		return (short) (getFragmentField() & 0x1fff);
 	}
 
 	/**
@@ -207,7 +170,10 @@ public class IPPacket extends Packet implements Serializable {
 	 * @return A short that is the TTL value.
 	 */
 	public short getTimeToLive() {
-		return timeToLive;
+		if (ipVersion != 4) {
+			return 0;
+		}
+		return (short) (getData()[getDatalinkHeaderSize() + 8] & 0xff);
 	}
 
 	/**
@@ -225,7 +191,12 @@ public class IPPacket extends Packet implements Serializable {
 	 * @return The source IP Address in the InetAddress format.
 	 */
 	public InetAddress getSourceIPAddress() {
-		return sourceIPAddress;
+		InetAddress address = sourceIPAddress;
+		if (address == null) {
+			address = readAddress(ipVersion == 6 ? 8 : 12, "source");
+			sourceIPAddress = address;
+		}
+		return address;
 	}
 
 	/**
@@ -234,7 +205,89 @@ public class IPPacket extends Packet implements Serializable {
 	 * @return The destination IP address in the InetAddress format.
 	 */
 	public InetAddress getDestinationIPAddress() {
-		return destinationIPAddress;
+		InetAddress address = destinationIPAddress;
+		if (address == null) {
+			address = readAddress(ipVersion == 6 ? 24 : 16, "destination");
+			destinationIPAddress = address;
+		}
+		return address;
+	}
+
+	/**
+	 * Gets the ID of the source IP address in the address table of the trace.
+	 * 
+	 * @return The ID of the source IP address, -1 if the addresses have not
+	 *         been interned.
+	 */
+	public int getSourceAddressId() {
+		return sourceAddressId;
+	}
+
+	/**
+	 * Gets the ID of the destination IP address in the address table of the
+	 * trace.
+	 * 
+	 * @return The ID of the destination IP address, -1 if the addresses have
+	 *         not been interned.
+	 */
+	public int getDestinationAddressId() {
+		return destinationAddressId;
+	}
+
+	/**
+	 * Looks up the source and destination addresses in the address table of
+	 * the trace, by their header bytes. The packet then returns the canonical
+	 * InetAddress instances of the table and their IDs.
+	 * 
+	 * @param table
+	 *            address table of the trace
+	 */
+	public void internAddresses(IPAddressTable table) {
+		int addrLgth = ipVersion == 6 ? 16 : 4;
+		int offset = getDatalinkHeaderSize() + (ipVersion == 6 ? 8 : 12);
+		byte[] data = getData();
+		sourceAddressId = table.intern(data, offset, addrLgth);
+		destinationAddressId = table.intern(data, offset + addrLgth, addrLgth);
+		if (sourceAddressId >= 0) {
+			sourceIPAddress = table.getAddress(sourceAddressId);
+		}
+		if (destinationAddressId >= 0) {
+			destinationIPAddress = table.getAddress(destinationAddressId);
+		}
+	}
+
+	/**
+	 * Reads the flags and fragment offset word of an IPv4 header.
+	 * 
+	 * @return the flags and fragment offset, 0 for IPv6
+	 */
+	private short getFragmentField() {
+		if (ipVersion != 4) {
+			return 0;
+		}
+		byte[] data = getData();
+		int offset = getDatalinkHeaderSize() + 6;
+		return (short) (((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff));
+	}
+
+	/**
+	 * Utility that reads an IP address from the header
+	 * 
+	 * @param addrOffset
+	 *            offset of the address within the IP header
+	 * @param name
+	 *            source or destination, used for logging
+	 * @return The IP address, or null if it could not be read
+	 */
+	private InetAddress readAddress(int addrOffset, String name) {
+		int addrLgth = ipVersion == 6 ? 16 : 4;
+		int offset = getDatalinkHeaderSize() + addrOffset;
+		try {
+			return InetAddress.getByAddress(Arrays.copyOfRange(getData(), offset, offset + addrLgth));
+		} catch (UnknownHostException e) {
+			logger.warn("Unable to determine " + name + " IP - " + e.getMessage());
+			return null;
+		}
 	}
 
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.pojo;
+
+/**
+ * Per trace tables the packets of one trace are decoded into.<br>
+ * DNS messages are parsed while the packets are decoded, their names are
+ * interned in the name cache and their answers in the address table of the
+ * trace. Both tables are thread safe, so the packets of a trace may be
+ * decoded on several threads.
+ */
+public class PacketDecodeContext {
+
+	private final DomainNameCache domainNames;
+	private final IPAddressTable addressTable;
+
+	/**
+	 * @param addressTable
+	 *            address table of the trace
+	 */
+	public PacketDecodeContext(IPAddressTable addressTable) {
+		this(new DomainNameCache(), addressTable);
+	}
+
+	public PacketDecodeContext(DomainNameCache domainNames, IPAddressTable addressTable) {
+		this.domainNames = domainNames;
+		this.addressTable = addressTable;
+	}
+
+	public DomainNameCache getDomainNames() {
+		return domainNames;
+	}
+
+	public IPAddressTable getAddressTable() {
+		return addressTable;
+	}
+}
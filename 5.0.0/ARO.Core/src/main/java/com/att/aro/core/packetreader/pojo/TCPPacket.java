@@ -20,7 +20,10 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 
 /**
- * A bean class that provides access to TCP packet data.
+ * A bean class that provides access to TCP packet data.<br>
+ * Ports, sequence numbers and flags are decoded when the packet is created,
+ * the window, urgent pointer and the probe for TLS records are read from the
+ * packet data on first access.
  */
 public class TCPPacket extends IPPacket implements Serializable {
 	private static final long serialVersionUID = 1L;
@@ -29,25 +32,21 @@ public class TCPPacket extends IPPacket implements Serializable {
 	private static final byte TLS_ALERT = 21;
 	private static final byte TLS_HANDSHAKE = 22;
 	private static final byte TLS_APPLICATION = 23;
+
+	private static final byte SSL_UNPARSED = -1;
+	private static final byte SSL = 1;
+	private static final byte SSL_HANDSHAKE = 2;
+	private static final byte SSL_APPLICATION_DATA = 4;
 	
 	private int sourcePort;
 	private int destinationPort;
 	private long sequenceNumber;
 	private long ackNumber;
-	private boolean urg; //URG;
-	private boolean ack;//ACK;
-	private boolean psh;//PSH;
-	private boolean rst;//RST;
-	private boolean syn;//SYN;
-	private boolean fin;//FIN;
-	private int window;
-	private short urgentPointer;
+	private short flags; // URG, ACK, PSH, RST, SYN, FIN
 	private int dataOffset;
 	private int payloadLen;
 	
-	private boolean ssl;
-	private boolean sslHandshake;
-	private boolean sslApplicationData;
+	private volatile byte sslFlags = SSL_UNPARSED;
 
 	/**
 	 * Creates a new instance of the TCPPacket class using the specified parameters.
@@ -71,20 +70,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 		int hlen = ((bytes.get(headerOffset + 12) & 0xF0) >> 2);
 		dataOffset = headerOffset + hlen;
 		payloadLen = super.getPayloadLen() - hlen;
-		short ivalue = bytes.getShort(headerOffset + 12);
-		urg = (ivalue & 0x0020) != 0;
-		ack = (ivalue & 0x0010) != 0;
-		psh = (ivalue & 0x0008) != 0;
-		rst = (ivalue & 0x0004) != 0;
-		syn = (ivalue & 0x0002) != 0;
-		fin = (ivalue & 0x0001) != 0;
-		window = bytes.getShort(headerOffset + 14) & 0xFFFF;
-		urgentPointer = bytes.getShort(headerOffset + 18);
-		
-		int offset = dataOffset;
-		do {
-			offset = parseSecureSocketsLayer(bytes, offset);
-		} while (offset >= 0);
+		flags = bytes.getShort(headerOffset + 12);
 	}
 
 	/**
@@ -147,7 +133,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 * @return true if prioritize are set with in the packet else it is false.
 	 */
 	public boolean isURG() {
-		return urg;
+		return (flags & 0x0020) != 0;
 	}
 
 	/**
@@ -157,7 +143,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 *         packet, and is "false" otherwise.
 	 */
 	public boolean isACK() {
-		return ack;
+		return (flags & 0x0010) != 0;
 	}
 
 	/**
@@ -170,7 +156,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 *         is not required.
 	 */
 	public boolean isPSH() {
-		return psh;
+		return (flags & 0x0008) != 0;
 	}
 
 	/**
@@ -181,7 +167,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 *         in response to an error, and is false if it should not.
 	 */
 	public boolean isRST() {
-		return rst;
+		return (flags & 0x0004) != 0;
 	}
 
 	/**
@@ -191,7 +177,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 *         and is "false" if a connection won't be initiated.
 	 */
 	public boolean isSYN() {
-		return syn;
+		return (flags & 0x0002) != 0;
 	}
 
 	/**
@@ -201,7 +187,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 *         closed, and is "false" if the connection should remain the same.
 	 */
 	public boolean isFIN() {
-		return fin;
+		return (flags & 0x0001) != 0;
 	}
 
 	/**
@@ -210,7 +196,9 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 * @return An int value that is the window.
 	 */
 	public int getWindow() {
-		return window;
+		byte[] data = getData();
+		int offset = super.getDataOffset() + 14;
+		return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
 	}
 
 	/**
@@ -219,7 +207,9 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 * @return A short value that is the urgent pointer.
 	 */
 	public short getUrgentPointer() {
-		return urgentPointer;
+		byte[] data = getData();
+		int offset = super.getDataOffset() + 18;
+		return (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
 	}
 
 	/**
@@ -227,7 +217,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 * @return the ssl
 	 */
 	public boolean isSsl() {
-		return ssl;
+		return (getSslFlags() & SSL) != 0;
 	}
 
 	/**
@@ -235,7 +225,7 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 * @return the sslHandshake
 	 */
 	public boolean isSslHandshake() {
-		return sslHandshake;
+		return (getSslFlags() & SSL_HANDSHAKE) != 0;
 	}
 
 	/**
@@ -243,14 +233,43 @@ public class TCPPacket extends IPPacket implements Serializable {
 	 * @return the sslApplicationData
 	 */
 	public boolean isSslApplicationData() {
-		return sslApplicationData;
+		return (getSslFlags() & SSL_APPLICATION_DATA) != 0;
+	}
+
+	/**
+	 * Looks for TLS records in the TCP packet data the first time it is asked
+	 * for
+	 * @return SSL flags of the packet
+	 */
+	private byte getSslFlags() {
+		byte result = sslFlags;
+		if (result == SSL_UNPARSED) {
+			ByteBuffer bytes = ByteBuffer.wrap(getData());
+			result = 0;
+			int offset = dataOffset;
+			do {
+				int next = parseSecureSocketsLayer(bytes, offset);
+				if (next >= 0) {
+					result |= SSL;
+					byte contentType = bytes.get(offset);
+					if (contentType == TLS_HANDSHAKE) {
+						result |= SSL_HANDSHAKE;
+					} else if (contentType == TLS_APPLICATION) {
+						result |= SSL_APPLICATION_DATA;
+					}
+				}
+				offset = next;
+			} while (offset >= 0);
+			sslFlags = result;
+		}
+		return result;
 	}
 
 	/**
-	 * Utility method that looks for TLS records in the TCP packet data
+	 * Utility method that looks for a TLS record in the TCP packet data
 	 * @param bytes
 	 * @param offset
-	 * @return
+	 * @return offset of the next record, or -1 if there is no TLS record at offset
 	 */
 	private int parseSecureSocketsLayer(ByteBuffer bytes, int offset) {
 
@@ -269,13 +288,6 @@ public class TCPPacket extends IPPacket implements Serializable {
 							|| contentType == TLS_ALERT
 							|| contentType == TLS_HANDSHAKE || contentType == TLS_APPLICATION)
 					&& bytes.array().length >= result) {
-				this.ssl = true;
-				if (contentType == TLS_HANDSHAKE) {
-					this.sslHandshake = true;
-				} else if (contentType == TLS_APPLICATION) {
-					this.sslApplicationData = true;
-				}
-				
 				return result;
 			}
 		}
@@ -16,16 +16,25 @@
 package com.att.aro.core.bestpractice.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.bestpractice.pojo.AbstractBestPracticeResult;
+import com.att.aro.core.packetanalysis.IHttpRequestResponseHelper;
 import com.att.aro.core.packetanalysis.pojo.Burst;
 import com.att.aro.core.packetanalysis.pojo.HttpDirection;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
@@ -182,5 +191,64 @@ public class FileCompressionImplTest extends BaseTest{
 		assertEquals("WARNING",result.getResultType().toString());
 	}
 
+	/**
+	 * the content is compressed as getContent() decodes it
+	 */
+	@Test
+	public void calculateSavingForTextBasedOnGzip() throws Exception {
+		FileCompressionImpl = (FileCompressionImpl)context.getBean("textFileCompression");
+		IHttpRequestResponseHelper reqhelper = context.getBean(IHttpRequestResponseHelper.class);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			text.append("<p>The content ").append(i).append(" is the content</p>\n");
+		}
+		byte[] plain = text.toString().getBytes();
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(output);
+		gzip.write(plain);
+		gzip.close();
+		byte[] gzipped = output.toByteArray();
+
+		output.reset();
+		DeflaterOutputStream deflate = new DeflaterOutputStream(output);
+		deflate.write(plain);
+		deflate.close();
+		byte[] deflated = output.toByteArray();
+
+		// an invalid header leaves the content as sent, a cut body inflates in part
+		byte[] badHeader = gzipped.clone();
+		badHeader[0] = 0;
+		byte[] cut = Arrays.copyOf(gzipped, gzipped.length / 2);
+
+		Object[][] bodies = { { plain, "identity" }, { gzipped, "gzip" }, { deflated, "deflate" }, { badHeader, "gzip" },
+				{ cut, "gzip" } };
+		for (Object[] body : bodies) {
+			Session session = new Session(null, 0, 0);
+			session.setStorageDl((byte[]) body[0]);
+			HttpRequestResponseInfo info = new HttpRequestResponseInfo();
+			SortedMap<Integer, Integer> contentOffsetLength = new TreeMap<Integer, Integer>();
+			contentOffsetLength.put(0, ((byte[]) body[0]).length);
+			info.setContentOffsetLength(contentOffsetLength);
+			info.setPacketDirection(PacketDirection.DOWNLINK);
+			info.setContentEncoding((String) body[1]);
+			info.setContentLength(plain.length);
+
+			byte[] content = reqhelper.getContent(info, session);
+			int saving = Math.max(0, plain.length - gzipSize(content));
+			int expected = Math.round((float) saving * 100 / (float) plain.length);
+			assertTrue(expected > 0);
+			assertEquals(expected, FileCompressionImpl.calculateSavingForTextBasedOnGzip(info, session));
+		}
+	}
+
+	private int gzipSize(byte[] content) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(output);
+		gzip.write(content);
+		gzip.close();
+		return output.size();
+	}
+
 
 }
@@ -44,12 +44,15 @@ import static org.junit.Assert.*;
 
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.IAROService;
+import com.att.aro.core.ILogger;
 import com.att.aro.core.bestpractice.IBestPractice;
 import com.att.aro.core.bestpractice.pojo.AbstractBestPracticeResult;
 import com.att.aro.core.bestpractice.pojo.BestPracticeType;
 import com.att.aro.core.bestpractice.pojo.PeriodicTransferResult;
 import com.att.aro.core.configuration.pojo.Profile;
 import com.att.aro.core.packetanalysis.ICacheAnalysis;
+import com.att.aro.core.packetanalysis.IContentCacheScope;
+import com.att.aro.core.packetanalysis.IHttpRequestResponseHelper;
 import com.att.aro.core.packetanalysis.IPacketAnalyzer;
 import com.att.aro.core.packetanalysis.pojo.AnalysisFilter;
 import com.att.aro.core.packetanalysis.pojo.CacheAnalysis;
@@ -72,6 +75,10 @@ public class AROServiceImplTest extends BaseTest {
 	@Mock
 	ICacheAnalysis cacheAnalyzer;
 	@Mock
+	IHttpRequestResponseHelper rrhelper;
+	@Mock
+	ILogger logger;
+	@Mock
 	IBestPractice worker;
 	@Mock
 	transient VersionInfo info;
@@ -253,10 +260,15 @@ public class AROServiceImplTest extends BaseTest {
 		when(worker.runTest(any(PacketAnalyzerResult.class))).thenReturn(periodicTransferResult);
 
 		when(cacheAnalyzer.analyze(anyListOf(Session.class))).thenReturn(cacheAnalysis);
+		IContentCacheScope contentCache = Mockito.mock(IContentCacheScope.class);
+		when(rrhelper.openContentCache()).thenReturn(contentCache);
 		
 		AROTraceData testResult 
 		= aro.analyzeDirectory(req,  Util.getCurrentRunningDir());		
 		assertEquals(23,testResult.getBestPracticeResults().size());
+		Mockito.verify(rrhelper).openContentCache();
+		Mockito.verify(contentCache).close();
+		Mockito.verify(logger).info("content cache: 0 hits, 0 misses, 0 evictions");
 	}
 	
 	@Test
@@ -17,6 +17,8 @@ package com.att.aro.core.packetanalysis.impl;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.IOException;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -24,6 +26,7 @@ import org.mockito.MockitoAnnotations;
 
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.packetanalysis.IByteArrayLineReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
 
 public class ByteArrayLineReaderImplTest extends BaseTest{
 	@InjectMocks
@@ -46,5 +49,30 @@ public class ByteArrayLineReaderImplTest extends BaseTest{
 		
 	}
 
+	@Test
+	public void readLine_payloadStorage() throws IOException {
+		byte[] dataTest = "GET / HTTP/1.1\r\nHost: att.com\r\n\r\nbody".getBytes();
+		PayloadStorage storage = new PayloadStorage();
+		storage.append(dataTest, 0, 15);
+		storage.append(dataTest, 15, dataTest.length - 15);
+		storageReader.init(storage);
+		assertEquals("GET / HTTP/1.1", storageReader.readLine());
+		assertEquals("Host: att.com", storageReader.readLine());
+		assertEquals("", storageReader.readLine());
+		assertEquals(33, storageReader.getIndex());
+		assertEquals("body", storageReader.readLine());
+		assertEquals(null, storageReader.readLine());
+	}
+
+	@Test
+	public void readLineLength() throws IOException {
+		storageReader.init("Host: att.com\r\na\rb\r\n\r\nbody\r".getBytes());
+		assertEquals(13, storageReader.readLineLength());
+		assertEquals(15, storageReader.getIndex());
+		assertEquals(3, storageReader.readLineLength());
+		assertEquals(0, storageReader.readLineLength());
+		assertEquals(5, storageReader.readLineLength());
+		assertEquals(-1, storageReader.readLineLength());
+	}
 	
 }
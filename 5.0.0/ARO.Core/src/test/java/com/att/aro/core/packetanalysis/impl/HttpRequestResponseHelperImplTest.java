@@ -16,15 +16,21 @@
 package com.att.aro.core.packetanalysis.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 
 import org.junit.Before;
@@ -34,9 +40,11 @@ import org.mockito.Mockito;
 import org.mockito.Spy;
 
 import com.att.aro.core.BaseTest;
+import com.att.aro.core.packetanalysis.IContentCacheScope;
 import com.att.aro.core.packetanalysis.IHttpRequestResponseHelper;
 import com.att.aro.core.packetanalysis.pojo.HttpDirection;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
 import com.att.aro.core.packetanalysis.pojo.Session;
 import com.att.aro.core.packetreader.pojo.PacketDirection;
 
@@ -172,6 +180,158 @@ public class HttpRequestResponseHelperImplTest extends BaseTest {
 	
 
 	
+	@Test
+	public void getContentCached() throws Exception {
+		final HttpRequestResponseHelperImpl helper = new HttpRequestResponseHelperImpl();
+		helper.setContentCacheSize(30);
+		final Session session = new Session(null, 0, 0);
+		session.setStorageDl("0123456789abcdefghij".getBytes());
+		final HttpRequestResponseInfo first = contentInfo(0, 10);
+		HttpRequestResponseInfo second = contentInfo(10, 10);
+
+		// nothing is kept without an open cache
+		assertEquals("0123456789", helper.getContentString(first, session));
+
+		IContentCacheScope contentCache = helper.openContentCache();
+		assertEquals(0, contentCache.getMisses());
+		assertEquals("0123456789", helper.getContentString(first, session));
+		assertEquals("0123456789", helper.getContentString(first, session));
+		assertEquals(1, contentCache.getMisses());
+		assertEquals(1, contentCache.getHits());
+
+		// the bytes and string of first take 30 bytes, so first is evicted
+		assertEquals("abcdefghij", new String(helper.getContent(second, session)));
+		assertEquals(1, contentCache.getEvictions());
+		assertEquals("0123456789", helper.getContentString(first, session));
+		assertEquals(3, contentCache.getMisses());
+
+		// other storage is not read from the cache
+		session.setStorageDl("9876543210".getBytes());
+		assertEquals("9876543210", helper.getContentString(first, session));
+		assertEquals(4, contentCache.getMisses());
+
+		// a cache is kept for its own thread only
+		Thread other = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					helper.getContentString(first, session);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		other.start();
+		other.join();
+		assertEquals(4, contentCache.getMisses());
+
+		// a nested cache keeps its own content until it is closed
+		IContentCacheScope nested = helper.openContentCache();
+		assertEquals("9876543210", helper.getContentString(first, session));
+		nested.close();
+		assertEquals(1, nested.getMisses());
+		assertEquals(4, contentCache.getMisses());
+		assertEquals("9876543210", helper.getContentString(first, session));
+		assertEquals(2, contentCache.getHits());
+
+		// the counts are kept after the cache is closed
+		contentCache.close();
+		assertEquals("9876543210", helper.getContentString(first, session));
+		assertEquals(2, contentCache.getHits());
+		assertEquals(4, contentCache.getMisses());
+	}
+
+	@Test
+	public void getContentStream() throws Exception {
+		HttpRequestResponseHelperImpl helper = new HttpRequestResponseHelperImpl();
+		Session session = new Session(null, 0, 0);
+		session.setStorageDl("01234\r\n56789".getBytes());
+
+		// the chunks of a chunked body are read one after the other
+		HttpRequestResponseInfo chunked = contentInfo(0, 5);
+		chunked.getContentOffsetLength().put(7, 5);
+		chunked.getContentOffsetLength().put(12, 0);
+		assertEquals("0123456789", read(helper.getContentStream(chunked, session)));
+		ByteBuffer buffer = helper.getContentBuffer(chunked, session);
+		assertEquals(10, buffer.remaining());
+		assertEquals('5', buffer.get(5));
+
+		// a single range is a view of the storage
+		HttpRequestResponseInfo single = contentInfo(7, 5);
+		buffer = helper.getContentBuffer(single, session);
+		assertTrue(buffer.isReadOnly());
+		assertEquals(5, buffer.remaining());
+		assertEquals('5', buffer.get(0));
+
+		byte[] text = "The content is the content is the content".getBytes();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(output);
+		gzip.write(text);
+		gzip.close();
+		session.setStorageDl(output.toByteArray());
+		HttpRequestResponseInfo gzipped = contentInfo(0, output.size());
+		gzipped.setContentEncoding(HttpRequestResponseInfo.CONTENT_ENCODING_GZIP);
+		assertEquals(new String(text), read(helper.getContentStream(gzipped, session)));
+		assertNull(helper.getContentBuffer(gzipped, session));
+
+		// deflate is either zlib wrapped or raw
+		for (boolean raw : new boolean[] { false, true }) {
+			output.reset();
+			DeflaterOutputStream deflate = new DeflaterOutputStream(output, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+			deflate.write(text);
+			deflate.close();
+			session.setStorageDl(output.toByteArray());
+			HttpRequestResponseInfo deflated = contentInfo(0, output.size());
+			deflated.setContentEncoding(HttpRequestResponseInfo.CONTENT_ENCODING_DEFLATE);
+			assertEquals(new String(text), read(helper.getContentStream(deflated, session)));
+		}
+
+		HttpRequestResponseInfo empty = new HttpRequestResponseInfo();
+		empty.setPacketDirection(PacketDirection.DOWNLINK);
+		empty.setContentEncoding(HttpRequestResponseInfo.CONTENT_ENCODING_GZIP);
+		assertEquals(-1, helper.getContentStream(empty, session).read());
+
+		try {
+			helper.getContentStream(contentInfo(0, output.size() + 1), session);
+			fail("content past the storage must not be read");
+		} catch (IOException e) {
+			assertEquals("The content may be corrupted.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void getContentPayloadStorage() throws Exception {
+		HttpRequestResponseHelperImpl helper = new HttpRequestResponseHelperImpl();
+		HttpRequestResponseInfo info = contentInfo(2, 8);
+		info.getContentOffsetLength().put(12, 3);
+		PayloadStorage storage = new PayloadStorage();
+		storage.append("..0123".getBytes(), 0, 6);
+		storage.append("4567\r\n89!".getBytes(), 0, 9);
+		Session session = new Session(null, 0, 0);
+		session.setPayloadStorageDl(storage);
+		assertEquals("0123456789!", new String(helper.getContent(info, session)));
+	}
+
+	private String read(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4];
+		int len;
+		while ((len = input.read(buffer)) >= 0) {
+			output.write(buffer, 0, len);
+		}
+		input.close();
+		return output.toString();
+	}
+
+	private HttpRequestResponseInfo contentInfo(int offset, int length) {
+		HttpRequestResponseInfo info = new HttpRequestResponseInfo();
+		SortedMap<Integer, Integer> contentOffsetLength = new TreeMap<Integer, Integer>();
+		contentOffsetLength.put(offset, length);
+		info.setContentOffsetLength(contentOffsetLength);
+		info.setPacketDirection(PacketDirection.DOWNLINK);
+		return info;
+	}
+
 	@Ignore
 	@Test
 	public void isSameContent(){
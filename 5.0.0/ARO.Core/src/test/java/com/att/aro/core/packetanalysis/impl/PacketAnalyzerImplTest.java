@@ -16,6 +16,7 @@
 package com.att.aro.core.packetanalysis.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -53,6 +54,7 @@ import com.att.aro.core.packetanalysis.pojo.BurstCollectionAnalysisData;
 import com.att.aro.core.packetanalysis.pojo.EnergyModel;
 import com.att.aro.core.packetanalysis.pojo.PacketAnalyzerResult;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.RrcStateMachineLTE;
 import com.att.aro.core.packetanalysis.pojo.RrcStateRange;
 import com.att.aro.core.packetanalysis.pojo.Statistic;
@@ -230,7 +232,7 @@ public class PacketAnalyzerImplTest extends BaseTest {
 		EnergyModel energymodel = mock(EnergyModel.class);
 		List<RrcStateRange> rrcstatelist = new ArrayList<RrcStateRange>();
 		when(statemachinefactory.create
-				(any(List.class), any(Profile.class), any(double.class), any(double.class), any(double.class),
+				(any(PacketTable.class), any(Profile.class), any(double.class), any(double.class), any(double.class),
 						any(TimeRange.class))).thenReturn(rrcstate);
 						
 		when(rrcstate.getStaterangelist()).thenReturn(rrcstatelist);
@@ -335,4 +337,33 @@ public class PacketAnalyzerImplTest extends BaseTest {
 		assertEquals(3,testResult.getTotalPackets());
 	}
 
+	@Test
+	public void test_getStatisticHttps() {
+		TCPPacket sslPacket = Mockito.mock(TCPPacket.class);
+		Mockito.when(sslPacket.getSourcePort()).thenReturn(40000);
+		Mockito.when(sslPacket.getDestinationPort()).thenReturn(8443);
+		Mockito.when(sslPacket.isSsl()).thenReturn(true);
+		TCPPacket portPacket = Mockito.mock(TCPPacket.class);
+		Mockito.when(portPacket.getSourcePort()).thenReturn(40001);
+		Mockito.when(portPacket.getDestinationPort()).thenReturn(443);
+
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		for (TCPPacket tcpPacket : new TCPPacket[] { sslPacket, portPacket }) {
+			PacketInfo packetInfo = Mockito.mock(PacketInfo.class);
+			Mockito.when(packetInfo.getPacket()).thenReturn(tcpPacket);
+			Mockito.when(packetInfo.getDir()).thenReturn(PacketDirection.UPLINK);
+			Mockito.when(packetInfo.getLen()).thenReturn(100);
+			packetsList.add(packetInfo);
+		}
+
+		// the TLS probe is left to the statistics, and not needed for port 443
+		PacketTable packets = new PacketTable(packetsList);
+		Mockito.verify(sslPacket, Mockito.never()).isSsl();
+		Statistic testResult = iPacketAnalyzer.getStatistic(packets);
+		assertEquals(200, testResult.getTotalHTTPSByte());
+		assertTrue(packets.isHttps(0));
+		Mockito.verify(sslPacket, Mockito.times(1)).isSsl();
+		Mockito.verify(portPacket, Mockito.never()).isSsl();
+	}
+
 }
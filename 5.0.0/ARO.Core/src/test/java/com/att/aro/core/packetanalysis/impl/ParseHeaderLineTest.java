@@ -16,9 +16,12 @@
 
 package com.att.aro.core.packetanalysis.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.net.InetAddress;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +31,9 @@ import com.att.aro.core.BaseTest;
 import com.att.aro.core.packetanalysis.IParseHeaderLine;
 import com.att.aro.core.packetanalysis.pojo.HttpDirection;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
+import com.att.aro.core.packetanalysis.pojo.PayloadReader;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
+import com.att.aro.core.packetanalysis.pojo.Session;
 
 public class ParseHeaderLineTest extends BaseTest {
 
@@ -195,4 +201,107 @@ public class ParseHeaderLineTest extends BaseTest {
 		assertTrue(rrInfo.isRangeResponse());
 	}
 	
+	/**
+	 * @return reader of the text kept as slices of sliceSize bytes, like the
+	 *         payload of packets
+	 */
+	private PayloadReader slices(String text, int sliceSize) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		PayloadStorage storage = new PayloadStorage();
+		for (int offset = 0; offset < bytes.length; offset += sliceSize) {
+			byte[] packet = new byte[sliceSize + 2];
+			int length = Math.min(sliceSize, bytes.length - offset);
+			System.arraycopy(bytes, offset, packet, 1, length);
+			storage.append(packet, 1, length);
+		}
+		return storage.reader();
+	}
+
+	@Test
+	public void testStorage() throws IOException {
+		rrInfo.setDirection(HttpDirection.RESPONSE);
+		String[] lines = {
+				"Host: att.com:8080"
+				, "host : ignored.com"
+				, "content-length: 12"
+				, "Date : Thu, 11 Dec 2014 00:56:39 GMT"
+				, "ETag: \"abc\"def\""
+				, "Age: 59541"
+				, "Content-Range: bytes 12 - 34/56"
+				, "Cache-Control:max-age = 7, s-maxage=3, public"
+				, "Pragma:no-cache, other"
+				, "Transfer-Encoding: Chunked"
+		};
+		StringBuilder storage = new StringBuilder("HTTP/1.1 200 OK\r\n");
+		for (String line : lines) {
+			storage.append(line).append("\r\n");
+		}
+		PayloadReader data = slices(storage.toString(), 7);
+		int offset = 17;
+		for (String line : lines) {
+			parser.parseHeaderLine(data, offset, line.length(), rrInfo);
+			offset += line.length() + 2;
+		}
+
+		assertEquals("att.com", rrInfo.getHostName());
+		assertEquals(12, rrInfo.getContentLength());
+		assertEquals(1418259399000L, rrInfo.getDate().getTime());
+		assertEquals("abc\"def", rrInfo.getEtag());
+		assertEquals(59541L, (long) rrInfo.getAge());
+		assertTrue(rrInfo.isRangeResponse());
+		assertEquals(12, rrInfo.getRangeFirst());
+		assertEquals(34, rrInfo.getRangeLast());
+		assertEquals(56L, rrInfo.getRangeFull());
+		assertEquals(7L, (long) rrInfo.getMaxAge());
+		assertEquals(3L, (long) rrInfo.getsMaxAge());
+		assertTrue(rrInfo.isPublicCache());
+		assertTrue(rrInfo.isPragmaNoCache());
+		assertFalse(rrInfo.isChunked());
+		assertTrue(rrInfo.getAllHeaders().contains(" host : ignored.com "));
+	}
+
+	@Test
+	public void testLazyHeaders() throws IOException {
+		rrInfo.setDirection(HttpDirection.REQUEST);
+		String[] lines = {
+				"Referer: http://att.com/first"
+				, "Date: Thu, 11 Dec 2014 00:56:39 GMT"
+				, "Referer: http://att.com/bad path"
+				, "Accept: \r*/*"
+		};
+		StringBuilder storage = new StringBuilder();
+		for (String line : lines) {
+			storage.append(line).append("\r\n");
+		}
+		PayloadReader data = slices(storage.toString(), 7);
+		Session session = new Session(InetAddress.getLoopbackAddress(), 80, 1234);
+		session.setPayloadStorageUl(data.getStorage());
+		rrInfo.setSession(session);
+		int offset = 0;
+		for (String line : lines) {
+			parser.parseHeaderLine(data, offset, line.length(), rrInfo);
+			offset += line.length() + 2;
+		}
+		// a line of another storage, an invalid referrer keeps the one before
+		parser.parseHeaderLine("Host: att.com\r\n", rrInfo);
+
+		assertEquals("http://att.com/first", rrInfo.getReferrer().toString());
+		assertEquals(1418259399000L, rrInfo.getDate().getTime());
+		assertEquals(" Referer: http://att.com/first Date: Thu, 11 Dec 2014 00:56:39 GMT Referer: http://att.com/bad path"
+				+ " Accept: \r*/* Host: att.com\r\n", rrInfo.getAllHeaders());
+
+		parser.parseHeaderLine("Date: Fri, 12 Dec 2014 00:56:39 GMT\r\n", rrInfo);
+		rrInfo.setDate(null);
+		assertEquals(null, rrInfo.getDate());
+		assertTrue(rrInfo.getAllHeaders().endsWith(" Host: att.com\r\n Date: Fri, 12 Dec 2014 00:56:39 GMT\r\n"));
+	}
+
+	@Test
+	public void testContentLengthOverflow() throws IOException {
+		parser.parseHeaderLine("Content-Length: 2147483648\r\n", rrInfo);
+		assertEquals(0, rrInfo.getContentLength());
+		parser.parseHeaderLine("Content-Length: +2147483647\r\n", rrInfo);
+		assertEquals(Integer.MAX_VALUE, rrInfo.getContentLength());
+	}
+
 }
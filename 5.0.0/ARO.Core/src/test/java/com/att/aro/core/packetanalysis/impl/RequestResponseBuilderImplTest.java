@@ -16,6 +16,9 @@
 
 package com.att.aro.core.packetanalysis.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -29,13 +32,19 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import com.att.aro.core.BaseTest;
+import com.att.aro.core.packetanalysis.IByteArrayLineReader;
 import com.att.aro.core.packetanalysis.IRequestResponseBuilder;
+import com.att.aro.core.packetanalysis.impl.RequestResponseBuilderImpl.RequestResponseContext;
 import com.att.aro.core.packetanalysis.pojo.HttpRequestResponseInfo;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
 import com.att.aro.core.packetanalysis.pojo.Session;
@@ -92,13 +101,14 @@ public class RequestResponseBuilderImplTest extends BaseTest {
 		Mockito.when(session.getRemotePort()).thenReturn(80);
 		Mockito.when(session.getPackets()).thenReturn(packets);
 				
-		List<HttpRequestResponseInfo> aResult = rrBuilder.createRequestResponseInfo(session);
+		RequestResponseContext rrContext = rrBuilder.newContext(session);
+		List<HttpRequestResponseInfo> aResult = rrBuilder.createRequestResponseInfo(rrContext);
 		assertTrue(aResult.size() == 3);
 		assertTrue(aResult.get(0).getHostName().equals("24.16.97.108"));
 		
 		// now try downlink
-		rrBuilder.extractHttpRequestResponseInfo(PacketDirection.DOWNLINK);
-		List<HttpRequestResponseInfo> bResult = rrBuilder.getResult();
+		rrBuilder.extractHttpRequestResponseInfo(rrContext, PacketDirection.DOWNLINK);
+		List<HttpRequestResponseInfo> bResult = rrContext.getResult();
 		assertTrue(bResult.size() == 5);
 		assertTrue(bResult.get(0).getAllHeaders().equals(" Accept: application/json Content-type: text/plain Content-Length: 229 Host: 24.16.97.108:8080 Connection: Keep-Alive User-Agent: Apache-HttpClient/UNAVAILABLE (java 1.4)"));
 
@@ -126,14 +136,14 @@ public class RequestResponseBuilderImplTest extends BaseTest {
 				 + "\r\n"
 				).getBytes());
 		
-		rrBuilder.extractHttpRequestResponseInfo(PacketDirection.DOWNLINK);
-		List<HttpRequestResponseInfo> result = rrBuilder.getResult();
+		rrBuilder.extractHttpRequestResponseInfo(rrContext, PacketDirection.DOWNLINK);
+		List<HttpRequestResponseInfo> result = rrContext.getResult();
 		
 		assertTrue(result.size() == 6);
 		assertTrue(result.get(0).getAllHeaders().equals(" Accept: application/json Content-type: text/plain Content-Length: 229 Host: 24.16.97.108:8080 Connection: Keep-Alive User-Agent: Apache-HttpClient/UNAVAILABLE (java 1.4)"));
 
-		rrBuilder.extractHttpRequestResponseInfo(PacketDirection.UPLINK);
-		result = rrBuilder.getResult();
+		rrBuilder.extractHttpRequestResponseInfo(rrContext, PacketDirection.UPLINK);
+		result = rrContext.getResult();
 		assertTrue(result.size() == 7);
 		assertTrue(result.get(0).getAllHeaders().equals(" Accept: application/json Content-type: text/plain Content-Length: 229 Host: 24.16.97.108:8080 Connection: Keep-Alive User-Agent: Apache-HttpClient/UNAVAILABLE (java 1.4)"));
 		
@@ -365,9 +375,10 @@ public class RequestResponseBuilderImplTest extends BaseTest {
 		Mockito.when(session.getPackets()).thenReturn(packets);
 		Mockito.when(session.getLastSslHandshakePacket()).thenReturn(pi1);
 				
-		List<HttpRequestResponseInfo> aResult = rrBuilder.createRequestResponseInfo(session);
-		rrBuilder.extractHttpRequestResponseInfo(PacketDirection.DOWNLINK);
-		List<HttpRequestResponseInfo> bResult = rrBuilder.getResult();
+		RequestResponseContext rrContext = rrBuilder.newContext(session);
+		List<HttpRequestResponseInfo> aResult = rrBuilder.createRequestResponseInfo(rrContext);
+		rrBuilder.extractHttpRequestResponseInfo(rrContext, PacketDirection.DOWNLINK);
+		List<HttpRequestResponseInfo> bResult = rrContext.getResult();
 		assertTrue(bResult.size() == 4);
 		assertTrue(bResult.get(0).getAllHeaders().equals(" Accept: application/json Content-type: text/plain Content-Length: 229 Host: 24.16.97.108:8080 Connection: Keep-Alive User-Agent: Apache-HttpClient/UNAVAILABLE (java 1.4)"));
 		
@@ -391,19 +402,110 @@ public class RequestResponseBuilderImplTest extends BaseTest {
 				 + "Date: Thu, 11 Dec 2014 00:56:39 GMT\r\n"
 				 + "Connection: keep-alive\r\n").getBytes());
 		
-			rrBuilder.extractHttpRequestResponseInfo(PacketDirection.DOWNLINK);
-			List<HttpRequestResponseInfo> result = rrBuilder.getResult();
+			rrBuilder.extractHttpRequestResponseInfo(rrContext, PacketDirection.DOWNLINK);
+			List<HttpRequestResponseInfo> result = rrContext.getResult();
 			
 			assertTrue(result.size() == 4);
 			assertTrue(result.get(0).getAllHeaders().equals(" Accept: application/json Content-type: text/plain Content-Length: 229 Host: 24.16.97.108:8080 Connection: Keep-Alive User-Agent: Apache-HttpClient/UNAVAILABLE (java 1.4)"));
 	
-			rrBuilder.extractHttpRequestResponseInfo(PacketDirection.UPLINK);
-			result = rrBuilder.getResult();
+			rrBuilder.extractHttpRequestResponseInfo(rrContext, PacketDirection.UPLINK);
+			result = rrContext.getResult();
 			assertTrue(result.size() == 5);
 			assertTrue(result.get(0).getAllHeaders().equals(" Accept: application/json Content-type: text/plain Content-Length: 229 Host: 24.16.97.108:8080 Connection: Keep-Alive User-Agent: Apache-HttpClient/UNAVAILABLE (java 1.4)"));
 	
 	}
 	
+	@Test
+	public void testConcurrentSessions() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 40; i++) {
+				final String host = "host" + i + ".example.com";
+				futures.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						Session session = new Session(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }), 80, 40000);
+						session.setStorageUl(("GET /index.html HTTP/1.1\r\nHost: " + host + "\r\n\r\n").getBytes());
+						session.setStorageDl(("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello").getBytes());
+						session.setPacketOffsetsUl(new TreeMap<Integer, PacketInfo>());
+						session.setPacketOffsetsDl(new TreeMap<Integer, PacketInfo>());
+						List<HttpRequestResponseInfo> info = rrBuilder.createRequestResponseInfo(session);
+						return info.size() == 2 && host.equals(info.get(0).getHostName())
+								&& info.get(1).getContentLength() == 5;
+					}
+				}));
+			}
+			for (Future<Boolean> future : futures) {
+				assertEquals(Boolean.TRUE, future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testPipelinedRequests() throws IOException {
+		Session session = new Session(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }), 80, 40000);
+		String requests = "GET /a HTTP/1.1\r\nHost: h\r\n\r\nGET /b HTTP/1.1\r\nHost: h\r\n\r\n";
+		String responses = "HTTP/1.1 200 OK\r\nContent-Length: 1\r\n\r\na"
+				+ "HTTP/1.1 404 Not Found\r\nContent-Length: 1\r\n\r\nb";
+		int secondOffset = responses.indexOf("HTTP/1.1 404");
+		PacketInfo syn = tcpPacketInfo(1.0, true, 0);
+		PacketInfo request = tcpPacketInfo(2.0, false, requests.length());
+		PacketInfo firstResponse = tcpPacketInfo(3.0, false, secondOffset);
+		PacketInfo secondResponse = tcpPacketInfo(4.0, false, responses.length() - secondOffset);
+		// built outside of the session manager, so the session has no SYN packet set
+		session.setPackets(new ArrayList<PacketInfo>(Arrays.asList(syn, request, firstResponse, secondResponse)));
+
+		session.setStorageUl(requests.getBytes());
+		session.setStorageDl(responses.getBytes());
+		SortedMap<Integer, PacketInfo> ulPacketOffsets = new TreeMap<Integer, PacketInfo>();
+		SortedMap<Integer, PacketInfo> dlPacketOffsets = new TreeMap<Integer, PacketInfo>();
+		ulPacketOffsets.put(0, request);
+		dlPacketOffsets.put(0, firstResponse);
+		dlPacketOffsets.put(secondOffset, secondResponse);
+		session.setPacketOffsetsUl(ulPacketOffsets);
+		session.setPacketOffsetsDl(dlPacketOffsets);
+
+		List<HttpRequestResponseInfo> info = rrBuilder.createRequestResponseInfo(session);
+
+		assertEquals(4, info.size());
+		HttpRequestResponseInfo first = info.get(0);
+		HttpRequestResponseInfo second = info.get(1);
+		assertEquals("/a", first.getObjName());
+		assertEquals("/b", second.getObjName());
+
+		// the URI is made absolute with the host header, the default port is left out
+		assertEquals("http://h/a", first.getObjUri().toString());
+		assertNull(first.getAssocReqResp().getObjUri());
+
+		// responses are paired with the requests in order
+		assertEquals(200, first.getAssocReqResp().getStatusCode());
+		assertEquals(404, second.getAssocReqResp().getStatusCode());
+		assertSame(first, first.getAssocReqResp().getAssocReqResp());
+		assertSame(second, second.getAssocReqResp().getAssocReqResp());
+
+		// data packets are found from the offsets in the storage
+		assertSame(request, second.getFirstDataPacket());
+		assertSame(firstResponse, first.getAssocReqResp().getLastDataPacket());
+		assertSame(secondResponse, second.getAssocReqResp().getFirstDataPacket());
+
+		// the SYN is found in the packets, the connection time goes to the first request
+		assertEquals(1.0, first.getWaterfallInfos().getStartTime(), 0.0);
+		assertEquals(1.0, first.getWaterfallInfos().getInitialConnDuration(), 0.0);
+		assertNull(second.getWaterfallInfos().getInitialConnDuration());
+	}
+
+	private PacketInfo tcpPacketInfo(double timeStamp, boolean syn, int payloadLen) {
+		TCPPacket tcp = Mockito.mock(TCPPacket.class);
+		Mockito.when(tcp.isSYN()).thenReturn(syn);
+		Mockito.when(tcp.getPayloadLen()).thenReturn(payloadLen);
+		PacketInfo packetInfo = new PacketInfo(tcp);
+		packetInfo.setTimestamp(timeStamp);
+		return packetInfo;
+	}
+
 	/*
 	 *  test data prep & load
 	 */
@@ -806,4 +908,25 @@ public class RequestResponseBuilderImplTest extends BaseTest {
 		Arrays.fill(byteBuffer.array(), (byte) 0); // clear sensitive data
 		return bytes;
 	}
+
+	@Test
+	public void testByteArrayLineReader() throws IOException {
+		Session session = new Session(InetAddress.getLoopbackAddress(), 80, 1234);
+		session.setStorageUl("GET / HTTP/1.1\r\nHost: att.com\r\n\r\n".getBytes());
+		session.setStorageDl(new byte[0]);
+		session.setPacketOffsetsUl(new TreeMap<Integer, PacketInfo>());
+		session.setPacketOffsetsDl(new TreeMap<Integer, PacketInfo>());
+		session.setPackets(new ArrayList<PacketInfo>());
+
+		// a reader set is used instead of a new one of the application context
+		IByteArrayLineReader reader = Mockito.spy(context.getBean(IByteArrayLineReader.class));
+		assertTrue(reader != context.getBean(IByteArrayLineReader.class));
+		rrBuilder.setByteArrayLineReader(reader);
+		try {
+			assertEquals(1, rrBuilder.createRequestResponseInfo(session).size());
+			Mockito.verify(reader, Mockito.atLeastOnce()).readLine();
+		} finally {
+			rrBuilder.setByteArrayLineReader(null);
+		}
+	}
 }
@@ -42,6 +42,7 @@ import com.att.aro.core.packetanalysis.IRrcStateMachineFactory;
 import com.att.aro.core.packetanalysis.IRrcStateRangeFactory;
 import com.att.aro.core.packetanalysis.pojo.AbstractRrcStateMachine;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.RRCState;
 import com.att.aro.core.packetanalysis.pojo.RrcStateMachine3G;
 import com.att.aro.core.packetanalysis.pojo.RrcStateMachineLTE;
@@ -222,6 +223,31 @@ public class RrcStateMachineFactoryImplTest extends BaseTest{
 
 	}
 
+	@Test
+	public void create_LTEPacketTable(){
+		ProfileLTE profile03 = mock(ProfileLTE.class);
+		when(profile03.getProfileType()).thenReturn(ProfileType.LTE);
+		when(profilefactory.energyLTE(any(double.class), any(double.class), any(RRCState.class), any(ProfileLTE.class),any(PacketTable.class)))
+		.thenReturn(100.0);
+		PacketTable packets = new PacketTable(new ArrayList<PacketInfo>());
+		List<RrcStateRange> staterangelist = new ArrayList<RrcStateRange>();
+		for(int i=0;i<5;i++){
+			RrcStateRange rrcStateRange = mock(RrcStateRange.class);
+			when(rrcStateRange.getState()).thenReturn(RRCState.LTE_IDLE);
+			when(rrcStateRange.getBeginTime()).thenReturn((double)date.getTime()+2*i*1000);
+			when(rrcStateRange.getEndTime()).thenReturn((double)date.getTime()+(2*i+1)*1000.0);
+			staterangelist.add(rrcStateRange);
+		}
+
+		when(staterange.create(any(List.class), any(Profile.class), any(double.class))).thenReturn(staterangelist);
+		
+		RrcStateMachineLTE rrcStateMachineLTE = (RrcStateMachineLTE)machineFactoryimpl
+		.create(packets, profile03, packetDuration, traceDuration, totalBytes*100, null);
+		assertEquals(50,rrcStateMachineLTE.getJoulesPerKilobyte(),0.0);
+		assertEquals(500,rrcStateMachineLTE.getTotalRRCEnergy(),0.0);
+		assertEquals(5000,rrcStateMachineLTE.getLteIdleTime(),0.0);
+	}
+
 	@Test
 	public void create_LTEStateIsLTE_PROMOTION(){
 		ProfileLTE profile04 = mock(ProfileLTE.class);
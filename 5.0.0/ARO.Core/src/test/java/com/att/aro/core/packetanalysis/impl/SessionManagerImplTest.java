@@ -16,10 +16,14 @@
 package com.att.aro.core.packetanalysis.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -34,8 +38,10 @@ import org.mockito.MockitoAnnotations;
 
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.packetanalysis.IRequestResponseBuilder;
+import com.att.aro.core.packetanalysis.ISessionAssembler;
 import com.att.aro.core.packetanalysis.ISessionManager;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PayloadStorage;
 import com.att.aro.core.packetanalysis.pojo.Session;
 import com.att.aro.core.packetanalysis.pojo.TcpInfo;
 import com.att.aro.core.packetreader.pojo.DomainNameSystem;
@@ -554,4 +560,452 @@ public class SessionManagerImplTest extends BaseTest{
 	}
 	
 		
+	@Test
+	public void assembleSessionTest_flows() throws UnknownHostException {
+		InetAddress local = InetAddress.getByName("2001:db8::1");
+		InetAddress remote6 = InetAddress.getByName("2001:db8::2");
+		InetAddress remote4 = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 40000, remote6, 443));
+		packetsList.add(tcpPacketInfo(PacketDirection.DOWNLINK, remote6, 443, local, 40000));
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 40001, remote6, 443));
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 40000, remote4, 443));
+		packetsList.add(tcpPacketInfo(PacketDirection.DOWNLINK, InetAddress.getByName("2001:db8:0:0::2"), 443, local, 40000));
+
+		List<Session> sessionsList = sessionMgr.assembleSession(packetsList);
+		assertEquals(3, sessionsList.size());
+		assertEquals(remote6, sessionsList.get(0).getRemoteIP());
+		assertEquals(40000, sessionsList.get(0).getLocalPort());
+		assertEquals(3, sessionsList.get(0).getPackets().size());
+		assertEquals(40001, sessionsList.get(1).getLocalPort());
+		assertEquals(remote4, sessionsList.get(2).getRemoteIP());
+	}
+
+	@Test
+	public void assembleSessionTest_dnsNames() throws UnknownHostException {
+		InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+		Set<InetAddress> addresses = new HashSet<InetAddress>();
+		addresses.add(remote);
+
+		PacketInfo request = dnsPacketInfo("www.att.com", false, addresses);
+		PacketInfo response = dnsPacketInfo("www.att.com", true, addresses);
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 39999, remote, 443));
+		packetsList.add(request);
+		packetsList.add(response);
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 40000, remote, 443));
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 40001, remote, 443));
+
+		List<Session> sessionsList = sessionMgr.assembleSession(packetsList);
+		assertEquals(null, sessionsList.get(0).getRemoteHostName());
+		assertEquals(null, sessionsList.get(0).getDnsResponsePacket());
+		assertEquals("www.att.com", sessionsList.get(1).getRemoteHostName());
+		assertEquals(request, sessionsList.get(1).getDnsRequestPacket());
+		assertEquals(response, sessionsList.get(1).getDnsResponsePacket());
+		assertEquals("www.att.com", sessionsList.get(2).getRemoteHostName());
+		assertEquals(null, sessionsList.get(2).getDnsResponsePacket());
+	}
+
+	@Test
+	public void assembleSessionTest_udpDns() throws UnknownHostException {
+		InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+		InetAddress other = InetAddress.getByAddress(new byte[] { 10, 0, 0, 3 });
+		InetAddress dnsServer = InetAddress.getByAddress(new byte[] { 10, 0, 0, 53 });
+		Set<InetAddress> addresses = new HashSet<InetAddress>();
+		addresses.add(remote);
+		Set<InetAddress> otherAddresses = new HashSet<InetAddress>();
+		otherAddresses.add(other);
+
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		packetsList.add(dnsPacketInfo("www.att.com", false, addresses, local, dnsServer));
+		packetsList.add(dnsPacketInfo("www.att.com", true, addresses, local, dnsServer));
+		packetsList.add(dnsPacketInfo("other.att.com", false, otherAddresses, local, dnsServer));
+		packetsList.add(dnsPacketInfo("other.att.com", true, otherAddresses, local, dnsServer));
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 40000, remote, 443));
+		// a later lookup of the same name is part of the TCP connection as well
+		packetsList.add(dnsPacketInfo("www.att.com", false, addresses, local, dnsServer));
+
+		List<Session> sessionsList = sessionMgr.assembleSession(packetsList);
+		assertEquals(2, sessionsList.size());
+		assertEquals("www.att.com", sessionsList.get(0).getRemoteHostName());
+		Session udpSession = sessionsList.get(1);
+		assertTrue(udpSession.isUdpOnly());
+		assertEquals("other.att.com", udpSession.getRemoteHostName());
+		assertEquals(2, udpSession.getUDPPackets().size());
+	}
+
+	/**
+	 * The first packets of the DNS flow named the TCP session, so the UDP
+	 * session of the DNS flow starts after the other UDP session
+	 */
+	@Test
+	public void assembleSessionTest_udpOrder() throws UnknownHostException {
+		InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+		InetAddress other = InetAddress.getByAddress(new byte[] { 10, 0, 0, 3 });
+		InetAddress peer = InetAddress.getByAddress(new byte[] { 10, 0, 0, 9 });
+		InetAddress dnsServer = InetAddress.getByAddress(new byte[] { 10, 0, 0, 53 });
+		Set<InetAddress> addresses = new HashSet<InetAddress>();
+		addresses.add(remote);
+		Set<InetAddress> otherAddresses = new HashSet<InetAddress>();
+		otherAddresses.add(other);
+
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		packetsList.add(dnsPacketInfo("www.att.com", false, addresses, local, dnsServer));
+		packetsList.add(dnsPacketInfo("www.att.com", true, addresses, local, dnsServer));
+		packetsList.add(tcpPacketInfo(PacketDirection.UPLINK, local, 40000, remote, 443));
+		packetsList.add(udpPacketInfo(local, 5000, peer, 5001));
+		packetsList.add(dnsPacketInfo("other.att.com", false, otherAddresses, local, dnsServer));
+		packetsList.add(dnsPacketInfo("other.att.com", true, otherAddresses, local, dnsServer));
+		packetsList.add(udpPacketInfo(local, 5000, peer, 5001));
+
+		List<Session> sessionsList = sessionMgr.assembleSession(packetsList);
+		assertEquals(3, sessionsList.size());
+		assertEquals("www.att.com", sessionsList.get(0).getRemoteHostName());
+		assertEquals(peer, sessionsList.get(1).getRemoteIP());
+		assertEquals(2, sessionsList.get(1).getUDPPackets().size());
+		assertEquals("other.att.com", sessionsList.get(2).getRemoteHostName());
+		assertEquals(2, sessionsList.get(2).getUDPPackets().size());
+	}
+
+	private PacketInfo udpPacketInfo(InetAddress source, int sourcePort, InetAddress destination, int destinationPort) {
+		UDPPacket udpPacket = Mockito.mock(UDPPacket.class);
+		Mockito.when(udpPacket.getSourceIPAddress()).thenReturn(source);
+		Mockito.when(udpPacket.getSourcePort()).thenReturn(sourcePort);
+		Mockito.when(udpPacket.getDestinationIPAddress()).thenReturn(destination);
+		Mockito.when(udpPacket.getDestinationPort()).thenReturn(destinationPort);
+		PacketInfo packetInfo = Mockito.mock(PacketInfo.class);
+		Mockito.when(packetInfo.getPacket()).thenReturn(udpPacket);
+		Mockito.when(packetInfo.getDir()).thenReturn(PacketDirection.UPLINK);
+		return packetInfo;
+	}
+
+	private PacketInfo dnsPacketInfo(String domainName, boolean response, Set<InetAddress> addresses, InetAddress local,
+			InetAddress server) {
+		PacketInfo packetInfo = dnsPacketInfo(domainName, response, addresses);
+		UDPPacket udpPacket = (UDPPacket) packetInfo.getPacket();
+		Mockito.when(udpPacket.getSourceIPAddress()).thenReturn(response ? server : local);
+		Mockito.when(udpPacket.getSourcePort()).thenReturn(response ? 53 : 50000);
+		Mockito.when(udpPacket.getDestinationIPAddress()).thenReturn(response ? local : server);
+		Mockito.when(udpPacket.getDestinationPort()).thenReturn(response ? 50000 : 53);
+		return packetInfo;
+	}
+
+	private PacketInfo dnsPacketInfo(String domainName, boolean response, Set<InetAddress> addresses) {
+		DomainNameSystem dns = Mockito.mock(DomainNameSystem.class);
+		Mockito.when(dns.getDomainName()).thenReturn(domainName);
+		Mockito.when(dns.isResponse()).thenReturn(response);
+		Mockito.when(dns.getIpAddresses()).thenReturn(addresses);
+		UDPPacket udpPacket = Mockito.mock(UDPPacket.class);
+		Mockito.when(udpPacket.isDNSPacket()).thenReturn(true);
+		Mockito.when(udpPacket.getDns()).thenReturn(dns);
+		PacketInfo packetInfo = Mockito.mock(PacketInfo.class);
+		Mockito.when(packetInfo.getPacket()).thenReturn(udpPacket);
+		Mockito.when(packetInfo.getDir()).thenReturn(response ? PacketDirection.DOWNLINK : PacketDirection.UPLINK);
+		return packetInfo;
+	}
+
+	@Test
+	public void assembleSessionTest_outOfOrder() throws UnknownHostException {
+		InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+
+		PacketInfo syn = tcpPacketInfo(PacketDirection.UPLINK, local, 40000, remote, 80);
+		TCPPacket synPacket = (TCPPacket) syn.getPacket();
+		Mockito.when(synPacket.isSYN()).thenReturn(true);
+		Mockito.when(synPacket.getSequenceNumber()).thenReturn(1000L);
+		PacketInfo third = tcpDataPacketInfo(local, remote, 1011, "ccccc");
+		PacketInfo second = tcpDataPacketInfo(local, remote, 1006, "bbbbb");
+		PacketInfo first = tcpDataPacketInfo(local, remote, 1001, "aaaaa");
+		PacketInfo retransmit = tcpDataPacketInfo(local, remote, 1001, "aaaaa");
+
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		packetsList.add(syn);
+		packetsList.add(third);
+		packetsList.add(second);
+		packetsList.add(first);
+		packetsList.add(retransmit);
+
+		List<Session> sessionsList = sessionMgr.assembleSession(packetsList);
+		assertEquals(1, sessionsList.size());
+		PayloadStorage storage = sessionsList.get(0).getPayloadStorageUl();
+		assertEquals(15, storage.size());
+		byte[] slice = new byte[9];
+		storage.copyTo(3, slice, 0, 9);
+		assertEquals("aabbbbbcc", new String(slice));
+		assertEquals('c', storage.byteAt(14));
+		assertEquals("aaaaabbbbbccccc", new String(sessionsList.get(0).getStorageUl()));
+		assertSame(sessionsList.get(0).getStorageUl(), sessionsList.get(0).getStorageUl());
+		assertEquals(first, sessionsList.get(0).getPacketOffsetsUl().get(0));
+		assertEquals(third, sessionsList.get(0).getPacketOffsetsUl().get(10));
+		Mockito.verify(third).setTcpInfo(TcpInfo.TCP_DATA);
+		Mockito.verify(retransmit).setTcpInfo(TcpInfo.TCP_DATA_DUP);
+	}
+
+	@Test
+	public void assembleSessionTest_parallel() throws UnknownHostException {
+		SessionManagerImpl sessionManager = (SessionManagerImpl) context.getBean(ISessionManager.class);
+		int parallelism = sessionManager.getParallelism();
+		try {
+			sessionManager.setParallelism(1);
+			List<Integer> sequential = sessionPorts(sessionManager.assembleSession(synPacketInfos()));
+			sessionManager.setParallelism(4);
+			List<Integer> parallel = sessionPorts(sessionManager.assembleSession(synPacketInfos()));
+
+			// first sessions by port, then the sessions split off at a new SYN, round by round
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int port = 40000; port < 40020; port++) {
+				expected.add(port);
+			}
+			for (int port = 40000; port < 40020; port += 2) {
+				expected.add(port);
+			}
+			for (int port = 40000; port < 40020; port += 4) {
+				expected.add(port);
+			}
+			assertEquals(expected, sequential);
+			assertEquals(expected, parallel);
+
+			// the pool is kept between assemblies and created again after a shutdown
+			assertEquals(expected, sessionPorts(sessionManager.assembleSession(synPacketInfos())));
+			sessionManager.shutdown();
+			assertEquals(expected, sessionPorts(sessionManager.assembleSession(synPacketInfos())));
+		} finally {
+			sessionManager.setParallelism(parallelism);
+		}
+	}
+
+	@Test
+	public void assembleSessionTest_tcpInfo() throws UnknownHostException {
+		InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+		PacketInfo data = tcpAckPacketInfo(PacketDirection.DOWNLINK, local, remote, 5000, 1001, 100, "aaaaa");
+		PacketInfo ack = tcpAckPacketInfo(PacketDirection.UPLINK, local, remote, 1001, 5005, 100, "");
+		PacketInfo dupAck = tcpAckPacketInfo(PacketDirection.UPLINK, local, remote, 1001, 5005, 100, "");
+		PacketInfo windowUpdate = tcpAckPacketInfo(PacketDirection.UPLINK, local, remote, 1001, 5005, 200, "");
+		PacketInfo zeroWindow = tcpAckPacketInfo(PacketDirection.UPLINK, local, remote, 1001, 5005, 0, "");
+
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		packetsList.add(data);
+		packetsList.add(ack);
+		packetsList.add(dupAck);
+		packetsList.add(windowUpdate);
+		packetsList.add(zeroWindow);
+
+		List<Session> sessionsList = sessionMgr.assembleSession(packetsList);
+		assertEquals(1, sessionsList.size());
+		assertEquals(5 * 60, sessionsList.get(0).getBytesTransferred());
+		assertEquals(TcpInfo.TCP_DATA, data.getTcpInfo());
+		assertEquals(TcpInfo.TCP_ACK, ack.getTcpInfo());
+		assertEquals(TcpInfo.TCP_ACK_DUP, dupAck.getTcpInfo());
+		assertEquals(TcpInfo.TCP_WINDOW_UPDATE, windowUpdate.getTcpInfo());
+		assertEquals(TcpInfo.TCP_ZERO_WINDOW, zeroWindow.getTcpInfo());
+	}
+
+	@Test
+	public void createSessionAssemblerTest() throws UnknownHostException {
+		SessionManagerImpl sessionManager = (SessionManagerImpl) context.getBean(ISessionManager.class);
+		double idleTimeout = sessionManager.getIdleTimeout();
+		double closedTimeout = sessionManager.getClosedTimeout();
+		try {
+			sessionManager.setIdleTimeout(60);
+			sessionManager.setClosedTimeout(10);
+			ISessionAssembler assembler = sessionManager.createSessionAssembler();
+			assembler.addPacket(tcpTimedPacketInfo(40000, 0, false));
+			assembler.addPacket(tcpTimedPacketInfo(40001, 1, false));
+			assembler.addPacket(tcpTimedPacketInfo(40000, 2, true));
+			assembler.addPacket(tcpTimedPacketInfo(40002, 3, false));
+			assertTrue(assembler.pollCompletedSessions().isEmpty());
+
+			// closed session evicted after 10 seconds
+			assembler.addPacket(tcpTimedPacketInfo(40001, 20, false));
+			List<Session> completed = assembler.pollCompletedSessions();
+			assertEquals(1, completed.size());
+			assertEquals(40000, completed.get(0).getLocalPort());
+			assertEquals(2, completed.get(0).getPackets().size());
+
+			// idle sessions evicted after 60 seconds
+			assembler.addPacket(tcpTimedPacketInfo(40003, 100, false));
+			assertEquals(Arrays.asList(40001, 40002), sessionPorts(assembler.pollCompletedSessions()));
+
+			List<Session> remaining = assembler.finish();
+			assertEquals(Arrays.asList(40003), sessionPorts(remaining));
+			assertTrue(assembler.pollCompletedSessions().isEmpty());
+		} finally {
+			sessionManager.setIdleTimeout(idleTimeout);
+			sessionManager.setClosedTimeout(closedTimeout);
+		}
+	}
+
+	@Test
+	public void createSessionAssemblerTest_udp() throws UnknownHostException {
+		SessionManagerImpl sessionManager = (SessionManagerImpl) context.getBean(ISessionManager.class);
+		double idleTimeout = sessionManager.getIdleTimeout();
+		try {
+			sessionManager.setIdleTimeout(60);
+			InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+			InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+			InetAddress other = InetAddress.getByAddress(new byte[] { 10, 0, 0, 3 });
+			InetAddress dnsServer = InetAddress.getByAddress(new byte[] { 10, 0, 0, 53 });
+			Set<InetAddress> addresses = new HashSet<InetAddress>();
+			addresses.add(remote);
+			Set<InetAddress> otherAddresses = new HashSet<InetAddress>();
+			otherAddresses.add(other);
+
+			ISessionAssembler assembler = sessionManager.createSessionAssembler();
+			assembler.addPacket(timed(dnsPacketInfo("www.att.com", false, addresses, local, dnsServer), 0));
+			assembler.addPacket(timed(dnsPacketInfo("www.att.com", true, addresses, local, dnsServer), 1));
+			assembler.addPacket(timed(tcpPacketInfo(PacketDirection.UPLINK, local, 40000, remote, 443), 2));
+			assembler.addPacket(timed(dnsPacketInfo("other.att.com", false, otherAddresses, local, dnsServer), 3));
+			assembler.addPacket(timed(dnsPacketInfo("other.att.com", true, otherAddresses, local, dnsServer), 4));
+			assertTrue(assembler.pollCompletedSessions().isEmpty());
+
+			// the idle UDP flow is completed with the idle TCP session
+			assembler.addPacket(timed(tcpPacketInfo(PacketDirection.UPLINK, local, 40001, remote, 443), 100));
+			List<Session> completed = assembler.pollCompletedSessions();
+			assertEquals(2, completed.size());
+			assertEquals("www.att.com", completed.get(0).getRemoteHostName());
+			assertTrue(completed.get(1).isUdpOnly());
+			assertEquals("other.att.com", completed.get(1).getRemoteHostName());
+			assertEquals(2, completed.get(1).getUDPPackets().size());
+
+			// the evicted lookups no longer name sessions
+			assembler.addPacket(timed(tcpPacketInfo(PacketDirection.UPLINK, local, 40002, remote, 443), 101));
+			List<Session> remaining = assembler.finish();
+			assertEquals(Arrays.asList(40001, 40002), sessionPorts(remaining));
+			assertEquals(null, remaining.get(1).getRemoteHostName());
+		} finally {
+			sessionManager.setIdleTimeout(idleTimeout);
+		}
+	}
+
+	private PacketInfo timed(PacketInfo packetInfo, double timeStamp) {
+		Mockito.when(packetInfo.getTimeStamp()).thenReturn(timeStamp);
+		return packetInfo;
+	}
+
+	private PacketInfo tcpTimedPacketInfo(int localPort, double timeStamp, boolean fin) throws UnknownHostException {
+		TCPPacket tcpPacket = Mockito.mock(TCPPacket.class);
+		Mockito.when(tcpPacket.getSourceIPAddress()).thenReturn(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }));
+		Mockito.when(tcpPacket.getSourcePort()).thenReturn(localPort);
+		Mockito.when(tcpPacket.getDestinationIPAddress()).thenReturn(InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 }));
+		Mockito.when(tcpPacket.getDestinationPort()).thenReturn(443);
+		Mockito.when(tcpPacket.getTimeStamp()).thenReturn(timeStamp);
+		Mockito.when(tcpPacket.isACK()).thenReturn(true);
+		Mockito.when(tcpPacket.isFIN()).thenReturn(fin);
+		Mockito.when(tcpPacket.getData()).thenReturn(new byte[0]);
+		PacketInfo packetInfo = new PacketInfo(tcpPacket);
+		packetInfo.setDir(PacketDirection.UPLINK);
+		return packetInfo;
+	}
+
+	@Test
+	public void assembleSessionTest_split() throws UnknownHostException {
+		InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+
+		// joined in the middle of a session, then the port is reused twice
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		packetsList.add(tcpDataPacketInfo(local, remote, 500, "aaaaa"));
+		packetsList.add(tcpSynPacketInfo(local, remote, 1000));
+		packetsList.add(tcpSynPacketInfo(local, remote, 1000));
+		packetsList.add(tcpDataPacketInfo(local, remote, 1001, "bbbbb"));
+		packetsList.add(tcpSynPacketInfo(local, remote, 2000));
+		packetsList.add(tcpDataPacketInfo(local, remote, 2001, "ccccc"));
+		packetsList.add(tcpDataPacketInfo(local, remote, 2006, "ddddd"));
+
+		List<Session> sessionsList = sessionMgr.assembleSession(packetsList);
+		assertEquals(3, sessionsList.size());
+		assertEquals(packetsList.subList(0, 1), sessionsList.get(0).getPackets());
+		assertEquals(packetsList.subList(1, 4), sessionsList.get(1).getPackets());
+		assertEquals(packetsList.subList(4, 7), sessionsList.get(2).getPackets());
+		assertEquals("bbbbb", new String(sessionsList.get(1).getStorageUl()));
+		assertEquals("cccccddddd", new String(sessionsList.get(2).getStorageUl()));
+		assertEquals(null, sessionsList.get(0).getSynPacket());
+		assertEquals(packetsList.get(1), sessionsList.get(1).getSynPacket());
+		assertEquals(packetsList.get(4), sessionsList.get(2).getSynPacket());
+	}
+
+	private PacketInfo tcpSynPacketInfo(InetAddress source, InetAddress destination, long sequenceNumber) {
+		PacketInfo syn = tcpPacketInfo(PacketDirection.UPLINK, source, 40000, destination, 80);
+		TCPPacket synPacket = (TCPPacket) syn.getPacket();
+		Mockito.when(synPacket.isSYN()).thenReturn(true);
+		Mockito.when(synPacket.getSequenceNumber()).thenReturn(sequenceNumber);
+		return syn;
+	}
+
+	private List<PacketInfo> synPacketInfos() throws UnknownHostException {
+		InetAddress local = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+		List<PacketInfo> packetsList = new ArrayList<PacketInfo>();
+		for (long sequenceNumber = 1000; sequenceNumber <= 9000; sequenceNumber += 4000) {
+			for (int port = 40000; port < 40020; port++) {
+				if (sequenceNumber == 1000 || (sequenceNumber == 5000 && port % 2 == 0) || port % 4 == 0) {
+					PacketInfo syn = tcpPacketInfo(PacketDirection.UPLINK, local, port, remote, 80);
+					TCPPacket synPacket = (TCPPacket) syn.getPacket();
+					Mockito.when(synPacket.isSYN()).thenReturn(true);
+					Mockito.when(synPacket.getSequenceNumber()).thenReturn(sequenceNumber);
+					packetsList.add(syn);
+				}
+			}
+		}
+		return packetsList;
+	}
+
+	private List<Integer> sessionPorts(List<Session> sessions) {
+		List<Integer> ports = new ArrayList<Integer>();
+		for (Session session : sessions) {
+			ports.add(session.getLocalPort());
+		}
+		return ports;
+	}
+
+	private PacketInfo tcpDataPacketInfo(InetAddress source, InetAddress destination, long sequenceNumber, String data) {
+		PacketInfo packetInfo = tcpPacketInfo(PacketDirection.UPLINK, source, 40000, destination, 80);
+		TCPPacket tcpPacket = (TCPPacket) packetInfo.getPacket();
+		Mockito.when(tcpPacket.getSequenceNumber()).thenReturn(sequenceNumber);
+		Mockito.when(tcpPacket.getData()).thenReturn(data.getBytes());
+		Mockito.when(tcpPacket.getPayloadLen()).thenReturn(data.length());
+		Mockito.when(tcpPacket.isACK()).thenReturn(true);
+		Mockito.when(packetInfo.getPayloadLen()).thenReturn(data.length());
+		return packetInfo;
+	}
+
+	private PacketInfo tcpAckPacketInfo(PacketDirection dir, InetAddress local, InetAddress remote, long sequenceNumber,
+			long ackNumber, int window, String data) {
+		TCPPacket tcpPacket = Mockito.mock(TCPPacket.class);
+		boolean uplink = dir == PacketDirection.UPLINK;
+		Mockito.when(tcpPacket.getSourceIPAddress()).thenReturn(uplink ? local : remote);
+		Mockito.when(tcpPacket.getSourcePort()).thenReturn(uplink ? 40000 : 80);
+		Mockito.when(tcpPacket.getDestinationIPAddress()).thenReturn(uplink ? remote : local);
+		Mockito.when(tcpPacket.getDestinationPort()).thenReturn(uplink ? 80 : 40000);
+		Mockito.when(tcpPacket.getSequenceNumber()).thenReturn(sequenceNumber);
+		Mockito.when(tcpPacket.getAckNumber()).thenReturn(ackNumber);
+		Mockito.when(tcpPacket.getWindow()).thenReturn(window);
+		Mockito.when(tcpPacket.isACK()).thenReturn(true);
+		Mockito.when(tcpPacket.getData()).thenReturn(data.getBytes());
+		Mockito.when(tcpPacket.getPayloadLen()).thenReturn(data.length());
+		Mockito.when(tcpPacket.getLen()).thenReturn(60);
+		PacketInfo packetInfo = new PacketInfo(tcpPacket);
+		packetInfo.setDir(dir);
+		return packetInfo;
+	}
+
+	private PacketInfo tcpPacketInfo(PacketDirection dir, InetAddress source, int sourcePort, InetAddress destination,
+			int destinationPort) {
+		TCPPacket tcpPacket = Mockito.mock(TCPPacket.class);
+		Mockito.when(tcpPacket.getSourceIPAddress()).thenReturn(source);
+		Mockito.when(tcpPacket.getSourcePort()).thenReturn(sourcePort);
+		Mockito.when(tcpPacket.getDestinationIPAddress()).thenReturn(destination);
+		Mockito.when(tcpPacket.getDestinationPort()).thenReturn(destinationPort);
+		PacketInfo packetInfo = Mockito.mock(PacketInfo.class);
+		Mockito.when(packetInfo.getPacket()).thenReturn(tcpPacket);
+		Mockito.when(packetInfo.getDir()).thenReturn(dir);
+		Mockito.when(packetInfo.getRemoteAddressId()).thenReturn(-1);
+		return packetInfo;
+	}
+
 }
@@ -29,6 +29,7 @@ import org.mockito.Mockito;
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.packetanalysis.IThroughputCalculator;
 import com.att.aro.core.packetanalysis.pojo.PacketInfo;
+import com.att.aro.core.packetanalysis.pojo.PacketTable;
 import com.att.aro.core.packetanalysis.pojo.Throughput;
 import com.att.aro.core.packetreader.pojo.PacketDirection;
 
@@ -132,6 +133,29 @@ public class ThroughputCalculatorImplTest extends BaseTest{
 		 assertEquals(2,testResult.size());
 	 }
 
+	 @Test
+	 public void calculateThroughput_table(){
+		 List<PacketInfo> packets = new ArrayList<PacketInfo>();
+		 double[] times = { 1000.0, 1400.0, 1500.0, 21000.0, 51000.0, 52000.0 };
+		 PacketDirection[] dirs = { PacketDirection.UPLINK, PacketDirection.DOWNLINK, PacketDirection.DOWNLINK,
+				 PacketDirection.UNKNOWN, PacketDirection.DOWNLINK, PacketDirection.UPLINK };
+		 for (int i = 0; i < times.length; i++) {
+			 PacketInfo pktInfo = Mockito.mock(PacketInfo.class);
+			 Mockito.when(pktInfo.getDir()).thenReturn(dirs[i]);
+			 Mockito.when(pktInfo.getTimeStamp()).thenReturn(times[i]);
+			 Mockito.when(pktInfo.getLen()).thenReturn(100 * (i + 1));
+			 packets.add(pktInfo);
+		 }
+		 List<Throughput> fromList = throughputCalculator.calculateThroughput(0.0, 60000.0, 10000.0, packets);
+		 List<Throughput> fromTable = throughputCalculator.calculateThroughput(0.0, 60000.0, 10000.0, new PacketTable(packets));
+		 assertEquals(fromList.size(), fromTable.size());
+		 for (int i = 0; i < fromList.size(); i++) {
+			 assertEquals(fromList.get(i).getTime(), fromTable.get(i).getTime(), 0.0);
+			 assertEquals(fromList.get(i).getUploadKbps(), fromTable.get(i).getUploadKbps(), 0.0);
+			 assertEquals(fromList.get(i).getDownloadKbps(), fromTable.get(i).getDownloadKbps(), 0.0);
+		 }
+	 }
+
 	 
 
 }
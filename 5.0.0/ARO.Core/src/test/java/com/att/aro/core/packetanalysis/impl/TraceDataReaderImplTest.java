@@ -16,7 +16,9 @@
 package com.att.aro.core.packetanalysis.impl;
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -48,7 +50,10 @@ import com.att.aro.core.packetanalysis.pojo.TraceDirectoryResult;
 import com.att.aro.core.packetanalysis.pojo.TraceFileResult;
 import com.att.aro.core.packetreader.IPacketListener;
 import com.att.aro.core.packetreader.IPacketReader;
+import com.att.aro.core.packetreader.IPacketService;
 import com.att.aro.core.packetreader.pojo.IPPacket;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
+import com.att.aro.core.packetreader.pojo.UDPPacket;
 import com.att.aro.core.peripheral.IAlarmAnalysisInfoParser;
 import com.att.aro.core.peripheral.IAppInfoReader;
 import com.att.aro.core.peripheral.IDeviceDetailReader;
@@ -78,6 +83,9 @@ public class TraceDataReaderImplTest extends BaseTest {
 	INetworkTypeReader networktypereader;
 	@Mock
 	IAlarmAnalysisInfoParser alarmanalysisinfoparser;
+	byte[] dnsresponsedata = new byte[]{0,0,2,18,0,0,0,0,0,0,0,0,0,0,8,0,69,88,1,16,-92,-60,64,0,-4,17,50,-91,-84,26,38,1,10,77,-55,-78,0,53,30,108,0,-4,-34,74,29,-28,-127,-128,0,1,0,12,0,0,0,0,7,97,110,100,114,111,105,100,7,99,108,105,101,110,116,115,6,103,111,111,103,108,101,3,99,111,109,0,0,1,0,1,-64,12,0,5,0,1,0,0,0,2,0,
+			12,7,97,110,100,114,111,105,100,1,108,-64,28,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-27,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-31,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-30,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-28,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-25,-64,56,0,1,0,1,0,
+			0,0,6,0,4,74,125,-30,-32,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-24,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-29,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-18,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-23,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-26};
 	
 	@Before
 	public void setUp(){
@@ -100,6 +108,7 @@ public class TraceDataReaderImplTest extends BaseTest {
 		traceDataReaderImpl.setFileReader(filereader);
 		Mockito.doAnswer(new Answer<Object>(){
 			public Object answer(InvocationOnMock invocation){
+				IPacketListener listener = (IPacketListener) invocation.getArguments()[1];
 				byte b = 4;
 				short s = 1;
 				
@@ -121,12 +130,12 @@ public class TraceDataReaderImplTest extends BaseTest {
 				when(ippack01.getSourceIPAddress()).thenReturn(address1);
 				when(ippack01.getDestinationIPAddress()).thenReturn(address2);
 				when(ippack01.getTimeStamp()).thenReturn((double)date1.getTime());
-				traceDataReaderImpl.packetArrived("flipboard.app",ippack01);//pretend jpcap lib 
-				traceDataReaderImpl.packetArrived("com.google.android.youtube",ippack01);//pretend jpcap lib 
-				traceDataReaderImpl.packetArrived("flipboard.app",ippack01);
+				listener.packetArrived("flipboard.app",ippack01);//pretend jpcap lib 
+				listener.packetArrived("com.google.android.youtube",ippack01);//pretend jpcap lib 
+				listener.packetArrived("flipboard.app",ippack01);
 				return null;
 			}
-		}).when(packetreader).readPacket(any(String.class), any(IPacketListener.class));
+		}).when(packetreader).readPacket(any(String.class), any(IPacketListener.class), any(PacketDecodeContext.class));
 		when(filereader.fileExist(any(String.class))).thenReturn(true);
 		when(filereader.getDirectory(any(String.class))).thenReturn(Util.getCurrentRunningDir());
 		when(filereader.getLastModified(any(String.class))).thenReturn((long)date.getTime());
@@ -170,6 +179,7 @@ public class TraceDataReaderImplTest extends BaseTest {
 				any(double.class), any(double.class), any(Date.class))).thenReturn(alarmResult);
 		Mockito.doAnswer(new Answer<Object>(){
 			public Object answer(InvocationOnMock invocation){
+				IPacketListener listener = (IPacketListener) invocation.getArguments()[1];
 				byte b = 3;
 				short s = 1;
 				
@@ -191,11 +201,11 @@ public class TraceDataReaderImplTest extends BaseTest {
 				when(ippack01.getSourceIPAddress()).thenReturn(address1);
 				when(ippack01.getDestinationIPAddress()).thenReturn(address2);
 				when(ippack01.getTimeStamp()).thenReturn((double)date1.getTime());
-				traceDataReaderImpl.packetArrived("com.google.android.youtube",ippack01);//pretend jpcap lib 
+				listener.packetArrived("com.google.android.youtube",ippack01);//pretend jpcap lib 
 				
 				return null;
 			} 
-		}).when(packetreader).readPacket(any(String.class), any(IPacketListener.class));
+		}).when(packetreader).readPacket(any(String.class), any(IPacketListener.class), any(PacketDecodeContext.class));
 		AppInfo app = new AppInfo();
 		Map<String, String> appMap = new HashMap<String,String>();
 		appMap.put("flipboard.app","2.3.8");
@@ -242,6 +252,7 @@ public class TraceDataReaderImplTest extends BaseTest {
 
 		Mockito.doAnswer(new Answer<Object>(){
 			public Object answer(InvocationOnMock invocation){
+				IPacketListener listener = (IPacketListener) invocation.getArguments()[1];
 				byte b = 3;
 				short s = 1;
 				
@@ -263,11 +274,11 @@ public class TraceDataReaderImplTest extends BaseTest {
 				when(ippack01.getSourceIPAddress()).thenReturn(address1);
 				when(ippack01.getDestinationIPAddress()).thenReturn(address2);
 				when(ippack01.getTimeStamp()).thenReturn((double)date1.getTime());
-				traceDataReaderImpl.packetArrived("com.google.android.youtube",ippack01);//pretend jpcap lib 
+				listener.packetArrived("com.google.android.youtube",ippack01);//pretend jpcap lib 
 				
 				return null;
 			} 
-		}).when(packetreader).readPacket(any(String.class), any(IPacketListener.class));
+		}).when(packetreader).readPacket(any(String.class), any(IPacketListener.class), any(PacketDecodeContext.class));
 		AppInfo app = new AppInfo();
 		Map<String, String> appMap = new HashMap<String,String>();
 		appMap.put("flipboard.app","2.3.8");
@@ -288,5 +299,32 @@ public class TraceDataReaderImplTest extends BaseTest {
 		TraceDirectoryResult result = traceDataReaderImpl.readTraceDirectory(Util.getCurrentRunningDir());
 		assertSame(0,result.getAppIds().size());
 	}
-	
+
+	@Test
+	public void packetArrived_dns() throws Exception {
+		TraceFileResult result = new TraceFileResult();
+		TraceDataReaderImpl.TraceReadContext readContext = new TraceDataReaderImpl.TraceReadContext(result);
+		assertSame(result.getAddressTable(), readContext.getDecodeContext().getAddressTable());
+		IPacketService packetservice = context.getBean(IPacketService.class);
+		UDPPacket first = (UDPPacket) packetservice.createPacketFromPcap(113, 1393515429, 547730, 288, dnsresponsedata.clone(), null,
+				readContext.getDecodeContext());
+		UDPPacket second = (UDPPacket) packetservice.createPacketFromPcap(113, 1393515430, 0, 288, dnsresponsedata.clone(), null,
+				readContext.getDecodeContext());
+		readContext.packetArrived(null, first);
+		readContext.packetArrived(null, second);
+
+		// the DNS messages are decoded into the names and addresses of the trace
+		assertEquals("android.clients.google.com", second.getDns().getDomainName());
+		assertSame(first.getDns().getDomainName(), second.getDns().getDomainName());
+		assertSame(first.getDns().getCname(), second.getDns().getCname());
+		InetAddress address = InetAddress.getByAddress(new byte[] { 74, 125, -30, -27 });
+		int id = result.getAddressTable().getId(address);
+		assertTrue(second.getDns().getIpAddresses().contains(address));
+		for (InetAddress answer : second.getDns().getIpAddresses()) {
+			if (answer.equals(address)) {
+				assertSame(result.getAddressTable().getAddress(id), answer);
+			}
+		}
+	}
+
 }
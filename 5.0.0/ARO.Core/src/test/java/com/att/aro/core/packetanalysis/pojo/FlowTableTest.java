@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Test;
+
+public class FlowTableTest {
+
+	@Test
+	public void addressIds() throws UnknownHostException {
+		FlowTable<String> table = new FlowTable<String>();
+		InetAddress remote = InetAddress.getByName("10.0.0.2");
+
+		// the ID of the trace is used as is, the address only without one
+		assertEquals(table.key(7, null, 40000, 443), table.key(7, remote, 40000, 443));
+		assertNotEquals(table.key(7, remote, 40000, 443), table.key(8, remote, 40000, 443));
+		assertNotEquals(table.key(7, remote, 40000, 443), table.key(-1, remote, 40000, 443));
+		assertNotEquals(table.key(7, null, 40000, 443), table.key(7, null, 40001, 443));
+		assertNotEquals(table.key(7, null, 40000, 443), table.key(7, null, 40000, 444));
+
+		table.put(table.key(Integer.MAX_VALUE, null, 0xffff, 0xffff), "max");
+		assertEquals("max", table.get(table.key(Integer.MAX_VALUE, null, 0xffff, 0xffff)));
+		assertNull(table.get(table.key(-1, remote, 0xffff, 0xffff)));
+	}
+
+	@Test
+	public void removeMovesLastValue() {
+		FlowTable<Integer> table = new FlowTable<Integer>(4);
+		for (int i = 0; i < 1000; i++) {
+			table.put(table.key(i / 100, null, 40000 + i, 443), i);
+		}
+		assertEquals(1000, table.size());
+
+		// the last value takes the place of the removed one
+		assertEquals(Integer.valueOf(1), table.remove(table.key(0, null, 40001, 443)));
+		assertEquals(Integer.valueOf(999), table.values().get(1));
+		assertNull(table.remove(table.key(0, null, 40001, 443)));
+
+		for (int i = 3; i < 999; i += 2) {
+			table.remove(table.key(i / 100, null, 40000 + i, 443));
+		}
+		assertEquals(501, table.size());
+		for (int i = 0; i < 1000; i++) {
+			Integer value = table.get(table.key(i / 100, null, 40000 + i, 443));
+			assertEquals(i % 2 == 0 || i == 999 ? Integer.valueOf(i) : null, value);
+		}
+		for (int i = 0; i < table.size(); i++) {
+			Integer value = table.values().get(i);
+			assertEquals(value, table.get(table.key(value / 100, null, 40000 + value, 443)));
+		}
+	}
+
+	@Test
+	public void releaseAddresses() throws UnknownHostException {
+		FlowTable<String> table = new FlowTable<String>();
+		InetAddress first = InetAddress.getByName("10.0.0.2");
+		InetAddress second = InetAddress.getByName("10.0.0.3");
+
+		long firstKey = table.key(-1, first, 40000, 443);
+		table.put(firstKey, "first");
+		long secondKey = table.key(-1, first, 40001, 443);
+		table.put(secondKey, "second");
+		assertEquals(firstKey >>> 32, secondKey >>> 32);
+
+		// the number of an address is kept until its last flow is removed
+		table.remove(firstKey);
+		assertEquals(secondKey, table.key(-1, first, 40001, 443));
+		assertNotEquals(secondKey >>> 32, table.key(-1, second, 40001, 443) >>> 32);
+		table.remove(secondKey);
+		assertEquals(0, table.size());
+
+		// evicted addresses do not pile up
+		for (int i = 0; i < 100000; i++) {
+			InetAddress remote = InetAddress.getByAddress(new byte[] { 10, 1, (byte) (i >> 8), (byte) i });
+			long key = table.key(-1, remote, 40000, 443);
+			table.put(key, "flow");
+			assertEquals("flow", table.get(key));
+			table.remove(key);
+			assertEquals(firstKey >>> 32, key >>> 32);
+		}
+	}
+}
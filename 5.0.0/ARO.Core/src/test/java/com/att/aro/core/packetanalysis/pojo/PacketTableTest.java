@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.att.aro.core.packetreader.pojo.Packet;
+
+public class PacketTableTest {
+
+	private PacketInfo packetInfo(String appName, double timestamp, int length) {
+		Packet packet = Mockito.mock(Packet.class);
+		Mockito.when(packet.getTimeStamp()).thenReturn(timestamp);
+		Mockito.when(packet.getLen()).thenReturn(length);
+		return new PacketInfo(appName, packet);
+	}
+
+	private void assertRows(List<PacketInfo> packets, PacketTable table) {
+		PacketTable fresh = new PacketTable(packets);
+		assertEquals(fresh.size(), table.size());
+		assertEquals(fresh.getAppCount(), table.getAppCount());
+		for (int appId = 0; appId < fresh.getAppCount(); appId++) {
+			assertEquals(fresh.getAppName(appId), table.getAppName(appId));
+		}
+		for (int i = 0; i < fresh.size(); i++) {
+			assertSame(packets.get(i), table.getPacketInfo(i));
+			assertEquals(fresh.getTimestamp(i), table.getTimestamp(i), 0.0);
+			assertEquals(fresh.getLength(i), table.getLength(i));
+			assertEquals(fresh.getAppId(i), table.getAppId(i));
+		}
+	}
+
+	@Test
+	public void select() {
+		// equal timestamps are told apart by the packet
+		PacketInfo first = packetInfo("a", 1.0, 10);
+		PacketInfo second = packetInfo("b", 2.0, 20);
+		PacketInfo third = packetInfo("c", 2.0, 30);
+		PacketInfo fourth = packetInfo("a", 3.0, 40);
+		PacketTable table = new PacketTable(Arrays.asList(first, second, third, fourth));
+
+		List<PacketInfo> selection = Arrays.asList(fourth, third, first);
+		assertRows(selection, table.select(selection));
+		assertRows(new ArrayList<PacketInfo>(), table.select(new ArrayList<PacketInfo>()));
+	}
+
+	@Test
+	public void selectUnsorted() {
+		PacketInfo first = packetInfo("a", 3.0, 10);
+		PacketInfo second = packetInfo("b", 1.0, 20);
+		PacketInfo third = packetInfo(null, 2.0, 30);
+		PacketTable table = new PacketTable(Arrays.asList(first, second, third));
+
+		List<PacketInfo> selection = Arrays.asList(third, first);
+		assertRows(selection, table.select(selection));
+	}
+
+	@Test
+	public void selectMissing() {
+		PacketTable table = new PacketTable(Arrays.asList(packetInfo("a", 1.0, 10)));
+		try {
+			table.select(Arrays.asList(packetInfo("a", 1.0, 10)));
+			fail("the packet is not in the table");
+		} catch (IllegalArgumentException e) {
+			assertEquals(1, table.size());
+		}
+	}
+}
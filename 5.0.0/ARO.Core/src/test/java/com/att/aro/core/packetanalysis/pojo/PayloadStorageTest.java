@@ -0,0 +1,204 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetanalysis.pojo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PayloadStorageTest {
+
+	/**
+	 * "0123456789" in three slices of larger packet arrays
+	 */
+	private PayloadStorage slices() {
+		PayloadStorage storage = new PayloadStorage();
+		storage.append("xx012".getBytes(), 2, 3);
+		storage.append("3456yy".getBytes(), 0, 4);
+		storage.append("z789".getBytes(), 1, 3);
+		return storage;
+	}
+
+	@Test
+	public void appendBounds() {
+		PayloadStorage storage = new PayloadStorage();
+		byte[] data = new byte[8];
+		for (int[] range : new int[][] { { -1, 2 }, { 0, -1 }, { 4, 5 }, { 9, 0 } }) {
+			try {
+				storage.append(data, range[0], range[1]);
+				fail("offset " + range[0] + ", length " + range[1] + " is outside the data");
+			} catch (IndexOutOfBoundsException e) {
+				assertEquals(0, storage.size());
+			}
+		}
+		storage.append(data, 8, 0);
+		storage.append(data, 0, 8);
+		assertEquals(8, storage.size());
+
+		// slices are added past the initial capacity
+		for (int i = 0; i < 10; i++) {
+			storage.append(new byte[] { (byte) i }, 0, 1);
+		}
+		assertEquals(18, storage.size());
+		assertEquals(9, storage.byteAt(17));
+	}
+
+	@Test
+	public void copyToAcrossSlices() {
+		PayloadStorage storage = slices();
+		assertEquals(10, storage.size());
+
+		byte[] dest = new byte[12];
+		storage.copyTo(1, dest, 2, 8);
+		assertEquals("12345678", new String(dest, 2, 8));
+		storage.copyTo(0, dest, 0, 10);
+		assertEquals("0123456789", new String(dest, 0, 10));
+		storage.copyTo(3, dest, 0, 4);
+		assertEquals("3456", new String(dest, 0, 4));
+		storage.copyTo(10, dest, 0, 0);
+
+		try {
+			storage.copyTo(7, dest, 0, 4);
+			fail("the range ends past the payload");
+		} catch (IndexOutOfBoundsException e) {
+			assertEquals("from 7, length 4, size 10", e.getMessage());
+		}
+	}
+
+	@Test
+	public void byteAt() {
+		PayloadStorage storage = slices();
+		for (int i = 0; i < 10; i++) {
+			assertEquals('0' + i, storage.byteAt(i));
+		}
+		storage.toByteArray();
+		assertEquals('7', storage.byteAt(7));
+		for (int index : new int[] { -1, 10 }) {
+			try {
+				storage.byteAt(index);
+				fail("index " + index + " is outside the payload");
+			} catch (IndexOutOfBoundsException e) {
+				assertEquals("index " + index + ", size 10", e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void readerInPlace() {
+		PayloadStorage storage = slices();
+		PayloadReader reader = storage.reader();
+		assertSame(storage, reader.getStorage());
+		assertEquals(10, reader.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals('0' + i, reader.get(i));
+		}
+		assertEquals('2', reader.get(2));
+		assertEquals('8', reader.get(8));
+
+		byte[] dest = new byte[10];
+		reader.copyTo(2, dest, 1, 7);
+		assertEquals("2345678", new String(dest, 1, 7));
+		try {
+			reader.get(10);
+			fail("index 10 is outside the payload");
+		} catch (IndexOutOfBoundsException e) {
+			assertEquals("index 10, size 10", e.getMessage());
+		}
+
+		// the reader keeps the payload it was made with
+		storage.append("!".getBytes(), 0, 1);
+		assertEquals(10, reader.size());
+		assertEquals(11, storage.reader().size());
+	}
+
+	@Test
+	public void rangesInPlace() throws Exception {
+		PayloadStorage storage = slices();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		storage.writeTo(1, 8, output);
+		assertEquals("12345678", output.toString());
+
+		// a range in one slice is a view of the packet array
+		ByteBuffer view = storage.asByteBuffer(4, 3);
+		assertTrue(view.isReadOnly());
+		assertEquals(3, view.remaining());
+		assertEquals('4', view.get(0));
+		assertEquals('6', view.get(2));
+
+		// a range over slices is copied
+		view = storage.asByteBuffer(2, 5);
+		byte[] bytes = new byte[5];
+		view.get(bytes);
+		assertEquals("23456", new String(bytes));
+		assertEquals(0, storage.asByteBuffer(10, 0).remaining());
+
+		// a single slice is viewed in the packet array
+		byte[] packet = "xxabcx".getBytes();
+		PayloadStorage single = new PayloadStorage();
+		single.append(packet, 2, 3);
+		ByteBuffer buffer = single.asByteBuffer(0, 3);
+		assertEquals(3, buffer.remaining());
+		packet[2] = 'A';
+		assertEquals('A', buffer.get(0));
+	}
+
+	@Test
+	public void toByteArrayCached() {
+		PayloadStorage storage = slices();
+		byte[] bytes = storage.toByteArray();
+		assertEquals("0123456789", new String(bytes));
+		assertSame(bytes, storage.toByteArray());
+
+		// appending drops the array
+		storage.append("!".getBytes(), 0, 1);
+		byte[] longer = storage.toByteArray();
+		assertNotSame(bytes, longer);
+		assertEquals("0123456789!", new String(longer));
+
+		byte[] wrapped = "abc".getBytes();
+		assertSame(wrapped, PayloadStorage.wrap(wrapped).toByteArray());
+	}
+
+	@Test
+	public void serialize() throws Exception {
+		PayloadStorage storage = slices();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(storage);
+		output.close();
+		ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		PayloadStorage copy = (PayloadStorage) input.readObject();
+		input.close();
+
+		assertEquals(10, copy.size());
+		assertArrayEquals("0123456789".getBytes(), copy.toByteArray());
+		assertEquals('9', copy.byteAt(9));
+		copy.append("!".getBytes(), 0, 1);
+		assertEquals('!', copy.asByteBuffer(10, 1).get(0));
+	}
+}
@@ -15,11 +15,22 @@
  */
 package com.att.aro.core.packetreader.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
 import org.junit.Test;
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.packetreader.IDomainNameParser;
+import com.att.aro.core.packetreader.pojo.DomainNameCache;
 import com.att.aro.core.packetreader.pojo.DomainNameSystem;
+import com.att.aro.core.packetreader.pojo.IPAddressTable;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.core.packetreader.pojo.UDPPacket;
 
 public class DomainNameParserImplTest extends BaseTest {
@@ -29,12 +40,55 @@ public class DomainNameParserImplTest extends BaseTest {
 			12,7,97,110,100,114,111,105,100,1,108,-64,28,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-27,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-31,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-30,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-28,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-25,-64,56,0,1,0,1,0,
 			0,0,6,0,4,74,125,-30,-32,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-24,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-29,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-18,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-23,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-26};
 	@Test
-	public void parseDomain(){
+	public void parseDomain() throws Exception {
 		parser = (DomainNameParserImpl) context.getBean(IDomainNameParser.class);
 		UDPPacket packet = new UDPPacket(1393515429, 547730, 288, 16, dnsresponsedata);
-		DomainNameSystem dns = parser.parseDomainName(packet);
+		DomainNameSystem dns = parser.parseDomainName(packet, null);
+		assertNotNull(dns);
+		assertTrue(dns.isResponse());
+		assertEquals("android.clients.google.com", dns.getDomainName());
+		assertEquals("android.l.google.com", dns.getCname());
+		assertEquals(11, dns.getIpAddresses().size());
+		assertTrue(dns.getIpAddresses().contains(InetAddress.getByAddress(new byte[] { 74, 125, -30, -27 })));
+
+	}
+
+	@Test
+	public void internDomainNames() throws Exception {
+		parser = (DomainNameParserImpl) context.getBean(IDomainNameParser.class);
+		DomainNameCache names = new DomainNameCache();
+		IPAddressTable addresses = new IPAddressTable();
+		PacketDecodeContext decodeContext = new PacketDecodeContext(names, addresses);
+		DomainNameSystem dns = parser.parseDomainName(new UDPPacket(1393515429, 547730, 288, 16, dnsresponsedata), decodeContext);
+		DomainNameSystem again = parser.parseDomainName(new UDPPacket(1393515430, 0, 288, 16, dnsresponsedata.clone()), decodeContext);
+
+		// the names and addresses of the trace are shared between packets
+		assertSame(dns.getDomainName(), again.getDomainName());
+		assertSame(dns.getCname(), again.getCname());
+		assertEquals(2, names.size());
+		assertEquals(11, addresses.size());
+		for (InetAddress address : again.getIpAddresses()) {
+			assertSame(addresses.getAddress(addresses.getId(address)), address);
+		}
+		assertSame(dns.getDomainName(), names.getName(dnsresponsedata, 44, dnsresponsedata.length, 56));
+	}
+
+	@Test
+	public void parseCorruptDomain() {
+		parser = (DomainNameParserImpl) context.getBean(IDomainNameParser.class);
+
+		// question name is a compression pointer to itself
+		byte[] loop = Arrays.copyOf(dnsresponsedata, 60);
+		loop[56] = (byte) 0xc0;
+		loop[57] = 12;
+		assertNull(parser.parseDomainName(new UDPPacket(1393515429, 547730, 60, 16, loop), new PacketDecodeContext(new IPAddressTable())));
+		assertNull(parser.parseDomainName(new UDPPacket(1393515429, 547730, 60, 16, loop), null));
+
+		// answers cut off after the question
+		byte[] truncated = Arrays.copyOf(dnsresponsedata, 90);
+		DomainNameSystem dns = parser.parseDomainName(new UDPPacket(1393515429, 547730, 90, 16, truncated),
+				new PacketDecodeContext(new IPAddressTable()));
 		assertNotNull(dns);
-		
-		
+		assertEquals(0, dns.getIpAddresses().size());
 	}
 }
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import com.att.aro.core.BaseTest;
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.IPacketListener;
+import com.att.aro.core.packetreader.IPacketReader;
+import com.att.aro.core.packetreader.pojo.IPPacket;
+import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.TCPPacket;
+
+public class MappedPcapReaderImplTest extends BaseTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	MappedPcapReaderImpl reader;
+	List<Packet> packets;
+	IPacketListener listener;
+
+	// IPv4 TCP SYN 10.0.0.1:1234 -> 10.0.0.2:80
+	byte[] ipPacket = new byte[] { 0x45, 0, 0, 40, 0, 1, 0, 0, 64, 6, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2,
+			0x04, (byte) 0xd2, 0, 80, 0, 0, 0, 1, 0, 0, 0, 0, 0x50, 0x02, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0 };
+
+	@Before
+	public void setup() {
+		reader = (MappedPcapReaderImpl) context.getBean("mappedPcapReader");
+		packets = new ArrayList<Packet>();
+		listener = new IPacketListener() {
+			@Override
+			public void packetArrived(String appName, Packet packet) {
+				packets.add(packet);
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		reader.setPcapngReader((IPacketReader) context.getBean("pcapngPacketReader"));
+		reader.setFallbackReader((IPacketReader) context.getBean("jpcapPacketReader"));
+		reader.setParallelism(Runtime.getRuntime().availableProcessors());
+	}
+
+	@Test
+	public void readLittleEndianMicro() throws IOException {
+		File file = writePcap(ByteOrder.LITTLE_ENDIAN, MappedPcapReaderImpl.PCAP_MAGIC_MICRO, 3, 250000, false);
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(3, packets.size());
+		assertTrue(packets.get(0) instanceof IPPacket);
+		assertEquals(4, ((IPPacket) packets.get(0)).getIPVersion());
+		assertEquals("10.0.0.1", ((IPPacket) packets.get(0)).getSourceIPAddress().getHostAddress());
+		assertTrue(packets.get(0) instanceof TCPPacket);
+		assertEquals(100, packets.get(0).getSeconds());
+		assertEquals(250000, packets.get(0).getMicroSeconds());
+		assertEquals(102, packets.get(2).getSeconds());
+		assertEquals(80, ((TCPPacket) packets.get(1)).getDestinationPort());
+	}
+
+	@Test
+	public void readBigEndianNano() throws IOException {
+		File file = writePcap(ByteOrder.BIG_ENDIAN, MappedPcapReaderImpl.PCAP_MAGIC_NANO, 2, 250000123, false);
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(2, packets.size());
+		assertEquals(250000, packets.get(1).getMicroSeconds());
+		assertEquals(ipPacket.length, packets.get(1).getLen());
+	}
+
+	@Test
+	public void openCursor() throws IOException {
+		File file = writePcap(ByteOrder.LITTLE_ENDIAN, MappedPcapReaderImpl.PCAP_MAGIC_MICRO, 3, 0, false);
+		IPacketCursor cursor = reader.openCursor(file.getAbsolutePath());
+		try {
+			for (Packet packet : cursor) {
+				packets.add(packet);
+			}
+		} finally {
+			cursor.close();
+		}
+		assertEquals(3, packets.size());
+		assertEquals(101, packets.get(1).getSeconds());
+		assertFalse(cursor.hasNext());
+	}
+
+	@Test
+	public void readParallelKeepsFileOrder() throws IOException {
+		int count = MappedPcapReaderImpl.BATCH_SIZE + 3 * MappedPcapReaderImpl.SLICE_SIZE + 7;
+		File file = writePcap(ByteOrder.LITTLE_ENDIAN, MappedPcapReaderImpl.PCAP_MAGIC_MICRO, count, 0, true);
+		reader.setParallelism(4);
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(count - 1, packets.size());
+		for (int i = 0; i < packets.size(); i++) {
+			assertEquals(100 + i, packets.get(i).getSeconds());
+		}
+	}
+
+	@Test
+	public void readSingleThreaded() throws IOException {
+		int count = 2 * MappedPcapReaderImpl.SLICE_SIZE + 1;
+		File file = writePcap(ByteOrder.BIG_ENDIAN, MappedPcapReaderImpl.PCAP_MAGIC_MICRO, count, 0, false);
+		reader.setParallelism(0);
+		assertEquals(1, reader.getParallelism());
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(count, packets.size());
+		assertEquals(100 + count - 1, packets.get(count - 1).getSeconds());
+	}
+
+	@Test
+	public void readTruncatedLastRecord() throws IOException {
+		File file = writePcap(ByteOrder.LITTLE_ENDIAN, MappedPcapReaderImpl.PCAP_MAGIC_MICRO, 4, 0, true);
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(3, packets.size());
+	}
+
+	@Test
+	public void readPcapngUsesPcapngReader() throws IOException {
+		IPacketReader pcapngReader = Mockito.mock(IPacketReader.class);
+		reader.setPcapngReader(pcapngReader);
+		File file = folder.newFile("pcapng.cap");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { 10, 13, 13, 10, 28, 0, 0, 0, 77, 60, 43, 26, 1, 0, 0, 0, -1, -1, -1, -1, -1, -1, -1, -1 });
+		out.close();
+		reader.readPacket(file.getAbsolutePath(), listener);
+		Mockito.verify(pcapngReader).readPacket(file.getAbsolutePath(), listener, null);
+	}
+
+	@Test
+	public void readUnsupportedUsesFallback() throws IOException {
+		IPacketReader fallback = Mockito.mock(IPacketReader.class);
+		reader.setFallbackReader(fallback);
+		File file = folder.newFile("unknown.cap");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[32]);
+		out.close();
+		reader.readPacket(file.getAbsolutePath(), listener);
+		Mockito.verify(fallback).readPacket(file.getAbsolutePath(), listener, null);
+	}
+
+	@Test
+	public void parseHeaderMapsLinkType() {
+		ByteBuffer header = ByteBuffer.allocate(MappedPcapReaderImpl.GLOBAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MappedPcapReaderImpl.PCAP_MAGIC_MICRO);
+		header.putInt(20, PcapLinkType.LINKTYPE_RAW);
+		assertEquals(PcapLinkType.DLT_RAW, reader.parseHeader(header).datalink);
+		header.putInt(20, 1);
+		assertEquals(1, reader.parseHeader(header).datalink);
+		header.putInt(20, 113);
+		assertEquals(113, reader.parseHeader(header).datalink);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void readPacketError() throws IOException {
+		reader.readPacket("traffic.cap", null);
+	}
+
+	private File writePcap(ByteOrder order, int magic, int count, int fraction, boolean truncateLast) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(24 + count * (16 + ipPacket.length)).order(order);
+		buffer.putInt(magic);
+		buffer.putShort((short) 2);
+		buffer.putShort((short) 4);
+		buffer.putInt(0);
+		buffer.putInt(0);
+		buffer.putInt(65535);
+		buffer.putInt(PcapLinkType.LINKTYPE_RAW);
+		for (int i = 0; i < count; i++) {
+			buffer.putInt(100 + i);
+			buffer.putInt(fraction);
+			buffer.putInt(ipPacket.length);
+			buffer.putInt(ipPacket.length);
+			buffer.put(ipPacket);
+		}
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(buffer.array(), 0, truncateLast ? buffer.capacity() - 10 : buffer.capacity());
+		out.close();
+		return file;
+	}
+}
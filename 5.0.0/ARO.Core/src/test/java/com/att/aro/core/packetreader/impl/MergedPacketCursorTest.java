@@ -0,0 +1,130 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.pojo.Packet;
+
+public class MergedPacketCursorTest {
+
+	private boolean[] closed;
+
+	private IPacketCursor listCursor(final List<Packet> packets, final int index) {
+		final Iterator<Packet> iterator = packets.iterator();
+		return new AbstractPacketCursor() {
+			@Override
+			protected Packet advance() throws IOException {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+
+			@Override
+			public void close() throws IOException {
+				finish();
+				closed[index] = true;
+			}
+		};
+	}
+
+	private Packet packet(long seconds, long microSeconds) {
+		return new Packet(seconds, microSeconds, 0, 0, new byte[0]);
+	}
+
+	@Test
+	public void mergeByTimestamp() throws IOException {
+		closed = new boolean[3];
+		Packet tie = packet(2, 0);
+		List<IPacketCursor> cursors = new ArrayList<IPacketCursor>();
+		cursors.add(listCursor(Arrays.asList(packet(1, 0), packet(2, 0), packet(5, 0)), 0));
+		cursors.add(listCursor(new ArrayList<Packet>(), 1));
+		cursors.add(listCursor(Arrays.asList(packet(1, 500), tie, packet(3, 0)), 2));
+		MergedPacketCursor cursor = new MergedPacketCursor(cursors, 2);
+
+		List<Packet> merged = new ArrayList<Packet>();
+		List<Integer> sources = new ArrayList<Integer>();
+		while (cursor.hasNext()) {
+			merged.add(cursor.next());
+			sources.add(cursor.getSource());
+		}
+		cursor.close();
+
+		assertEquals(6, merged.size());
+		assertEquals(Arrays.asList(0, 2, 0, 2, 2, 0), sources);
+		assertEquals(500, merged.get(1).getMicroSeconds());
+		assertSame(tie, merged.get(3));
+		assertEquals(5, merged.get(5).getSeconds());
+		assertTrue(closed[0] && closed[1] && closed[2]);
+	}
+
+	@Test
+	public void positionsOfReorderedFiles() throws IOException {
+		closed = new boolean[2];
+		List<IPacketCursor> cursors = new ArrayList<IPacketCursor>();
+		cursors.add(new TimeOrderedPacketCursor(listCursor(Arrays.asList(packet(3, 0), packet(1, 0), packet(5, 0)), 0)));
+		cursors.add(new TimeOrderedPacketCursor(listCursor(Arrays.asList(packet(4, 0), packet(2, 0)), 1)));
+		MergedPacketCursor cursor = new MergedPacketCursor(cursors, 2);
+
+		List<Long> positions = new ArrayList<Long>();
+		List<Integer> sources = new ArrayList<Integer>();
+		assertEquals(-1, cursor.getPosition());
+		while (cursor.hasNext()) {
+			cursor.next();
+			positions.add(cursor.getPosition());
+			sources.add(cursor.getSource());
+		}
+		cursor.close();
+
+		// the position in the file read, not in the reorder window
+		assertEquals(Arrays.asList(0, 1, 0, 1, 0), sources);
+		assertEquals(Arrays.asList(1L, 1L, 0L, 0L, 2L), positions);
+	}
+
+	@Test
+	public void mergeAcrossBatches() throws IOException {
+		closed = new boolean[2];
+		int count = MergedPacketCursor.BATCH_SIZE * 2 + 3;
+		List<Packet> even = new ArrayList<Packet>();
+		List<Packet> odd = new ArrayList<Packet>();
+		for (int i = 0; i < count; i++) {
+			even.add(packet(2 * i, 0));
+			odd.add(packet(2 * i + 1, 0));
+		}
+		List<IPacketCursor> cursors = new ArrayList<IPacketCursor>();
+		cursors.add(listCursor(odd, 0));
+		cursors.add(listCursor(even, 1));
+		MergedPacketCursor cursor = new MergedPacketCursor(cursors, 1);
+
+		int expected = 0;
+		for (Packet packet : cursor) {
+			assertEquals(expected++, packet.getSeconds());
+		}
+		cursor.close();
+		assertEquals(2 * count, expected);
+		assertFalse(cursor.hasNext());
+	}
+}
@@ -19,11 +19,13 @@ import java.io.File;
 import java.io.IOException;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.junit.Before;
 import com.att.aro.core.BaseTest;
+import com.att.aro.core.packetreader.INetmonPacketSubscriber;
 import com.att.aro.core.packetreader.IPacketListener;
 import com.att.aro.core.packetreader.IPacketReader;
 import com.att.aro.core.packetreader.pojo.Packet;
@@ -56,9 +58,17 @@ public class NetmonPacketReaderImplTest extends BaseTest {
 		netmonreader = (NetmonPacketReaderImpl)reader;
 		netmonreader.setNetmon(netmon);
 		netmonreader.readPacket(file.getAbsolutePath(), listener);
+		IPacketListener other = Mockito.mock(IPacketListener.class);
+		netmonreader.readPacket(file.getAbsolutePath(), other);
+
+		// every read delivers to its own listener
+		ArgumentCaptor<INetmonPacketSubscriber> subscribers = ArgumentCaptor.forClass(INetmonPacketSubscriber.class);
+		Mockito.verify(netmon, Mockito.times(2)).setSubscriber(subscribers.capture());
 		byte[] data = new byte[20];
-		netmonreader.receiveNetmonPacket(12, 1, 1, 1, data, "test");
-		netmonreader.receiveNetmonPacket(0xf000, 1, 1, 1, data, "test");
+		subscribers.getAllValues().get(0).receiveNetmonPacket(12, 1, 1, 1, data, "test");
+		subscribers.getAllValues().get(0).receiveNetmonPacket(0xf000, 1, 1, 1, data, "test");
+		Mockito.verify(listener).packetArrived(Mockito.eq("test"), Mockito.any(Packet.class));
+		Mockito.verifyZeroInteractions(other);
 	}
 	@Test(expected=IllegalArgumentException.class)
 	public void readPacketError() throws IOException{
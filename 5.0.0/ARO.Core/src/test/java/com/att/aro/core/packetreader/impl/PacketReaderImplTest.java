@@ -17,17 +17,26 @@ package com.att.aro.core.packetreader.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 import org.junit.Before;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import static org.junit.Assert.*;
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.packetreader.INativePacketSubscriber;
+import com.att.aro.core.packetreader.IPacketCursor;
 import com.att.aro.core.packetreader.IPacketListener;
+import com.att.aro.core.packetreader.IPacketService;
 import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.pcap.PCapAdapter;
 
 public class PacketReaderImplTest extends BaseTest {
@@ -56,7 +65,7 @@ public class PacketReaderImplTest extends BaseTest {
 	}
 	@Test
 	public void setAroJpcapLibNameTest(){
-		reader = (PacketReaderImpl) context.getBean("packetReader");
+		reader = (PacketReaderImpl) context.getBean("jpcapPacketReader");
 		reader.setAroJpcapLibName("Windows", "64");
 		String libname = reader.getAroJpcapLibFileName();
 		assertEquals("jpcap64.dll", libname);
@@ -80,20 +89,142 @@ public class PacketReaderImplTest extends BaseTest {
 	
 	@Test
 	public void readPacket() throws IOException{
-		reader = (PacketReaderImpl) context.getBean("packetReader");
+		reader = (PacketReaderImpl) context.getBean("jpcapPacketReader");
 		reader.setAdapter(adapter);
 		reader.readPacket(file.getAbsolutePath(), listener);
 		
 		String nativelibname = reader.getAroJpcapLibFileName();
 		
+		ArgumentCaptor<INativePacketSubscriber> subscriber = ArgumentCaptor.forClass(INativePacketSubscriber.class);
+		Mockito.verify(adapter).setSubscriber(subscriber.capture());
 		byte[] data = new byte[20];
-		reader.receive(12, 1, 1, 1, data);
+		subscriber.getValue().receive(12, 1, 1, 1, data);
+		Mockito.verify(listener).packetArrived(Mockito.anyString(), Mockito.any(Packet.class));
 		
 	}
+
+	/**
+	 * Emits count packets for a file, at even seconds for trafficA.cap and at
+	 * odd seconds for any other file
+	 */
+	private static class FileAdapter extends PCapAdapter {
+		private final int count;
+
+		FileAdapter(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public String readData(String filename) {
+			int first = filename.equals("trafficA.cap") ? 0 : 1;
+			for (int i = 0; i < count; i++) {
+				pcapHandler(12, first + 2 * i, 0, 20, new byte[20]);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @return a reader of FileAdapter files, the data of a packet is the name
+	 *         of the file it was read for
+	 */
+	private PacketReaderImpl fileReader(final int count) {
+		// the bean of the context injects the logger
+		context.getBean("jpcapPacketReader");
+		PacketReaderImpl fileReader = new PacketReaderImpl() {
+			@Override
+			protected PCapAdapter createAdapter() {
+				return new FileAdapter(count);
+			}
+		};
+		IPacketService packetservice = Mockito.mock(IPacketService.class);
+		Mockito.when(packetservice.createPacketFromPcap(Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong(),
+				Mockito.anyInt(), Mockito.any(byte[].class), Mockito.anyString(), Mockito.any(PacketDecodeContext.class))).thenAnswer(new Answer<Packet>() {
+					@Override
+					public Packet answer(InvocationOnMock invocation) throws Throwable {
+						Object[] args = invocation.getArguments();
+						return new Packet((Long) args[1], (Long) args[2], (Integer) args[3], 0, ((String) args[5]).getBytes());
+					}
+				});
+		fileReader.setPacketService(packetservice);
+		return fileReader;
+	}
+
+	@Test
+	public void mergeCursors() throws IOException {
+		int count = QueuedPacketCursor.DEFAULT_CAPACITY * 2;
+		reader = fileReader(count);
+
+		List<IPacketCursor> cursors = new ArrayList<IPacketCursor>();
+		cursors.add(reader.openCursor("trafficA.cap"));
+		cursors.add(reader.openCursor("trafficB.cap"));
+		MergedPacketCursor merged = new MergedPacketCursor(cursors, 2);
+		int index = 0;
+		for (Packet packet : merged) {
+			assertEquals(index, packet.getSeconds());
+			assertEquals(index % 2 == 0 ? "trafficA.cap" : "trafficB.cap", new String(packet.getData()));
+			assertEquals(index % 2, merged.getSource());
+			index++;
+		}
+		merged.close();
+		assertEquals(2 * count, index);
+	}
+
+	/**
+	 * Reads a file and records the file names found in its packets
+	 */
+	private static class ReadTask implements Runnable, IPacketListener {
+		private final PacketReaderImpl reader;
+		private final String packetfile;
+		private final Set<String> files = Collections.synchronizedSet(new HashSet<String>());
+		private volatile int count = 0;
+		private volatile Exception failure = null;
+
+		ReadTask(PacketReaderImpl reader, String packetfile) {
+			this.reader = reader;
+			this.packetfile = packetfile;
+		}
+
+		@Override
+		public void run() {
+			try {
+				reader.readPacket(packetfile, this);
+			} catch (Exception e) {
+				failure = e;
+			}
+		}
+
+		@Override
+		public void packetArrived(String appName, Packet packet) {
+			files.add(new String(packet.getData()));
+			count++;
+		}
+	}
+
+	@Test
+	public void concurrentReads() throws Exception {
+		int count = 20000;
+		reader = fileReader(count);
+		ReadTask first = new ReadTask(reader, "trafficA.cap");
+		ReadTask second = new ReadTask(reader, "trafficB.cap");
+		Thread firstThread = new Thread(first);
+		Thread secondThread = new Thread(second);
+		firstThread.start();
+		secondThread.start();
+		firstThread.join();
+		secondThread.join();
+
+		assertNull(first.failure);
+		assertNull(second.failure);
+		assertEquals(count, first.count);
+		assertEquals(count, second.count);
+		assertEquals(Collections.singleton("trafficA.cap"), first.files);
+		assertEquals(Collections.singleton("trafficB.cap"), second.files);
+	}
 	
 	@Test(expected=IllegalArgumentException.class)
 	public void readPacketError() throws IOException{
-		reader = (PacketReaderImpl) context.getBean("packetReader");
+		reader = (PacketReaderImpl) context.getBean("jpcapPacketReader");
 		reader.setAdapter(adapter);
 		reader.readPacket(file.getAbsolutePath(), null);
 		
@@ -101,7 +232,7 @@ public class PacketReaderImplTest extends BaseTest {
 	
 	@Test(expected=IOException.class)
 	public void readPacketError2() throws IOException{
-		reader = (PacketReaderImpl) context.getBean("packetReader");
+		reader = (PacketReaderImpl) context.getBean("jpcapPacketReader");
 		reader.setAdapter(adapter);
 		Mockito.when(adapter.readData(Mockito.anyString())).thenReturn("not null");
 		reader.readPacket(file.getAbsolutePath(), listener);
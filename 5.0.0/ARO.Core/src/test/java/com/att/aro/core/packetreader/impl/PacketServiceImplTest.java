@@ -16,6 +16,7 @@
 package com.att.aro.core.packetreader.impl;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.net.InetAddress;
 import java.nio.ByteBuffer;
 
 import org.junit.Test;
@@ -27,8 +28,10 @@ import static org.junit.Assert.*;
 import com.att.aro.core.BaseTest;
 import com.att.aro.core.packetreader.IPacketService;
 import com.att.aro.core.packetreader.IPcapngHelper;
+import com.att.aro.core.packetreader.pojo.IPAddressTable;
 import com.att.aro.core.packetreader.pojo.IPPacket;
 import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
 import com.att.aro.core.packetreader.pojo.TCPPacket;
 import com.att.aro.core.packetreader.pojo.UDPPacket;
 
@@ -37,6 +40,10 @@ public class PacketServiceImplTest extends BaseTest {
 	IPcapngHelper helper;
 	PacketServiceImpl service;
 	File file;
+	byte[] dnsresponsedata = new byte[]{0,0,2,18,0,0,0,0,0,0,0,0,0,0,8,0,69,88,1,16,-92,-60,64,0,-4,17,50,-91,-84,26,38,1,10,77,-55,-78,0,53,30,108,0,-4,-34,74,29,-28,-127,-128,0,1,0,12,0,0,0,0,7,97,110,100,114,111,105,100,7,99,108,105,101,110,116,115,6,103,111,111,103,108,101,3,99,111,109,0,0,1,0,1,-64,12,0,5,0,1,0,0,0,2,0,
+			12,7,97,110,100,114,111,105,100,1,108,-64,28,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-27,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-31,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-30,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-28,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-25,-64,56,0,1,0,1,0,
+			0,0,6,0,4,74,125,-30,-32,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-24,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-29,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-18,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-23,-64,56,0,1,0,1,0,0,0,6,0,4,74,125,-30,-26};
+
 	@Before
 	public void setup() throws FileNotFoundException{
 		helper = Mockito.mock(IPcapngHelper.class);
@@ -113,4 +120,25 @@ public class PacketServiceImplTest extends BaseTest {
 		
 		assertNotNull(packet);
 	}
+
+	@Test
+	public void createDnsPacket() {
+		service = (PacketServiceImpl) context.getBean(IPacketService.class);
+
+		// parsed on its own without the tables of a trace
+		Packet packet = service.createPacketFromPcap(113, 1, 1, 288, dnsresponsedata.clone(), null);
+		assertTrue(packet instanceof UDPPacket);
+		assertEquals("android.clients.google.com", ((UDPPacket) packet).getDns().getDomainName());
+
+		// parsed into the tables of the trace while the packet is decoded
+		IPAddressTable addresses = new IPAddressTable();
+		PacketDecodeContext decodeContext = new PacketDecodeContext(addresses);
+		UDPPacket first = (UDPPacket) service.createPacketFromPcap(113, 1, 1, 288, dnsresponsedata.clone(), null, decodeContext);
+		UDPPacket second = (UDPPacket) service.createPacketFromPcap(113, 2, 1, 288, dnsresponsedata.clone(), null, decodeContext);
+		assertSame(first.getDns().getDomainName(), second.getDns().getDomainName());
+		assertEquals(11, addresses.size());
+		for (InetAddress address : second.getDns().getIpAddresses()) {
+			assertSame(addresses.getAddress(addresses.getId(address)), address);
+		}
+	}
 }
@@ -0,0 +1,250 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.att.aro.core.BaseTest;
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.IPacketListener;
+import com.att.aro.core.packetreader.pojo.IPPacket;
+import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.TCPPacket;
+
+public class PcapngReaderImplTest extends BaseTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	PcapngReaderImpl reader;
+	List<Packet> packets;
+	IPacketListener listener;
+
+	// IPv4 TCP SYN 10.0.0.1:1234 -> 10.0.0.2:80
+	byte[] ipPacket = new byte[] { 0x45, 0, 0, 40, 0, 1, 0, 0, 64, 6, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2,
+			0x04, (byte) 0xd2, 0, 80, 0, 0, 0, 1, 0, 0, 0, 0, 0x50, 0x02, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0 };
+
+	@Before
+	public void setup() {
+		reader = (PcapngReaderImpl) context.getBean("pcapngPacketReader");
+		packets = new ArrayList<Packet>();
+		listener = new IPacketListener() {
+			@Override
+			public void packetArrived(String appName, Packet packet) {
+				packets.add(packet);
+			}
+		};
+	}
+
+	@Test
+	public void readInterfacesWithOwnResolution() throws IOException {
+		ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(sectionHeader(order));
+		out.write(interfaceDescription(order, PcapLinkType.LINKTYPE_RAW, (byte) 6));
+		out.write(interfaceDescription(order, PcapLinkType.LINKTYPE_RAW, (byte) 9));
+		out.write(block(order, 0x80000001, new byte[8]));
+		out.write(enhancedPacket(order, 0, 100250000L));
+		out.write(enhancedPacket(order, 1, 101500000123L));
+		out.write(simplePacket(order));
+		File file = write(out.toByteArray());
+
+		assertTrue(PcapngReaderImpl.isPcapng(file.getAbsolutePath()));
+		reader.readPacket(file.getAbsolutePath(), listener);
+
+		assertEquals(3, packets.size());
+		assertTrue(packets.get(0) instanceof TCPPacket);
+		assertEquals(100, packets.get(0).getSeconds());
+		assertEquals(250000, packets.get(0).getMicroSeconds());
+		assertEquals(101, packets.get(1).getSeconds());
+		assertEquals(500000, packets.get(1).getMicroSeconds());
+		assertEquals(101, packets.get(2).getSeconds());
+		assertEquals(ipPacket.length, packets.get(2).getLen());
+	}
+
+	@Test
+	public void readBigEndianTruncated() throws IOException {
+		ByteOrder order = ByteOrder.BIG_ENDIAN;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(sectionHeader(order));
+		out.write(interfaceDescription(order, PcapLinkType.LINKTYPE_RAW, (byte) 6));
+		out.write(enhancedPacket(order, 0, 100000000L));
+		byte[] last = enhancedPacket(order, 0, 200000000L);
+		out.write(last, 0, last.length - 6);
+		File file = write(out.toByteArray());
+
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(1, packets.size());
+		assertEquals(100, packets.get(0).getSeconds());
+	}
+
+	@Test
+	public void skipTruncatedBlocks() throws IOException {
+		ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(sectionHeader(order));
+		out.write(block(order, PcapngReaderImpl.INTERFACE_DESCRIPTION_BLOCK, new byte[4]));
+		out.write(interfaceDescription(order, PcapLinkType.LINKTYPE_RAW, (byte) 9));
+		out.write(block(order, PcapngReaderImpl.ENHANCED_PACKET_BLOCK, new byte[4]));
+		out.write(block(order, PcapngReaderImpl.PACKET_BLOCK, new byte[12]));
+		out.write(block(order, PcapngReaderImpl.SIMPLE_PACKET_BLOCK, new byte[0]));
+		// captured length past the end of the block
+		byte[] oversized = enhancedPacket(order, 0, 50000000000L);
+		ByteBuffer.wrap(oversized).order(order).putInt(8 + 12, ipPacket.length + 4);
+		out.write(oversized);
+		out.write(enhancedPacket(order, 0, 100000000000L));
+		File file = write(out.toByteArray());
+
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(1, packets.size());
+		assertEquals(100, packets.get(0).getSeconds());
+	}
+
+	@Test
+	public void openCursor() throws IOException {
+		ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(sectionHeader(order));
+		out.write(interfaceDescription(order, PcapLinkType.LINKTYPE_RAW, (byte) 6));
+		out.write(enhancedPacket(order, 0, 100000000L));
+		out.write(sectionHeader(ByteOrder.BIG_ENDIAN));
+		out.write(interfaceDescription(ByteOrder.BIG_ENDIAN, PcapLinkType.LINKTYPE_RAW, (byte) 6));
+		out.write(enhancedPacket(ByteOrder.BIG_ENDIAN, 0, 200000000L));
+		File file = write(out.toByteArray());
+
+		IPacketCursor cursor = reader.openCursor(file.getAbsolutePath());
+		assertTrue(cursor.hasNext());
+		assertEquals(100, cursor.next().getSeconds());
+		assertEquals(200, cursor.next().getSeconds());
+		assertFalse(cursor.hasNext());
+		cursor.close();
+	}
+
+	@Test
+	public void readRawLinkType() throws IOException {
+		ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(sectionHeader(order));
+		out.write(interfaceDescription(order, PcapLinkType.LINKTYPE_RAW, (byte) 6));
+		out.write(enhancedPacket(order, 0, 100000000L));
+		out.write(simplePacket(order));
+		File file = write(out.toByteArray());
+
+		reader.readPacket(file.getAbsolutePath(), listener);
+		assertEquals(2, packets.size());
+		for (Packet packet : packets) {
+			assertTrue(packet instanceof IPPacket);
+			assertEquals("10.0.0.2", ((IPPacket) packet).getDestinationIPAddress().getHostAddress());
+			assertEquals(80, ((TCPPacket) packet).getDestinationPort());
+		}
+	}
+
+	@Test
+	public void parseInterfaceMapsLinkType() {
+		ByteBuffer block = ByteBuffer.wrap(interfaceDescription(ByteOrder.BIG_ENDIAN, PcapLinkType.LINKTYPE_RAW, (byte) 6));
+		block.position(8);
+		PcapngReaderImpl.PcapngInterface iface = reader.parseInterface(block.slice(), 24);
+		assertEquals(PcapLinkType.DLT_RAW, iface.datalink);
+		assertEquals(1000000, iface.unitsPerSecond);
+	}
+
+	@Test
+	public void isPcapngFalse() throws IOException {
+		File file = write(new byte[] { (byte) 0xd4, (byte) 0xc3, (byte) 0xb2, (byte) 0xa1 });
+		assertFalse(PcapngReaderImpl.isPcapng(file.getAbsolutePath()));
+		assertFalse(PcapngReaderImpl.isPcapng("notthere.cap"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void readPacketError() throws IOException {
+		reader.readPacket("traffic.cap", null);
+	}
+
+	private byte[] sectionHeader(ByteOrder order) {
+		ByteBuffer body = ByteBuffer.allocate(16).order(order);
+		body.putInt(PcapngReaderImpl.BYTE_ORDER_MAGIC);
+		body.putShort((short) 1);
+		body.putShort((short) 0);
+		body.putLong(-1L);
+		return block(order, PcapngReaderImpl.SECTION_HEADER_BLOCK, body.array());
+	}
+
+	private byte[] interfaceDescription(ByteOrder order, int linkType, byte tsresol) {
+		ByteBuffer body = ByteBuffer.allocate(20).order(order);
+		body.putShort((short) linkType);
+		body.putShort((short) 0);
+		body.putInt(65535);
+		body.putShort((short) 9); // if_tsresol
+		body.putShort((short) 1);
+		body.put(tsresol);
+		body.put(new byte[3]);
+		body.putInt(0); // opt_endofopt
+		return block(order, PcapngReaderImpl.INTERFACE_DESCRIPTION_BLOCK, body.array());
+	}
+
+	private byte[] enhancedPacket(ByteOrder order, int interfaceId, long timestamp) {
+		ByteBuffer body = ByteBuffer.allocate(20 + ipPacket.length).order(order);
+		body.putInt(interfaceId);
+		body.putInt((int) (timestamp >>> 32));
+		body.putInt((int) timestamp);
+		body.putInt(ipPacket.length);
+		body.putInt(ipPacket.length);
+		body.put(ipPacket);
+		return block(order, PcapngReaderImpl.ENHANCED_PACKET_BLOCK, body.array());
+	}
+
+	private byte[] simplePacket(ByteOrder order) {
+		ByteBuffer body = ByteBuffer.allocate(4 + ipPacket.length).order(order);
+		body.putInt(ipPacket.length);
+		body.put(ipPacket);
+		return block(order, PcapngReaderImpl.SIMPLE_PACKET_BLOCK, body.array());
+	}
+
+	private byte[] block(ByteOrder order, int type, byte[] body) {
+		int padded = (body.length + 3) & ~3;
+		ByteBuffer block = ByteBuffer.allocate(12 + padded).order(order);
+		block.putInt(type);
+		block.putInt(12 + padded);
+		block.put(body);
+		block.position(8 + padded);
+		block.putInt(12 + padded);
+		return block.array();
+	}
+
+	private File write(byte[] data) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+		return file;
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.att.aro.core.exception.AROPacketReadException;
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.IPacketListener;
+import com.att.aro.core.packetreader.IPacketReader;
+import com.att.aro.core.packetreader.pojo.Packet;
+import com.att.aro.core.packetreader.pojo.PacketDecodeContext;
+
+public class QueuedPacketCursorTest {
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Push reader delivering count packets, one per second, named after the
+	 * file and the packet
+	 */
+	private IPacketReader pushReader(int count, boolean fail) {
+		return pushReader(count, fail, false);
+	}
+
+	/**
+	 * @param interrupt
+	 *            interrupts the reader thread before the packets are delivered
+	 */
+	private IPacketReader pushReader(final int count, final boolean fail, final boolean interrupt) {
+		return new IPacketReader() {
+			@Override
+			public void readPacket(String packetfile, IPacketListener listener) throws IOException {
+				readPacket(packetfile, listener, null);
+			}
+
+			@Override
+			public void readPacket(String packetfile, IPacketListener listener, PacketDecodeContext decodeContext)
+					throws IOException {
+				if (interrupt) {
+					Thread.currentThread().interrupt();
+				}
+				for (int i = 0; i < count; i++) {
+					listener.packetArrived(packetfile + i, new Packet(i, 0, 0, 0, new byte[0]));
+				}
+				if (fail) {
+					throw new IOException("test failure");
+				}
+			}
+
+			@Override
+			public IPacketCursor openCursor(String packetfile) throws IOException {
+				return openCursor(packetfile, null);
+			}
+
+			@Override
+			public IPacketCursor openCursor(String packetfile, Executor executor) throws IOException {
+				return openCursor(packetfile, executor, null);
+			}
+
+			@Override
+			public IPacketCursor openCursor(String packetfile, Executor executor, PacketDecodeContext decodeContext)
+					throws IOException {
+				return new QueuedPacketCursor(this, packetfile, executor, decodeContext);
+			}
+		};
+	}
+
+	@Test
+	public void pullAllPackets() throws IOException {
+		IPacketCursor cursor = new QueuedPacketCursor(pushReader(100, false), "traffic.cap", executor, 4);
+		int count = 0;
+		for (Packet packet : cursor) {
+			assertEquals("traffic.cap" + count, cursor.getAppName());
+			assertEquals(count++, packet.getSeconds());
+		}
+		cursor.close();
+		assertEquals(100, count);
+	}
+
+	@Test
+	public void readOnFirstPull() throws IOException {
+		ThreadPoolExecutor rejecting = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		rejecting.shutdown();
+		for (Executor none : new Executor[] { null, rejecting }) {
+			IPacketCursor cursor = new QueuedPacketCursor(pushReader(100, false), "traffic.cap", none, 4);
+			int count = 0;
+			for (Packet packet : cursor) {
+				assertEquals("traffic.cap" + count, cursor.getAppName());
+				assertEquals(count++, packet.getSeconds());
+			}
+			cursor.close();
+			assertEquals(100, count);
+		}
+	}
+
+	/**
+	 * The reader started by the first pull blocks on the queue like one on
+	 * the executor
+	 */
+	@Test
+	public void readOnFirstPullIsBounded() throws Exception {
+		final AtomicInteger delivered = new AtomicInteger();
+		IPacketCursor cursor = new QueuedPacketCursor(pushReader(100, false), "traffic.cap", null, 4) {
+			@Override
+			public void packetArrived(String appName, Packet packet) {
+				delivered.incrementAndGet();
+				super.packetArrived(appName, packet);
+			}
+		};
+		cursor.next();
+		Thread.sleep(200);
+		assertTrue(delivered.get() <= 4 + 2);
+		int count = 1;
+		while (cursor.hasNext()) {
+			cursor.next();
+			count++;
+		}
+		cursor.close();
+		assertEquals(100, count);
+	}
+
+	/**
+	 * An interrupted reader stops, the consumer gets the interrupt instead of
+	 * waiting for the end of the trace
+	 */
+	@Test
+	public void readerInterrupted() throws IOException {
+		IPacketCursor cursor = new QueuedPacketCursor(pushReader(100, false, true), "traffic.cap", executor, 4);
+		try {
+			while (cursor.hasNext()) {
+				cursor.next();
+			}
+			fail("expected AROPacketReadException");
+		} catch (AROPacketReadException e) {
+			assertTrue(e.getCause() instanceof InterruptedIOException);
+		}
+		cursor.close();
+	}
+
+	/**
+	 * More files than threads are merged, the files without a thread on the
+	 * executor are read on threads of their own
+	 */
+	@Test
+	public void mergeOnBoundedThreads() throws IOException {
+		ThreadPoolExecutor readers = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		IPacketReader reader = pushReader(100, false);
+		List<IPacketCursor> cursors = new ArrayList<IPacketCursor>();
+		for (String file : new String[] { "a", "b", "c" }) {
+			cursors.add(new TimeOrderedPacketCursor(new QueuedPacketCursor(reader, file, readers, 4)));
+		}
+		MergedPacketCursor merged = new MergedPacketCursor(cursors, 3);
+		int count = 0;
+		for (Packet packet : merged) {
+			assertEquals(count / 3, packet.getSeconds());
+			assertEquals("abc".charAt(count % 3) + String.valueOf(count / 3), merged.getAppName());
+			count++;
+		}
+		merged.close();
+		readers.shutdown();
+		assertEquals(300, count);
+	}
+
+	@Test
+	public void closeEarly() throws IOException {
+		IPacketCursor cursor = new QueuedPacketCursor(pushReader(100, false), "traffic.cap", executor, 2);
+		assertTrue(cursor.hasNext());
+		cursor.next();
+		cursor.close();
+		assertFalse(cursor.hasNext());
+	}
+
+	@Test
+	public void readerFailure() throws IOException {
+		IPacketCursor cursor = new QueuedPacketCursor(pushReader(1, true), "traffic.cap", executor);
+		cursor.next();
+		try {
+			cursor.hasNext();
+			fail("expected AROPacketReadException");
+		} catch (AROPacketReadException e) {
+			assertEquals("test failure", e.getCause().getMessage());
+		}
+		cursor.close();
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.att.aro.core.packetreader.IPacketCursor;
+import com.att.aro.core.packetreader.pojo.Packet;
+
+public class TimeOrderedPacketCursorTest {
+
+	private IPacketCursor listCursor(final List<Packet> packets) {
+		final Iterator<Packet> iterator = packets.iterator();
+		return new AbstractPacketCursor() {
+			@Override
+			protected Packet advance() throws IOException {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+
+			@Override
+			public void close() throws IOException {
+				finish();
+			}
+		};
+	}
+
+	private Packet packet(long seconds, long microSeconds) {
+		return new Packet(seconds, microSeconds, 0, 0, new byte[0]);
+	}
+
+	@Test
+	public void reorderWithinWindow() throws IOException {
+		Packet first = packet(1, 500);
+		Packet tie = packet(1, 500);
+		List<Packet> packets = Arrays.asList(packet(2, 0), first, packet(1, 900), tie, packet(3, 0), packet(2, 10));
+		IPacketCursor cursor = new TimeOrderedPacketCursor(listCursor(packets), 4);
+		List<Packet> ordered = new ArrayList<Packet>();
+		List<Long> positions = new ArrayList<Long>();
+		for (Packet packet : cursor) {
+			ordered.add(packet);
+			positions.add(cursor.getPosition());
+		}
+		cursor.close();
+
+		assertEquals(6, ordered.size());
+		assertSame(first, ordered.get(0));
+		assertSame(tie, ordered.get(1));
+		assertEquals(900, ordered.get(2).getMicroSeconds());
+		assertEquals(2, ordered.get(3).getSeconds());
+		assertEquals(10, ordered.get(4).getMicroSeconds());
+		assertEquals(3, ordered.get(5).getSeconds());
+		// the packets keep the position they were read at
+		assertEquals(Arrays.asList(1L, 3L, 2L, 0L, 5L, 4L), positions);
+	}
+}
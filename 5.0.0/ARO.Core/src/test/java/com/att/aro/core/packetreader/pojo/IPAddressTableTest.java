@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.pojo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+public class IPAddressTableTest {
+
+	@Test
+	public void internAssignsIdsInOrder() throws Exception {
+		IPAddressTable table = new IPAddressTable();
+		byte[] data = new byte[] { 0, 10, 0, 0, 1, 10, 0, 0, 2, 10, 0, 0, 1 };
+
+		assertEquals(0, table.intern(data, 1, 4));
+		assertEquals(1, table.intern(data, 5, 4));
+		assertEquals(0, table.intern(data, 9, 4));
+		assertEquals(2, table.size());
+		assertEquals(InetAddress.getByName("10.0.0.2"), table.getAddress(1));
+		assertSame(table.getAddress(0), table.getAddress(table.intern(InetAddress.getByName("10.0.0.1"))));
+		assertEquals(1, table.getId(InetAddress.getByName("10.0.0.2")));
+		assertEquals(-1, table.getId(InetAddress.getByName("10.0.0.3")));
+		assertEquals(-1, table.intern(null));
+		assertEquals(-1, table.intern(data, 0, 3));
+		assertNull(table.getAddress(2));
+		assertNull(table.getAddress(-1));
+	}
+
+	@Test
+	public void internKeepsFirstInstance() throws Exception {
+		IPAddressTable table = new IPAddressTable();
+		InetAddress address = InetAddress.getByName("2001:db8::1");
+		int id = table.intern(address);
+		assertSame(address, table.getAddress(id));
+		assertEquals(id, table.intern(address.getAddress(), 0, 16));
+	}
+
+	@Test
+	public void internManyAddresses() throws Exception {
+		IPAddressTable table = new IPAddressTable();
+		byte[] address = new byte[4];
+		for (int i = 0; i < 5000; i++) {
+			address[0] = (byte) (i >> 8);
+			address[3] = (byte) i;
+			assertEquals(i, table.intern(address, 0, 4));
+		}
+		for (int i = 0; i < 5000; i++) {
+			address[0] = (byte) (i >> 8);
+			address[3] = (byte) i;
+			assertEquals(i, table.intern(address, 0, 4));
+		}
+		assertEquals(5000, table.size());
+	}
+
+	@Test
+	public void internPacketAddresses() throws Exception {
+		IPAddressTable table = new IPAddressTable();
+		byte[] data = new byte[] { 0x45, 0, 0, 20, 0, 1, 0, 0, 64, 1, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2 };
+		IPPacket first = new IPPacket(1, 0, 20, 0, data);
+		IPPacket second = new IPPacket(2, 0, 20, 0, data.clone());
+		assertEquals(-1, first.getSourceAddressId());
+
+		first.internAddresses(table);
+		second.internAddresses(table);
+		assertEquals(0, first.getSourceAddressId());
+		assertEquals(1, first.getDestinationAddressId());
+		assertEquals(1, second.getDestinationAddressId());
+		assertSame(first.getSourceIPAddress(), second.getSourceIPAddress());
+		assertEquals(InetAddress.getByName("10.0.0.2"), second.getDestinationIPAddress());
+	}
+}
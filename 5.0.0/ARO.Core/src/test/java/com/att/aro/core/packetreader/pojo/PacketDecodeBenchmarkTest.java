@@ -0,0 +1,125 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.pojo;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Measures the cost of creating TCPPackets for a 1M packet trace, once
+ * reading only the fields needed to build sessions and once reading every
+ * header field, which is what decoding cost when all fields were decoded in
+ * the constructor.<br>
+ * Opt-in, run it with
+ * <code>mvn test -Dtest=PacketDecodeBenchmarkTest -Daro.benchmark=true [-Daro.benchmark.packets=1000000]</code>
+ */
+public class PacketDecodeBenchmarkTest {
+
+	private static final int ROUNDS = 5;
+
+	private long checksum = 0;
+
+	@Test
+	public void decodeTrace() {
+		Assume.assumeTrue("benchmark runs with -Daro.benchmark=true", Boolean.getBoolean("aro.benchmark"));
+		int count = Integer.getInteger("aro.benchmark.packets", 1000000);
+		byte[][] trace = createTrace(count);
+		long sessionBytes = 0;
+		long allBytes = 0;
+		for (int round = 1; round <= ROUNDS; round++) {
+			sessionBytes = run("round " + round + " session fields", trace, false);
+			allBytes = run("round " + round + " all fields    ", trace, true);
+		}
+		System.out.println("checksum " + checksum);
+		if (sessionBytes >= 0 && allBytes >= 0) {
+			assertTrue("session fields allocate less than all fields", sessionBytes < allBytes);
+		}
+	}
+
+	/**
+	 * @return bytes allocated, or -1 if the JVM does not report it
+	 */
+	private long run(String name, byte[][] trace, boolean allFields) {
+		// packets are kept like the trace reader keeps them
+		TCPPacket[] packets = new TCPPacket[trace.length];
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < trace.length; i++) {
+			TCPPacket packet = new TCPPacket(i, 0, trace[i].length, 0, trace[i]);
+			packets[i] = packet;
+			checksum += packet.getSourcePort() + packet.getDestinationPort() + packet.getSequenceNumber() + packet.getPayloadLen();
+			if (packet.isSYN() || packet.isFIN()) {
+				checksum++;
+			}
+			if (allFields) {
+				checksum += packet.getSourceIPAddress().hashCode() + packet.getDestinationIPAddress().hashCode();
+				checksum += packet.getTimeToLive() + packet.getFragmentOffset() + packet.getWindow() + packet.getUrgentPointer();
+				if (packet.isDontFrag() || packet.isSsl()) {
+					checksum++;
+				}
+			}
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+		long end = allocatedBytes();
+		bytes = bytes < 0 || end < 0 ? -1 : end - bytes;
+		checksum += packets[packets.length - 1].getSeconds();
+		System.out.println(name + ": " + trace.length + " packets in " + millis + " ms, "
+				+ (bytes < 0 ? "n/a" : (bytes / trace.length) + " bytes/packet"));
+		return bytes;
+	}
+
+	/**
+	 * @return bytes allocated by the current thread, or -1 if the JVM does not
+	 *         report it
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * TCP packets of 1000 connections, every 10th carries a TLS record
+	 */
+	private static byte[][] createTrace(int count) {
+		byte[][] trace = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			int payload = i % 10 == 0 ? 105 : 0;
+			ByteBuffer buffer = ByteBuffer.allocate(40 + payload);
+			buffer.put(new byte[] { 0x45, 0, 0, 0, 0, 1, 0x40, 0, 64, 6, 0, 0, 10, 0, 0, 1, 10, 0, (byte) (i % 1000 >> 8), (byte) i });
+			buffer.putShort(0, (short) (40 + payload));
+			buffer.putShort((short) (30000 + i % 1000));
+			buffer.putShort((short) 443);
+			buffer.putInt(i);
+			buffer.putInt(i);
+			buffer.putShort((short) 0x5018);
+			buffer.putShort((short) 65535);
+			buffer.putInt(0);
+			if (payload > 0) {
+				buffer.put(new byte[] { 23, 3, 3, 0, 100 });
+			}
+			trace[i] = buffer.array();
+		}
+		return trace;
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2016 AT&T
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.att.aro.core.packetreader.pojo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TCPPacketTest {
+
+	/**
+	 * IPv4 TCP segment 10.0.0.1:1234 -> 10.0.0.2:443 with a TLS handshake
+	 * record followed by a TLS application data record
+	 */
+	private byte[] ipv4Packet() {
+		ByteBuffer buffer = ByteBuffer.allocate(40 + 6 + 7);
+		buffer.put(new byte[] { 0x45, 0, 0, 53, 0, 1, 0x5f, (byte) 0xff, 64, 6, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2 });
+		buffer.putShort((short) 1234);
+		buffer.putShort((short) 443);
+		buffer.putInt(0x80000001);
+		buffer.putInt(7);
+		buffer.putShort((short) 0x502b); // URG PSH SYN FIN
+		buffer.putShort((short) 0xfffe);
+		buffer.putShort((short) 0);
+		buffer.putShort((short) 0x1234);
+		buffer.put(new byte[] { 22, 3, 1, 0, 1, 0 });
+		buffer.put(new byte[] { 23, 3, 3, 0, 2, 0, 0 });
+		return buffer.array();
+	}
+
+	@Test
+	public void decodeIPv4() throws Exception {
+		TCPPacket packet = new TCPPacket(1, 2, 53, 0, ipv4Packet());
+
+		assertEquals(4, packet.getIPVersion());
+		assertEquals(53, packet.getPacketLength());
+		assertEquals(6, packet.getProtocol());
+		assertEquals(64, packet.getTimeToLive());
+		assertFalse(packet.isRsvFrag());
+		assertTrue(packet.isDontFrag());
+		assertFalse(packet.isMoreFrag());
+		assertEquals(0x1fff, packet.getFragmentOffset());
+		assertEquals(InetAddress.getByName("10.0.0.1"), packet.getSourceIPAddress());
+		assertEquals(InetAddress.getByName("10.0.0.2"), packet.getDestinationIPAddress());
+		assertSame(packet.getSourceIPAddress(), packet.getSourceIPAddress());
+
+		assertEquals(1234, packet.getSourcePort());
+		assertEquals(443, packet.getDestinationPort());
+		assertEquals(0x80000001L, packet.getSequenceNumber());
+		assertEquals(7, packet.getAckNumber());
+		assertTrue(packet.isURG());
+		assertFalse(packet.isACK());
+		assertTrue(packet.isPSH());
+		assertFalse(packet.isRST());
+		assertTrue(packet.isSYN());
+		assertTrue(packet.isFIN());
+		assertEquals(0xfffe, packet.getWindow());
+		assertEquals(0x1234, packet.getUrgentPointer());
+		assertEquals(40, packet.getDataOffset());
+		assertEquals(13, packet.getPayloadLen());
+
+		assertTrue(packet.isSsl());
+		assertTrue(packet.isSslHandshake());
+		assertTrue(packet.isSslApplicationData());
+	}
+
+	@Test
+	public void decodeIPv6() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(14 + 40 + 20);
+		buffer.position(12);
+		buffer.putShort((short) 0x86dd);
+		buffer.put(new byte[] { 0x60, 0, 0, 0, 0, 20, 6, 64 });
+		byte[] source = InetAddress.getByName("2001:db8::1").getAddress();
+		byte[] destination = InetAddress.getByName("2001:db8::2").getAddress();
+		buffer.put(source);
+		buffer.put(destination);
+		buffer.putShort((short) 80);
+		buffer.putShort((short) 5000);
+		buffer.putInt(1);
+		buffer.putInt(2);
+		buffer.putShort((short) 0x5010); // ACK
+		buffer.putShort((short) 100);
+		TCPPacket packet = new TCPPacket(1, 2, 74, 14, buffer.array());
+
+		assertEquals(6, packet.getIPVersion());
+		assertEquals(0, packet.getTimeToLive());
+		assertFalse(packet.isDontFrag());
+		assertEquals(0, packet.getFragmentOffset());
+		assertEquals(InetAddress.getByAddress(source), packet.getSourceIPAddress());
+		assertEquals(InetAddress.getByAddress(destination), packet.getDestinationIPAddress());
+		assertEquals(80, packet.getSourcePort());
+		assertTrue(packet.isACK());
+		assertFalse(packet.isSYN());
+		assertEquals(100, packet.getWindow());
+		assertEquals(0, packet.getPayloadLen());
+		assertFalse(packet.isSsl());
+		assertFalse(packet.isSslHandshake());
+	}
+}